@@ -0,0 +1,228 @@
+package gelf4j;
+
+import ch.qos.logback.classic.LoggerContext;
+import java.io.ByteArrayInputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks that drive each of the logging integrations from multiple producer threads.
+ * The integrations send to a sink bound to the loopback interface that discards every datagram it receives.
+ * Throughput mode reports ops/s while sample mode reports the latency percentiles of each append. The
+ * allocation per event is reported by the GC profiler.
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class AppenderThroughputBenchmark
+{
+  @Param( { "log4j", "logback", "jul" } )
+  public String integration;
+
+  @Param( { "false", "true" } )
+  public boolean async;
+
+  private DatagramSocket _sink;
+  private Thread _sinkThread;
+  private Target _target;
+
+  @Setup
+  public void setup()
+    throws Exception
+  {
+    _sink = new DatagramSocket( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+    _sinkThread = new Thread( this::drainSink, "gelf4j-benchmark-sink" );
+    _sinkThread.setDaemon( true );
+    _sinkThread.start();
+
+    final String host = InetAddress.getLoopbackAddress().getHostAddress();
+    final int port = _sink.getLocalPort();
+    if ( "log4j".equals( integration ) )
+    {
+      _target = new Log4jTarget( host, port, async );
+    }
+    else if ( "logback".equals( integration ) )
+    {
+      _target = new LogbackTarget( host, port, async );
+    }
+    else
+    {
+      _target = new JulTarget( host, port, async );
+    }
+  }
+
+  @TearDown
+  public void tearDown()
+    throws Exception
+  {
+    _target.close();
+    _sink.close();
+    _sinkThread.join();
+  }
+
+  @Benchmark
+  @Threads( 1 )
+  public void oneProducer()
+  {
+    _target.append( "Benchmark message" );
+  }
+
+  @Benchmark
+  @Threads( 4 )
+  public void fourProducers()
+  {
+    _target.append( "Benchmark message" );
+  }
+
+  @Benchmark
+  @Threads( Threads.MAX )
+  public void maxProducers()
+  {
+    _target.append( "Benchmark message" );
+  }
+
+  private void drainSink()
+  {
+    final DatagramPacket packet = new DatagramPacket( new byte[ 65536 ], 65536 );
+    try
+    {
+      while ( true )
+      {
+        _sink.receive( packet );
+      }
+    }
+    catch ( final Exception e )
+    {
+      //Sink closed
+    }
+  }
+
+  private interface Target
+  {
+    void append( String text );
+
+    void close()
+      throws Exception;
+  }
+
+  private static final class Log4jTarget
+    implements Target
+  {
+    private final org.apache.log4j.Logger _logger = org.apache.log4j.Logger.getLogger( "gelf4j.benchmark" );
+    private final gelf4j.log4j.GelfAppender _appender = new gelf4j.log4j.GelfAppender();
+
+    Log4jTarget( final String host, final int port, final boolean async )
+    {
+      _appender.setHost( host );
+      _appender.setPort( port );
+      _appender.setAsync( async );
+      _appender.activateOptions();
+    }
+
+    @Override
+    public void append( final String text )
+    {
+      _appender.doAppend( new org.apache.log4j.spi.LoggingEvent( Log4jTarget.class.getName(),
+                                                                 _logger,
+                                                                 org.apache.log4j.Level.INFO,
+                                                                 text,
+                                                                 null ) );
+    }
+
+    @Override
+    public void close()
+    {
+      _appender.close();
+    }
+  }
+
+  private static final class LogbackTarget
+    implements Target
+  {
+    private final LoggerContext _context = new LoggerContext();
+    private final ch.qos.logback.classic.Logger _logger = _context.getLogger( "gelf4j.benchmark" );
+    private final gelf4j.logback.GelfAppender<ch.qos.logback.classic.spi.ILoggingEvent> _appender =
+      new gelf4j.logback.GelfAppender<ch.qos.logback.classic.spi.ILoggingEvent>();
+
+    LogbackTarget( final String host, final int port, final boolean async )
+    {
+      _appender.setContext( _context );
+      _appender.setHost( host );
+      _appender.setPort( port );
+      _appender.setAsync( async );
+      _appender.start();
+    }
+
+    @Override
+    public void append( final String text )
+    {
+      _appender.doAppend( new ch.qos.logback.classic.spi.LoggingEvent( LogbackTarget.class.getName(),
+                                                                       _logger,
+                                                                       ch.qos.logback.classic.Level.INFO,
+                                                                       text,
+                                                                       null,
+                                                                       null ) );
+    }
+
+    @Override
+    public void close()
+    {
+      _appender.stop();
+    }
+  }
+
+  private static final class JulTarget
+    implements Target
+  {
+    private final gelf4j.logging.GelfHandler _handler;
+
+    JulTarget( final String host, final int port, final boolean async )
+      throws Exception
+    {
+      // The handler is only configurable via the LogManager
+      final String prefix = gelf4j.logging.GelfHandler.class.getName();
+      final String config =
+        prefix + ".host=" + host + "\n" +
+        prefix + ".port=" + port + "\n" +
+        prefix + ".async=" + async + "\n";
+      LogManager.getLogManager().readConfiguration( new ByteArrayInputStream( config.getBytes( "UTF-8" ) ) );
+      _handler = new gelf4j.logging.GelfHandler();
+    }
+
+    @Override
+    public void append( final String text )
+    {
+      final LogRecord record = new LogRecord( java.util.logging.Level.INFO, text );
+      record.setLoggerName( "gelf4j.benchmark" );
+      _handler.publish( record );
+    }
+
+    @Override
+    public void close()
+    {
+      _handler.close();
+      LogManager.getLogManager().reset();
+    }
+  }
+}
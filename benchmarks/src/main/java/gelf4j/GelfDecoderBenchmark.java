@@ -0,0 +1,100 @@
+package gelf4j;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for decoding the datagrams of a message.
+ * The state is per thread as the decoder is not thread safe.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class GelfDecoderBenchmark
+{
+  /**
+   * The number of characters in the full message. The larger sizes produce chunked messages.
+   */
+  @Param( { "100", "2000", "20000" } )
+  public int messageSize;
+
+  @Param( { "0", "8", "32" } )
+  public int fieldCount;
+
+  /**
+   * Whether the compressed chunk header format is used. The payload is gzip compressed either way.
+   */
+  @Param( { "false", "true" } )
+  public boolean compressedChunking;
+
+  private GelfDecoder _decoder;
+  private List<byte[]> _packets;
+
+  @Setup
+  public void setup()
+    throws Exception
+  {
+    final GelfEncoder encoder = new GelfEncoder( "localhost", compressedChunking, new SimpleJsonCodec() );
+    // A fixed seed means each run decodes the same messages
+    final Random random = new Random( 42 );
+    final String text = randomText( random, messageSize );
+    final GelfMessage message = new GelfMessage();
+    message.setLevel( SyslogLevel.INFO );
+    message.setJavaTimestamp( System.currentTimeMillis() );
+    message.setFullMessage( text );
+    message.setShortMessage( GelfMessageUtil.truncateShortMessage( text ) );
+    message.setFacility( "benchmark" );
+    for ( int i = 0; i < fieldCount; i++ )
+    {
+      message.getAdditionalFields().put( "field" + i, randomText( random, 16 ) );
+    }
+    // The same message id is reused on each invocation which is fine as the previous message is complete
+    _packets = encoder.encode( message );
+    _decoder = new GelfDecoder( compressedChunking, new SimpleJsonCodec() );
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    _decoder.close();
+  }
+
+  @Benchmark
+  public GelfMessage decode()
+    throws IOException
+  {
+    GelfMessage message = null;
+    for ( final byte[] packet : _packets )
+    {
+      message = _decoder.decode( packet, 0, packet.length, 0 );
+    }
+    return message;
+  }
+
+  private static String randomText( final Random random, final int length )
+  {
+    final StringBuilder sb = new StringBuilder( length );
+    for ( int i = 0; i < length; i++ )
+    {
+      sb.append( (char) ( ' ' + random.nextInt( 95 ) ) );
+    }
+    return sb.toString();
+  }
+}
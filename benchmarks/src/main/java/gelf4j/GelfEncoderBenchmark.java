@@ -0,0 +1,119 @@
+package gelf4j;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the stages of encoding a message.
+ * The state is per thread as the encoder is not thread safe.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class GelfEncoderBenchmark
+{
+  /**
+   * The number of characters in the full message. The larger sizes produce chunked messages.
+   */
+  @Param( { "100", "2000", "20000" } )
+  public int messageSize;
+
+  @Param( { "0", "8", "32" } )
+  public int fieldCount;
+
+  /**
+   * Whether the compressed chunk header format is used. The payload is gzip compressed either way.
+   */
+  @Param( { "false", "true" } )
+  public boolean compressedChunking;
+
+  /**
+   * Whether the text is repetitive and compresses well rather than random and barely compressible.
+   */
+  @Param( { "false", "true" } )
+  public boolean compressible;
+
+  private GelfEncoder _encoder;
+  private GelfMessage _message;
+  private String _json;
+  private byte[] _payload;
+
+  @Setup
+  public void setup()
+    throws Exception
+  {
+    _encoder = new GelfEncoder( "localhost", compressedChunking, new SimpleJsonCodec() );
+    // A fixed seed means each run encodes the same messages
+    final Random random = new Random( 42 );
+    final String text = createText( random, messageSize );
+    _message = new GelfMessage();
+    _message.setLevel( SyslogLevel.INFO );
+    _message.setJavaTimestamp( System.currentTimeMillis() );
+    _message.setFullMessage( text );
+    _message.setShortMessage( GelfMessageUtil.truncateShortMessage( text ) );
+    _message.setFacility( "benchmark" );
+    for ( int i = 0; i < fieldCount; i++ )
+    {
+      _message.getAdditionalFields().put( "field" + i, createText( random, 16 ) );
+    }
+    _json = _encoder.toJson( _message );
+    // Random text barely compresses which allows the larger message sizes to exercise chunking, repetitive text
+    // compresses to a single packet
+    _payload = _encoder.gzip( _json );
+  }
+
+  @Benchmark
+  public String toJson()
+  {
+    return _encoder.toJson( _message );
+  }
+
+  @Benchmark
+  public byte[] gzip()
+  {
+    return _encoder.gzip( _json );
+  }
+
+  @Benchmark
+  public List<byte[]> createPackets()
+  {
+    return _encoder.createPackets( _payload );
+  }
+
+  @Benchmark
+  public byte[] generateMessageID()
+  {
+    return _encoder.generateMessageID();
+  }
+
+  @Benchmark
+  public List<byte[]> encode()
+  {
+    return _encoder.encode( _message );
+  }
+
+  private String createText( final Random random, final int length )
+  {
+    final StringBuilder sb = new StringBuilder( length );
+    for ( int i = 0; i < length; i++ )
+    {
+      sb.append( compressible ? (char) ( 'a' + i % 26 ) : (char) ( ' ' + random.nextInt( 95 ) ) );
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,443 @@
+package gelf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Responsible for transmitting messages on a background thread.
+ * Messages are placed in one of several bounded lanes according to their level and are dropped rather than
+ * blocking the caller when their lane is full. The sender always drains the high priority lane first so that
+ * a backlog of low priority messages does not delay the delivery of errors. The drop policy is applied to each
+ * lane independently so a full low priority lane never causes higher priority messages to be dropped.
+ *
+ * <p>The total estimated size of the queued messages is also bounded so that the heap retained by the queue has a
+ * ceiling regardless of the size of individual messages. A message that would take the total over the ceiling
+ * evicts queued messages of lower priority, lowest priority and oldest first, and is dropped irrespective of the
+ * drop policy if that does not make enough room. The size is tracked using striped counters outside the lane lock
+ * and a message is only accepted if the total including its own reservation is within the ceiling.</p>
+ */
+final class GelfAsyncSender
+  implements Runnable
+{
+  /** Lane for messages at ERR level and above. */
+  static final int HIGH_LANE = 0;
+  /** Lane for WARNING and NOTICE messages. */
+  static final int NORMAL_LANE = 1;
+  /** Lane for INFO and DEBUG messages and messages without a level. */
+  static final int LOW_LANE = 2;
+  private static final int LANE_COUNT = 3;
+
+  // The maximum time to wait for queued messages to be transmitted when shutting down
+  private static final long SHUTDOWN_TIMEOUT = 5000;
+  private static final long POLL_TIMEOUT = 100;
+  // The maximum number of messages transmitted while holding the channel
+  static final int MAX_BATCH_SIZE = 64;
+
+  private final GelfConnection _connection;
+  private final int _laneCapacity;
+  private final GelfTargetConfig.DropPolicy _dropPolicy;
+  private final long _maxBytes;
+  private final LongAdder _queuedBytes = new LongAdder();
+  private final AtomicLong _peakQueuedBytes = new AtomicLong();
+  private final ReentrantLock _lock = new ReentrantLock();
+  private final Condition _notEmpty = _lock.newCondition();
+  private final List<ArrayDeque<Entry>> _lanes = new ArrayList<ArrayDeque<Entry>>( LANE_COUNT );
+  private final Thread _thread;
+  private volatile boolean _running = true;
+  private volatile int _lowLaneDepth;
+  private volatile int _depth;
+
+  GelfAsyncSender( final GelfConnection connection,
+                   final int laneCapacity,
+                   final GelfTargetConfig.DropPolicy dropPolicy,
+                   final long maxBytes,
+                   final String name )
+  {
+    _connection = connection;
+    _laneCapacity = Math.max( 1, laneCapacity );
+    _dropPolicy = dropPolicy;
+    _maxBytes = maxBytes;
+    for ( int i = 0; i < LANE_COUNT; i++ )
+    {
+      _lanes.add( new ArrayDeque<Entry>() );
+    }
+    _thread = new Thread( this, name );
+    _thread.setDaemon( true );
+    _thread.start();
+  }
+
+  static int laneOf( final SyslogLevel level )
+  {
+    if ( null == level )
+    {
+      return LOW_LANE;
+    }
+    else if ( level.ordinal() <= SyslogLevel.ERR.ordinal() )
+    {
+      return HIGH_LANE;
+    }
+    else if ( level.ordinal() <= SyslogLevel.NOTICE.ordinal() )
+    {
+      return NORMAL_LANE;
+    }
+    else
+    {
+      return LOW_LANE;
+    }
+  }
+
+  /**
+   * Place the message in the lane for its level.
+   *
+   * @param message the message.
+   * @param future  the future to complete once the message has been processed. May be null.
+   * @return false if the message was dropped.
+   */
+  boolean enqueue( final GelfMessage message, final CompletableFuture<GelfSendResult> future )
+  {
+    final long size = GelfMessageUtil.estimateSize( message );
+    final int laneIndex = laneOf( message.getLevel() );
+    if ( !reserve( size ) && !makeRoom( laneIndex, size ) )
+    {
+      drop( future, GelfConnectionMetrics.DropReason.BYTE_LIMIT );
+      return false;
+    }
+    Entry evicted = null;
+    boolean accepted = false;
+    final boolean running;
+    _lock.lock();
+    try
+    {
+      // Checked while holding the lock so that shutdown can not miss a message added to a lane
+      running = _running;
+      if ( running )
+      {
+        final ArrayDeque<Entry> lane = _lanes.get( laneIndex );
+        if ( lane.size() >= _laneCapacity && GelfTargetConfig.DropPolicy.DROP_OLDEST == _dropPolicy )
+        {
+          evicted = lane.poll();
+        }
+        if ( lane.size() < _laneCapacity )
+        {
+          lane.add( new Entry( message, future, size ) );
+          accepted = true;
+          updateDepth();
+          _notEmpty.signal();
+        }
+      }
+    }
+    finally
+    {
+      _lock.unlock();
+    }
+    if ( null != evicted )
+    {
+      _queuedBytes.add( -evicted._size );
+      drop( evicted._future, GelfConnectionMetrics.DropReason.QUEUE_FULL );
+    }
+    if ( !accepted )
+    {
+      _queuedBytes.add( -size );
+      drop( future,
+            running ? GelfConnectionMetrics.DropReason.QUEUE_FULL : GelfConnectionMetrics.DropReason.SHUTDOWN );
+    }
+    return accepted;
+  }
+
+  private boolean reserve( final long size )
+  {
+    _queuedBytes.add( size );
+    final long queuedBytes = _queuedBytes.sum();
+    if ( queuedBytes > _maxBytes )
+    {
+      _queuedBytes.add( -size );
+      return false;
+    }
+    // Read before update to avoid contending on the peak when it is not exceeded
+    if ( queuedBytes > _peakQueuedBytes.get() )
+    {
+      _peakQueuedBytes.accumulateAndGet( queuedBytes, Math::max );
+    }
+    return true;
+  }
+
+  /**
+   * Evict queued messages from the lanes of lower priority than the specified lane until the size can be
+   * reserved, so that a backlog of large low priority messages can not cause errors to be dropped. Nothing is
+   * evicted if the lower priority lanes do not hold enough bytes to make room.
+   *
+   * @return true if the size was reserved.
+   */
+  private boolean makeRoom( final int laneIndex, final long size )
+  {
+    final List<Entry> evicted = new ArrayList<Entry>();
+    boolean reserved = false;
+    _lock.lock();
+    try
+    {
+      long evictable = 0;
+      for ( int i = laneIndex + 1; i < LANE_COUNT; i++ )
+      {
+        for ( final Entry entry : _lanes.get( i ) )
+        {
+          evictable += entry._size;
+        }
+      }
+      if ( _queuedBytes.sum() + size - evictable <= _maxBytes )
+      {
+        for ( int i = LANE_COUNT - 1; i > laneIndex && !reserved; i-- )
+        {
+          final ArrayDeque<Entry> lane = _lanes.get( i );
+          while ( !reserved && !lane.isEmpty() )
+          {
+            final Entry entry = lane.poll();
+            evicted.add( entry );
+            _queuedBytes.add( -entry._size );
+            reserved = reserve( size );
+          }
+        }
+        updateDepth();
+      }
+    }
+    finally
+    {
+      _lock.unlock();
+    }
+    for ( final Entry entry : evicted )
+    {
+      drop( entry._future, GelfConnectionMetrics.DropReason.BYTE_LIMIT );
+    }
+    return reserved;
+  }
+
+  /**
+   * @return the estimated size in bytes of the messages queued or being transmitted.
+   */
+  long getQueuedBytes()
+  {
+    return _queuedBytes.sum();
+  }
+
+  /**
+   * @return the maximum value of {@link #getQueuedBytes()} observed.
+   */
+  long getPeakQueuedBytes()
+  {
+    return _peakQueuedBytes.get();
+  }
+
+  int getQueueDepth()
+  {
+    return _depth;
+  }
+
+  int getLaneDepth( final int lane )
+  {
+    _lock.lock();
+    try
+    {
+      return _lanes.get( lane ).size();
+    }
+    finally
+    {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * @return the sampling stage implied by the occupancy of the low priority lane. Sampling only ever sheds low
+   * priority messages so the other lanes are not considered.
+   */
+  int getLoadStage()
+  {
+    final int depth = _lowLaneDepth;
+    return depth * 4 >= _laneCapacity * 3 ? GelfSampler.STAGE_INFO :
+           depth * 2 >= _laneCapacity ? GelfSampler.STAGE_DEBUG :
+           GelfSampler.STAGE_NONE;
+  }
+
+  /**
+   * Stop accepting messages and wait for the queued messages to be transmitted.
+   */
+  void shutdown()
+  {
+    _running = false;
+    try
+    {
+      _thread.join( SHUTDOWN_TIMEOUT );
+    }
+    catch ( final InterruptedException ie )
+    {
+      Thread.currentThread().interrupt();
+    }
+    final List<Entry> remaining = new ArrayList<Entry>();
+    _lock.lock();
+    try
+    {
+      for ( final ArrayDeque<Entry> lane : _lanes )
+      {
+        remaining.addAll( lane );
+        lane.clear();
+      }
+      updateDepth();
+    }
+    finally
+    {
+      _lock.unlock();
+    }
+    for ( final Entry entry : remaining )
+    {
+      _queuedBytes.add( -entry._size );
+      drop( entry._future, GelfConnectionMetrics.DropReason.SHUTDOWN );
+    }
+  }
+
+  @Override
+  public void run()
+  {
+    final List<Entry> batch = new ArrayList<Entry>( MAX_BATCH_SIZE );
+    final List<GelfMessage> messages = new ArrayList<GelfMessage>( MAX_BATCH_SIZE );
+    try
+    {
+      while ( take( batch ) )
+      {
+        if ( !batch.isEmpty() )
+        {
+          transmit( batch, messages );
+          batch.clear();
+          messages.clear();
+        }
+      }
+    }
+    catch ( final InterruptedException ie )
+    {
+      //Ignored. Remaining messages are dropped by shutdown
+    }
+  }
+
+  /**
+   * Remove the next batch of messages, highest priority lane first.
+   *
+   * @return false if the sender has been shutdown and all lanes are empty.
+   */
+  private boolean take( final List<Entry> batch )
+    throws InterruptedException
+  {
+    _lock.lock();
+    try
+    {
+      if ( 0 == _depth )
+      {
+        if ( !_running )
+        {
+          return false;
+        }
+        _notEmpty.await( POLL_TIMEOUT, TimeUnit.MILLISECONDS );
+      }
+      for ( final ArrayDeque<Entry> lane : _lanes )
+      {
+        while ( batch.size() < MAX_BATCH_SIZE && !lane.isEmpty() )
+        {
+          batch.add( lane.poll() );
+        }
+      }
+      updateDepth();
+      return true;
+    }
+    finally
+    {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * Must be invoked while holding the lock.
+   */
+  private void updateDepth()
+  {
+    int depth = 0;
+    for ( final ArrayDeque<Entry> lane : _lanes )
+    {
+      depth += lane.size();
+    }
+    _depth = depth;
+    _lowLaneDepth = _lanes.get( LOW_LANE ).size();
+  }
+
+  private void transmit( final List<Entry> batch, final List<GelfMessage> messages )
+  {
+    for ( final Entry entry : batch )
+    {
+      messages.add( entry._message );
+    }
+    List<GelfSendResult> results;
+    try
+    {
+      results = _connection.transmitAll( messages, true );
+    }
+    catch ( final RuntimeException re )
+    {
+      // Make sure a bad message does not terminate the sender thread or fail the rest of the batch
+      results = new ArrayList<GelfSendResult>( batch.size() );
+      for ( final GelfMessage message : messages )
+      {
+        results.add( transmit( message ) );
+      }
+    }
+    for ( int i = 0; i < batch.size(); i++ )
+    {
+      final Entry entry = batch.get( i );
+      // The message is retained until it has been transmitted so it is accounted for until then
+      _queuedBytes.add( -entry._size );
+      complete( entry._future, results.get( i ) );
+    }
+  }
+
+  private GelfSendResult transmit( final GelfMessage message )
+  {
+    try
+    {
+      return _connection.transmit( message, true );
+    }
+    catch ( final RuntimeException re )
+    {
+      _connection.getMetrics().recordFailed();
+      return GelfSendResult.FAILED;
+    }
+  }
+
+  private void drop( final CompletableFuture<GelfSendResult> future, final GelfConnectionMetrics.DropReason reason )
+  {
+    _connection.getMetrics().recordDropped( reason );
+    complete( future, GelfSendResult.DROPPED );
+  }
+
+  private static void complete( final CompletableFuture<GelfSendResult> future, final GelfSendResult result )
+  {
+    if ( null != future )
+    {
+      future.complete( result );
+    }
+  }
+
+  private static final class Entry
+  {
+    private final GelfMessage _message;
+    private final CompletableFuture<GelfSendResult> _future;
+    private final long _size;
+
+    Entry( final GelfMessage message, final CompletableFuture<GelfSendResult> future, final long size )
+    {
+      _message = message;
+      _future = future;
+      _size = size;
+    }
+  }
+}
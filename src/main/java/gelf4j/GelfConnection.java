@@ -1,42 +1,208 @@
 package gelf4j;
 
 import java.io.IOException;
-import java.net.InetSocketAddress;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
-import java.nio.channels.DatagramChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * Responsible for communicating with a GELF compliant server.
  */
 public class GelfConnection
 {
+  /**
+   * The facility of the messages the connection sends to report on itself.
+   */
+  public static final String REPORT_FACILITY = "gelf4j";
+  /**
+   * The field that identifies the kind of report in messages the connection sends to report on itself.
+   */
+  public static final String REPORT_FIELD = "report";
+  /**
+   * The field that identifies the connection that sent a message when sequence numbers are enabled.
+   */
+  public static final String SENDER_ID_FIELD = "sender_id";
+  /**
+   * The field containing the number of the message in the sequence of messages encoded by the connection.
+   */
+  public static final String SEQUENCE_FIELD = "seq";
+
+  private static final AtomicInteger c_connectionId = new AtomicInteger();
+
   private final GelfTargetConfig _config;
   private final GelfEncoder _encoder;
-  private DatagramChannel _channel;
+  private final GelfMessageCoalescer _coalescer;
+  private final GelfSampler _sampler;
+  private final GelfConnectionMetrics _metrics = new GelfConnectionMetrics();
+  private final GelfLoggerStats _loggerStats;
+  private final GelfHealthReport _healthReport;
+  private final List<ObjectName> _objectNames = new ArrayList<ObjectName>();
+  private final GelfTransport _transport;
+  private ScheduledExecutorService _scheduler;
+  private volatile GelfAsyncSender _sender;
 
   protected GelfConnection( final GelfTargetConfig config )
     throws Exception
   {
     _config = config;
-    _encoder = new GelfEncoder( GelfMessageUtil.getLocalHost(), _config.isCompressedChunking(), _config.getCodec() );
+    _transport = createTransport( config );
+    _encoder = new GelfEncoder( GelfMessageUtil.getLocalHost(),
+                                _config.isCompressedChunking(),
+                                _config.getCodec(),
+                                _config.isSequenceNumbers() ? UUID.randomUUID().toString() : null );
+    final long coalesceWindow = _config.getCoalesceWindow();
+    _coalescer = coalesceWindow > 0 ? new GelfMessageCoalescer( coalesceWindow ) : null;
+    final long sampleThreshold = _config.getSampleThreshold();
+    _sampler = sampleThreshold > 0 ?
+               new GelfSampler( sampleThreshold,
+                                _config.getDebugSampleRate(),
+                                _config.getInfoSampleRate(),
+                                System.currentTimeMillis() ) :
+               null;
+    final int loggerStatsSize = _config.getLoggerStatsSize();
+    _loggerStats = loggerStatsSize > 0 ? new GelfLoggerStats( loggerStatsSize ) : null;
+    if ( _config.isJmxEnabled() )
+    {
+      final String suffix = ",target=" + ObjectName.quote( _config.getHost() + ":" + _config.getPort() ) +
+                            ",id=" + c_connectionId.incrementAndGet();
+      registerMBean( _metrics, new ObjectName( "gelf4j:type=GelfConnection" + suffix ) );
+      if ( null != _loggerStats )
+      {
+        registerMBean( _loggerStats, new ObjectName( "gelf4j:type=GelfLoggerStats" + suffix ) );
+      }
+    }
+    if ( null != _coalescer )
+    {
+      schedule( this::sendExpiredRepeats, coalesceWindow );
+    }
+    final long loggerStatsInterval = _config.getLoggerStatsInterval();
+    if ( null != _loggerStats && loggerStatsInterval > 0 )
+    {
+      schedule( this::sendLoggerStats, loggerStatsInterval );
+    }
+    final long healthReportInterval = _config.getHealthReportInterval();
+    if ( healthReportInterval > 0 )
+    {
+      _healthReport = new GelfHealthReport( _metrics, System.currentTimeMillis() );
+      schedule( this::sendHealthReport, healthReportInterval );
+    }
+    else
+    {
+      _healthReport = null;
+    }
   }
 
-  public synchronized void close()
+  private static GelfTransport createTransport( final GelfTargetConfig config )
     throws IOException
   {
-    if ( null != _channel )
+    if ( GelfTargetConfig.Transport.HTTP == config.getTransport() )
+    {
+      return new GelfHttpTransport( config );
+    }
+    final String socketPath = config.getSocketPath();
+    if ( GelfTargetConfig.Transport.UNIX == config.getTransport() &&
+         GelfUnixSocketTransport.isSupported() &&
+         null != socketPath &&
+         Files.exists( Paths.get( socketPath ) ) )
+    {
+      return new GelfUnixSocketTransport( socketPath );
+    }
+    return new GelfUdpTransport( config );
+  }
+
+  private void registerMBean( final Object mbean, final ObjectName name )
+    throws JMException
+  {
+    ManagementFactory.getPlatformMBeanServer().registerMBean( mbean, name );
+    _objectNames.add( name );
+  }
+
+  /**
+   * Run the task periodically on the reporting thread of the connection.
+   * Must only be invoked from the constructor.
+   */
+  private void schedule( final Runnable task, final long period )
+  {
+    if ( null == _scheduler )
+    {
+      final String name = "gelf4j-reporter-" + _config.getHost() + ":" + _config.getPort();
+      _scheduler = Executors.newSingleThreadScheduledExecutor( r -> {
+        final Thread thread = new Thread( r, name );
+        thread.setDaemon( true );
+        return thread;
+      } );
+    }
+    _scheduler.scheduleAtFixedRate( () -> {
+      try
+      {
+        task.run();
+      }
+      catch ( final RuntimeException re )
+      {
+        //Ignored. An exception would suppress subsequent executions
+      }
+    }, period, period, TimeUnit.MILLISECONDS );
+  }
+
+  /**
+   * Close the connection.
+   * Any messages queued for asynchronous transmission are sent before the channel is closed.
+   */
+  public void close()
+    throws IOException
+  {
+    if ( null != _coalescer )
+    {
+      // Make sure the repeat counts of outstanding runs are not lost
+      for ( final GelfMessage message : _coalescer.flush() )
+      {
+        dispatch( message, null, _config.isAsync() );
+      }
+    }
+    if ( null != _scheduler )
+    {
+      _scheduler.shutdown();
+    }
+    final GelfAsyncSender sender;
+    final List<ObjectName> objectNames;
+    synchronized ( this )
+    {
+      sender = _sender;
+      _sender = null;
+      objectNames = new ArrayList<ObjectName>( _objectNames );
+      _objectNames.clear();
+    }
+    for ( final ObjectName objectName : objectNames )
     {
       try
       {
-        _channel.close();
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean( objectName );
       }
-      finally
+      catch ( final JMException jme )
       {
-        _channel = null;
+        //Ignored
       }
     }
+    // The monitor must not be held while waiting as the sender thread needs it to transmit
+    if ( null != sender )
+    {
+      sender.shutdown();
+    }
+    closeChannel();
   }
 
   public GelfMessage newMessage( final SyslogLevel level,
@@ -63,55 +229,487 @@ public class GelfConnection
 
   /**
    * Sends a single GELF message to the server.
+   * If repeat coalescing is enabled the message may be suppressed and represented by a later follow-up message.
+   * If sampling is enabled low priority messages may be discarded while the connection is under load.
+   * If the connection is configured as asynchronous the message is queued and transmitted by a background thread.
    *
    * @param message the GELF Message
-   * @return false if sending failed
+   * @return false if sending failed or the message could not be queued
    */
   public boolean send( final GelfMessage message )
   {
-    final List<byte[]> packets = _encoder.encode( message );
-    // Note: Returning false when encoding fails for whatever reason
-    return null != packets && send( packets );
+    final boolean async = _config.isAsync();
+    final long now = System.currentTimeMillis();
+    if ( null != _sampler && !_sampler.sample( message, now, getLoadStage() ) )
+    {
+      // Sampled out messages are intentionally discarded and that is not a failure
+      _metrics.recordDropped( GelfConnectionMetrics.DropReason.SAMPLED );
+      return true;
+    }
+    else if ( null == _coalescer )
+    {
+      return dispatch( message, null, async );
+    }
+    boolean success = true;
+    boolean forwarded = false;
+    for ( final GelfMessage toSend : _coalescer.coalesce( message, now ) )
+    {
+      forwarded |= toSend == message;
+      success &= dispatch( toSend, null, async );
+    }
+    if ( !forwarded )
+    {
+      _metrics.recordDropped( GelfConnectionMetrics.DropReason.COALESCED );
+    }
+    return success;
   }
 
   /**
-   * Sends a bunch of GELF Chunks to the server
+   * Queue a single GELF message for transmission by a background thread.
+   * The returned future is completed once the message has been transmitted or dropped and never completes
+   * exceptionally. A message that is sampled out, coalesced into a later message or rejected because the queue
+   * is full completes with a {@link GelfSendResult.Outcome#DROPPED} outcome.
    *
-   * @param packets The packets to send over the wire
-   * @return false if sending failed
+   * @param message the GELF Message
+   * @return the future result of sending the message.
    */
-  private boolean send( final List<byte[]> packets )
+  public CompletableFuture<GelfSendResult> sendAsync( final GelfMessage message )
   {
-    for ( final byte[] packet : packets )
+    final CompletableFuture<GelfSendResult> future = new CompletableFuture<GelfSendResult>();
+    final long now = System.currentTimeMillis();
+    if ( null != _sampler && !_sampler.sample( message, now, getLoadStage() ) )
+    {
+      _metrics.recordDropped( GelfConnectionMetrics.DropReason.SAMPLED );
+      future.complete( GelfSendResult.DROPPED );
+    }
+    else if ( null == _coalescer )
+    {
+      dispatch( message, future, true );
+    }
+    else
+    {
+      boolean forwarded = false;
+      for ( final GelfMessage toSend : _coalescer.coalesce( message, now ) )
+      {
+        final boolean isMessage = toSend == message;
+        forwarded |= isMessage;
+        dispatch( toSend, isMessage ? future : null, true );
+      }
+      if ( !forwarded )
+      {
+        _metrics.recordDropped( GelfConnectionMetrics.DropReason.COALESCED );
+        future.complete( GelfSendResult.DROPPED );
+      }
+    }
+    return future;
+  }
+
+  /**
+   * @return the metrics describing the messages processed by the connection.
+   */
+  public GelfConnectionMetrics getMetrics()
+  {
+    return _metrics;
+  }
+
+  /**
+   * @return the messages and bytes sent by each logger or null if logger statistics are not enabled.
+   */
+  public GelfLoggerStats getLoggerStats()
+  {
+    return _loggerStats;
+  }
+
+  /**
+   * @return the transport in use, which may differ from the configured transport if it was unavailable.
+   */
+  public GelfTargetConfig.Transport getTransport()
+  {
+    if ( _transport instanceof GelfHttpTransport )
+    {
+      return GelfTargetConfig.Transport.HTTP;
+    }
+    return _transport.isDatagram() ? GelfTargetConfig.Transport.UDP : GelfTargetConfig.Transport.UNIX;
+  }
+
+  /**
+   * @return the maximum number of messages that can be queued for asynchronous transmission at each priority.
+   */
+  public int getAsyncQueueSize()
+  {
+    return _config.getAsyncQueueSize();
+  }
+
+  /**
+   * @return the number of messages queued for asynchronous transmission.
+   */
+  public int getQueueDepth()
+  {
+    final GelfAsyncSender sender = _sender;
+    return null != sender ? sender.getQueueDepth() : 0;
+  }
+
+  /**
+   * @return the estimated heap size in bytes of the messages queued for asynchronous transmission.
+   */
+  public long getQueuedBytes()
+  {
+    final GelfAsyncSender sender = _sender;
+    return null != sender ? sender.getQueuedBytes() : 0;
+  }
+
+  /**
+   * @return the maximum value of {@link #getQueuedBytes()} observed by the current asynchronous sender.
+   */
+  public long getPeakQueuedBytes()
+  {
+    final GelfAsyncSender sender = _sender;
+    return null != sender ? sender.getPeakQueuedBytes() : 0;
+  }
+
+  private boolean dispatch( final GelfMessage message,
+                            final CompletableFuture<GelfSendResult> future,
+                            final boolean async )
+  {
+    if ( async )
+    {
+      return getSender().enqueue( message, future );
+    }
+    else
+    {
+      // Sent from the logging thread so it must not be held while retrying
+      final GelfSendResult result = transmit( message, false );
+      if ( null != future )
+      {
+        future.complete( result );
+      }
+      return result.isSent();
+    }
+  }
+
+  private int getLoadStage()
+  {
+    final GelfAsyncSender sender = _sender;
+    return null != sender ? sender.getLoadStage() : GelfSampler.STAGE_NONE;
+  }
+
+  private GelfAsyncSender getSender()
+  {
+    GelfAsyncSender sender = _sender;
+    if ( null == sender )
     {
-      if ( !sendPacket( packet ) )
+      synchronized ( this )
       {
-        return false;
+        sender = _sender;
+        if ( null == sender )
+        {
+          final String name = "gelf4j-sender-" + _config.getHost() + ":" + _config.getPort();
+          sender = new GelfAsyncSender( this,
+                                        _config.getAsyncQueueSize(),
+                                        _config.getAsyncDropPolicy(),
+                                        _config.getAsyncQueueMaxBytes(),
+                                        name );
+          _sender = sender;
+        }
       }
     }
-    return true;
+    return sender;
   }
 
-  private boolean sendPacket( final byte[] packet )
+  /**
+   * Sends a batch of GELF messages to the server.
+   * The messages are encoded before the channel is acquired and the datagrams for the entire batch are then
+   * written while holding the channel once. A transport that batches messages, such as HTTP, instead writes
+   * groups of messages as single requests. Sampling and repeat coalescing are not applied to the batch. A
+   * transport that retries failed writes, such as HTTP, may hold the calling thread while it backs off.
+   *
+   * @param messages the GELF Messages
+   * @return the result of sending each message, in the iteration order of the collection.
+   */
+  public List<GelfSendResult> sendAll( final Collection<GelfMessage> messages )
   {
-    final ByteBuffer buffer = ByteBuffer.allocate( packet.length );
-    buffer.put( packet );
-    buffer.flip();
-    return doSend( buffer );
+    return transmitAll( messages, true );
   }
 
-  private synchronized boolean doSend( final ByteBuffer buffer )
+  /**
+   * Encode the message and write it to the channel.
+   *
+   * @param message the GELF Message
+   * @param retry   true if the transport may retry a failed write, holding the calling thread while it backs off.
+   * @return the result of the transmission.
+   */
+  GelfSendResult transmit( final GelfMessage message, final boolean retry )
   {
+    final List<byte[]> packets = encode( message );
+    if ( null == packets )
+    {
+      return GelfSendResult.FAILED;
+    }
+    final GelfSendResult result;
+    if ( _transport.isConcurrent() )
+    {
+      result = write( packets, retry );
+    }
+    else
+    {
+      synchronized ( this )
+      {
+        result = write( packets, retry );
+      }
+    }
+    recordLoggerStats( message, result );
+    return result;
+  }
+
+  /**
+   * Encode the messages and write them to the channel in a single critical section, or in batches if the
+   * transport batches messages.
+   *
+   * @param messages the GELF Messages
+   * @param retry    true if the transport may retry a failed write, holding the calling thread while it backs off.
+   * @return the result of transmitting each message.
+   */
+  List<GelfSendResult> transmitAll( final Collection<GelfMessage> messages, final boolean retry )
+  {
+    final List<List<byte[]>> encoded = new ArrayList<List<byte[]>>( messages.size() );
+    for ( final GelfMessage message : messages )
+    {
+      encoded.add( encode( message ) );
+    }
+    final GelfSendResult[] results = new GelfSendResult[ encoded.size() ];
+    if ( _transport.getMaxBatchSize() > 1 )
+    {
+      writeBatches( encoded, results, retry );
+    }
+    else if ( _transport.isConcurrent() )
+    {
+      writeEach( encoded, results, retry );
+    }
+    else
+    {
+      synchronized ( this )
+      {
+        writeEach( encoded, results, retry );
+      }
+    }
+    if ( null != _loggerStats )
+    {
+      int i = 0;
+      for ( final GelfMessage message : messages )
+      {
+        recordLoggerStats( message, results[ i++ ] );
+      }
+    }
+    return Arrays.asList( results );
+  }
+
+  /**
+   * Write each message separately. Must be invoked while holding the monitor unless the transport is concurrent.
+   */
+  private void writeEach( final List<List<byte[]>> encoded, final GelfSendResult[] results, final boolean retry )
+  {
+    for ( int i = 0; i < results.length; i++ )
+    {
+      final List<byte[]> packets = encoded.get( i );
+      results[ i ] = null != packets ? write( packets, retry ) : GelfSendResult.FAILED;
+    }
+  }
+
+  /**
+   * Write the messages in groups of up to the maximum batch size of the transport, each group with a single write.
+   * Messages that failed to encode are excluded from the groups.
+   */
+  private void writeBatches( final List<List<byte[]>> encoded, final GelfSendResult[] results, final boolean retry )
+  {
+    final int batchSize = _transport.getMaxBatchSize();
+    final List<byte[]> frames = new ArrayList<byte[]>( batchSize );
+    final List<Integer> indices = new ArrayList<Integer>( batchSize );
+    for ( int i = 0; i < results.length; i++ )
+    {
+      final List<byte[]> packets = encoded.get( i );
+      if ( null == packets )
+      {
+        results[ i ] = GelfSendResult.FAILED;
+        continue;
+      }
+      // Frames are never chunked
+      frames.add( packets.get( 0 ) );
+      indices.add( i );
+      if ( frames.size() >= batchSize )
+      {
+        writeBatch( frames, indices, results, retry );
+        frames.clear();
+        indices.clear();
+      }
+    }
+    if ( !frames.isEmpty() )
+    {
+      writeBatch( frames, indices, results, retry );
+    }
+  }
+
+  private void writeBatch( final List<byte[]> frames,
+                           final List<Integer> indices,
+                           final GelfSendResult[] results,
+                           final boolean retry )
+  {
+    final GelfFlightRecorder.SendEvent event = GelfFlightRecorder.beginSend();
+    final long start = System.nanoTime();
+    int bytes = 0;
+    for ( final byte[] frame : frames )
+    {
+      bytes += frame.length;
+    }
+    boolean sent = true;
     try
     {
-      getChannel().write( buffer );
+      if ( _transport.isConcurrent() )
+      {
+        _transport.writeBatch( frames, retry );
+      }
+      else
+      {
+        synchronized ( this )
+        {
+          _transport.writeBatch( frames, retry );
+        }
+      }
+    }
+    catch ( final IOException ioe )
+    {
+      sent = false;
+    }
+    GelfFlightRecorder.commitSend( event, bytes, sent );
+    final long nanos = System.nanoTime() - start;
+    final GelfSendResult.Outcome outcome = sent ? GelfSendResult.Outcome.SENT : GelfSendResult.Outcome.FAILED;
+    for ( int i = 0; i < frames.size(); i++ )
+    {
+      if ( sent )
+      {
+        _metrics.recordSent( 1, nanos );
+      }
+      else
+      {
+        _metrics.recordFailed();
+      }
+      results[ indices.get( i ) ] = new GelfSendResult( outcome, frames.get( i ).length, 1 );
+    }
+  }
+
+  private List<byte[]> encode( final GelfMessage message )
+  {
+    return _transport.isDatagram() ? _encoder.encode( message, _metrics ) : _encoder.encodeFrame( message, _metrics );
+  }
+
+  private void recordLoggerStats( final GelfMessage message, final GelfSendResult result )
+  {
+    if ( null != _loggerStats && result.isSent() )
+    {
+      _loggerStats.record( message.getLoggerName(), result.getByteCount() );
+    }
+  }
+
+  /**
+   * Send the follow-up messages of the runs whose coalescing window has expired without another message from the
+   * logger, which would otherwise only be sent when the logger or another logger sends a message.
+   */
+  private void sendExpiredRepeats()
+  {
+    for ( final GelfMessage message : _coalescer.expire( System.currentTimeMillis() ) )
+    {
+      dispatch( message, null, _config.isAsync() );
+    }
+  }
+
+  /**
+   * Send a message describing the loggers that have sent the most bytes.
+   * The message is transmitted directly so that it is never sampled, coalesced or dropped from the queue.
+   */
+  private void sendLoggerStats()
+  {
+    final GelfMessage message =
+      newMessage( SyslogLevel.INFO, "Top loggers by bytes sent", System.currentTimeMillis() );
+    message.setFullMessage( _loggerStats.describeTopLoggers() );
+    message.setFacility( REPORT_FACILITY );
+    message.getAdditionalFields().put( REPORT_FIELD, "logger_stats" );
+    message.getAdditionalFields().put( "tracked_loggers", _loggerStats.getTrackedLoggerCount() );
+    // Sent from the reporting thread which may be held while retrying
+    transmit( message, true );
+  }
+
+  /**
+   * Send a message describing the messages sent, failed and dropped since the previous report, the state of the
+   * queue and channel, and the encode and send time percentiles. Like logger statistics, the message is
+   * transmitted directly and is itself counted in the following report.
+   */
+  private void sendHealthReport()
+  {
+    final long now = System.currentTimeMillis();
+    final GelfMessage message = newMessage( SyslogLevel.INFO, "", now );
+    _healthReport.populate( message, now );
+    message.setFacility( REPORT_FACILITY );
+    final Map<String, Object> fields = message.getAdditionalFields();
+    fields.put( REPORT_FIELD, GelfHealthReport.REPORT_TYPE );
+    fields.put( "queue_depth", getQueueDepth() );
+    fields.put( "queued_bytes", getQueuedBytes() );
+    // The channel is closed after a failed write and reopened by the next send
+    fields.put( "channel", isChannelOpen() ? "open" : "closed" );
+    transmit( message, true );
+  }
+
+  /**
+   * Sends a bunch of GELF Chunks to the server.
+   * Must be invoked while holding the monitor unless the transport is concurrent.
+   *
+   * @param packets The packets to send over the wire
+   * @param retry   true if the transport may retry a failed write
+   * @return the result of the transmission.
+   */
+  private GelfSendResult write( final List<byte[]> packets, final boolean retry )
+  {
+    final long start = System.nanoTime();
+    int byteCount = 0;
+    boolean sent = true;
+    for ( final byte[] packet : packets )
+    {
+      byteCount += packet.length;
+      if ( sent && !doSend( ByteBuffer.wrap( packet ), retry ) )
+      {
+        sent = false;
+      }
+    }
+    if ( sent )
+    {
+      _metrics.recordSent( packets.size(), System.nanoTime() - start );
+    }
+    else
+    {
+      _metrics.recordFailed();
+    }
+    return new GelfSendResult( sent ? GelfSendResult.Outcome.SENT : GelfSendResult.Outcome.FAILED,
+                               byteCount,
+                               packets.size() );
+  }
+
+  /**
+   * Write a single packet. Must be invoked while holding the monitor unless the transport is concurrent.
+   */
+  private boolean doSend( final ByteBuffer buffer, final boolean retry )
+  {
+    final GelfFlightRecorder.SendEvent event = GelfFlightRecorder.beginSend();
+    final int bytes = buffer.remaining();
+    try
+    {
+      _transport.write( buffer, retry );
+      GelfFlightRecorder.commitSend( event, bytes, true );
       return true;
     }
     catch ( final IOException ioe )
     {
+      GelfFlightRecorder.commitSend( event, bytes, false );
       try
       {
-        close();
+        closeChannel();
       }
       catch ( final IOException ignored )
       {
@@ -120,16 +718,14 @@ public class GelfConnection
     }
   }
 
-  private synchronized DatagramChannel getChannel()
+  private synchronized void closeChannel()
     throws IOException
   {
-    if ( null == _channel )
-    {
-      _channel = DatagramChannel.open();
-      _channel.socket().bind( new InetSocketAddress( 0 ) );
-      _channel.connect( new InetSocketAddress( _config.getHostAddress(), _config.getPort() ) );
-      _channel.configureBlocking( false );
-    }
-    return _channel;
+    _transport.close();
+  }
+
+  private synchronized boolean isChannelOpen()
+  {
+    return _transport.isOpen();
   }
 }
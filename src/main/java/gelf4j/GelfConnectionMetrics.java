@@ -0,0 +1,226 @@
+package gelf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms describing the messages processed by a {@link GelfConnection}.
+ * The metrics are updated using striped counters so that recording does not contend between logging threads.
+ * Reading a metric while messages are being recorded may return a value that does not include concurrent updates.
+ */
+public final class GelfConnectionMetrics
+  implements GelfConnectionMetricsMBean
+{
+  /**
+   * The reason a message was intentionally discarded.
+   */
+  public enum DropReason
+  {
+    /** The queue lane for the message was full. */
+    QUEUE_FULL,
+    /** Queueing the message would have exceeded the size limit of the queue. */
+    BYTE_LIMIT,
+    /** The message was discarded by sampling. */
+    SAMPLED,
+    /** The message was a repeat that was coalesced into a later message. */
+    COALESCED,
+    /** The message was queued when the connection was closed. */
+    SHUTDOWN
+  }
+
+  private final LongAdder _sentCount = new LongAdder();
+  private final LongAdder _failedCount = new LongAdder();
+  private final LongAdder[] _droppedCounts = new LongAdder[ DropReason.values().length ];
+  private final LongAdder _oversizeCount = new LongAdder();
+  private final LongAdder _uncompressedBytes = new LongAdder();
+  private final LongAdder _compressedBytes = new LongAdder();
+  private final GelfHistogram _chunksPerMessage = new GelfHistogram();
+  private final GelfHistogram _encodeTime = new GelfHistogram();
+  private final GelfHistogram _sendTime = new GelfHistogram();
+
+  GelfConnectionMetrics()
+  {
+    for ( int i = 0; i < _droppedCounts.length; i++ )
+    {
+      _droppedCounts[ i ] = new LongAdder();
+    }
+  }
+
+  void recordEncode( final int uncompressedBytes, final int compressedBytes, final long nanos )
+  {
+    _uncompressedBytes.add( uncompressedBytes );
+    _compressedBytes.add( compressedBytes );
+    _encodeTime.record( nanos );
+  }
+
+  void recordOversize()
+  {
+    _oversizeCount.increment();
+    _failedCount.increment();
+  }
+
+  void recordSent( final int chunkCount, final long nanos )
+  {
+    _sentCount.increment();
+    _chunksPerMessage.record( chunkCount );
+    _sendTime.record( nanos );
+  }
+
+  void recordFailed()
+  {
+    _failedCount.increment();
+  }
+
+  void recordDropped( final DropReason reason )
+  {
+    _droppedCounts[ reason.ordinal() ].increment();
+  }
+
+  @Override
+  public long getSentCount()
+  {
+    return _sentCount.sum();
+  }
+
+  /**
+   * @return the number of messages that could not be encoded or written, including oversize messages.
+   */
+  @Override
+  public long getFailedCount()
+  {
+    return _failedCount.sum();
+  }
+
+  @Override
+  public long getDroppedCount()
+  {
+    long count = 0;
+    for ( final LongAdder dropped : _droppedCounts )
+    {
+      count += dropped.sum();
+    }
+    return count;
+  }
+
+  public long getDroppedCount( final DropReason reason )
+  {
+    return _droppedCounts[ reason.ordinal() ].sum();
+  }
+
+  @Override
+  public long getQueueFullDropCount()
+  {
+    return getDroppedCount( DropReason.QUEUE_FULL );
+  }
+
+  @Override
+  public long getByteLimitDropCount()
+  {
+    return getDroppedCount( DropReason.BYTE_LIMIT );
+  }
+
+  @Override
+  public long getSampledDropCount()
+  {
+    return getDroppedCount( DropReason.SAMPLED );
+  }
+
+  @Override
+  public long getCoalescedDropCount()
+  {
+    return getDroppedCount( DropReason.COALESCED );
+  }
+
+  @Override
+  public long getShutdownDropCount()
+  {
+    return getDroppedCount( DropReason.SHUTDOWN );
+  }
+
+  /**
+   * @return the number of messages that were too large to be split into the maximum number of chunks.
+   */
+  @Override
+  public long getOversizeCount()
+  {
+    return _oversizeCount.sum();
+  }
+
+  /**
+   * @return the total size in bytes of the encoded json before compression.
+   */
+  @Override
+  public long getUncompressedBytes()
+  {
+    return _uncompressedBytes.sum();
+  }
+
+  /**
+   * @return the total size in bytes of the compressed payloads, excluding chunk headers.
+   */
+  @Override
+  public long getCompressedBytes()
+  {
+    return _compressedBytes.sum();
+  }
+
+  @Override
+  public long getChunkCount()
+  {
+    return _chunksPerMessage.getSum();
+  }
+
+  @Override
+  public long getMaxChunksPerMessage()
+  {
+    return _chunksPerMessage.getMax();
+  }
+
+  @Override
+  public double getMeanEncodeTime()
+  {
+    return _encodeTime.getMean() / 1000D;
+  }
+
+  @Override
+  public long getEncodeTime99thPercentile()
+  {
+    return TimeUnit.NANOSECONDS.toMicros( _encodeTime.getPercentile( 99 ) );
+  }
+
+  @Override
+  public double getMeanSendTime()
+  {
+    return _sendTime.getMean() / 1000D;
+  }
+
+  @Override
+  public long getSendTime99thPercentile()
+  {
+    return TimeUnit.NANOSECONDS.toMicros( _sendTime.getPercentile( 99 ) );
+  }
+
+  /**
+   * @return the number of chunks each sent message was split into.
+   */
+  public GelfHistogram getChunksPerMessage()
+  {
+    return _chunksPerMessage;
+  }
+
+  /**
+   * @return the time in nanoseconds taken to encode each message.
+   */
+  public GelfHistogram getEncodeTime()
+  {
+    return _encodeTime;
+  }
+
+  /**
+   * @return the time in nanoseconds taken to write each sent message to the channel.
+   */
+  public GelfHistogram getSendTime()
+  {
+    return _sendTime;
+  }
+}
@@ -0,0 +1,42 @@
+package gelf4j;
+
+/**
+ * The management interface of {@link GelfConnectionMetrics}.
+ * Times are reported in microseconds.
+ */
+public interface GelfConnectionMetricsMBean
+{
+  long getSentCount();
+
+  long getFailedCount();
+
+  long getDroppedCount();
+
+  long getQueueFullDropCount();
+
+  long getByteLimitDropCount();
+
+  long getSampledDropCount();
+
+  long getCoalescedDropCount();
+
+  long getShutdownDropCount();
+
+  long getOversizeCount();
+
+  long getUncompressedBytes();
+
+  long getCompressedBytes();
+
+  long getChunkCount();
+
+  long getMaxChunksPerMessage();
+
+  double getMeanEncodeTime();
+
+  long getEncodeTime99thPercentile();
+
+  double getMeanSendTime();
+
+  long getSendTime99thPercentile();
+}
@@ -0,0 +1,777 @@
+package gelf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Responsible for converting packets into a GelfMessage, the reverse of {@link GelfEncoder}.
+ * Chunks are reassembled into the payload of a message which is inflated if it is gzip or zlib compressed
+ * and then parsed from json. The number of messages awaiting chunks and the bytes held for their chunks are
+ * bounded, discarding the message whose first chunk arrived earliest to make room, and messages whose chunks do
+ * not all arrive within the chunk timeout are discarded. A chunked message is rejected as soon as its chunks show
+ * that it would exceed the maximum message size. Pending messages, chunk buffers of the usual size and the buffers
+ * used to assemble and inflate payloads are reused so decoding allocates little beyond the resulting message,
+ * while larger buffers are released once the message that needed them is complete.
+ * The decoder is not thread safe.
+ */
+public final class GelfDecoder
+  implements Closeable
+{
+  public static final long DEFAULT_CHUNK_TIMEOUT = 5000;
+  public static final int DEFAULT_MAX_PENDING_MESSAGES = 1024;
+  public static final long DEFAULT_MAX_PENDING_BYTES = 32 * 1024 * 1024;
+  /**
+   * The maximum size in bytes of the json of a message. Larger messages are rejected as invalid so that a sender
+   * can not exhaust the heap of the receiver.
+   */
+  public static final int MAX_MESSAGE_SIZE = 8 * 1024 * 1024;
+
+  /**
+   * Notified when a chunked message is completed or discarded.
+   */
+  public interface ChunkListener
+  {
+    /**
+     * @param chunkCount    the number of chunks in the message.
+     * @param receivedCount the number of distinct chunks received. Less than the chunk count if the message was
+     *                      discarded.
+     */
+    void onChunkedMessage( int chunkCount, int receivedCount );
+  }
+
+  // Bounds the memory used by a pending message. The encoder never produces more chunks than this.
+  private static final int MAX_CHUNK_COUNT = GelfEncoder.MAX_SEQ_NUMBER + 1;
+  // Bounds the memory held by the pool of chunk buffers
+  private static final int MAX_FREE_CHUNKS = 1024;
+  private static final int ASSEMBLED_SIZE = GelfEncoder.MAX_PACKET_SIZE * 4;
+  private static final int INFLATED_SIZE = GelfEncoder.MAX_PACKET_SIZE * 16;
+  private static final int GZIP_HEADER_SIZE = 10;
+  private static final int GZIP_FLAG_HEADER_CRC = 2;
+  private static final int GZIP_FLAG_EXTRA = 4;
+  private static final int GZIP_FLAG_NAME = 8;
+  private static final int GZIP_FLAG_COMMENT = 16;
+
+  private final JsonCodec _codec;
+  private final int _messageIdLength;
+  private final int _sequenceLength;
+  private final int _headerSize;
+  private final long _chunkTimeout;
+  private final int _maxPendingMessages;
+  private final long _maxPendingBytes;
+  private final Inflater _gzipInflater = new Inflater( true );
+  private final Inflater _zlibInflater = new Inflater();
+  private final ArrayDeque<PendingMessage> _freeMessages = new ArrayDeque<PendingMessage>();
+  private final ArrayDeque<byte[]> _freeChunks = new ArrayDeque<byte[]>();
+  // Open addressed table of pending messages keyed by the message id folded into a long
+  private final long[] _keys;
+  private final PendingMessage[] _values;
+  private final int _mask;
+  private int _pendingCount;
+  // The size of the chunk buffers held by pending messages
+  private long _pendingBytes;
+  // The pending messages in the order their first chunk arrived
+  private PendingMessage _oldest;
+  private PendingMessage _newest;
+  private byte[] _assembled = new byte[ ASSEMBLED_SIZE ];
+  private byte[] _inflated = new byte[ INFLATED_SIZE ];
+  private ChunkListener _chunkListener;
+
+  public GelfDecoder( final boolean compressedChunking, final JsonCodec codec )
+  {
+    this( compressedChunking, DEFAULT_CHUNK_TIMEOUT, DEFAULT_MAX_PENDING_MESSAGES, codec );
+  }
+
+  /**
+   * @param compressedChunking true if chunks use the format of Graylog2 server versions 0.9.6 and later.
+   * @param chunkTimeout       the milliseconds after the first chunk of a message arrives at which the message is
+   *                           discarded if any chunks are missing.
+   * @param maxPendingMessages the maximum number of messages awaiting chunks. The message whose first chunk
+   *                           arrived earliest is discarded to make room for a new message.
+   * @param codec              the codec used to parse messages.
+   */
+  public GelfDecoder( final boolean compressedChunking,
+                      final long chunkTimeout,
+                      final int maxPendingMessages,
+                      final JsonCodec codec )
+  {
+    this( compressedChunking, chunkTimeout, maxPendingMessages, DEFAULT_MAX_PENDING_BYTES, codec );
+  }
+
+  /**
+   * @param compressedChunking true if chunks use the format of Graylog2 server versions 0.9.6 and later.
+   * @param chunkTimeout       the milliseconds after the first chunk of a message arrives at which the message is
+   *                           discarded if any chunks are missing.
+   * @param maxPendingMessages the maximum number of messages awaiting chunks. The message whose first chunk
+   *                           arrived earliest is discarded to make room for a new message.
+   * @param maxPendingBytes    the maximum bytes of chunks held for the messages awaiting chunks. The messages whose
+   *                           first chunk arrived earliest are discarded to make room for a new chunk.
+   * @param codec              the codec used to parse messages.
+   */
+  public GelfDecoder( final boolean compressedChunking,
+                      final long chunkTimeout,
+                      final int maxPendingMessages,
+                      final long maxPendingBytes,
+                      final JsonCodec codec )
+  {
+    _codec = codec;
+    _messageIdLength =
+      compressedChunking ? GelfEncoder.COMPRESSED_MESSAGE_ID_LENGTH : GelfEncoder.MESSAGE_ID_LENGTH;
+    _sequenceLength = compressedChunking ? GelfEncoder.COMPRESSED_SEQUENCE_LENGTH : GelfEncoder.SEQUENCE_LENGTH;
+    _headerSize = compressedChunking ? GelfEncoder.COMPRESSED_HEADER_SIZE : GelfEncoder.HEADER_SIZE;
+    _chunkTimeout = chunkTimeout;
+    _maxPendingMessages = Math.max( 1, maxPendingMessages );
+    _maxPendingBytes = Math.max( GelfEncoder.MAX_PACKET_SIZE, maxPendingBytes );
+    // Keep the table at most half full so probe sequences stay short
+    final int capacity = Integer.highestOneBit( _maxPendingMessages * 2 - 1 ) << 1;
+    _keys = new long[ capacity ];
+    _values = new PendingMessage[ capacity ];
+    _mask = capacity - 1;
+  }
+
+  public void setChunkListener( final ChunkListener chunkListener )
+  {
+    _chunkListener = chunkListener;
+  }
+
+  /**
+   * Decode a datagram.
+   *
+   * @param data   the buffer containing the datagram. Not retained.
+   * @param offset the offset of the datagram in the buffer.
+   * @param length the length of the datagram.
+   * @param now    the current time in milliseconds.
+   * @return the message or null if the datagram is a chunk of a message that is not yet complete.
+   * @throws IOException if the datagram is a malformed chunk or the message can not be decompressed or parsed.
+   */
+  public GelfMessage decode( final byte[] data, final int offset, final int length, final long now )
+    throws IOException
+  {
+    final String json = decodeToJson( data, offset, length, now );
+    return null == json ? null : fromJson( json );
+  }
+
+  /**
+   * Decode a datagram into the json of the message, validated as for {@link #decode(byte[], int, int, long)}
+   * but otherwise unchanged, so that it can be forwarded without the loss of re-encoding the message.
+   *
+   * @param data   the buffer containing the datagram. Not retained.
+   * @param offset the offset of the datagram in the buffer.
+   * @param length the length of the datagram.
+   * @param now    the current time in milliseconds.
+   * @return the UTF-8 json of the message or null if the datagram is a chunk of a message that is not yet complete.
+   * @throws IOException if the datagram is a malformed chunk or the message can not be decompressed or parsed.
+   */
+  public byte[] decodeJson( final byte[] data, final int offset, final int length, final long now )
+    throws IOException
+  {
+    final String json = decodeToJson( data, offset, length, now );
+    if ( null == json )
+    {
+      return null;
+    }
+    fromJson( json );
+    return json.getBytes( StandardCharsets.UTF_8 );
+  }
+
+  private String decodeToJson( final byte[] data, final int offset, final int length, final long now )
+    throws IOException
+  {
+    if ( length < GelfEncoder.CHUNKED_GELF_ID.length ||
+         GelfEncoder.CHUNKED_GELF_ID[ 0 ] != data[ offset ] ||
+         GelfEncoder.CHUNKED_GELF_ID[ 1 ] != data[ offset + 1 ] )
+    {
+      return payloadToJson( data, offset, length );
+    }
+    if ( length < _headerSize )
+    {
+      throw new IOException( "Chunk of " + length + " bytes is shorter than the chunk header" );
+    }
+    final int idOffset = offset + GelfEncoder.CHUNKED_GELF_ID.length;
+    final int sequenceOffset = idOffset + _messageIdLength;
+    final int sequence = readNumber( data, sequenceOffset );
+    final int chunkCount = readNumber( data, sequenceOffset + _sequenceLength );
+    if ( sequence >= chunkCount )
+    {
+      throw new IOException( "Chunk " + sequence + " is not within the chunk count " + chunkCount );
+    }
+    if ( chunkCount > MAX_CHUNK_COUNT )
+    {
+      throw new IOException( "Chunk count " + chunkCount + " exceeds the maximum of " + MAX_CHUNK_COUNT );
+    }
+
+    final long key = foldMessageId( data, idOffset );
+    PendingMessage message = get( key );
+    if ( null != message && ( message._chunkCount != chunkCount || !message.hasMessageId( data, idOffset ) ) )
+    {
+      // Either a malformed chunk or two messages whose ids fold to the same key. Keep the newer message.
+      discard( message );
+      message = null;
+    }
+    final int chunkOffset = offset + _headerSize;
+    final int chunkLength = offset + length - chunkOffset;
+    // Every chunk but the last is usually the same size so this estimates the size of the message
+    if ( sequence < chunkCount - 1 && (long) chunkCount * chunkLength > MAX_MESSAGE_SIZE )
+    {
+      if ( null != message )
+      {
+        discard( message );
+      }
+      throw new IOException( "Chunked message of " + chunkCount + " chunks of " + chunkLength +
+                             " bytes exceeds the maximum of " + MAX_MESSAGE_SIZE + " bytes" );
+    }
+    if ( null == message )
+    {
+      if ( _pendingCount == _maxPendingMessages )
+      {
+        discard( _oldest );
+      }
+      message = newPendingMessage( key, data, idOffset, chunkCount, now );
+    }
+    if ( !message.hasChunk( sequence ) )
+    {
+      if ( message._size + chunkLength > MAX_MESSAGE_SIZE )
+      {
+        discard( message );
+        throw new IOException( "Chunked message exceeds the maximum of " + MAX_MESSAGE_SIZE + " bytes" );
+      }
+      final int bufferSize = Math.max( chunkLength, GelfEncoder.MAX_PACKET_SIZE );
+      while ( _pendingBytes + bufferSize > _maxPendingBytes && _oldest != message )
+      {
+        discard( _oldest );
+      }
+      if ( _pendingBytes + bufferSize > _maxPendingBytes )
+      {
+        discard( message );
+        throw new IOException( "Chunked message exceeds the maximum of " + _maxPendingBytes + " pending bytes" );
+      }
+      message.setChunk( sequence, allocateChunk( bufferSize ), data, chunkOffset, chunkLength );
+      _pendingBytes += bufferSize;
+    }
+    if ( message._receivedCount < chunkCount )
+    {
+      return null;
+    }
+
+    final int size = message._size;
+    if ( _assembled.length < size )
+    {
+      _assembled = new byte[ Math.max( size, _assembled.length * 2 ) ];
+    }
+    message.copyTo( _assembled );
+    release( message );
+    notifyChunkListener( chunkCount, chunkCount );
+    try
+    {
+      return payloadToJson( _assembled, 0, size );
+    }
+    finally
+    {
+      if ( _assembled.length > ASSEMBLED_SIZE )
+      {
+        // Release the memory used by an unusually large message
+        _assembled = new byte[ ASSEMBLED_SIZE ];
+      }
+    }
+  }
+
+  /**
+   * Decode a complete payload, such as a TCP frame, that may be gzip or zlib compressed.
+   *
+   * @throws IOException if the payload can not be decompressed or parsed.
+   */
+  public GelfMessage decodePayload( final byte[] data, final int offset, final int length )
+    throws IOException
+  {
+    return fromJson( payloadToJson( data, offset, length ) );
+  }
+
+  private String payloadToJson( final byte[] data, final int offset, final int length )
+    throws IOException
+  {
+    final String json;
+    if ( length >= 2 && (byte) 0x1f == data[ offset ] && (byte) 0x8b == data[ offset + 1 ] )
+    {
+      final int headerSize = getGzipHeaderSize( data, offset, length );
+      json = inflate( _gzipInflater, data, offset + headerSize, length - headerSize );
+    }
+    else if ( length >= 2 &&
+              0x08 == ( data[ offset ] & 0x0f ) &&
+              0 == ( ( ( data[ offset ] & 0xff ) << 8 ) | ( data[ offset + 1 ] & 0xff ) ) % 31 )
+    {
+      json = inflate( _zlibInflater, data, offset, length );
+    }
+    else
+    {
+      json = new String( data, offset, length, StandardCharsets.UTF_8 );
+    }
+    return json;
+  }
+
+  /**
+   * Discard the messages whose first chunk arrived more than the chunk timeout ago.
+   *
+   * @return the number of messages discarded.
+   */
+  public int expire( final long now )
+  {
+    int count = 0;
+    while ( null != _oldest && now - _oldest._firstChunkTime >= _chunkTimeout )
+    {
+      discard( _oldest );
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of messages awaiting chunks.
+   */
+  public int getPendingCount()
+  {
+    return _pendingCount;
+  }
+
+  /**
+   * @return the size in bytes of the chunk buffers held for the messages awaiting chunks.
+   */
+  public long getPendingBytes()
+  {
+    return _pendingBytes;
+  }
+
+  @Override
+  public void close()
+  {
+    _gzipInflater.end();
+    _zlibInflater.end();
+  }
+
+  GelfMessage fromJson( final String json )
+    throws IOException
+  {
+    final Object value = _codec.fromJson( json, Object.class );
+    if ( !( value instanceof Map ) )
+    {
+      throw new IOException( "Message is not a json object" );
+    }
+    final Map<?, ?> map = (Map<?, ?>) value;
+    final GelfMessage message = new GelfMessage();
+    for ( final Map.Entry<?, ?> entry : map.entrySet() )
+    {
+      final String key = String.valueOf( entry.getKey() );
+      final Object fieldValue = entry.getValue();
+      if ( null == fieldValue )
+      {
+        continue;
+      }
+      switch ( key )
+      {
+        case "version":
+          break;
+        case "host":
+          message.setHost( fieldValue.toString() );
+          break;
+        case "short_message":
+          message.setShortMessage( fieldValue.toString() );
+          break;
+        case "full_message":
+          message.setFullMessage( fieldValue.toString() );
+          break;
+        case "timestamp":
+          message.setJavaTimestamp( parseDecimal( key, fieldValue ).movePointRight( 3 ).longValue() );
+          break;
+        case "level":
+        {
+          final int level = parseDecimal( key, fieldValue ).intValue();
+          if ( level >= 0 && level < SyslogLevel.values().length )
+          {
+            message.setLevel( SyslogLevel.values()[ level ] );
+          }
+          break;
+        }
+        case "facility":
+          message.setFacility( fieldValue.toString() );
+          break;
+        case "file":
+          message.setFile( fieldValue.toString() );
+          break;
+        case "line":
+          message.setLine( parseDecimal( key, fieldValue ).longValue() );
+          break;
+        default:
+          if ( key.startsWith( "_" ) && !key.equals( "_" + GelfEncoder.ID_NAME ) )
+          {
+            message.getAdditionalFields().put( key.substring( 1 ), fieldValue );
+          }
+      }
+    }
+    if ( null == message.getShortMessage() )
+    {
+      throw new IOException( "Message has no short_message" );
+    }
+    if ( null == message.getHost() )
+    {
+      throw new IOException( "Message has no host" );
+    }
+    return message;
+  }
+
+  private static BigDecimal parseDecimal( final String key, final Object value )
+    throws IOException
+  {
+    try
+    {
+      return new BigDecimal( value.toString() );
+    }
+    catch ( final NumberFormatException nfe )
+    {
+      throw new IOException( "Field " + key + " is not a number: " + value );
+    }
+  }
+
+  private String inflate( final Inflater inflater, final byte[] data, final int offset, final int length )
+    throws IOException
+  {
+    inflater.reset();
+    inflater.setInput( data, offset, length );
+    int size = 0;
+    try
+    {
+      while ( !inflater.finished() )
+      {
+        if ( size == _inflated.length )
+        {
+          if ( size >= MAX_MESSAGE_SIZE )
+          {
+            throw new IOException( "Decompressed payload exceeds the maximum of " + MAX_MESSAGE_SIZE + " bytes" );
+          }
+          _inflated = Arrays.copyOf( _inflated, Math.min( _inflated.length * 2, MAX_MESSAGE_SIZE ) );
+        }
+        final int count = inflater.inflate( _inflated, size, _inflated.length - size );
+        if ( 0 == count && ( inflater.needsInput() || inflater.needsDictionary() ) )
+        {
+          throw new IOException( "Compressed payload is truncated" );
+        }
+        size += count;
+      }
+    }
+    catch ( final DataFormatException dfe )
+    {
+      throw new IOException( "Compressed payload is corrupt: " + dfe.getMessage() );
+    }
+    final String json = new String( _inflated, 0, size, StandardCharsets.UTF_8 );
+    if ( _inflated.length > INFLATED_SIZE )
+    {
+      _inflated = new byte[ INFLATED_SIZE ];
+    }
+    return json;
+  }
+
+  /**
+   * @return the size of the gzip header that precedes the deflated data.
+   */
+  private static int getGzipHeaderSize( final byte[] data, final int offset, final int length )
+    throws IOException
+  {
+    if ( length < GZIP_HEADER_SIZE )
+    {
+      throw new IOException( "Gzip header is truncated" );
+    }
+    final int flags = data[ offset + 3 ] & 0xff;
+    int position = GZIP_HEADER_SIZE;
+    if ( 0 != ( flags & GZIP_FLAG_EXTRA ) )
+    {
+      if ( position + 2 > length )
+      {
+        throw new IOException( "Gzip header is truncated" );
+      }
+      position += 2 + ( ( data[ offset + position ] & 0xff ) | ( ( data[ offset + position + 1 ] & 0xff ) << 8 ) );
+    }
+    if ( 0 != ( flags & GZIP_FLAG_NAME ) )
+    {
+      position = skipString( data, offset, length, position );
+    }
+    if ( 0 != ( flags & GZIP_FLAG_COMMENT ) )
+    {
+      position = skipString( data, offset, length, position );
+    }
+    if ( 0 != ( flags & GZIP_FLAG_HEADER_CRC ) )
+    {
+      position += 2;
+    }
+    if ( position > length )
+    {
+      throw new IOException( "Gzip header is truncated" );
+    }
+    return position;
+  }
+
+  private static int skipString( final byte[] data, final int offset, final int length, final int start )
+    throws IOException
+  {
+    for ( int i = start; i < length; i++ )
+    {
+      if ( 0 == data[ offset + i ] )
+      {
+        return i + 1;
+      }
+    }
+    throw new IOException( "Gzip header is truncated" );
+  }
+
+  private int readNumber( final byte[] data, final int offset )
+  {
+    int value = 0;
+    for ( int i = 0; i < _sequenceLength; i++ )
+    {
+      value = ( value << 8 ) | ( data[ offset + i ] & 0xff );
+    }
+    return value;
+  }
+
+  private long foldMessageId( final byte[] data, final int offset )
+  {
+    long key = 0;
+    for ( int i = 0; i < _messageIdLength; i++ )
+    {
+      key = ( key << 8 | key >>> 56 ) ^ ( data[ offset + i ] & 0xff );
+    }
+    return key;
+  }
+
+  private int indexOf( final long key )
+  {
+    final long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) ( hash ^ ( hash >>> 32 ) ) & _mask;
+  }
+
+  private PendingMessage get( final long key )
+  {
+    for ( int i = indexOf( key ); null != _values[ i ]; i = ( i + 1 ) & _mask )
+    {
+      if ( _keys[ i ] == key )
+      {
+        return _values[ i ];
+      }
+    }
+    return null;
+  }
+
+  private PendingMessage newPendingMessage( final long key,
+                                            final byte[] data,
+                                            final int idOffset,
+                                            final int chunkCount,
+                                            final long now )
+  {
+    final PendingMessage message = _freeMessages.isEmpty() ? new PendingMessage() : _freeMessages.pop();
+    message.reset( key, data, idOffset, _messageIdLength, chunkCount, now );
+    int i = indexOf( key );
+    while ( null != _values[ i ] )
+    {
+      i = ( i + 1 ) & _mask;
+    }
+    _keys[ i ] = key;
+    _values[ i ] = message;
+    _pendingCount++;
+    if ( null == _newest )
+    {
+      _oldest = message;
+    }
+    else
+    {
+      _newest._next = message;
+      message._previous = _newest;
+    }
+    _newest = message;
+    return message;
+  }
+
+  private void discard( final PendingMessage message )
+  {
+    final int chunkCount = message._chunkCount;
+    final int receivedCount = message._receivedCount;
+    release( message );
+    notifyChunkListener( chunkCount, receivedCount );
+  }
+
+  /**
+   * Remove the message from the table and arrival order and return it to the pool.
+   */
+  private void release( final PendingMessage message )
+  {
+    int i = indexOf( message._key );
+    while ( _values[ i ] != message )
+    {
+      i = ( i + 1 ) & _mask;
+    }
+    // Shift later entries in the probe sequence back so that lookups do not stop at the vacated slot
+    int j = i;
+    while ( true )
+    {
+      j = ( j + 1 ) & _mask;
+      if ( null == _values[ j ] )
+      {
+        break;
+      }
+      final int home = indexOf( _keys[ j ] );
+      if ( ( j > i && ( home <= i || home > j ) ) || ( j < i && ( home <= i && home > j ) ) )
+      {
+        _keys[ i ] = _keys[ j ];
+        _values[ i ] = _values[ j ];
+        i = j;
+      }
+    }
+    _values[ i ] = null;
+    _pendingCount--;
+
+    if ( null == message._previous )
+    {
+      _oldest = message._next;
+    }
+    else
+    {
+      message._previous._next = message._next;
+    }
+    if ( null == message._next )
+    {
+      _newest = message._previous;
+    }
+    else
+    {
+      message._next._previous = message._previous;
+    }
+    message._previous = null;
+    message._next = null;
+    _pendingBytes -= message.releaseChunks( this );
+    _freeMessages.push( message );
+  }
+
+  private byte[] allocateChunk( final int size )
+  {
+    return GelfEncoder.MAX_PACKET_SIZE == size && !_freeChunks.isEmpty() ? _freeChunks.pop() : new byte[ size ];
+  }
+
+  /**
+   * Return a chunk buffer of the usual size to the pool. Larger buffers are left to be garbage collected.
+   */
+  private void freeChunk( final byte[] chunk )
+  {
+    if ( GelfEncoder.MAX_PACKET_SIZE == chunk.length && _freeChunks.size() < MAX_FREE_CHUNKS )
+    {
+      _freeChunks.push( chunk );
+    }
+  }
+
+  private void notifyChunkListener( final int chunkCount, final int receivedCount )
+  {
+    if ( null != _chunkListener )
+    {
+      _chunkListener.onChunkedMessage( chunkCount, receivedCount );
+    }
+  }
+
+  private static final class PendingMessage
+  {
+    private final byte[] _messageId = new byte[ GelfEncoder.MESSAGE_ID_LENGTH ];
+    private int _messageIdLength;
+    private byte[][] _chunks = new byte[ 0 ][];
+    private int[] _lengths = new int[ 0 ];
+    private long _key;
+    private int _chunkCount;
+    private int _receivedCount;
+    // The number of bytes received
+    private int _size;
+    private long _firstChunkTime;
+    private PendingMessage _previous;
+    private PendingMessage _next;
+
+    void reset( final long key,
+                final byte[] data,
+                final int idOffset,
+                final int idLength,
+                final int chunkCount,
+                final long now )
+    {
+      _key = key;
+      System.arraycopy( data, idOffset, _messageId, 0, idLength );
+      _messageIdLength = idLength;
+      if ( _chunks.length < chunkCount )
+      {
+        _chunks = new byte[ chunkCount ][];
+        _lengths = new int[ chunkCount ];
+      }
+      Arrays.fill( _lengths, 0, chunkCount, -1 );
+      _chunkCount = chunkCount;
+      _receivedCount = 0;
+      _size = 0;
+      _firstChunkTime = now;
+    }
+
+    boolean hasMessageId( final byte[] data, final int idOffset )
+    {
+      for ( int i = 0; i < _messageIdLength; i++ )
+      {
+        if ( _messageId[ i ] != data[ idOffset + i ] )
+        {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * @return true if the chunk has been received, in which case a duplicate is ignored.
+     */
+    boolean hasChunk( final int sequence )
+    {
+      return -1 != _lengths[ sequence ];
+    }
+
+    void setChunk( final int sequence, final byte[] chunk, final byte[] data, final int offset, final int length )
+    {
+      System.arraycopy( data, offset, chunk, 0, length );
+      _chunks[ sequence ] = chunk;
+      _lengths[ sequence ] = length;
+      _receivedCount++;
+      _size += length;
+    }
+
+    /**
+     * Return the chunk buffers to the pool of the decoder.
+     *
+     * @return the total size of the buffers.
+     */
+    long releaseChunks( final GelfDecoder decoder )
+    {
+      long bytes = 0;
+      for ( int i = 0; i < _chunkCount; i++ )
+      {
+        if ( -1 != _lengths[ i ] )
+        {
+          bytes += _chunks[ i ].length;
+          decoder.freeChunk( _chunks[ i ] );
+          _chunks[ i ] = null;
+          _lengths[ i ] = -1;
+        }
+      }
+      return bytes;
+    }
+
+    void copyTo( final byte[] buffer )
+    {
+      int position = 0;
+      for ( int i = 0; i < _chunkCount; i++ )
+      {
+        System.arraycopy( _chunks[ i ], 0, buffer, position, _lengths[ i ] );
+        position += _lengths[ i ];
+      }
+    }
+  }
+}
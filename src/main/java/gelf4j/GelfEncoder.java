@@ -5,9 +5,11 @@ import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -52,26 +54,135 @@ final class GelfEncoder
   private final String _hostname;
   private final boolean _compressed;
   private final JsonCodec _codec;
+  private final String _senderId;
+  private final AtomicLong _messageSequence = new AtomicLong();
 
   GelfEncoder( final String hostname, final boolean compressed, final JsonCodec codec )
     throws Exception
   {
-    this( MessageDigest.getInstance( "MD5" ), hostname, compressed, codec );
+    this( hostname, compressed, codec, null );
   }
 
-  GelfEncoder( final MessageDigest messageDigest, final String hostname, final boolean compressed, final JsonCodec codec )
+  /**
+   * @param senderId the identifier of the sender added to each message along with a sequence number, or null to
+   *                 omit sequence numbers.
+   */
+  GelfEncoder( final String hostname, final boolean compressed, final JsonCodec codec, final String senderId )
+    throws Exception
+  {
+    this( MessageDigest.getInstance( "MD5" ), hostname, compressed, codec, senderId );
+  }
+
+  GelfEncoder( final MessageDigest messageDigest,
+               final String hostname,
+               final boolean compressed,
+               final JsonCodec codec,
+               final String senderId )
   {
     _messageDigest = messageDigest;
     _hostname = hostname;
     _compressed = compressed;
     _codec = codec;
+    _senderId = senderId;
   }
 
   List<byte[]> encode( final GelfMessage message )
   {
+    return encode( message, null );
+  }
+
+  /**
+   * Convert the message into packets, recording metrics and flight recorder events for each stage.
+   *
+   * @param message the message.
+   * @param metrics the metrics to update. May be null.
+   * @return the packets or null if the message could not be encoded.
+   */
+  List<byte[]> encode( final GelfMessage message, final GelfConnectionMetrics metrics )
+  {
+    final long start = System.nanoTime();
+    final GelfFlightRecorder.EncodeEvent encodeEvent = GelfFlightRecorder.beginEncode();
+
+    final GelfFlightRecorder.JsonEvent jsonEvent = GelfFlightRecorder.beginJson();
     final String json = toJson( message );
-    final byte[] encodedPayload = null != json ? gzip( json ) : null;
-    return null == encodedPayload ? null : createPackets( encodedPayload );
+    final byte[] data = null != json ? json.getBytes( StandardCharsets.UTF_8 ) : null;
+    GelfFlightRecorder.commitJson( jsonEvent, null != data ? data.length : 0 );
+    if ( null == data )
+    {
+      GelfFlightRecorder.commitEncode( encodeEvent, 0, 0, 0, GelfFlightRecorder.OUTCOME_INVALID );
+      if ( null != metrics )
+      {
+        metrics.recordFailed();
+      }
+      return null;
+    }
+
+    final GelfFlightRecorder.CompressEvent compressEvent = GelfFlightRecorder.beginCompress();
+    final byte[] payload = gzip( data );
+    GelfFlightRecorder.commitCompress( compressEvent, data.length, null != payload ? payload.length : 0 );
+    if ( null == payload )
+    {
+      GelfFlightRecorder.commitEncode( encodeEvent, data.length, 0, 0, GelfFlightRecorder.OUTCOME_INVALID );
+      if ( null != metrics )
+      {
+        metrics.recordFailed();
+      }
+      return null;
+    }
+
+    final GelfFlightRecorder.ChunkEvent chunkEvent = GelfFlightRecorder.beginChunk();
+    final List<byte[]> packets = createPackets( payload );
+    final int chunkCount = null != packets ? packets.size() : 0;
+    GelfFlightRecorder.commitChunk( chunkEvent, payload.length, chunkCount );
+    final String outcome = null != packets ? GelfFlightRecorder.OUTCOME_ENCODED : GelfFlightRecorder.OUTCOME_OVERSIZE;
+    GelfFlightRecorder.commitEncode( encodeEvent, data.length, payload.length, chunkCount, outcome );
+    if ( null != metrics )
+    {
+      if ( null != packets )
+      {
+        metrics.recordEncode( data.length, payload.length, System.nanoTime() - start );
+      }
+      else
+      {
+        // The payload requires more than the maximum number of chunks
+        metrics.recordOversize();
+      }
+    }
+    return packets;
+  }
+
+  /**
+   * Convert the message into a single uncompressed json frame, as used by stream transports on which there is no
+   * packet size to respect. The transport adds any delimiter.
+   *
+   * @param message the message.
+   * @param metrics the metrics to update. May be null.
+   * @return the frame or null if the message could not be encoded.
+   */
+  List<byte[]> encodeFrame( final GelfMessage message, final GelfConnectionMetrics metrics )
+  {
+    final long start = System.nanoTime();
+    final GelfFlightRecorder.EncodeEvent encodeEvent = GelfFlightRecorder.beginEncode();
+
+    final GelfFlightRecorder.JsonEvent jsonEvent = GelfFlightRecorder.beginJson();
+    final String json = toJson( message );
+    final byte[] data = null != json ? json.getBytes( StandardCharsets.UTF_8 ) : null;
+    GelfFlightRecorder.commitJson( jsonEvent, null != data ? data.length : 0 );
+    if ( null == data )
+    {
+      GelfFlightRecorder.commitEncode( encodeEvent, 0, 0, 0, GelfFlightRecorder.OUTCOME_INVALID );
+      if ( null != metrics )
+      {
+        metrics.recordFailed();
+      }
+      return null;
+    }
+    GelfFlightRecorder.commitEncode( encodeEvent, data.length, data.length, 1, GelfFlightRecorder.OUTCOME_ENCODED );
+    if ( null != metrics )
+    {
+      metrics.recordEncode( data.length, data.length, System.nanoTime() - start );
+    }
+    return Collections.singletonList( data );
   }
 
   String toJson( final GelfMessage message )
@@ -127,6 +238,14 @@ final class GelfEncoder
       }
     }
 
+    if( null != _senderId )
+    {
+      // Added last so that additional fields can not replace them. Messages that fail to encode due to their
+      // size have already been assigned a number and so appear as lost to the receiver.
+      map.put( "_" + GelfConnection.SENDER_ID_FIELD, _senderId );
+      map.put( "_" + GelfConnection.SEQUENCE_FIELD, _messageSequence.incrementAndGet() );
+    }
+
     return _codec.toJson( map );
   }
 
@@ -222,14 +341,25 @@ final class GelfEncoder
    * @param message The message to compress.
    * @return The encoded message.
    */
-  private byte[] gzip( final String message )
+  byte[] gzip( final String message )
+  {
+    return gzip( message.getBytes( StandardCharsets.UTF_8 ) );
+  }
+
+  /**
+   * Compresses data using the GZIP compression scheme.
+   *
+   * @param data The UTF-8 encoded message to compress.
+   * @return The encoded message.
+   */
+  byte[] gzip( final byte[] data )
   {
     GZIPOutputStream zipStream = null;
     try
     {
       final ByteArrayOutputStream targetStream = new ByteArrayOutputStream();
       zipStream = new GZIPOutputStream( targetStream );
-      zipStream.write( message.getBytes("UTF-8") );
+      zipStream.write( data );
       zipStream.close();
       final byte[] zipped = targetStream.toByteArray();
       targetStream.close();
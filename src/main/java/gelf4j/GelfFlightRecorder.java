@@ -0,0 +1,307 @@
+package gelf4j;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events emitted while encoding and sending messages.
+ * Events are only created if flight recorder is available in the JVM and the event is enabled in a running
+ * recording, otherwise beginning an event returns null and committing a null event does nothing. Whether each
+ * event is enabled is cached and refreshed whenever a recording changes state so that no event is allocated
+ * while nothing is recording. The event classes are only loaded once flight recorder is known to be available
+ * so the library still runs on JVMs without the jdk.jfr module. Events are never passed where a supertype is
+ * expected as that would cause the verifier to load them.
+ */
+final class GelfFlightRecorder
+{
+  static final String OUTCOME_ENCODED = "ENCODED";
+  static final String OUTCOME_INVALID = "INVALID";
+  static final String OUTCOME_OVERSIZE = "OVERSIZE";
+
+  private static final boolean c_available = isAvailable();
+
+  private GelfFlightRecorder()
+  {
+  }
+
+  static EncodeEvent beginEncode()
+  {
+    if ( c_available && EnabledEvents.c_encode )
+    {
+      final EncodeEvent event = new EncodeEvent();
+      event.begin();
+      return event;
+    }
+    return null;
+  }
+
+  static void commitEncode( final EncodeEvent event,
+                            final int uncompressedBytes,
+                            final int compressedBytes,
+                            final int chunkCount,
+                            final String outcome )
+  {
+    if ( null != event )
+    {
+      event.end();
+      if ( event.shouldCommit() )
+      {
+        event.uncompressedBytes = uncompressedBytes;
+        event.compressedBytes = compressedBytes;
+        event.chunkCount = chunkCount;
+        event.outcome = outcome;
+        event.commit();
+      }
+    }
+  }
+
+  static JsonEvent beginJson()
+  {
+    if ( c_available && EnabledEvents.c_json )
+    {
+      final JsonEvent event = new JsonEvent();
+      event.begin();
+      return event;
+    }
+    return null;
+  }
+
+  static void commitJson( final JsonEvent event, final int jsonBytes )
+  {
+    if ( null != event )
+    {
+      event.end();
+      if ( event.shouldCommit() )
+      {
+        event.jsonBytes = jsonBytes;
+        event.commit();
+      }
+    }
+  }
+
+  static CompressEvent beginCompress()
+  {
+    if ( c_available && EnabledEvents.c_compress )
+    {
+      final CompressEvent event = new CompressEvent();
+      event.begin();
+      return event;
+    }
+    return null;
+  }
+
+  static void commitCompress( final CompressEvent event, final int uncompressedBytes, final int compressedBytes )
+  {
+    if ( null != event )
+    {
+      event.end();
+      if ( event.shouldCommit() )
+      {
+        event.uncompressedBytes = uncompressedBytes;
+        event.compressedBytes = compressedBytes;
+        event.commit();
+      }
+    }
+  }
+
+  static ChunkEvent beginChunk()
+  {
+    if ( c_available && EnabledEvents.c_chunk )
+    {
+      final ChunkEvent event = new ChunkEvent();
+      event.begin();
+      return event;
+    }
+    return null;
+  }
+
+  static void commitChunk( final ChunkEvent event, final int payloadBytes, final int chunkCount )
+  {
+    if ( null != event )
+    {
+      event.end();
+      if ( event.shouldCommit() )
+      {
+        event.payloadBytes = payloadBytes;
+        event.chunkCount = chunkCount;
+        event.commit();
+      }
+    }
+  }
+
+  static SendEvent beginSend()
+  {
+    if ( c_available && EnabledEvents.c_send )
+    {
+      final SendEvent event = new SendEvent();
+      event.begin();
+      return event;
+    }
+    return null;
+  }
+
+  static void commitSend( final SendEvent event, final int bytes, final boolean success )
+  {
+    if ( null != event )
+    {
+      event.end();
+      if ( event.shouldCommit() )
+      {
+        event.bytes = bytes;
+        event.success = success;
+        event.commit();
+      }
+    }
+  }
+
+  private static boolean isAvailable()
+  {
+    try
+    {
+      Class.forName( "jdk.jfr.Event" );
+      return true;
+    }
+    catch ( final Throwable t )
+    {
+      return false;
+    }
+  }
+
+  /**
+   * The enabled state of each event. Only loaded once flight recorder is known to be available.
+   */
+  private static final class EnabledEvents
+    implements FlightRecorderListener
+  {
+    private static volatile boolean c_encode;
+    private static volatile boolean c_json;
+    private static volatile boolean c_compress;
+    private static volatile boolean c_chunk;
+    private static volatile boolean c_send;
+
+    static
+    {
+      try
+      {
+        FlightRecorder.addListener( new EnabledEvents() );
+        refresh();
+      }
+      catch ( final RuntimeException re )
+      {
+        // Without notifications every event is created and the recorder decides whether it is committed
+        c_encode = c_json = c_compress = c_chunk = c_send = true;
+      }
+    }
+
+    @Override
+    public void recordingStateChanged( final Recording recording )
+    {
+      refresh();
+    }
+
+    private static void refresh()
+    {
+      c_encode = EventType.getEventType( EncodeEvent.class ).isEnabled();
+      c_json = EventType.getEventType( JsonEvent.class ).isEnabled();
+      c_compress = EventType.getEventType( CompressEvent.class ).isEnabled();
+      c_chunk = EventType.getEventType( ChunkEvent.class ).isEnabled();
+      c_send = EventType.getEventType( SendEvent.class ).isEnabled();
+    }
+  }
+
+  @Name( "gelf4j.Encode" )
+  @Label( "GELF Encode" )
+  @Category( "GELF4j" )
+  @Description( "A message converted into packets" )
+  @StackTrace( false )
+  static final class EncodeEvent
+    extends Event
+  {
+    @Label( "Uncompressed Size" )
+    @DataAmount
+    int uncompressedBytes;
+
+    @Label( "Compressed Size" )
+    @DataAmount
+    int compressedBytes;
+
+    @Label( "Chunk Count" )
+    int chunkCount;
+
+    @Label( "Outcome" )
+    @Description( "ENCODED, INVALID if the message has no short message or OVERSIZE if it needs too many chunks" )
+    String outcome;
+  }
+
+  @Name( "gelf4j.Json" )
+  @Label( "GELF JSON Encode" )
+  @Category( "GELF4j" )
+  @Description( "A message converted into UTF-8 encoded json" )
+  @StackTrace( false )
+  static final class JsonEvent
+    extends Event
+  {
+    @Label( "JSON Size" )
+    @DataAmount
+    int jsonBytes;
+  }
+
+  @Name( "gelf4j.Compress" )
+  @Label( "GELF Compress" )
+  @Category( "GELF4j" )
+  @Description( "The json of a message compressed using gzip" )
+  @StackTrace( false )
+  static final class CompressEvent
+    extends Event
+  {
+    @Label( "Uncompressed Size" )
+    @DataAmount
+    int uncompressedBytes;
+
+    @Label( "Compressed Size" )
+    @DataAmount
+    int compressedBytes;
+  }
+
+  @Name( "gelf4j.Chunk" )
+  @Label( "GELF Chunk" )
+  @Category( "GELF4j" )
+  @Description( "A compressed payload split into packets" )
+  @StackTrace( false )
+  static final class ChunkEvent
+    extends Event
+  {
+    @Label( "Payload Size" )
+    @DataAmount
+    int payloadBytes;
+
+    @Label( "Chunk Count" )
+    @Description( "The number of packets or 0 if the payload needs too many chunks" )
+    int chunkCount;
+  }
+
+  @Name( "gelf4j.Send" )
+  @Label( "GELF Send" )
+  @Category( "GELF4j" )
+  @Description( "A single packet written to the channel" )
+  @StackTrace( false )
+  static final class SendEvent
+    extends Event
+  {
+    @Label( "Size" )
+    @DataAmount
+    int bytes;
+
+    @Label( "Success" )
+    boolean success;
+  }
+}
@@ -0,0 +1,104 @@
+package gelf4j;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes the change in the metrics of a connection since the previous report.
+ * Must only be used from a single thread.
+ */
+final class GelfHealthReport
+{
+  static final String REPORT_TYPE = "health";
+
+  private final GelfConnectionMetrics _metrics;
+  private long _lastReportTime;
+  private long _sentCount;
+  private long _failedCount;
+  private long _oversizeCount;
+  private final long[] _droppedCounts = new long[ GelfConnectionMetrics.DropReason.values().length ];
+  private long[] _encodeTimes;
+  private long[] _sendTimes;
+
+  GelfHealthReport( final GelfConnectionMetrics metrics, final long now )
+  {
+    _metrics = metrics;
+    _lastReportTime = now;
+    _encodeTimes = metrics.getEncodeTime().getBucketCounts();
+    _sendTimes = metrics.getSendTime().getBucketCounts();
+  }
+
+  /**
+   * Describe the messages processed since the previous report in the specified message and start a new interval.
+   * The level of the message is raised to WARNING if messages failed or were dropped due to lack of capacity.
+   */
+  void populate( final GelfMessage message, final long now )
+  {
+    final long interval = Math.max( 1, now - _lastReportTime );
+    _lastReportTime = now;
+
+    final long sentCount = _metrics.getSentCount();
+    final long sent = sentCount - _sentCount;
+    _sentCount = sentCount;
+    final long failedCount = _metrics.getFailedCount();
+    final long failed = failedCount - _failedCount;
+    _failedCount = failedCount;
+    final long oversizeCount = _metrics.getOversizeCount();
+    final long oversize = oversizeCount - _oversizeCount;
+    _oversizeCount = oversizeCount;
+
+    final Map<String, Object> fields = message.getAdditionalFields();
+    long dropped = 0;
+    long lost = 0;
+    for ( final GelfConnectionMetrics.DropReason reason : GelfConnectionMetrics.DropReason.values() )
+    {
+      final long count = _metrics.getDroppedCount( reason );
+      final long delta = count - _droppedCounts[ reason.ordinal() ];
+      _droppedCounts[ reason.ordinal() ] = count;
+      fields.put( "dropped_" + reason.name().toLowerCase( Locale.ENGLISH ), delta );
+      dropped += delta;
+      // Sampled and coalesced messages are discarded by design rather than for lack of capacity
+      if ( GelfConnectionMetrics.DropReason.SAMPLED != reason &&
+           GelfConnectionMetrics.DropReason.COALESCED != reason )
+      {
+        lost += delta;
+      }
+    }
+
+    final long[] encodeTimes = _metrics.getEncodeTime().getBucketCounts();
+    final long[] encodeDelta = delta( encodeTimes, _encodeTimes );
+    _encodeTimes = encodeTimes;
+    final long[] sendTimes = _metrics.getSendTime().getBucketCounts();
+    final long[] sendDelta = delta( sendTimes, _sendTimes );
+    _sendTimes = sendTimes;
+
+    message.setShortMessage( "Sent " + sent + ", failed " + failed + " and dropped " + dropped +
+                             " messages in " + interval + "ms" );
+    message.setLevel( 0 != failed || 0 != lost ? SyslogLevel.WARNING : SyslogLevel.INFO );
+    fields.put( "interval_ms", interval );
+    fields.put( "sent", sent );
+    fields.put( "sent_per_second", sent * 1000D / interval );
+    fields.put( "failed", failed );
+    fields.put( "oversize", oversize );
+    fields.put( "dropped", dropped );
+    fields.put( "encode_time_p50_us", toMicros( GelfHistogram.getPercentile( encodeDelta, 50 ) ) );
+    fields.put( "encode_time_p99_us", toMicros( GelfHistogram.getPercentile( encodeDelta, 99 ) ) );
+    fields.put( "send_time_p99_us", toMicros( GelfHistogram.getPercentile( sendDelta, 99 ) ) );
+  }
+
+  private static long[] delta( final long[] current, final long[] previous )
+  {
+    final long[] delta = new long[ current.length ];
+    for ( int i = 0; i < current.length; i++ )
+    {
+      delta[ i ] = current[ i ] - previous[ i ];
+    }
+    return delta;
+  }
+
+  private static long toMicros( final long nanos )
+  {
+    return TimeUnit.NANOSECONDS.toMicros( nanos );
+  }
+}
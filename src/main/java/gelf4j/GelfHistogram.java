@@ -0,0 +1,127 @@
+package gelf4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values that can be recorded concurrently with low overhead.
+ * Values are counted in power of two buckets so percentiles are only accurate to within a factor of two.
+ */
+public final class GelfHistogram
+{
+  private static final int BUCKET_COUNT = 64;
+
+  private final LongAdder[] _buckets = new LongAdder[ BUCKET_COUNT ];
+  private final LongAdder _sum = new LongAdder();
+  private final AtomicLong _max = new AtomicLong();
+
+  public GelfHistogram()
+  {
+    for ( int i = 0; i < BUCKET_COUNT; i++ )
+    {
+      _buckets[ i ] = new LongAdder();
+    }
+  }
+
+  public void record( final long value )
+  {
+    final long v = Math.max( 0, value );
+    // Bucket i holds values in the range [2^(i-1), 2^i - 1] and bucket 0 holds 0
+    _buckets[ Math.min( BUCKET_COUNT - 1, BUCKET_COUNT - Long.numberOfLeadingZeros( v ) ) ].increment();
+    _sum.add( v );
+    // Read before update to avoid contending on the maximum when it is not exceeded
+    if ( v > _max.get() )
+    {
+      _max.accumulateAndGet( v, Math::max );
+    }
+  }
+
+  public long getCount()
+  {
+    long count = 0;
+    for ( final LongAdder bucket : _buckets )
+    {
+      count += bucket.sum();
+    }
+    return count;
+  }
+
+  public long getSum()
+  {
+    return _sum.sum();
+  }
+
+  public long getMax()
+  {
+    return _max.get();
+  }
+
+  public double getMean()
+  {
+    final long count = getCount();
+    return 0 == count ? 0 : (double) getSum() / count;
+  }
+
+  /**
+   * Return the upper bound of the bucket containing the specified percentile.
+   *
+   * @param percentile the percentile in the range (0, 100].
+   * @return the upper bound of the value at the percentile or 0 if no values have been recorded. The maximum
+   * recorded value is a tighter bound for the highest bucket.
+   */
+  public long getPercentile( final double percentile )
+  {
+    return Math.min( getPercentile( getBucketCounts(), percentile ), getMax() );
+  }
+
+  /**
+   * @return a snapshot of the number of values recorded in each bucket.
+   */
+  long[] getBucketCounts()
+  {
+    final long[] counts = new long[ BUCKET_COUNT ];
+    for ( int i = 0; i < BUCKET_COUNT; i++ )
+    {
+      counts[ i ] = _buckets[ i ].sum();
+    }
+    return counts;
+  }
+
+  /**
+   * Return the upper bound of the bucket containing the specified percentile.
+   *
+   * @param counts     the number of values in each bucket, as returned by {@link #getBucketCounts()}.
+   * @param percentile the percentile in the range (0, 100].
+   * @return the upper bound of the value at the percentile or 0 if the counts are empty.
+   */
+  static long getPercentile( final long[] counts, final double percentile )
+  {
+    long total = 0;
+    for ( final long count : counts )
+    {
+      total += count;
+    }
+    if ( 0 == total )
+    {
+      return 0;
+    }
+    final long target = Math.max( 1, (long) Math.ceil( total * percentile / 100D ) );
+    long seen = 0;
+    for ( int i = 0; i < counts.length; i++ )
+    {
+      seen += counts[ i ];
+      if ( seen >= target )
+      {
+        return 0 == i ? 0 : i >= 63 ? Long.MAX_VALUE : ( 1L << i ) - 1;
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "GelfHistogram[count=" + getCount() + ",mean=" + getMean() + ",p99=" + getPercentile( 99 ) +
+           ",max=" + getMax() + "]";
+  }
+}
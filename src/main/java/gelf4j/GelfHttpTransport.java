@@ -0,0 +1,226 @@
+package gelf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Posts gzip compressed json messages to a GELF HTTP input. Connections are kept alive and reused by the JVM as long
+ * as each response is read to the end. A batch of messages is posted as a single request with the messages
+ * separated by newlines. The number of requests in flight is bounded and requests that fail with an I/O error or a
+ * transient status are retried with exponential backoff when the caller permits it, such as the asynchronous sender
+ * and batches sent with {@link GelfConnection#sendAll}. A synchronous send is posted from the logging thread so it
+ * fails on the first error rather than holding the thread while backing off.
+ * Unlike the other transports, writes may be invoked from several threads at once.
+ */
+final class GelfHttpTransport
+  implements GelfTransport
+{
+  static final String DEFAULT_PATH = "/gelf";
+
+  private static final int TIMEOUT = 10000;
+  private static final long INITIAL_RETRY_DELAY = 100;
+  private static final long MAX_RETRY_DELAY = 5000;
+
+  private final URL _url;
+  private final int _batchSize;
+  private final int _retries;
+  private final Semaphore _inFlight;
+  private volatile boolean _open = true;
+
+  GelfHttpTransport( final GelfTargetConfig config )
+    throws IOException
+  {
+    final String url = config.getHttpUrl();
+    _url = null != url ? new URL( url ) : new URL( "http", config.getHost(), config.getPort(), DEFAULT_PATH );
+    _batchSize = Math.max( 1, config.getHttpBatchSize() );
+    _retries = Math.max( 0, config.getHttpRetries() );
+    _inFlight = new Semaphore( Math.max( 1, config.getHttpMaxInFlight() ) );
+  }
+
+  URL getUrl()
+  {
+    return _url;
+  }
+
+  @Override
+  public boolean isDatagram()
+  {
+    return false;
+  }
+
+  @Override
+  public boolean isConcurrent()
+  {
+    return true;
+  }
+
+  @Override
+  public int getMaxBatchSize()
+  {
+    return _batchSize;
+  }
+
+  @Override
+  public void write( final ByteBuffer packet )
+    throws IOException
+  {
+    write( packet, false );
+  }
+
+  @Override
+  public void write( final ByteBuffer packet, final boolean retry )
+    throws IOException
+  {
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    try ( final GZIPOutputStream output = new GZIPOutputStream( body ) )
+    {
+      output.write( packet.array(), packet.arrayOffset() + packet.position(), packet.remaining() );
+    }
+    packet.position( packet.limit() );
+    post( body.toByteArray(), retry );
+  }
+
+  @Override
+  public void writeBatch( final List<byte[]> frames, final boolean retry )
+    throws IOException
+  {
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    try ( final GZIPOutputStream output = new GZIPOutputStream( body ) )
+    {
+      for ( int i = 0; i < frames.size(); i++ )
+      {
+        if ( 0 != i )
+        {
+          output.write( '\n' );
+        }
+        output.write( frames.get( i ) );
+      }
+    }
+    post( body.toByteArray(), retry );
+  }
+
+  /**
+   * @return false if the last request failed.
+   */
+  @Override
+  public boolean isOpen()
+  {
+    return _open;
+  }
+
+  /**
+   * Idle connections are pooled by the JVM so there is nothing to release.
+   */
+  @Override
+  public void close()
+  {
+    _open = false;
+  }
+
+  private void post( final byte[] body, final boolean retry )
+    throws IOException
+  {
+    final int retries = retry ? _retries : 0;
+    try
+    {
+      _inFlight.acquire();
+    }
+    catch ( final InterruptedException ie )
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException( "Interrupted waiting to post to " + _url );
+    }
+    try
+    {
+      long delay = INITIAL_RETRY_DELAY;
+      for ( int attempt = 0; ; attempt++ )
+      {
+        IOException failure;
+        try
+        {
+          final int status = request( body );
+          if ( status >= 200 && status < 300 )
+          {
+            _open = true;
+            return;
+          }
+          failure = new IOException( "HTTP status " + status + " posting to " + _url );
+          // Other client errors are caused by the request so repeating it would fail again
+          if ( status < 500 && 408 != status && 429 != status )
+          {
+            attempt = retries;
+          }
+        }
+        catch ( final IOException ioe )
+        {
+          failure = ioe;
+        }
+        if ( attempt >= retries )
+        {
+          _open = false;
+          throw failure;
+        }
+        sleep( delay );
+        delay = Math.min( delay * 2, MAX_RETRY_DELAY );
+      }
+    }
+    finally
+    {
+      _inFlight.release();
+    }
+  }
+
+  private int request( final byte[] body )
+    throws IOException
+  {
+    final HttpURLConnection connection = (HttpURLConnection) _url.openConnection();
+    connection.setRequestMethod( "POST" );
+    connection.setDoOutput( true );
+    connection.setConnectTimeout( TIMEOUT );
+    connection.setReadTimeout( TIMEOUT );
+    connection.setRequestProperty( "Content-Type", "application/json" );
+    connection.setRequestProperty( "Content-Encoding", "gzip" );
+    connection.setFixedLengthStreamingMode( body.length );
+    try ( final OutputStream output = connection.getOutputStream() )
+    {
+      output.write( body );
+    }
+    final int status = connection.getResponseCode();
+    // The response must be read to the end for the connection to be reused
+    try ( final InputStream input = status >= 400 ? connection.getErrorStream() : connection.getInputStream() )
+    {
+      if ( null != input )
+      {
+        final byte[] buffer = new byte[ 1024 ];
+        while ( -1 != input.read( buffer ) )
+        {
+          //Discarded
+        }
+      }
+    }
+    return status;
+  }
+
+  private void sleep( final long delay )
+    throws InterruptedIOException
+  {
+    try
+    {
+      Thread.sleep( delay );
+    }
+    catch ( final InterruptedException ie )
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException( "Interrupted retrying post to " + _url );
+    }
+  }
+}
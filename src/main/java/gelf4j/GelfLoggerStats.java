@@ -0,0 +1,207 @@
+package gelf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The number of messages and bytes sent by each logger.
+ * The number of loggers tracked is bounded using the Space-Saving algorithm. Once the bound is reached a message
+ * from a logger that is not tracked replaces the tracked logger that has sent the fewest bytes, and the new logger
+ * inherits the counts of the replaced logger. Counts may therefore overstate the messages and bytes sent by a
+ * logger by at most its error, but any logger that sends more than the total bytes divided by the bound is always
+ * tracked, including loggers that only become noisy after the bound is reached.
+ */
+public final class GelfLoggerStats
+  implements GelfLoggerStatsMBean
+{
+  /**
+   * The number of loggers reported via JMX and in statistics messages.
+   */
+  public static final int TOP_LOGGER_COUNT = 10;
+
+  private final int _maxLoggers;
+  private final ConcurrentHashMap<String, LoggerCount> _counts = new ConcurrentHashMap<String, LoggerCount>();
+
+  GelfLoggerStats( final int maxLoggers )
+  {
+    _maxLoggers = Math.max( 1, maxLoggers );
+  }
+
+  void record( final String loggerName, final int byteCount )
+  {
+    if ( null == loggerName )
+    {
+      return;
+    }
+    LoggerCount count = _counts.get( loggerName );
+    if ( null == count )
+    {
+      count = track( loggerName );
+    }
+    // A message recorded concurrently with the replacement of its logger is lost
+    count._messageCount.increment();
+    count._byteCount.add( byteCount );
+  }
+
+  /**
+   * Start tracking the logger, replacing the tracked logger that has sent the fewest bytes if the bound is reached.
+   * Only invoked for loggers that are not tracked so messages from tracked loggers are recorded without locking.
+   */
+  private synchronized LoggerCount track( final String loggerName )
+  {
+    final LoggerCount existing = _counts.get( loggerName );
+    if ( null != existing )
+    {
+      return existing;
+    }
+    final LoggerCount count;
+    if ( _counts.size() < _maxLoggers )
+    {
+      count = new LoggerCount( loggerName, 0, 0 );
+    }
+    else
+    {
+      LoggerCount min = null;
+      long minBytes = Long.MAX_VALUE;
+      for ( final LoggerCount candidate : _counts.values() )
+      {
+        final long bytes = candidate.getByteCount();
+        if ( bytes < minBytes )
+        {
+          min = candidate;
+          minBytes = bytes;
+        }
+      }
+      _counts.remove( min.getLoggerName() );
+      count = new LoggerCount( loggerName, min.getMessageCount(), minBytes );
+    }
+    _counts.put( loggerName, count );
+    return count;
+  }
+
+  /**
+   * @param limit the maximum number of loggers to return.
+   * @return the loggers that have sent the most bytes, in descending order of bytes.
+   */
+  public List<LoggerCount> getTopLoggers( final int limit )
+  {
+    final List<LoggerCount> counts = new ArrayList<LoggerCount>( _counts.values() );
+    // Sort on a snapshot of the byte counts as the counts may change during the sort
+    final List<LoggerCount> snapshot = new ArrayList<LoggerCount>( counts.size() );
+    for ( final LoggerCount count : counts )
+    {
+      snapshot.add( count.snapshot() );
+    }
+    snapshot.sort( ( a, b ) -> Long.compare( b.getByteCount(), a.getByteCount() ) );
+    return snapshot.size() > limit ? new ArrayList<LoggerCount>( snapshot.subList( 0, limit ) ) : snapshot;
+  }
+
+  @Override
+  public int getTrackedLoggerCount()
+  {
+    return _counts.size();
+  }
+
+  @Override
+  public String[] getTopLoggers()
+  {
+    final List<LoggerCount> counts = getTopLoggers( TOP_LOGGER_COUNT );
+    final String[] results = new String[ counts.size() ];
+    for ( int i = 0; i < results.length; i++ )
+    {
+      results[ i ] = counts.get( i ).toString();
+    }
+    return results;
+  }
+
+  @Override
+  public synchronized void reset()
+  {
+    _counts.clear();
+  }
+
+  /**
+   * @return a human readable table of the top loggers.
+   */
+  String describeTopLoggers()
+  {
+    final StringBuilder sb = new StringBuilder();
+    for ( final LoggerCount count : getTopLoggers( TOP_LOGGER_COUNT ) )
+    {
+      sb.append( count ).append( '\n' );
+    }
+    return sb.toString();
+  }
+
+  /**
+   * The messages and bytes sent by a single logger.
+   */
+  public static final class LoggerCount
+  {
+    private final String _loggerName;
+    private final long _messageError;
+    private final long _byteError;
+    private final LongAdder _messageCount = new LongAdder();
+    private final LongAdder _byteCount = new LongAdder();
+
+    LoggerCount( final String loggerName, final long messageError, final long byteError )
+    {
+      _loggerName = loggerName;
+      _messageError = messageError;
+      _byteError = byteError;
+      _messageCount.add( messageError );
+      _byteCount.add( byteError );
+    }
+
+    public String getLoggerName()
+    {
+      return _loggerName;
+    }
+
+    public long getMessageCount()
+    {
+      return _messageCount.sum();
+    }
+
+    /**
+     * @return the number of bytes written to the transport including chunk headers.
+     */
+    public long getByteCount()
+    {
+      return _byteCount.sum();
+    }
+
+    /**
+     * @return the maximum number of messages by which the message count may overstate the messages sent.
+     */
+    public long getMessageError()
+    {
+      return _messageError;
+    }
+
+    /**
+     * @return the maximum number of bytes by which the byte count may overstate the bytes sent.
+     */
+    public long getByteError()
+    {
+      return _byteError;
+    }
+
+    LoggerCount snapshot()
+    {
+      final LoggerCount snapshot = new LoggerCount( _loggerName, _messageError, _byteError );
+      snapshot._messageCount.add( getMessageCount() - _messageError );
+      snapshot._byteCount.add( getByteCount() - _byteError );
+      return snapshot;
+    }
+
+    @Override
+    public String toString()
+    {
+      final String description = _loggerName + ": " + getMessageCount() + " messages, " + getByteCount() + " bytes";
+      return 0 == _byteError ? description : description + " (overstated by at most " + _byteError + " bytes)";
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package gelf4j;
+
+/**
+ * The management interface of {@link GelfLoggerStats}.
+ */
+public interface GelfLoggerStatsMBean
+{
+  int getTrackedLoggerCount();
+
+  /**
+   * @return a description of the messages and bytes sent by each of the loggers that sent the most bytes.
+   */
+  String[] getTopLoggers();
+
+  /**
+   * Discard the statistics collected so far.
+   */
+  void reset();
+}
@@ -13,6 +13,7 @@ public class GelfMessage
   private String _facility;
   private Long _line;
   private String _file;
+  private String _loggerName;
   private final Map<String, Object> _additionalFields = new HashMap<String, Object>(  );
 
   public String getHost()
@@ -95,6 +96,20 @@ public class GelfMessage
     _file = file;
   }
 
+  /**
+   * @return the name of the logger that produced the message. This is used to group messages when processing them
+   * locally and is not transmitted as part of the GELF message.
+   */
+  public String getLoggerName()
+  {
+    return _loggerName;
+  }
+
+  public void setLoggerName( final String loggerName )
+  {
+    _loggerName = loggerName;
+  }
+
   public Map<String, Object> getAdditionalFields()
   {
     return _additionalFields;
@@ -0,0 +1,205 @@
+package gelf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Responsible for collapsing identical consecutive messages from the same logger.
+ * The first message of a run is forwarded immediately, the repeats that occur within the coalescing window are
+ * suppressed and a single follow-up message carrying a repeat count is forwarded when the run ends.
+ * A run ends when the logger emits a different message or when the window expires. Expired runs are completed when
+ * a later message is offered or when {@link #expire(long)} is invoked, so that the repeat count of a logger that
+ * has gone quiet is not held indefinitely.
+ */
+final class GelfMessageCoalescer
+{
+  static final String REPEAT_COUNT_FIELD = "repeat_count";
+
+  // Upper bound on the number of loggers tracked to avoid unbounded growth when logger names are dynamic
+  static final int MAX_TRACKED_LOGGERS = 1024;
+
+  private final long _window;
+  private final Map<String, Run> _runs;
+  private final List<GelfMessage> _pending = new ArrayList<GelfMessage>();
+  private long _lastSweep;
+
+  GelfMessageCoalescer( final long window )
+  {
+    _window = window;
+    _runs = new LinkedHashMap<String, Run>()
+    {
+      @Override
+      protected boolean removeEldestEntry( final Map.Entry<String, Run> eldest )
+      {
+        if ( size() > MAX_TRACKED_LOGGERS )
+        {
+          complete( eldest.getValue() );
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Offer a message to the coalescer.
+   *
+   * @param message the message.
+   * @param now     the current time in milliseconds.
+   * @return the messages that should be transmitted, in order. Empty if the message was suppressed.
+   */
+  synchronized List<GelfMessage> coalesce( final GelfMessage message, final long now )
+  {
+    if ( now - _lastSweep >= _window )
+    {
+      sweep( now );
+    }
+
+    final String loggerName = message.getLoggerName();
+    final String key = null != loggerName ? loggerName : "";
+    final Run run = _runs.get( key );
+    if ( null != run && run.isRepeatOf( message ) && now - run._start < _window )
+    {
+      run._count++;
+      run._last = message;
+    }
+    else
+    {
+      if ( null != run )
+      {
+        complete( run );
+      }
+      _runs.put( key, new Run( message, now ) );
+      _pending.add( message );
+    }
+    return drainPending();
+  }
+
+  /**
+   * Complete the runs whose window has expired.
+   *
+   * @param now the current time in milliseconds.
+   * @return the follow-up messages that should be transmitted.
+   */
+  synchronized List<GelfMessage> expire( final long now )
+  {
+    sweep( now );
+    return drainPending();
+  }
+
+  /**
+   * Complete all outstanding runs.
+   *
+   * @return the follow-up messages that should be transmitted.
+   */
+  synchronized List<GelfMessage> flush()
+  {
+    for ( final Run run : _runs.values() )
+    {
+      complete( run );
+    }
+    _runs.clear();
+    return drainPending();
+  }
+
+  private void sweep( final long now )
+  {
+    _lastSweep = now;
+    final Iterator<Run> iterator = _runs.values().iterator();
+    while ( iterator.hasNext() )
+    {
+      final Run run = iterator.next();
+      if ( now - run._start >= _window )
+      {
+        complete( run );
+        iterator.remove();
+      }
+    }
+  }
+
+  private void complete( final Run run )
+  {
+    if ( run._count > 0 )
+    {
+      final GelfMessage message = copyOf( run._last );
+      message.getAdditionalFields().put( REPEAT_COUNT_FIELD, run._count );
+      _pending.add( message );
+    }
+  }
+
+  /**
+   * Create the follow-up from a copy of the last repeat as the suppressed message belongs to the caller.
+   */
+  private static GelfMessage copyOf( final GelfMessage source )
+  {
+    final GelfMessage message = new GelfMessage();
+    message.setHost( source.getHost() );
+    message.setShortMessage( source.getShortMessage() );
+    message.setFullMessage( source.getFullMessage() );
+    if ( null != source.getJavaTimestamp() )
+    {
+      message.setJavaTimestamp( source.getJavaTimestamp() );
+    }
+    message.setLevel( source.getLevel() );
+    message.setFacility( source.getFacility() );
+    if ( null != source.getLine() )
+    {
+      message.setLine( source.getLine() );
+    }
+    message.setFile( source.getFile() );
+    message.setLoggerName( source.getLoggerName() );
+    message.getAdditionalFields().putAll( source.getAdditionalFields() );
+    return message;
+  }
+
+  private List<GelfMessage> drainPending()
+  {
+    if ( _pending.isEmpty() )
+    {
+      return Collections.emptyList();
+    }
+    else if ( 1 == _pending.size() )
+    {
+      final List<GelfMessage> result = Collections.singletonList( _pending.get( 0 ) );
+      _pending.clear();
+      return result;
+    }
+    else
+    {
+      final List<GelfMessage> result = new ArrayList<GelfMessage>( _pending );
+      _pending.clear();
+      return result;
+    }
+  }
+
+  private static final class Run
+  {
+    private final SyslogLevel _level;
+    private final String _shortMessage;
+    private final int _hash;
+    private final long _start;
+    private GelfMessage _last;
+    private long _count;
+
+    Run( final GelfMessage message, final long start )
+    {
+      _level = message.getLevel();
+      _shortMessage = message.getShortMessage();
+      _hash = null != _shortMessage ? _shortMessage.hashCode() : 0;
+      _start = start;
+    }
+
+    boolean isRepeatOf( final GelfMessage message )
+    {
+      final String shortMessage = message.getShortMessage();
+      return _level == message.getLevel() &&
+             null != shortMessage &&
+             _hash == shortMessage.hashCode() &&
+             shortMessage.equals( _shortMessage );
+    }
+  }
+}
@@ -18,6 +18,10 @@ import java.util.WeakHashMap;
 public final class GelfMessageUtil
 {
   static final int MAX_SHORT_MESSAGE_LENGTH = 250;
+  // Approximate heap overhead of the message object and its field map
+  private static final int MESSAGE_OVERHEAD = 160;
+  // Approximate heap overhead of a single entry in the additional fields, excluding the characters
+  private static final int FIELD_OVERHEAD = 64;
   private static final Map<String, DateFormat> c_formats = new WeakHashMap<String, DateFormat>();
 
   private GelfMessageUtil()
@@ -133,6 +137,42 @@ public final class GelfMessageUtil
     }
   }
 
+  /**
+   * Estimate the number of heap bytes retained by a message that has not been encoded.
+   * The estimate is deliberately cheap and assumes two bytes per character.
+   *
+   * @param message the message.
+   * @return the estimated size in bytes.
+   */
+  static long estimateSize( final GelfMessage message )
+  {
+    long size = MESSAGE_OVERHEAD;
+    size += estimateSize( message.getShortMessage() );
+    final String fullMessage = message.getFullMessage();
+    // The short message is frequently the same string as the full message
+    if ( fullMessage != message.getShortMessage() )
+    {
+      size += estimateSize( fullMessage );
+    }
+    size += estimateSize( message.getHost() );
+    size += estimateSize( message.getFile() );
+    for ( final Map.Entry<String, Object> entry : message.getAdditionalFields().entrySet() )
+    {
+      size += FIELD_OVERHEAD + estimateSize( entry.getKey() );
+      final Object value = entry.getValue();
+      if ( value instanceof String )
+      {
+        size += estimateSize( (String) value );
+      }
+    }
+    return size;
+  }
+
+  private static long estimateSize( final String value )
+  {
+    return null == value ? 0 : value.length() * 2L;
+  }
+
   public static String truncateShortMessage( final String message )
   {
     if ( null == message )
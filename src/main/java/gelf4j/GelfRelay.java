@@ -0,0 +1,662 @@
+package gelf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Receives GELF messages over UDP and forwards them to a GELF server over a persistent TCP connection.
+ * Applications can send to a relay on the loopback interface without the cost or the loss of sending across the
+ * network. Messages are reassembled and validated by a {@link GelfDecoder} and their json is held unchanged in a
+ * spool bounded in bytes until it is written upstream in batches. The oldest messages are dropped when the spool
+ * is full, such as when the upstream server is unavailable. A batch that fails to be written is returned to the spool and
+ * written again once the connection is re-established, so the upstream server may receive duplicates. When the
+ * relay is closed the messages already in the spool are forwarded before the upstream connection is closed.
+ */
+public final class GelfRelay
+  implements Closeable
+{
+  public static final int DEFAULT_BATCH_SIZE = 100;
+  public static final long DEFAULT_SPOOL_MAX_BYTES = 16 * 1024 * 1024;
+  public static final long DEFAULT_RECONNECT_DELAY = 1000;
+  public static final long DEFAULT_CLOSE_TIMEOUT = 5000;
+
+  private static final int MAX_DATAGRAM_SIZE = 65536;
+  private static final long MAX_RECONNECT_DELAY = 30000;
+  private static final int CONNECT_TIMEOUT = 5000;
+
+  private final SimpleJsonCodec _codec = new SimpleJsonCodec();
+  private final LongAdder _receivedCount = new LongAdder();
+  private final LongAdder _invalidCount = new LongAdder();
+  private final LongAdder _forwardedCount = new LongAdder();
+  private final LongAdder _forwardedBytes = new LongAdder();
+  private final LongAdder _droppedCount = new LongAdder();
+  private final LongAdder _corruptCount = new LongAdder();
+  private final LongAdder _connectCount = new LongAdder();
+  private final ArrayDeque<byte[]> _spool = new ArrayDeque<byte[]>();
+  private String _listenHost = "localhost";
+  private int _listenPort = GelfTargetConfig.DEFAULT_PORT;
+  private String _upstreamHost;
+  private int _upstreamPort = GelfTargetConfig.DEFAULT_PORT;
+  private boolean _compressedChunking = true;
+  private long _chunkTimeout = GelfDecoder.DEFAULT_CHUNK_TIMEOUT;
+  private int _batchSize = DEFAULT_BATCH_SIZE;
+  private long _spoolMaxBytes = DEFAULT_SPOOL_MAX_BYTES;
+  private boolean _compressSpool;
+  private long _reconnectDelay = DEFAULT_RECONNECT_DELAY;
+  private long _closeTimeout = DEFAULT_CLOSE_TIMEOUT;
+  private long _spooledBytes;
+  private DatagramSocket _datagramSocket;
+  private Socket _upstreamSocket;
+  private OutputStream _upstreamOutput;
+  private Thread _receiveThread;
+  private Thread _forwardThread;
+  private volatile boolean _receiving;
+  private volatile boolean _running;
+  // Set once receiving has stopped so that the forwarding thread exits when the spool is empty
+  private volatile boolean _draining;
+
+  public String getListenHost()
+  {
+    return _listenHost;
+  }
+
+  /**
+   * The address on which datagrams are received. Defaults to the loopback interface.
+   */
+  public void setListenHost( final String listenHost )
+  {
+    _listenHost = listenHost;
+  }
+
+  public int getListenPort()
+  {
+    return _listenPort;
+  }
+
+  public void setListenPort( final int listenPort )
+  {
+    _listenPort = listenPort;
+  }
+
+  public String getUpstreamHost()
+  {
+    return _upstreamHost;
+  }
+
+  /**
+   * The GELF server to which messages are forwarded over TCP.
+   */
+  public void setUpstreamHost( final String upstreamHost )
+  {
+    _upstreamHost = upstreamHost;
+  }
+
+  public int getUpstreamPort()
+  {
+    return _upstreamPort;
+  }
+
+  public void setUpstreamPort( final int upstreamPort )
+  {
+    _upstreamPort = upstreamPort;
+  }
+
+  public boolean isCompressedChunking()
+  {
+    return _compressedChunking;
+  }
+
+  /**
+   * Set to false to expect the chunk format used by Graylog2 servers prior to 0.9.6.
+   */
+  public void setCompressedChunking( final boolean compressedChunking )
+  {
+    _compressedChunking = compressedChunking;
+  }
+
+  public long getChunkTimeout()
+  {
+    return _chunkTimeout;
+  }
+
+  public void setChunkTimeout( final long chunkTimeout )
+  {
+    _chunkTimeout = chunkTimeout;
+  }
+
+  public int getBatchSize()
+  {
+    return _batchSize;
+  }
+
+  /**
+   * The maximum number of messages written to the connection before it is flushed.
+   */
+  public void setBatchSize( final int batchSize )
+  {
+    _batchSize = batchSize;
+  }
+
+  public long getSpoolMaxBytes()
+  {
+    return _spoolMaxBytes;
+  }
+
+  /**
+   * The maximum number of bytes of messages held awaiting transmission.
+   */
+  public void setSpoolMaxBytes( final long spoolMaxBytes )
+  {
+    _spoolMaxBytes = spoolMaxBytes;
+  }
+
+  public boolean isCompressSpool()
+  {
+    return _compressSpool;
+  }
+
+  /**
+   * Set to true to hold spooled messages deflated so that the spool holds more messages for the same bound.
+   * Messages are always written upstream uncompressed as the frames of the GELF TCP transport are terminated by a
+   * null byte.
+   */
+  public void setCompressSpool( final boolean compressSpool )
+  {
+    _compressSpool = compressSpool;
+  }
+
+  public long getReconnectDelay()
+  {
+    return _reconnectDelay;
+  }
+
+  /**
+   * The milliseconds to wait after the upstream connection fails. The delay doubles on each consecutive failure.
+   */
+  public void setReconnectDelay( final long reconnectDelay )
+  {
+    _reconnectDelay = reconnectDelay;
+  }
+
+  public long getCloseTimeout()
+  {
+    return _closeTimeout;
+  }
+
+  /**
+   * The maximum milliseconds that closing the relay waits for the messages in the spool to be forwarded.
+   */
+  public void setCloseTimeout( final long closeTimeout )
+  {
+    _closeTimeout = closeTimeout;
+  }
+
+  /**
+   * Bind the datagram socket and start receiving and forwarding messages on background threads.
+   */
+  public synchronized void start()
+    throws IOException
+  {
+    if ( null == _upstreamHost )
+    {
+      throw new IllegalStateException( "No upstream host specified" );
+    }
+    final DatagramSocket socket = new DatagramSocket( new InetSocketAddress( _listenHost, _listenPort ) );
+    // Wake up periodically to discard incomplete messages even when no datagrams arrive
+    socket.setSoTimeout( (int) Math.max( 1, Math.min( _chunkTimeout, 1000 ) ) );
+    _datagramSocket = socket;
+    _receiving = true;
+    _running = true;
+    _draining = false;
+    _receiveThread = startThread( "gelf4j-relay-receive", () -> receiveDatagrams( socket ) );
+    _forwardThread = startThread( "gelf4j-relay-forward", this::forwardMessages );
+  }
+
+  /**
+   * Stop receiving messages, wait up to the close timeout for the messages in the spool to be forwarded and then
+   * close the upstream connection. Messages that could not be forwarded within the timeout are discarded.
+   */
+  @Override
+  public void close()
+  {
+    final Thread receiveThread;
+    final Thread forwardThread;
+    synchronized ( this )
+    {
+      _receiving = false;
+      receiveThread = _receiveThread;
+      forwardThread = _forwardThread;
+      _receiveThread = null;
+      _forwardThread = null;
+      if ( null != _datagramSocket )
+      {
+        _datagramSocket.close();
+        _datagramSocket = null;
+      }
+    }
+    try
+    {
+      join( receiveThread, 1000 );
+      _draining = true;
+      synchronized ( _spool )
+      {
+        _spool.notifyAll();
+      }
+      join( forwardThread, _closeTimeout );
+    }
+    catch ( final InterruptedException ie )
+    {
+      Thread.currentThread().interrupt();
+    }
+    finally
+    {
+      _running = false;
+      synchronized ( this )
+      {
+        closeUpstream();
+      }
+      if ( null != forwardThread )
+      {
+        // Wakes the forwarding thread if it is waiting to reconnect
+        forwardThread.interrupt();
+      }
+    }
+  }
+
+  private static void join( final Thread thread, final long timeout )
+    throws InterruptedException
+  {
+    if ( null != thread )
+    {
+      thread.join( Math.max( 1, timeout ) );
+    }
+  }
+
+  /**
+   * @return the number of valid messages received.
+   */
+  public long getReceivedCount()
+  {
+    return _receivedCount.sum();
+  }
+
+  /**
+   * @return the number of datagrams that were malformed chunks or could not be decompressed or parsed.
+   */
+  public long getInvalidCount()
+  {
+    return _invalidCount.sum();
+  }
+
+  /**
+   * @return the number of messages written upstream, including those written again after a failure.
+   */
+  public long getForwardedCount()
+  {
+    return _forwardedCount.sum();
+  }
+
+  public long getForwardedBytes()
+  {
+    return _forwardedBytes.sum();
+  }
+
+  /**
+   * @return the number of messages dropped because the spool was full.
+   */
+  public long getDroppedCount()
+  {
+    return _droppedCount.sum();
+  }
+
+  /**
+   * @return the number of compressed spool entries that could not be inflated and were dropped.
+   */
+  public long getCorruptCount()
+  {
+    return _corruptCount.sum();
+  }
+
+  /**
+   * @return the number of times the upstream connection has been established.
+   */
+  public long getConnectCount()
+  {
+    return _connectCount.sum();
+  }
+
+  public int getSpoolSize()
+  {
+    synchronized ( _spool )
+    {
+      return _spool.size();
+    }
+  }
+
+  public long getSpooledBytes()
+  {
+    synchronized ( _spool )
+    {
+      return _spooledBytes;
+    }
+  }
+
+  private Thread startThread( final String name, final Runnable runnable )
+  {
+    final Thread thread = new Thread( runnable, name );
+    thread.setDaemon( true );
+    thread.start();
+    return thread;
+  }
+
+  private void receiveDatagrams( final DatagramSocket socket )
+  {
+    final GelfDecoder decoder =
+      new GelfDecoder( _compressedChunking, _chunkTimeout, GelfDecoder.DEFAULT_MAX_PENDING_MESSAGES, _codec );
+    final Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+    final byte[] buffer = new byte[ MAX_DATAGRAM_SIZE ];
+    final DatagramPacket packet = new DatagramPacket( buffer, buffer.length );
+    try
+    {
+      while ( _receiving )
+      {
+        try
+        {
+          packet.setLength( buffer.length );
+          socket.receive( packet );
+          if ( !_receiving )
+          {
+            // Closing the socket may complete a pending receive with an empty datagram
+            break;
+          }
+          final byte[] json;
+          try
+          {
+            json = decoder.decodeJson( buffer, 0, packet.getLength(), System.currentTimeMillis() );
+          }
+          catch ( final IOException ioe )
+          {
+            _invalidCount.increment();
+            continue;
+          }
+          if ( null != json )
+          {
+            _receivedCount.increment();
+            spool( _compressSpool ? deflate( deflater, json ) : json );
+          }
+        }
+        catch ( final SocketTimeoutException ste )
+        {
+          //Ignored. Allows incomplete messages to be expired
+        }
+        catch ( final IOException ioe )
+        {
+          // The socket is closed when the relay is closed
+          break;
+        }
+        finally
+        {
+          decoder.expire( System.currentTimeMillis() );
+        }
+      }
+    }
+    finally
+    {
+      decoder.close();
+      deflater.end();
+    }
+  }
+
+  // Package access for tests
+  void spool( final byte[] data )
+  {
+    synchronized ( _spool )
+    {
+      _spool.addLast( data );
+      _spooledBytes += data.length;
+      trimSpool();
+      _spool.notifyAll();
+    }
+  }
+
+  private void trimSpool()
+  {
+    while ( _spooledBytes > _spoolMaxBytes && !_spool.isEmpty() )
+    {
+      _spooledBytes -= _spool.removeFirst().length;
+      _droppedCount.increment();
+    }
+  }
+
+  private void forwardMessages()
+  {
+    final Inflater inflater = new Inflater();
+    final List<byte[]> batch = new ArrayList<byte[]>();
+    byte[] buffer = new byte[ MAX_DATAGRAM_SIZE ];
+    long reconnectDelay = _reconnectDelay;
+    try
+    {
+      while ( _running )
+      {
+        synchronized ( _spool )
+        {
+          while ( _running && !_draining && _spool.isEmpty() )
+          {
+            _spool.wait();
+          }
+          if ( _spool.isEmpty() )
+          {
+            // Closed or drained
+            break;
+          }
+          while ( batch.size() < _batchSize && !_spool.isEmpty() )
+          {
+            final byte[] data = _spool.removeFirst();
+            _spooledBytes -= data.length;
+            batch.add( data );
+          }
+        }
+        try
+        {
+          final OutputStream outputStream = getUpstream();
+          long bytes = 0;
+          int count = 0;
+          for ( final byte[] data : batch )
+          {
+            if ( _compressSpool )
+            {
+              int length;
+              try
+              {
+                length = inflate( inflater, data, buffer );
+                if ( length > buffer.length )
+                {
+                  buffer = new byte[ length ];
+                  length = inflate( inflater, data, buffer );
+                }
+              }
+              catch ( final IOException ioe )
+              {
+                // A corrupt entry would fail on every attempt so it is dropped rather than returned to the spool
+                _corruptCount.increment();
+                continue;
+              }
+              outputStream.write( buffer, 0, length );
+              bytes += length + 1;
+            }
+            else
+            {
+              outputStream.write( data );
+              bytes += data.length + 1;
+            }
+            outputStream.write( 0 );
+            count++;
+          }
+          outputStream.flush();
+          _forwardedCount.add( count );
+          _forwardedBytes.add( bytes );
+          batch.clear();
+          reconnectDelay = _reconnectDelay;
+        }
+        catch ( final IOException ioe )
+        {
+          synchronized ( this )
+          {
+            closeUpstream();
+          }
+          unspool( batch );
+          if ( _running )
+          {
+            Thread.sleep( reconnectDelay );
+            reconnectDelay = Math.min( reconnectDelay * 2, MAX_RECONNECT_DELAY );
+          }
+        }
+      }
+    }
+    catch ( final InterruptedException ie )
+    {
+      //Ignored. Exit
+    }
+    finally
+    {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Return a batch that failed to be written to the front of the spool, preserving the order of messages.
+   */
+  private void unspool( final List<byte[]> batch )
+  {
+    synchronized ( _spool )
+    {
+      for ( int i = batch.size() - 1; i >= 0; i-- )
+      {
+        final byte[] data = batch.get( i );
+        _spool.addFirst( data );
+        _spooledBytes += data.length;
+      }
+      trimSpool();
+    }
+    batch.clear();
+  }
+
+  private synchronized OutputStream getUpstream()
+    throws IOException
+  {
+    if ( !_running )
+    {
+      throw new IOException( "Relay closed" );
+    }
+    if ( null == _upstreamSocket )
+    {
+      final Socket socket = new Socket();
+      try
+      {
+        socket.connect( new InetSocketAddress( _upstreamHost, _upstreamPort ), CONNECT_TIMEOUT );
+      }
+      catch ( final IOException ioe )
+      {
+        socket.close();
+        throw ioe;
+      }
+      _upstreamSocket = socket;
+      _upstreamOutput = new BufferedOutputStream( socket.getOutputStream(), 65536 );
+      _connectCount.increment();
+    }
+    return _upstreamOutput;
+  }
+
+  private void closeUpstream()
+  {
+    if ( null != _upstreamSocket )
+    {
+      try
+      {
+        _upstreamSocket.close();
+      }
+      catch ( final IOException ioe )
+      {
+        //Ignored
+      }
+      _upstreamSocket = null;
+      _upstreamOutput = null;
+    }
+  }
+
+  private static byte[] deflate( final Deflater deflater, final byte[] data )
+  {
+    deflater.reset();
+    deflater.setInput( data );
+    deflater.finish();
+    byte[] output = new byte[ data.length / 2 + 64 ];
+    int length = 0;
+    while ( !deflater.finished() )
+    {
+      if ( length == output.length )
+      {
+        output = Arrays.copyOf( output, output.length * 2 );
+      }
+      length += deflater.deflate( output, length, output.length - length );
+    }
+    // The uncompressed length is prepended so the spool can be inflated into a buffer of the right size
+    final byte[] result = new byte[ length + 4 ];
+    result[ 0 ] = (byte) ( data.length >>> 24 );
+    result[ 1 ] = (byte) ( data.length >>> 16 );
+    result[ 2 ] = (byte) ( data.length >>> 8 );
+    result[ 3 ] = (byte) data.length;
+    System.arraycopy( output, 0, result, 4, length );
+    return result;
+  }
+
+  /**
+   * Inflate data produced by {@link #deflate(Deflater, byte[])} into the buffer.
+   *
+   * @return the uncompressed length. If larger than the buffer nothing is inflated.
+   */
+  private static int inflate( final Inflater inflater, final byte[] data, final byte[] buffer )
+    throws IOException
+  {
+    final int length = ( ( data[ 0 ] & 0xff ) << 24 ) | ( ( data[ 1 ] & 0xff ) << 16 ) |
+                       ( ( data[ 2 ] & 0xff ) << 8 ) | ( data[ 3 ] & 0xff );
+    if ( length > buffer.length )
+    {
+      return length;
+    }
+    inflater.reset();
+    inflater.setInput( data, 4, data.length - 4 );
+    try
+    {
+      int size = 0;
+      while ( size < length && !inflater.finished() )
+      {
+        final int count = inflater.inflate( buffer, size, length - size );
+        if ( 0 == count && inflater.needsInput() )
+        {
+          throw new IOException( "Truncated spooled message" );
+        }
+        size += count;
+      }
+      return size;
+    }
+    catch ( final DataFormatException dfe )
+    {
+      throw new IOException( "Corrupt spooled message", dfe );
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package gelf4j;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Responsible for shedding low priority messages when the connection is under load.
+ * Under normal load every message is sent. When the rate of messages offered to the connection crosses the
+ * threshold DEBUG messages are sampled and when it crosses twice the threshold INFO messages are also sampled.
+ * The caller may also supply a load stage derived from other signals such as the depth of the send queue.
+ * Messages at ERR level and above are never sampled. Messages that are kept while sampling carry the sample
+ * rate so that counts can be re-weighted downstream.
+ */
+final class GelfSampler
+{
+  static final String SAMPLE_RATE_FIELD = "sample_rate";
+
+  static final int STAGE_NONE = 0;
+  static final int STAGE_DEBUG = 1;
+  static final int STAGE_INFO = 2;
+
+  private static final long MEASUREMENT_PERIOD = 1000;
+
+  private final long _threshold;
+  private final int _debugSampleRate;
+  private final int _infoSampleRate;
+  private final LongAdder _offered = new LongAdder();
+  private final AtomicLong _periodStart;
+  private volatile int _stage;
+
+  /**
+   * @param threshold       the number of messages per second at which sampling starts.
+   * @param debugSampleRate keep 1 in debugSampleRate DEBUG messages while sampling.
+   * @param infoSampleRate  keep 1 in infoSampleRate INFO messages while sampling.
+   * @param now             the current time in milliseconds.
+   */
+  GelfSampler( final long threshold, final int debugSampleRate, final int infoSampleRate, final long now )
+  {
+    _threshold = threshold;
+    _debugSampleRate = Math.max( 1, debugSampleRate );
+    _infoSampleRate = Math.max( 1, infoSampleRate );
+    _periodStart = new AtomicLong( now );
+  }
+
+  /**
+   * Determine whether the message should be sent.
+   *
+   * @param message the message.
+   * @param now     the current time in milliseconds.
+   * @return true if the message should be sent, false if it was sampled out.
+   */
+  boolean sample( final GelfMessage message, final long now )
+  {
+    return sample( message, now, STAGE_NONE );
+  }
+
+  /**
+   * Determine whether the message should be sent.
+   *
+   * @param message   the message.
+   * @param now       the current time in milliseconds.
+   * @param loadStage the minimum sampling stage implied by other load signals.
+   * @return true if the message should be sent, false if it was sampled out.
+   */
+  boolean sample( final GelfMessage message, final long now, final int loadStage )
+  {
+    _offered.increment();
+    final long periodStart = _periodStart.get();
+    final long elapsed = now - periodStart;
+    if ( elapsed >= MEASUREMENT_PERIOD && _periodStart.compareAndSet( periodStart, now ) )
+    {
+      final long rate = _offered.sumThenReset() * MEASUREMENT_PERIOD / elapsed;
+      _stage = rate >= _threshold * 2 ? STAGE_INFO : rate >= _threshold ? STAGE_DEBUG : STAGE_NONE;
+    }
+
+    final int stage = Math.max( _stage, loadStage );
+    final SyslogLevel level = message.getLevel();
+    if ( STAGE_NONE == stage || null == level )
+    {
+      return true;
+    }
+    else if ( SyslogLevel.DEBUG == level )
+    {
+      return keep( message, _debugSampleRate );
+    }
+    else if ( SyslogLevel.INFO == level && stage >= STAGE_INFO )
+    {
+      return keep( message, _infoSampleRate );
+    }
+    else
+    {
+      return true;
+    }
+  }
+
+  int getStage()
+  {
+    return _stage;
+  }
+
+  private boolean keep( final GelfMessage message, final int sampleRate )
+  {
+    if ( 1 == sampleRate )
+    {
+      return true;
+    }
+    else if ( 0 == ThreadLocalRandom.current().nextInt( sampleRate ) )
+    {
+      message.getAdditionalFields().put( SAMPLE_RATE_FIELD, sampleRate );
+      return true;
+    }
+    else
+    {
+      return false;
+    }
+  }
+}
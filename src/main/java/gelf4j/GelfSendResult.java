@@ -0,0 +1,71 @@
+package gelf4j;
+
+/**
+ * The result of attempting to send a GELF message.
+ */
+public final class GelfSendResult
+{
+  public enum Outcome
+  {
+    /** The message was written to the transport. */
+    SENT,
+    /** The message was intentionally discarded before transmission. i.e. The send queue was full. */
+    DROPPED,
+    /** The message could not be encoded or written to the transport. */
+    FAILED
+  }
+
+  static final GelfSendResult DROPPED = new GelfSendResult( Outcome.DROPPED, 0, 0 );
+  static final GelfSendResult FAILED = new GelfSendResult( Outcome.FAILED, 0, 0 );
+
+  private final Outcome _outcome;
+  private final int _byteCount;
+  private final int _chunkCount;
+
+  GelfSendResult( final Outcome outcome, final int byteCount, final int chunkCount )
+  {
+    _outcome = outcome;
+    _byteCount = byteCount;
+    _chunkCount = chunkCount;
+  }
+
+  /**
+   * @return the result of a message that could not be sent.
+   */
+  public static GelfSendResult failed()
+  {
+    return FAILED;
+  }
+
+  public Outcome getOutcome()
+  {
+    return _outcome;
+  }
+
+  public boolean isSent()
+  {
+    return Outcome.SENT == _outcome;
+  }
+
+  /**
+   * @return the number of bytes in the encoded message, including chunk headers.
+   */
+  public int getByteCount()
+  {
+    return _byteCount;
+  }
+
+  /**
+   * @return the number of datagrams the encoded message was split into.
+   */
+  public int getChunkCount()
+  {
+    return _chunkCount;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "GelfSendResult[outcome=" + _outcome + ",bytes=" + _byteCount + ",chunks=" + _chunkCount + "]";
+  }
+}
@@ -11,6 +11,36 @@ import java.util.Map;
  */
 public class GelfTargetConfig
 {
+  /**
+   * The policy applied when a message is queued for asynchronous transmission and its queue is full.
+   */
+  public enum DropPolicy
+  {
+    /** Drop the message being queued. */
+    DROP_NEWEST,
+    /** Drop the oldest queued message to make room for the message being queued. */
+    DROP_OLDEST
+  }
+
+  /**
+   * The channel over which messages are sent.
+   */
+  public enum Transport
+  {
+    /** Chunked and compressed datagrams sent to the host and port. */
+    UDP,
+    /**
+     * Uncompressed json frames written to the Unix domain socket at the socket path. Falls back to UDP if the JVM
+     * does not support Unix domain sockets or the socket does not exist when the connection is created.
+     */
+    UNIX,
+    /**
+     * Gzip compressed json messages posted to a GELF HTTP input at the http url, several messages per request if
+     * the http batch size exceeds 1.
+     */
+    HTTP
+  }
+
   public static final String FIELD_THREAD_NAME = "threadName";
   public static final String FIELD_TIMESTAMP_PREFIX = "timestamp:";
   public static final String FIELD_TIMESTAMP_MS = "timestampMs";
@@ -25,6 +55,13 @@ public class GelfTargetConfig
   public static final String DEFAULT_JSON_CODEC = "gelf4j.SimpleJsonCodec";
 
   public static final int DEFAULT_PORT = 12201;
+  public static final int DEFAULT_ASYNC_QUEUE_SIZE = 1024;
+  public static final long DEFAULT_ASYNC_QUEUE_MAX_BYTES = 16 * 1024 * 1024;
+  public static final int DEFAULT_DEBUG_SAMPLE_RATE = 10;
+  public static final int DEFAULT_INFO_SAMPLE_RATE = 2;
+  public static final int DEFAULT_HTTP_BATCH_SIZE = 1;
+  public static final int DEFAULT_HTTP_MAX_IN_FLIGHT = 4;
+  public static final int DEFAULT_HTTP_RETRIES = 3;
 
   private String _host;
   private InetAddress _hostAddress;
@@ -32,6 +69,25 @@ public class GelfTargetConfig
   private boolean _compressedChunking = true;
   private String _codecClass = DEFAULT_JSON_CODEC;
   private JsonCodec _codec;
+  private long _coalesceWindow;
+  private long _sampleThreshold;
+  private int _debugSampleRate = DEFAULT_DEBUG_SAMPLE_RATE;
+  private int _infoSampleRate = DEFAULT_INFO_SAMPLE_RATE;
+  private boolean _async;
+  private int _asyncQueueSize = DEFAULT_ASYNC_QUEUE_SIZE;
+  private DropPolicy _asyncDropPolicy = DropPolicy.DROP_NEWEST;
+  private long _asyncQueueMaxBytes = DEFAULT_ASYNC_QUEUE_MAX_BYTES;
+  private boolean _jmxEnabled;
+  private int _loggerStatsSize;
+  private long _loggerStatsInterval;
+  private long _healthReportInterval;
+  private boolean _sequenceNumbers;
+  private Transport _transport = Transport.UDP;
+  private String _socketPath;
+  private String _httpUrl;
+  private int _httpBatchSize = DEFAULT_HTTP_BATCH_SIZE;
+  private int _httpMaxInFlight = DEFAULT_HTTP_MAX_IN_FLIGHT;
+  private int _httpRetries = DEFAULT_HTTP_RETRIES;
 
   private String _defaultFieldsJson;
   private final Map<String, Object> _defaultFields;
@@ -105,6 +161,267 @@ public class GelfTargetConfig
     _port = port;
   }
 
+  /**
+   * @return the window in milliseconds in which identical consecutive messages from a logger are coalesced. A value
+   * of 0 disables coalescing.
+   */
+  public long getCoalesceWindow()
+  {
+    return _coalesceWindow;
+  }
+
+  public void setCoalesceWindow( final long coalesceWindow )
+  {
+    _coalesceWindow = coalesceWindow;
+  }
+
+  /**
+   * @return the rate in messages per second at which DEBUG messages start to be sampled. INFO messages are sampled
+   * when the rate reaches twice this value. A value of 0 disables sampling.
+   */
+  public long getSampleThreshold()
+  {
+    return _sampleThreshold;
+  }
+
+  public void setSampleThreshold( final long sampleThreshold )
+  {
+    _sampleThreshold = sampleThreshold;
+  }
+
+  /**
+   * @return the N in "keep 1 in N" DEBUG messages while sampling.
+   */
+  public int getDebugSampleRate()
+  {
+    return _debugSampleRate;
+  }
+
+  public void setDebugSampleRate( final int debugSampleRate )
+  {
+    _debugSampleRate = debugSampleRate;
+  }
+
+  /**
+   * @return the N in "keep 1 in N" INFO messages while sampling.
+   */
+  public int getInfoSampleRate()
+  {
+    return _infoSampleRate;
+  }
+
+  public void setInfoSampleRate( final int infoSampleRate )
+  {
+    _infoSampleRate = infoSampleRate;
+  }
+
+  /**
+   * @return true if messages should be queued and transmitted by a background thread.
+   */
+  public boolean isAsync()
+  {
+    return _async;
+  }
+
+  public void setAsync( final boolean async )
+  {
+    _async = async;
+  }
+
+  /**
+   * Messages queued for asynchronous transmission are separated into lanes by priority. ERR and above, WARNING
+   * and NOTICE, and INFO and below are each queued in a separate lane and higher priority lanes are always
+   * transmitted first. The size bounds each lane separately so up to three times as many messages may be queued
+   * in total.
+   *
+   * @return the maximum number of messages queued in each lane.
+   */
+  public int getAsyncQueueSize()
+  {
+    return _asyncQueueSize;
+  }
+
+  public void setAsyncQueueSize( final int asyncQueueSize )
+  {
+    _asyncQueueSize = asyncQueueSize;
+  }
+
+  /**
+   * @return the policy applied independently to each lane when it is full.
+   */
+  public DropPolicy getAsyncDropPolicy()
+  {
+    return _asyncDropPolicy;
+  }
+
+  public void setAsyncDropPolicy( final DropPolicy asyncDropPolicy )
+  {
+    _asyncDropPolicy = asyncDropPolicy;
+  }
+
+  /**
+   * A message that would exceed the size evicts queued messages of lower priority to make room.
+   *
+   * @return the maximum estimated heap size in bytes of all messages queued for asynchronous transmission.
+   */
+  public long getAsyncQueueMaxBytes()
+  {
+    return _asyncQueueMaxBytes;
+  }
+
+  public void setAsyncQueueMaxBytes( final long asyncQueueMaxBytes )
+  {
+    _asyncQueueMaxBytes = asyncQueueMaxBytes;
+  }
+
+  /**
+   * @return true if the metrics of the connection should be registered with the platform MBean server.
+   */
+  public boolean isJmxEnabled()
+  {
+    return _jmxEnabled;
+  }
+
+  public void setJmxEnabled( final boolean jmxEnabled )
+  {
+    _jmxEnabled = jmxEnabled;
+  }
+
+  /**
+   * @return the maximum number of loggers for which the messages and bytes sent are counted. A value of 0
+   * disables logger statistics.
+   */
+  public int getLoggerStatsSize()
+  {
+    return _loggerStatsSize;
+  }
+
+  public void setLoggerStatsSize( final int loggerStatsSize )
+  {
+    _loggerStatsSize = loggerStatsSize;
+  }
+
+  /**
+   * @return the period in milliseconds at which logger statistics are sent as a GELF message. A value of 0
+   * disables sending statistics.
+   */
+  public long getLoggerStatsInterval()
+  {
+    return _loggerStatsInterval;
+  }
+
+  public void setLoggerStatsInterval( final long loggerStatsInterval )
+  {
+    _loggerStatsInterval = loggerStatsInterval;
+  }
+
+  /**
+   * @return the period in milliseconds at which a GELF message describing the health of the connection is sent.
+   * A value of 0 disables health reports.
+   */
+  public long getHealthReportInterval()
+  {
+    return _healthReportInterval;
+  }
+
+  public void setHealthReportInterval( final long healthReportInterval )
+  {
+    _healthReportInterval = healthReportInterval;
+  }
+
+  /**
+   * @return true if each message is sent with an identifier for the connection and a sequence number so that
+   * the receiver can detect lost and reordered messages.
+   */
+  public boolean isSequenceNumbers()
+  {
+    return _sequenceNumbers;
+  }
+
+  public void setSequenceNumbers( final boolean sequenceNumbers )
+  {
+    _sequenceNumbers = sequenceNumbers;
+  }
+
+  public Transport getTransport()
+  {
+    return _transport;
+  }
+
+  public void setTransport( final Transport transport )
+  {
+    _transport = transport;
+  }
+
+  /**
+   * @return the path of the Unix domain socket used by the UNIX transport.
+   */
+  public String getSocketPath()
+  {
+    return _socketPath;
+  }
+
+  public void setSocketPath( final String socketPath )
+  {
+    _socketPath = socketPath;
+  }
+
+  /**
+   * @return the url that the HTTP transport posts messages to. Null to post to /gelf on the host and port.
+   */
+  public String getHttpUrl()
+  {
+    return _httpUrl;
+  }
+
+  public void setHttpUrl( final String httpUrl )
+  {
+    _httpUrl = httpUrl;
+  }
+
+  /**
+   * @return the maximum number of messages posted in a single request by {@link GelfConnection#sendAll}.
+   * Messages are separated by newlines which requires the input to have bulk receiving enabled.
+   */
+  public int getHttpBatchSize()
+  {
+    return _httpBatchSize;
+  }
+
+  public void setHttpBatchSize( final int httpBatchSize )
+  {
+    _httpBatchSize = httpBatchSize;
+  }
+
+  /**
+   * @return the maximum number of requests that the HTTP transport has in flight at once.
+   */
+  public int getHttpMaxInFlight()
+  {
+    return _httpMaxInFlight;
+  }
+
+  public void setHttpMaxInFlight( final int httpMaxInFlight )
+  {
+    _httpMaxInFlight = httpMaxInFlight;
+  }
+
+  /**
+   * @return the number of times a request that failed with an I/O error or a transient status is retried. Requests
+   * from the asynchronous sender, including {@link GelfConnection#sendAsync}, and from
+   * {@link GelfConnection#sendAll} are retried. A synchronous {@link GelfConnection#send} never retries so that
+   * the logging thread is not held while backing off.
+   */
+  public int getHttpRetries()
+  {
+    return _httpRetries;
+  }
+
+  public void setHttpRetries( final int httpRetries )
+  {
+    _httpRetries = httpRetries;
+  }
+
   public GelfConnection createConnection()
     throws Exception
   {
@@ -0,0 +1,75 @@
+package gelf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The channel over which a connection writes encoded messages.
+ * Unless the transport is concurrent, writes are invoked while holding the monitor of the connection so
+ * implementations need not be thread safe.
+ */
+interface GelfTransport
+  extends Closeable
+{
+  /**
+   * @return true if messages are written as gzip compressed datagrams that are chunked when they exceed the
+   * maximum packet size, false if they are written as uncompressed json frames terminated by a null byte.
+   */
+  boolean isDatagram();
+
+  /**
+   * @return true if the transport is thread safe and may write from several threads at once.
+   */
+  boolean isConcurrent();
+
+  /**
+   * @return the maximum number of frames passed to {@link #writeBatch(List, boolean)}, or 1 if messages are not
+   * batched.
+   */
+  int getMaxBatchSize();
+
+  /**
+   * Write a single packet, opening the underlying channel if it is not open.
+   */
+  void write( ByteBuffer packet )
+    throws IOException;
+
+  /**
+   * Write a single packet, opening the underlying channel if it is not open.
+   * By default the packet is written once whether or not it may be retried.
+   *
+   * @param retry true if a transport that retries failed writes may hold the calling thread while it backs off,
+   *              false if the caller is a logging thread that must not be held.
+   */
+  default void write( final ByteBuffer packet, final boolean retry )
+    throws IOException
+  {
+    write( packet );
+  }
+
+  /**
+   * Write the frames of several messages as a single unit. Only invoked if the maximum batch size exceeds 1.
+   * By default each frame is written separately.
+   *
+   * @param retry true if a transport that retries failed writes may hold the calling thread while it backs off.
+   */
+  default void writeBatch( final List<byte[]> frames, final boolean retry )
+    throws IOException
+  {
+    for ( final byte[] frame : frames )
+    {
+      write( ByteBuffer.wrap( frame ), retry );
+    }
+  }
+
+  boolean isOpen();
+
+  /**
+   * Close the underlying channel. The next write reopens it.
+   */
+  @Override
+  void close()
+    throws IOException;
+}
@@ -0,0 +1,76 @@
+package gelf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Writes each packet as a UDP datagram to the host and port of the configuration.
+ */
+final class GelfUdpTransport
+  implements GelfTransport
+{
+  private final GelfTargetConfig _config;
+  private DatagramChannel _channel;
+
+  GelfUdpTransport( final GelfTargetConfig config )
+  {
+    _config = config;
+  }
+
+  @Override
+  public boolean isDatagram()
+  {
+    return true;
+  }
+
+  @Override
+  public boolean isConcurrent()
+  {
+    return false;
+  }
+
+  @Override
+  public int getMaxBatchSize()
+  {
+    return 1;
+  }
+
+  @Override
+  public void write( final ByteBuffer packet )
+    throws IOException
+  {
+    if ( null == _channel )
+    {
+      _channel = DatagramChannel.open();
+      _channel.socket().bind( new InetSocketAddress( 0 ) );
+      _channel.connect( new InetSocketAddress( _config.getHostAddress(), _config.getPort() ) );
+      _channel.configureBlocking( false );
+    }
+    _channel.write( packet );
+  }
+
+  @Override
+  public boolean isOpen()
+  {
+    return null != _channel;
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    if ( null != _channel )
+    {
+      try
+      {
+        _channel.close();
+      }
+      finally
+      {
+        _channel = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package gelf4j;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes each message as a json frame terminated by a null byte to a Unix domain stream socket, such as that of a
+ * local log agent. Messages are neither compressed nor chunked as there is no packet size to respect and
+ * compression costs more than it saves without a network. Unix domain sockets are only supported from Java 16 so
+ * they are accessed reflectively. The socket is non-blocking so that an agent that stops reading can not block the
+ * logging threads. A message that can not be written within a short bound fails and the socket is closed, as the
+ * partially written frame would corrupt the stream, to be reopened by the next write.
+ */
+final class GelfUnixSocketTransport
+  implements GelfTransport
+{
+  private static final byte[] TERMINATOR = new byte[]{ 0 };
+  // The longest a write waits for a full socket buffer to drain
+  private static final long WRITE_TIMEOUT = TimeUnit.MILLISECONDS.toNanos( 100 );
+
+  private static final Method c_addressFactory;
+  private static final Method c_channelFactory;
+  private static final ProtocolFamily c_unixFamily;
+
+  static
+  {
+    Method addressFactory = null;
+    Method channelFactory = null;
+    ProtocolFamily unixFamily = null;
+    try
+    {
+      addressFactory = Class.forName( "java.net.UnixDomainSocketAddress" ).getMethod( "of", String.class );
+      channelFactory = SocketChannel.class.getMethod( "open", ProtocolFamily.class );
+      unixFamily = StandardProtocolFamily.valueOf( "UNIX" );
+    }
+    catch ( final ReflectiveOperationException | IllegalArgumentException e )
+    {
+      //Ignored. Unix domain sockets are not supported by this JVM
+    }
+    c_addressFactory = addressFactory;
+    c_channelFactory = channelFactory;
+    c_unixFamily = unixFamily;
+  }
+
+  private final String _path;
+  private SocketChannel _channel;
+  private Selector _selector;
+
+  GelfUnixSocketTransport( final String path )
+  {
+    _path = path;
+  }
+
+  /**
+   * @return true if the JVM supports Unix domain sockets.
+   */
+  static boolean isSupported()
+  {
+    return null != c_unixFamily;
+  }
+
+  @Override
+  public boolean isDatagram()
+  {
+    return false;
+  }
+
+  @Override
+  public boolean isConcurrent()
+  {
+    return false;
+  }
+
+  @Override
+  public int getMaxBatchSize()
+  {
+    return 1;
+  }
+
+  @Override
+  public void write( final ByteBuffer packet )
+    throws IOException
+  {
+    if ( null == _channel )
+    {
+      _channel = open();
+    }
+    final ByteBuffer terminator = ByteBuffer.wrap( TERMINATOR );
+    final ByteBuffer[] buffers = new ByteBuffer[]{ packet, terminator };
+    long deadline = 0;
+    while ( terminator.hasRemaining() )
+    {
+      if ( 0 == _channel.write( buffers ) )
+      {
+        final long now = System.nanoTime();
+        if ( 0 == deadline )
+        {
+          deadline = now + WRITE_TIMEOUT;
+        }
+        else if ( now - deadline >= 0 )
+        {
+          close();
+          throw new IOException( "Timed out writing to " + _path );
+        }
+        _selector.select( Math.max( 1, TimeUnit.NANOSECONDS.toMillis( deadline - now ) ) );
+        _selector.selectedKeys().clear();
+      }
+    }
+  }
+
+  @Override
+  public boolean isOpen()
+  {
+    return null != _channel;
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    if ( null != _channel )
+    {
+      try
+      {
+        _channel.close();
+        _selector.close();
+      }
+      finally
+      {
+        _channel = null;
+        _selector = null;
+      }
+    }
+  }
+
+  private SocketChannel open()
+    throws IOException
+  {
+    final SocketChannel channel;
+    final SocketAddress address;
+    try
+    {
+      address = (SocketAddress) c_addressFactory.invoke( null, _path );
+      channel = (SocketChannel) c_channelFactory.invoke( null, c_unixFamily );
+    }
+    catch ( final InvocationTargetException ite )
+    {
+      final Throwable cause = ite.getCause();
+      throw cause instanceof IOException ? (IOException) cause : new IOException( cause );
+    }
+    catch ( final IllegalAccessException iae )
+    {
+      throw new IOException( iae );
+    }
+    try
+    {
+      channel.connect( address );
+      channel.configureBlocking( false );
+      _selector = Selector.open();
+      channel.register( _selector, SelectionKey.OP_WRITE );
+    }
+    catch ( final IOException ioe )
+    {
+      channel.close();
+      if ( null != _selector )
+      {
+        _selector.close();
+        _selector = null;
+      }
+      throw ioe;
+    }
+    return channel;
+  }
+}
@@ -58,6 +58,101 @@ public class GelfAppender<E> extends AppenderBase<E>
     _config.setDefaultFields( data );
   }
 
+  public void setCoalesceWindow( final long coalesceWindow )
+  {
+    _config.setCoalesceWindow( coalesceWindow );
+  }
+
+  public void setSampleThreshold( final long sampleThreshold )
+  {
+    _config.setSampleThreshold( sampleThreshold );
+  }
+
+  public void setDebugSampleRate( final int debugSampleRate )
+  {
+    _config.setDebugSampleRate( debugSampleRate );
+  }
+
+  public void setInfoSampleRate( final int infoSampleRate )
+  {
+    _config.setInfoSampleRate( infoSampleRate );
+  }
+
+  public void setAsync( final boolean async )
+  {
+    _config.setAsync( async );
+  }
+
+  public void setAsyncQueueSize( final int asyncQueueSize )
+  {
+    _config.setAsyncQueueSize( asyncQueueSize );
+  }
+
+  public void setAsyncDropPolicy( final String asyncDropPolicy )
+  {
+    _config.setAsyncDropPolicy( GelfTargetConfig.DropPolicy.valueOf( asyncDropPolicy.trim().toUpperCase() ) );
+  }
+
+  public void setAsyncQueueMaxBytes( final long asyncQueueMaxBytes )
+  {
+    _config.setAsyncQueueMaxBytes( asyncQueueMaxBytes );
+  }
+
+  public void setJmxEnabled( final boolean jmxEnabled )
+  {
+    _config.setJmxEnabled( jmxEnabled );
+  }
+
+  public void setLoggerStatsSize( final int loggerStatsSize )
+  {
+    _config.setLoggerStatsSize( loggerStatsSize );
+  }
+
+  public void setLoggerStatsInterval( final long loggerStatsInterval )
+  {
+    _config.setLoggerStatsInterval( loggerStatsInterval );
+  }
+
+  public void setHealthReportInterval( final long healthReportInterval )
+  {
+    _config.setHealthReportInterval( healthReportInterval );
+  }
+
+  public void setSequenceNumbers( final boolean sequenceNumbers )
+  {
+    _config.setSequenceNumbers( sequenceNumbers );
+  }
+
+  public void setTransport( final String transport )
+  {
+    _config.setTransport( GelfTargetConfig.Transport.valueOf( transport.trim().toUpperCase() ) );
+  }
+
+  public void setSocketPath( final String socketPath )
+  {
+    _config.setSocketPath( socketPath );
+  }
+
+  public void setHttpUrl( final String httpUrl )
+  {
+    _config.setHttpUrl( httpUrl );
+  }
+
+  public void setHttpBatchSize( final int httpBatchSize )
+  {
+    _config.setHttpBatchSize( httpBatchSize );
+  }
+
+  public void setHttpMaxInFlight( final int httpMaxInFlight )
+  {
+    _config.setHttpMaxInFlight( httpMaxInFlight );
+  }
+
+  public void setHttpRetries( final int httpRetries )
+  {
+    _config.setHttpRetries( httpRetries );
+  }
+
   @Override
   public void start()
   {
@@ -123,6 +218,7 @@ public class GelfAppender<E> extends AppenderBase<E>
     final String formattedMessage = event.getFormattedMessage();
     final SyslogLevel level = SyslogLevel.values()[ LevelToSyslogSeverity.convert( event ) ];
     final GelfMessage message = _connection.newMessage( level, formattedMessage, event.getTimeStamp() );
+    message.setLoggerName( event.getLoggerName() );
 
     final Map<String, String> mdc = event.getMDCPropertyMap();
     for( final Map.Entry<String, String> entry : _config.getAdditionalFields().entrySet() )
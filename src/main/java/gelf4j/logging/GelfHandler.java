@@ -59,6 +59,101 @@ public class GelfHandler
     {
       _config.setCodecClass( codecClass );
     }
+    final String coalesceWindow = manager.getProperty( prefix + ".coalesceWindow" );
+    if( null != coalesceWindow )
+    {
+      _config.setCoalesceWindow( Long.parseLong( coalesceWindow.trim() ) );
+    }
+    final String sampleThreshold = manager.getProperty( prefix + ".sampleThreshold" );
+    if( null != sampleThreshold )
+    {
+      _config.setSampleThreshold( Long.parseLong( sampleThreshold.trim() ) );
+    }
+    final String debugSampleRate = manager.getProperty( prefix + ".debugSampleRate" );
+    if( null != debugSampleRate )
+    {
+      _config.setDebugSampleRate( Integer.parseInt( debugSampleRate.trim() ) );
+    }
+    final String infoSampleRate = manager.getProperty( prefix + ".infoSampleRate" );
+    if( null != infoSampleRate )
+    {
+      _config.setInfoSampleRate( Integer.parseInt( infoSampleRate.trim() ) );
+    }
+    final String async = manager.getProperty( prefix + ".async" );
+    if( null != async )
+    {
+      _config.setAsync( "true".equals( async ) );
+    }
+    final String asyncQueueSize = manager.getProperty( prefix + ".asyncQueueSize" );
+    if( null != asyncQueueSize )
+    {
+      _config.setAsyncQueueSize( Integer.parseInt( asyncQueueSize.trim() ) );
+    }
+    final String asyncDropPolicy = manager.getProperty( prefix + ".asyncDropPolicy" );
+    if( null != asyncDropPolicy )
+    {
+      _config.setAsyncDropPolicy( GelfTargetConfig.DropPolicy.valueOf( asyncDropPolicy.trim().toUpperCase() ) );
+    }
+    final String asyncQueueMaxBytes = manager.getProperty( prefix + ".asyncQueueMaxBytes" );
+    if( null != asyncQueueMaxBytes )
+    {
+      _config.setAsyncQueueMaxBytes( Long.parseLong( asyncQueueMaxBytes.trim() ) );
+    }
+    final String jmxEnabled = manager.getProperty( prefix + ".jmxEnabled" );
+    if( null != jmxEnabled )
+    {
+      _config.setJmxEnabled( "true".equals( jmxEnabled ) );
+    }
+    final String loggerStatsSize = manager.getProperty( prefix + ".loggerStatsSize" );
+    if( null != loggerStatsSize )
+    {
+      _config.setLoggerStatsSize( Integer.parseInt( loggerStatsSize.trim() ) );
+    }
+    final String loggerStatsInterval = manager.getProperty( prefix + ".loggerStatsInterval" );
+    if( null != loggerStatsInterval )
+    {
+      _config.setLoggerStatsInterval( Long.parseLong( loggerStatsInterval.trim() ) );
+    }
+    final String healthReportInterval = manager.getProperty( prefix + ".healthReportInterval" );
+    if( null != healthReportInterval )
+    {
+      _config.setHealthReportInterval( Long.parseLong( healthReportInterval.trim() ) );
+    }
+    final String sequenceNumbers = manager.getProperty( prefix + ".sequenceNumbers" );
+    if( null != sequenceNumbers )
+    {
+      _config.setSequenceNumbers( "true".equals( sequenceNumbers ) );
+    }
+    final String transport = manager.getProperty( prefix + ".transport" );
+    if( null != transport )
+    {
+      _config.setTransport( GelfTargetConfig.Transport.valueOf( transport.trim().toUpperCase() ) );
+    }
+    final String socketPath = manager.getProperty( prefix + ".socketPath" );
+    if( null != socketPath )
+    {
+      _config.setSocketPath( socketPath.trim() );
+    }
+    final String httpUrl = manager.getProperty( prefix + ".httpUrl" );
+    if( null != httpUrl )
+    {
+      _config.setHttpUrl( httpUrl.trim() );
+    }
+    final String httpBatchSize = manager.getProperty( prefix + ".httpBatchSize" );
+    if( null != httpBatchSize )
+    {
+      _config.setHttpBatchSize( Integer.parseInt( httpBatchSize.trim() ) );
+    }
+    final String httpMaxInFlight = manager.getProperty( prefix + ".httpMaxInFlight" );
+    if( null != httpMaxInFlight )
+    {
+      _config.setHttpMaxInFlight( Integer.parseInt( httpMaxInFlight.trim() ) );
+    }
+    final String httpRetries = manager.getProperty( prefix + ".httpRetries" );
+    if( null != httpRetries )
+    {
+      _config.setHttpRetries( Integer.parseInt( httpRetries.trim() ) );
+    }
 
     final String level = manager.getProperty( prefix + ".level" );
     if( null != level )
@@ -142,6 +237,7 @@ public class GelfHandler
     final String renderedMessage = record.getMessage();
     final SyslogLevel level = levelToSyslogLevel( record.getLevel() );
     final GelfMessage message = _connection.newMessage( level, renderedMessage, record.getMillis() );
+    message.setLoggerName( record.getLoggerName() );
 
     for( final Map.Entry<String, String> entry : _config.getAdditionalFields().entrySet() )
     {
@@ -0,0 +1,127 @@
+package gelf4j.reactive;
+
+import gelf4j.GelfConnection;
+import gelf4j.GelfMessage;
+import gelf4j.GelfSendResult;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Sends the messages delivered to a subscriber in batches using {@link GelfConnection#sendAll}.
+ * Messages are collected while the previous batch is being sent and are then encoded and written together, so
+ * a batch holds at most the demand that the subscriber has outstanding. Batches are sent on the executor so that
+ * the publisher is never blocked by the connection. A batch that can not be sent, or whose results can not be
+ * delivered, does not stop the batches that follow.
+ */
+final class GelfBatchSender
+{
+  static final int DEFAULT_MAX_IN_FLIGHT = 256;
+  // The milliseconds that the default sending thread waits for another batch before exiting
+  private static final long IDLE_TIMEOUT = 1000;
+
+  private final GelfConnection _connection;
+  private final Consumer<GelfSendResult> _listener;
+  private final Executor _executor;
+  private final Queue<GelfMessage> _messages = new ConcurrentLinkedQueue<GelfMessage>();
+  private final AtomicInteger _wip = new AtomicInteger();
+  private final AtomicLong _batchCount = new AtomicLong();
+
+  /**
+   * @param connection the connection used to send messages.
+   * @param executor   the executor that sends batches, or null to send them on a dedicated daemon thread. Sending
+   *                   blocks on the connection so the executor should not be a shared compute pool.
+   * @param listener   invoked with the result of each message in the order the messages were added.
+   */
+  GelfBatchSender( final GelfConnection connection,
+                   final Executor executor,
+                   final Consumer<GelfSendResult> listener )
+  {
+    _connection = connection;
+    _executor = null != executor ? executor : newExecutor();
+    _listener = listener;
+  }
+
+  void add( final GelfMessage message )
+  {
+    _messages.offer( message );
+    if ( 0 == _wip.getAndIncrement() )
+    {
+      _executor.execute( this::drain );
+    }
+  }
+
+  /**
+   * @return the number of batches sent.
+   */
+  long getBatchCount()
+  {
+    return _batchCount.get();
+  }
+
+  private void drain()
+  {
+    final List<GelfMessage> batch = new ArrayList<GelfMessage>();
+    int missed = 1;
+    do
+    {
+      GelfMessage message;
+      while ( null != ( message = _messages.poll() ) )
+      {
+        batch.add( message );
+      }
+      if ( !batch.isEmpty() )
+      {
+        _batchCount.incrementAndGet();
+        List<GelfSendResult> results;
+        try
+        {
+          results = _connection.sendAll( batch );
+        }
+        catch ( final RuntimeException re )
+        {
+          results = Collections.nCopies( batch.size(), GelfSendResult.failed() );
+        }
+        batch.clear();
+        // Results may request more messages which are collected into the next batch
+        for ( final GelfSendResult result : results )
+        {
+          try
+          {
+            _listener.accept( result );
+          }
+          catch ( final RuntimeException re )
+          {
+            //Ignored. The results of the remaining messages must still be delivered
+          }
+        }
+      }
+      missed = _wip.addAndGet( -missed );
+    }
+    while ( 0 != missed );
+  }
+
+  /**
+   * @return an executor with a single daemon thread that exits when there are no batches to send.
+   */
+  private static Executor newExecutor()
+  {
+    final ThreadPoolExecutor executor =
+      new ThreadPoolExecutor( 1, 1, IDLE_TIMEOUT, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+        final Thread thread = new Thread( r, "gelf4j-batch-sender" );
+        thread.setDaemon( true );
+        return thread;
+      } );
+    executor.allowCoreThreadTimeOut( true );
+    return executor;
+  }
+}
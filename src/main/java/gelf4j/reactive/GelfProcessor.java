@@ -0,0 +1,300 @@
+package gelf4j.reactive;
+
+import gelf4j.GelfConnection;
+import gelf4j.GelfMessage;
+import gelf4j.GelfSendResult;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.reactivestreams.Processor;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * A Reactive Streams processor that sends every message it receives to a GELF server and publishes the result
+ * of each send to a single downstream subscriber.
+ * Messages are requested from upstream only when the downstream subscriber has demand for the results and the
+ * number of messages in flight on the connection is below the limit, so backpressure from either the connection
+ * or the downstream subscriber propagates to the upstream publisher. Messages are encoded and sent in batches
+ * using {@link GelfConnection#sendAll} and results are published in the order the messages were received.
+ */
+public class GelfProcessor
+  implements Processor<GelfMessage, GelfSendResult>
+{
+  public static final int DEFAULT_MAX_IN_FLIGHT = GelfBatchSender.DEFAULT_MAX_IN_FLIGHT;
+
+  private final GelfBatchSender _batchSender;
+  private final int _maxInFlight;
+  private final Queue<GelfSendResult> _results = new ConcurrentLinkedQueue<GelfSendResult>();
+  private final AtomicLong _requested = new AtomicLong();
+  private final AtomicInteger _inFlight = new AtomicInteger();
+  private final AtomicInteger _wip = new AtomicInteger();
+  private volatile Subscription _upstream;
+  private volatile Subscriber<? super GelfSendResult> _downstream;
+  private volatile boolean _upstreamDone;
+  private volatile boolean _cancelled;
+  private volatile Throwable _error;
+  private volatile Throwable _protocolError;
+  // Demand requested from upstream that has not yet been delivered
+  private final AtomicLong _upstreamOutstanding = new AtomicLong();
+  // Only accessed within drain()
+  private boolean _terminated;
+
+  /**
+   * Create a processor that keeps up to {@link #DEFAULT_MAX_IN_FLIGHT} messages in flight.
+   *
+   * @param connection the connection used to send messages.
+   */
+  public GelfProcessor( final GelfConnection connection )
+  {
+    this( connection, DEFAULT_MAX_IN_FLIGHT );
+  }
+
+  /**
+   * @param connection  the connection used to send messages.
+   * @param maxInFlight the maximum number of messages requested but not yet transmitted.
+   */
+  public GelfProcessor( final GelfConnection connection, final int maxInFlight )
+  {
+    this( connection, maxInFlight, null );
+  }
+
+  /**
+   * @param connection  the connection used to send messages.
+   * @param maxInFlight the maximum number of messages requested but not yet transmitted.
+   * @param executor    the executor that sends batches, or null to send them on a dedicated daemon thread.
+   *                    Sending blocks on the connection so this should not be a shared compute pool.
+   */
+  public GelfProcessor( final GelfConnection connection, final int maxInFlight, final Executor executor )
+  {
+    _batchSender = new GelfBatchSender( connection, executor, this::onResult );
+    _maxInFlight = Math.max( 1, maxInFlight );
+  }
+
+  @Override
+  public void subscribe( final Subscriber<? super GelfSendResult> subscriber )
+  {
+    if ( null == subscriber )
+    {
+      throw new NullPointerException( "subscriber" );
+    }
+    synchronized ( this )
+    {
+      if ( null != _downstream )
+      {
+        subscriber.onSubscribe( new NoopSubscription() );
+        subscriber.onError( new IllegalStateException( "GelfProcessor supports a single subscriber" ) );
+        return;
+      }
+      _downstream = subscriber;
+    }
+    subscriber.onSubscribe( new DownstreamSubscription() );
+    drain();
+  }
+
+  @Override
+  public void onSubscribe( final Subscription subscription )
+  {
+    if ( null == subscription )
+    {
+      throw new NullPointerException( "subscription" );
+    }
+    synchronized ( this )
+    {
+      if ( null != _upstream )
+      {
+        subscription.cancel();
+        return;
+      }
+      _upstream = subscription;
+    }
+    drain();
+  }
+
+  @Override
+  public void onNext( final GelfMessage message )
+  {
+    if ( null == message )
+    {
+      throw new NullPointerException( "message" );
+    }
+    // Counted as in flight before no longer outstanding so capacity is never over-estimated
+    _inFlight.incrementAndGet();
+    _upstreamOutstanding.decrementAndGet();
+    _batchSender.add( message );
+  }
+
+  @Override
+  public void onError( final Throwable throwable )
+  {
+    if ( null == throwable )
+    {
+      throw new NullPointerException( "throwable" );
+    }
+    _error = throwable;
+    _upstreamDone = true;
+    drain();
+  }
+
+  @Override
+  public void onComplete()
+  {
+    _upstreamDone = true;
+    drain();
+  }
+
+  private void onResult( final GelfSendResult result )
+  {
+    _results.offer( result );
+    _inFlight.decrementAndGet();
+    drain();
+  }
+
+  /**
+   * Deliver results downstream, signal termination and request more messages from upstream.
+   * Only one thread executes the body at a time which ensures that the signals are serialized.
+   */
+  private void drain()
+  {
+    if ( 0 != _wip.getAndIncrement() )
+    {
+      return;
+    }
+    int missed = 1;
+    do
+    {
+      final Subscriber<? super GelfSendResult> downstream = _downstream;
+      if ( null != downstream && !_terminated )
+      {
+        final Throwable protocolError = _protocolError;
+        if ( null != protocolError )
+        {
+          _terminated = true;
+          _results.clear();
+          downstream.onError( protocolError );
+        }
+        else if ( _cancelled )
+        {
+          _results.clear();
+        }
+        else
+        {
+          final long requested = _requested.get();
+          long emitted = 0;
+          while ( emitted != requested )
+          {
+            final GelfSendResult result = _results.poll();
+            if ( null == result )
+            {
+              break;
+            }
+            downstream.onNext( result );
+            emitted++;
+          }
+          if ( 0 != emitted && Long.MAX_VALUE != requested )
+          {
+            _requested.addAndGet( -emitted );
+          }
+
+          if ( _upstreamDone && 0 == _inFlight.get() && _results.isEmpty() )
+          {
+            _terminated = true;
+            final Throwable error = _error;
+            if ( null != error )
+            {
+              downstream.onError( error );
+            }
+            else
+            {
+              downstream.onComplete();
+            }
+          }
+          else
+          {
+            requestUpstream();
+          }
+        }
+      }
+      missed = _wip.addAndGet( -missed );
+    }
+    while ( 0 != missed );
+  }
+
+  private void requestUpstream()
+  {
+    final Subscription upstream = _upstream;
+    if ( null != upstream && !_upstreamDone )
+    {
+      final long capacity = Math.min( _maxInFlight, _requested.get() - _results.size() );
+      final long wanted = capacity - _inFlight.get() - _upstreamOutstanding.get();
+      if ( wanted > 0 )
+      {
+        _upstreamOutstanding.addAndGet( wanted );
+        upstream.request( wanted );
+      }
+    }
+  }
+
+  private void cancelUpstream()
+  {
+    final Subscription upstream = _upstream;
+    if ( null != upstream )
+    {
+      upstream.cancel();
+    }
+  }
+
+  private final class DownstreamSubscription
+    implements Subscription
+  {
+    @Override
+    public void request( final long n )
+    {
+      if ( n <= 0 )
+      {
+        _protocolError = new IllegalArgumentException( "Non-positive request of " + n + " results" );
+        _cancelled = true;
+        cancelUpstream();
+        drain();
+        return;
+      }
+      long current;
+      long updated;
+      do
+      {
+        current = _requested.get();
+        updated = current + n;
+        if ( updated < 0 )
+        {
+          updated = Long.MAX_VALUE;
+        }
+      }
+      while ( !_requested.compareAndSet( current, updated ) );
+      drain();
+    }
+
+    @Override
+    public void cancel()
+    {
+      _cancelled = true;
+      cancelUpstream();
+      drain();
+    }
+  }
+
+  private static final class NoopSubscription
+    implements Subscription
+  {
+    @Override
+    public void request( final long n )
+    {
+    }
+
+    @Override
+    public void cancel()
+    {
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package gelf4j.reactive;
+
+import gelf4j.GelfConnection;
+import gelf4j.GelfMessage;
+import gelf4j.GelfSendResult;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * A Reactive Streams subscriber that sends every message it receives to a GELF server.
+ * The subscriber never requests more than a fixed number of messages that have not yet been transmitted so a fast
+ * publisher is slowed to the rate at which the connection can transmit rather than having messages dropped. Demand
+ * is replenished in batches as messages are transmitted. The messages are encoded and sent in batches using
+ * {@link GelfConnection#sendAll} so sampling and repeat coalescing are not applied to them.
+ */
+public class GelfSubscriber
+  implements Subscriber<GelfMessage>
+{
+  public static final int DEFAULT_MAX_IN_FLIGHT = GelfBatchSender.DEFAULT_MAX_IN_FLIGHT;
+
+  private final int _maxInFlight;
+  private final int _replenishThreshold;
+  private final GelfBatchSender _batchSender;
+  private final AtomicInteger _inFlight = new AtomicInteger();
+  private final AtomicLong _sentCount = new AtomicLong();
+  private final AtomicLong _droppedCount = new AtomicLong();
+  private final AtomicLong _failedCount = new AtomicLong();
+  private final CompletableFuture<Void> _completion = new CompletableFuture<Void>();
+  private Subscription _subscription;
+  private int _completedSinceRequest;
+  private volatile boolean _done;
+  private volatile Throwable _error;
+
+  /**
+   * Create a subscriber that keeps up to {@link #DEFAULT_MAX_IN_FLIGHT} messages in flight.
+   *
+   * @param connection the connection used to send messages.
+   */
+  public GelfSubscriber( final GelfConnection connection )
+  {
+    this( connection, DEFAULT_MAX_IN_FLIGHT );
+  }
+
+  /**
+   * @param connection  the connection used to send messages.
+   * @param maxInFlight the maximum number of messages requested but not yet transmitted. The messages are sent
+   *                    directly rather than through the asynchronous send queue so this also bounds the size of
+   *                    a batch.
+   */
+  public GelfSubscriber( final GelfConnection connection, final int maxInFlight )
+  {
+    this( connection, maxInFlight, null );
+  }
+
+  /**
+   * @param connection  the connection used to send messages.
+   * @param maxInFlight the maximum number of messages requested but not yet transmitted. The messages are sent
+   *                    directly rather than through the asynchronous send queue so this also bounds the size of
+   *                    a batch.
+   * @param executor    the executor that sends batches, or null to send them on a dedicated daemon thread.
+   *                    Sending blocks on the connection so this should not be a shared compute pool.
+   */
+  public GelfSubscriber( final GelfConnection connection, final int maxInFlight, final Executor executor )
+  {
+    _maxInFlight = Math.max( 1, maxInFlight );
+    _replenishThreshold = Math.max( 1, _maxInFlight / 2 );
+    _batchSender = new GelfBatchSender( connection, executor, this::onResult );
+  }
+
+  @Override
+  public void onSubscribe( final Subscription subscription )
+  {
+    if ( null == subscription )
+    {
+      throw new NullPointerException( "subscription" );
+    }
+    synchronized ( this )
+    {
+      if ( null != _subscription )
+      {
+        subscription.cancel();
+        return;
+      }
+      _subscription = subscription;
+      subscription.request( _maxInFlight );
+    }
+  }
+
+  @Override
+  public void onNext( final GelfMessage message )
+  {
+    if ( null == message )
+    {
+      throw new NullPointerException( "message" );
+    }
+    _inFlight.incrementAndGet();
+    _batchSender.add( message );
+  }
+
+  @Override
+  public void onError( final Throwable throwable )
+  {
+    if ( null == throwable )
+    {
+      throw new NullPointerException( "throwable" );
+    }
+    _error = throwable;
+    _done = true;
+    completeIfIdle();
+  }
+
+  @Override
+  public void onComplete()
+  {
+    _done = true;
+    completeIfIdle();
+  }
+
+  /**
+   * Cancel the subscription. Messages already in flight are still transmitted.
+   */
+  public void cancel()
+  {
+    final Subscription subscription;
+    synchronized ( this )
+    {
+      subscription = _subscription;
+    }
+    if ( null != subscription )
+    {
+      subscription.cancel();
+    }
+    onComplete();
+  }
+
+  /**
+   * @return a future completed once the publisher has terminated and all messages have been transmitted.
+   * The future completes exceptionally if the publisher signalled an error.
+   */
+  public CompletableFuture<Void> getCompletion()
+  {
+    return _completion;
+  }
+
+  public int getInFlightCount()
+  {
+    return _inFlight.get();
+  }
+
+  public long getSentCount()
+  {
+    return _sentCount.get();
+  }
+
+  public long getDroppedCount()
+  {
+    return _droppedCount.get();
+  }
+
+  public long getFailedCount()
+  {
+    return _failedCount.get();
+  }
+
+  /**
+   * @return the number of batches in which messages were sent.
+   */
+  public long getBatchCount()
+  {
+    return _batchSender.getBatchCount();
+  }
+
+  private void onResult( final GelfSendResult result )
+  {
+    switch ( result.getOutcome() )
+    {
+      case SENT:
+        _sentCount.incrementAndGet();
+        break;
+      case DROPPED:
+        _droppedCount.incrementAndGet();
+        break;
+      default:
+        _failedCount.incrementAndGet();
+        break;
+    }
+    _inFlight.decrementAndGet();
+    if ( _done )
+    {
+      completeIfIdle();
+    }
+    else
+    {
+      replenish();
+    }
+  }
+
+  private synchronized void replenish()
+  {
+    // Requests are batched to avoid a round trip to the publisher for every transmitted message
+    _completedSinceRequest++;
+    if ( _completedSinceRequest >= _replenishThreshold )
+    {
+      final int count = _completedSinceRequest;
+      _completedSinceRequest = 0;
+      _subscription.request( count );
+    }
+  }
+
+  private void completeIfIdle()
+  {
+    if ( 0 == _inFlight.get() )
+    {
+      final Throwable error = _error;
+      if ( null != error )
+      {
+        _completion.completeExceptionally( error );
+      }
+      else
+      {
+        _completion.complete( null );
+      }
+    }
+  }
+}
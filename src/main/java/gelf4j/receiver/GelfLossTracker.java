@@ -0,0 +1,308 @@
+package gelf4j.receiver;
+
+import gelf4j.GelfConnection;
+import gelf4j.GelfMessage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Detects lost, reordered and duplicated messages using the sequence numbers added by connections with
+ * sequence numbers enabled, and the chunks lost from chunked messages.
+ * A message that arrives after a later message is counted as reordered if it is no more than the window behind
+ * the latest message, otherwise it is counted as lost. Sequence numbers start from the first message received
+ * from each sender so messages sent before the receiver started are not counted as lost.
+ */
+public final class GelfLossTracker
+{
+  /**
+   * The default number of sequence numbers a message may lag the latest message before it is considered lost.
+   */
+  public static final long DEFAULT_WINDOW = 10000;
+
+  private final long _window;
+  private final Map<String, Sender> _senders = new HashMap<String, Sender>();
+  private long _unsequencedCount;
+  private long _chunkedMessageCount;
+  private long _incompleteMessageCount;
+  private long _expectedChunkCount;
+  private long _missingChunkCount;
+
+  public GelfLossTracker()
+  {
+    this( DEFAULT_WINDOW );
+  }
+
+  public GelfLossTracker( final long window )
+  {
+    _window = window;
+  }
+
+  /**
+   * Record a decoded message, counting it as unsequenced if it has no sender identifier or sequence number.
+   */
+  public synchronized void record( final GelfMessage message )
+  {
+    final Map<String, Object> fields = message.getAdditionalFields();
+    final Object senderId = fields.get( GelfConnection.SENDER_ID_FIELD );
+    final Object sequence = fields.get( GelfConnection.SEQUENCE_FIELD );
+    if ( senderId instanceof String && sequence instanceof Number )
+    {
+      record( (String) senderId, ( (Number) sequence ).longValue() );
+    }
+    else
+    {
+      _unsequencedCount++;
+    }
+  }
+
+  public synchronized void record( final String senderId, final long sequence )
+  {
+    Sender sender = _senders.get( senderId );
+    if ( null == sender )
+    {
+      sender = new Sender( sequence );
+      _senders.put( senderId, sender );
+    }
+    sender.record( sequence, _window );
+  }
+
+  /**
+   * Record the chunks received for a chunked message, whether or not it was completed.
+   *
+   * @param chunkCount    the number of chunks in the message.
+   * @param receivedCount the number of distinct chunks received.
+   */
+  public synchronized void recordChunks( final int chunkCount, final int receivedCount )
+  {
+    _chunkedMessageCount++;
+    _expectedChunkCount += chunkCount;
+    if ( receivedCount < chunkCount )
+    {
+      _incompleteMessageCount++;
+      _missingChunkCount += chunkCount - receivedCount;
+    }
+  }
+
+  public synchronized int getSenderCount()
+  {
+    return _senders.size();
+  }
+
+  /**
+   * @return the number of sequenced messages received, excluding duplicates.
+   */
+  public synchronized long getReceivedCount()
+  {
+    long count = 0;
+    for ( final Sender sender : _senders.values() )
+    {
+      count += sender._receivedCount;
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of sequence numbers that have not been received, including those still within the window.
+   */
+  public synchronized long getLostCount()
+  {
+    long count = 0;
+    for ( final Sender sender : _senders.values() )
+    {
+      count += sender.getLostCount();
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of times a message was received with a sequence number more than one after the latest.
+   */
+  public synchronized long getGapCount()
+  {
+    long count = 0;
+    for ( final Sender sender : _senders.values() )
+    {
+      count += sender._gapCount;
+    }
+    return count;
+  }
+
+  public synchronized long getReorderedCount()
+  {
+    long count = 0;
+    for ( final Sender sender : _senders.values() )
+    {
+      count += sender._reorderedCount;
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of messages received with a sequence number that had already been received or had
+   * been considered lost.
+   */
+  public synchronized long getDuplicateCount()
+  {
+    long count = 0;
+    for ( final Sender sender : _senders.values() )
+    {
+      count += sender._duplicateCount;
+    }
+    return count;
+  }
+
+  public synchronized long getUnsequencedCount()
+  {
+    return _unsequencedCount;
+  }
+
+  /**
+   * @return the fraction of sequence numbers that have not been received.
+   */
+  public synchronized double getLossRate()
+  {
+    final long lost = getLostCount();
+    final long expected = getReceivedCount() + lost;
+    return 0 == expected ? 0 : (double) lost / expected;
+  }
+
+  public synchronized long getChunkedMessageCount()
+  {
+    return _chunkedMessageCount;
+  }
+
+  public synchronized long getIncompleteMessageCount()
+  {
+    return _incompleteMessageCount;
+  }
+
+  /**
+   * @return the fraction of the chunks of chunked messages that were not received.
+   */
+  public synchronized double getChunkLossRate()
+  {
+    return 0 == _expectedChunkCount ? 0 : (double) _missingChunkCount / _expectedChunkCount;
+  }
+
+  /**
+   * @return a human readable summary of the losses of each sender.
+   */
+  public synchronized String describe()
+  {
+    final StringBuilder sb = new StringBuilder();
+    final List<String> senderIds = new ArrayList<String>( _senders.keySet() );
+    senderIds.sort( null );
+    for ( final String senderId : senderIds )
+    {
+      final Sender sender = _senders.get( senderId );
+      sb.append( senderId ).append( ": " ).append( sender._receivedCount ).append( " received, " )
+        .append( sender.getLostCount() ).append( " lost in " ).append( sender._gapCount ).append( " gaps, " )
+        .append( sender._reorderedCount ).append( " reordered, " )
+        .append( sender._duplicateCount ).append( " duplicates, sequence " )
+        .append( sender._firstSequence ).append( '-' ).append( sender._latestSequence ).append( '\n' );
+    }
+    sb.append( String.format( "Total: %d received, %d lost (%.3f%%), %d reordered, %d duplicates, %d unsequenced%n",
+                              getReceivedCount(),
+                              getLostCount(),
+                              getLossRate() * 100,
+                              getReorderedCount(),
+                              getDuplicateCount(),
+                              getUnsequencedCount() ) );
+    sb.append( String.format( "Chunks: %d chunked messages, %d incomplete, %.3f%% of chunks lost%n",
+                              _chunkedMessageCount,
+                              _incompleteMessageCount,
+                              getChunkLossRate() * 100 ) );
+    return sb.toString();
+  }
+
+  private static final class Sender
+  {
+    private final long _firstSequence;
+    private long _latestSequence;
+    private long _receivedCount;
+    private long _gapCount;
+    private long _reorderedCount;
+    private long _duplicateCount;
+    private long _expiredCount;
+    // The ranges of sequence numbers not yet received within the window, keyed by the first missing number
+    private final TreeMap<Long, Long> _missing = new TreeMap<Long, Long>();
+
+    Sender( final long firstSequence )
+    {
+      _firstSequence = firstSequence;
+      _latestSequence = firstSequence - 1;
+    }
+
+    void record( final long sequence, final long window )
+    {
+      if ( sequence > _latestSequence )
+      {
+        if ( sequence > _latestSequence + 1 )
+        {
+          _gapCount++;
+          _missing.put( _latestSequence + 1, sequence - 1 );
+        }
+        _latestSequence = sequence;
+        _receivedCount++;
+        expire( window );
+      }
+      else
+      {
+        final Map.Entry<Long, Long> range = _missing.floorEntry( sequence );
+        if ( null != range && range.getValue() >= sequence )
+        {
+          final long start = range.getKey();
+          final long end = range.getValue();
+          _missing.remove( start );
+          if ( start < sequence )
+          {
+            _missing.put( start, sequence - 1 );
+          }
+          if ( end > sequence )
+          {
+            _missing.put( sequence + 1, end );
+          }
+          _reorderedCount++;
+          _receivedCount++;
+        }
+        else
+        {
+          _duplicateCount++;
+        }
+      }
+    }
+
+    long getLostCount()
+    {
+      long count = _expiredCount;
+      for ( final Map.Entry<Long, Long> range : _missing.entrySet() )
+      {
+        count += range.getValue() - range.getKey() + 1;
+      }
+      return count;
+    }
+
+    private void expire( final long window )
+    {
+      final long oldest = _latestSequence - window;
+      while ( !_missing.isEmpty() && _missing.firstKey() < oldest )
+      {
+        final Map.Entry<Long, Long> range = _missing.pollFirstEntry();
+        final long start = range.getKey();
+        final long end = range.getValue();
+        if ( end < oldest )
+        {
+          _expiredCount += end - start + 1;
+        }
+        else
+        {
+          _expiredCount += oldest - start;
+          _missing.put( oldest, end );
+        }
+      }
+    }
+  }
+}
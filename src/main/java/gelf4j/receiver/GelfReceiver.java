@@ -0,0 +1,478 @@
+package gelf4j.receiver;
+
+import gelf4j.GelfDecoder;
+import gelf4j.GelfHistogram;
+import gelf4j.GelfMessage;
+import gelf4j.GelfTargetConfig;
+import gelf4j.SimpleJsonCodec;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A local GELF server that receives messages over UDP and TCP, for use as a stand-in for Graylog in tests and
+ * load tests. UDP datagrams may be chunked in the chunk format selected by {@link #setCompressedChunking(boolean)}
+ * and compressed using gzip, zlib or not at all. TCP messages are json terminated by a null byte. Messages that
+ * can not be decoded by {@link GelfDecoder} or exceed {@link GelfDecoder#MAX_MESSAGE_SIZE} are counted as invalid
+ * and are not passed to the listener.
+ */
+public final class GelfReceiver
+  implements Closeable
+{
+  /**
+   * Receives the messages decoded by the receiver. Invoked from the receiving threads so must be thread safe.
+   */
+  public interface Listener
+  {
+    void onMessage( GelfMessage message );
+  }
+
+  private static final int MAX_DATAGRAM_SIZE = 65536;
+
+  private final SimpleJsonCodec _codec = new SimpleJsonCodec();
+  private final LongAdder _messageCount = new LongAdder();
+  private final LongAdder _packetCount = new LongAdder();
+  private final LongAdder _byteCount = new LongAdder();
+  private final LongAdder _invalidCount = new LongAdder();
+  private final LongAdder _incompleteCount = new LongAdder();
+  private final GelfHistogram _latency = new GelfHistogram();
+  private final GelfLossTracker _lossTracker = new GelfLossTracker();
+  private final AtomicInteger _connectionId = new AtomicInteger();
+  private final List<Closeable> _closeables = new ArrayList<Closeable>();
+  private final List<Thread> _threads = new ArrayList<Thread>();
+  private String _host = "0.0.0.0";
+  private int _port = GelfTargetConfig.DEFAULT_PORT;
+  private boolean _udpEnabled = true;
+  private boolean _tcpEnabled = true;
+  private boolean _compressedChunking = true;
+  private long _chunkTimeout = GelfDecoder.DEFAULT_CHUNK_TIMEOUT;
+  private Listener _listener;
+  private volatile boolean _running;
+
+  public String getHost()
+  {
+    return _host;
+  }
+
+  public void setHost( final String host )
+  {
+    _host = host;
+  }
+
+  public int getPort()
+  {
+    return _port;
+  }
+
+  /**
+   * The port on which both UDP and TCP messages are received.
+   */
+  public void setPort( final int port )
+  {
+    _port = port;
+  }
+
+  public boolean isUdpEnabled()
+  {
+    return _udpEnabled;
+  }
+
+  public void setUdpEnabled( final boolean udpEnabled )
+  {
+    _udpEnabled = udpEnabled;
+  }
+
+  public boolean isTcpEnabled()
+  {
+    return _tcpEnabled;
+  }
+
+  public void setTcpEnabled( final boolean tcpEnabled )
+  {
+    _tcpEnabled = tcpEnabled;
+  }
+
+  public boolean isCompressedChunking()
+  {
+    return _compressedChunking;
+  }
+
+  /**
+   * Set to false to expect the chunk format used by Graylog2 servers prior to 0.9.6.
+   */
+  public void setCompressedChunking( final boolean compressedChunking )
+  {
+    _compressedChunking = compressedChunking;
+  }
+
+  /**
+   * @return the time in milliseconds after the first chunk of a message is received at which the message is
+   * discarded if any chunks are missing.
+   */
+  public long getChunkTimeout()
+  {
+    return _chunkTimeout;
+  }
+
+  public void setChunkTimeout( final long chunkTimeout )
+  {
+    _chunkTimeout = chunkTimeout;
+  }
+
+  public void setListener( final Listener listener )
+  {
+    _listener = listener;
+  }
+
+  /**
+   * Bind the sockets and start receiving messages on background threads.
+   */
+  public synchronized void start()
+    throws IOException
+  {
+    _running = true;
+    try
+    {
+      if ( _udpEnabled )
+      {
+        final DatagramSocket socket = new DatagramSocket( new InetSocketAddress( _host, _port ) );
+        _closeables.add( socket );
+        // Wake up periodically to discard incomplete messages even when no datagrams arrive
+        socket.setSoTimeout( (int) Math.max( 1, Math.min( _chunkTimeout, 1000 ) ) );
+        _threads.add( startThread( "gelf4j-receiver-udp", () -> receiveDatagrams( socket ) ) );
+      }
+      if ( _tcpEnabled )
+      {
+        final ServerSocket serverSocket = new ServerSocket();
+        _closeables.add( serverSocket );
+        serverSocket.bind( new InetSocketAddress( _host, _port ) );
+        _threads.add( startThread( "gelf4j-receiver-tcp", () -> acceptConnections( serverSocket ) ) );
+      }
+    }
+    catch ( final IOException ioe )
+    {
+      close();
+      throw ioe;
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    final List<Closeable> closeables;
+    final List<Thread> threads;
+    synchronized ( this )
+    {
+      _running = false;
+      closeables = new ArrayList<Closeable>( _closeables );
+      _closeables.clear();
+      threads = new ArrayList<Thread>( _threads );
+      _threads.clear();
+    }
+    for ( final Closeable closeable : closeables )
+    {
+      try
+      {
+        closeable.close();
+      }
+      catch ( final IOException ioe )
+      {
+        //Ignored
+      }
+    }
+    // A socket is not released until the thread blocked on it has returned, so wait for the port to be free
+    for ( final Thread thread : threads )
+    {
+      try
+      {
+        thread.join( 1000 );
+      }
+      catch ( final InterruptedException ie )
+      {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the number of valid messages received.
+   */
+  public long getMessageCount()
+  {
+    return _messageCount.sum();
+  }
+
+  /**
+   * @return the number of datagrams and TCP frames received.
+   */
+  public long getPacketCount()
+  {
+    return _packetCount.sum();
+  }
+
+  public long getByteCount()
+  {
+    return _byteCount.sum();
+  }
+
+  /**
+   * @return the number of messages that could not be decompressed or were not valid GELF json.
+   */
+  public long getInvalidCount()
+  {
+    return _invalidCount.sum();
+  }
+
+  /**
+   * @return the number of chunked messages discarded because chunks were missing when the chunk timeout expired.
+   */
+  public long getIncompleteCount()
+  {
+    return _incompleteCount.sum();
+  }
+
+  /**
+   * @return the time in milliseconds between the timestamp of each message and its receipt.
+   */
+  public GelfHistogram getLatency()
+  {
+    return _latency;
+  }
+
+  public GelfLossTracker getLossTracker()
+  {
+    return _lossTracker;
+  }
+
+  private Thread startThread( final String name, final Runnable runnable )
+  {
+    final Thread thread = new Thread( runnable, name );
+    thread.setDaemon( true );
+    thread.start();
+    return thread;
+  }
+
+  private GelfDecoder newDecoder()
+  {
+    final GelfDecoder decoder =
+      new GelfDecoder( _compressedChunking, _chunkTimeout, GelfDecoder.DEFAULT_MAX_PENDING_MESSAGES, _codec );
+    decoder.setChunkListener( ( chunkCount, receivedCount ) -> {
+      if ( receivedCount < chunkCount )
+      {
+        _incompleteCount.increment();
+      }
+      _lossTracker.recordChunks( chunkCount, receivedCount );
+    } );
+    return decoder;
+  }
+
+  private void receiveDatagrams( final DatagramSocket socket )
+  {
+    final GelfDecoder decoder = newDecoder();
+    final byte[] buffer = new byte[ MAX_DATAGRAM_SIZE ];
+    final DatagramPacket packet = new DatagramPacket( buffer, buffer.length );
+    try
+    {
+      while ( _running )
+      {
+        try
+        {
+          packet.setLength( buffer.length );
+          socket.receive( packet );
+          if ( !_running )
+          {
+            // Closing the socket may complete a pending receive with an empty datagram
+            break;
+          }
+          _packetCount.increment();
+          _byteCount.add( packet.getLength() );
+          final GelfMessage message;
+          try
+          {
+            message = decoder.decode( buffer, 0, packet.getLength(), System.currentTimeMillis() );
+          }
+          catch ( final IOException ioe )
+          {
+            _invalidCount.increment();
+            continue;
+          }
+          if ( null != message )
+          {
+            onMessage( message );
+          }
+        }
+        catch ( final SocketTimeoutException ste )
+        {
+          //Ignored. Allows incomplete messages to be expired
+        }
+        catch ( final IOException ioe )
+        {
+          // The socket is closed when the receiver is closed
+          break;
+        }
+        finally
+        {
+          decoder.expire( System.currentTimeMillis() );
+        }
+      }
+    }
+    finally
+    {
+      decoder.close();
+    }
+  }
+
+  private void acceptConnections( final ServerSocket serverSocket )
+  {
+    while ( _running )
+    {
+      try
+      {
+        final Socket socket = serverSocket.accept();
+        synchronized ( this )
+        {
+          if ( !_running )
+          {
+            socket.close();
+            break;
+          }
+          _closeables.add( socket );
+        }
+        startThread( "gelf4j-receiver-tcp-" + _connectionId.incrementAndGet(), () -> receiveFrames( socket ) );
+      }
+      catch ( final IOException ioe )
+      {
+        // The socket is closed when the receiver is closed
+        break;
+      }
+    }
+  }
+
+  private void receiveFrames( final Socket socket )
+  {
+    final GelfDecoder decoder = newDecoder();
+    try
+    {
+      final InputStream inputStream = socket.getInputStream();
+      final byte[] buffer = new byte[ 8192 ];
+      byte[] frame = new byte[ 8192 ];
+      int size = 0;
+      // The bytes of a frame that exceeds the maximum size are discarded until its terminator
+      long discarded = 0;
+      int count;
+      while ( -1 != ( count = inputStream.read( buffer, 0, buffer.length ) ) )
+      {
+        int start = 0;
+        while ( start < count )
+        {
+          int end = start;
+          while ( end < count && 0 != buffer[ end ] )
+          {
+            end++;
+          }
+          final int length = end - start;
+          if ( 0 != discarded )
+          {
+            discarded += length;
+          }
+          else if ( size + length > GelfDecoder.MAX_MESSAGE_SIZE )
+          {
+            discarded = size + length;
+            size = 0;
+          }
+          else
+          {
+            if ( size + length > frame.length )
+            {
+              frame = Arrays.copyOf( frame,
+                                     Math.min( Math.max( size + length, frame.length * 2 ),
+                                               GelfDecoder.MAX_MESSAGE_SIZE ) );
+            }
+            System.arraycopy( buffer, start, frame, size, length );
+            size += length;
+          }
+          if ( end == count )
+          {
+            // The frame continues in the next block
+            break;
+          }
+          start = end + 1;
+          _packetCount.increment();
+          if ( 0 != discarded )
+          {
+            _byteCount.add( discarded + 1 );
+            _invalidCount.increment();
+            discarded = 0;
+          }
+          else
+          {
+            _byteCount.add( size + 1 );
+            final GelfMessage message;
+            try
+            {
+              message = decoder.decodePayload( frame, 0, size );
+            }
+            catch ( final IOException ioe )
+            {
+              _invalidCount.increment();
+              continue;
+            }
+            finally
+            {
+              size = 0;
+            }
+            onMessage( message );
+          }
+        }
+      }
+    }
+    catch ( final IOException ioe )
+    {
+      //Ignored. The connection was closed
+    }
+    finally
+    {
+      decoder.close();
+      synchronized ( this )
+      {
+        _closeables.remove( socket );
+      }
+      try
+      {
+        socket.close();
+      }
+      catch ( final IOException ioe )
+      {
+        //Ignored
+      }
+    }
+  }
+
+  private void onMessage( final GelfMessage message )
+  {
+    _messageCount.increment();
+    final Long timestamp = message.getJavaTimestamp();
+    if ( null != timestamp )
+    {
+      _latency.record( System.currentTimeMillis() - timestamp );
+    }
+    _lossTracker.record( message );
+    final Listener listener = _listener;
+    if ( null != listener )
+    {
+      listener.onMessage( message );
+    }
+  }
+}
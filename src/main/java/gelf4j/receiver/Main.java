@@ -0,0 +1,352 @@
+package gelf4j.receiver;
+
+import gelf4j.GelfDecoder;
+import gelf4j.GelfHistogram;
+import gelf4j.GelfMessage;
+import gelf4j.GelfTargetConfig;
+import java.util.List;
+import org.realityforge.getopt4j.CLArgsParser;
+import org.realityforge.getopt4j.CLOption;
+import org.realityforge.getopt4j.CLOptionDescriptor;
+import org.realityforge.getopt4j.CLUtil;
+
+/**
+ * A commandline application that receives GELF messages and reports statistics, for use in place of a
+ * GELF compliant server when testing.
+ */
+public class Main
+{
+  private static final int HELP_OPT = 1;
+  private static final int HOST_CONFIG_OPT = 'h';
+  private static final int PORT_CONFIG_OPT = 'p';
+  private static final int TRANSPORT_OPT = 't';
+  private static final int UNCOMPRESSED_CHUNKING_OPT = 'u';
+  private static final int CHUNK_TIMEOUT_OPT = 'c';
+  private static final int INTERVAL_OPT = 'i';
+  private static final int COUNT_OPT = 'n';
+  private static final int LOSS_ANALYSIS_OPT = 'l';
+  private static final int ECHO_OPT = 'e';
+  private static final int VERBOSE_OPT = 'v';
+
+  private static final CLOptionDescriptor[] OPTIONS = new CLOptionDescriptor[]{
+    new CLOptionDescriptor( "help",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            HELP_OPT,
+                            "print this message and exit" ),
+    new CLOptionDescriptor( "host",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            HOST_CONFIG_OPT,
+                            "the address to listen on. Defaults to all addresses." ),
+    new CLOptionDescriptor( "port",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            PORT_CONFIG_OPT,
+                            "the port to listen on. Defaults to " + GelfTargetConfig.DEFAULT_PORT ),
+    new CLOptionDescriptor( "transport",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            TRANSPORT_OPT,
+                            "the transport to receive messages over; udp, tcp or both. Defaults to both." ),
+    new CLOptionDescriptor( "uncompressed-chunking",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            UNCOMPRESSED_CHUNKING_OPT,
+                            "expect the uncompressed chunking format used by graylog prior to 0.9.6." ),
+    new CLOptionDescriptor( "chunk-timeout",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            CHUNK_TIMEOUT_OPT,
+                            "the milliseconds to wait for the chunks of a message. Defaults to " +
+                            GelfDecoder.DEFAULT_CHUNK_TIMEOUT ),
+    new CLOptionDescriptor( "interval",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            INTERVAL_OPT,
+                            "the seconds between statistics reports, 0 to only report on exit. Defaults to 10." ),
+    new CLOptionDescriptor( "count",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            COUNT_OPT,
+                            "exit after receiving the specified number of messages." ),
+    new CLOptionDescriptor( "loss-analysis",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            LOSS_ANALYSIS_OPT,
+                            "report lost and reordered messages using the sequence numbers of each sender " +
+                            "and the chunks lost from chunked messages." ),
+    new CLOptionDescriptor( "echo",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            ECHO_OPT,
+                            "print each message received." ),
+    new CLOptionDescriptor( "verbose",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            VERBOSE_OPT,
+                            "print verbose messages." ),
+  };
+
+  private static final int SUCCESS_EXIT_CODE = 0;
+  private static final int ERROR_PARSING_ARGS_EXIT_CODE = 1;
+  private static final int ERROR_RECEIVING_EXIT_CODE = 2;
+
+  private static final GelfReceiver c_receiver = new GelfReceiver();
+  private static boolean c_verbose;
+  private static boolean c_echo;
+  private static boolean c_lossAnalysis;
+  private static long c_interval = 10;
+  private static long c_count;
+  private static long c_startTime;
+  private static long c_lastReportTime;
+  private static long c_lastMessageCount;
+
+  public static void main( final String[] args )
+  {
+    if ( !processOptions( args ) )
+    {
+      System.exit( ERROR_PARSING_ARGS_EXIT_CODE );
+      return;
+    }
+
+    if ( c_echo )
+    {
+      c_receiver.setListener( Main::printMessage );
+    }
+    try
+    {
+      c_receiver.start();
+    }
+    catch ( final Exception e )
+    {
+      error( "Starting receiver: " + e );
+      if ( c_verbose )
+      {
+        e.printStackTrace( System.out );
+      }
+      System.exit( ERROR_RECEIVING_EXIT_CODE );
+      return;
+    }
+    if ( c_verbose )
+    {
+      info( "Listening on " + c_receiver.getHost() + ":" + c_receiver.getPort() );
+    }
+    c_startTime = c_lastReportTime = System.currentTimeMillis();
+    Runtime.getRuntime().addShutdownHook( new Thread( Main::printSummary ) );
+
+    try
+    {
+      while ( 0 == c_count || c_receiver.getMessageCount() < c_count )
+      {
+        Thread.sleep( 100 );
+        final long now = System.currentTimeMillis();
+        if ( c_interval > 0 && now - c_lastReportTime >= c_interval * 1000 )
+        {
+          printStatistics( now );
+        }
+      }
+    }
+    catch ( final InterruptedException ie )
+    {
+      //Ignored. Exit
+    }
+    System.exit( SUCCESS_EXIT_CODE );
+  }
+
+  private static void printMessage( final GelfMessage message )
+  {
+    info( message.getJavaTimestamp() + " " + message.getHost() + " " + message.getFacility() + " " +
+          message.getLevel() + ": " + message.getShortMessage() + " " + message.getAdditionalFields() );
+  }
+
+  private static synchronized void printStatistics( final long now )
+  {
+    final long messageCount = c_receiver.getMessageCount();
+    final double rate = ( messageCount - c_lastMessageCount ) * 1000D / Math.max( 1, now - c_lastReportTime );
+    c_lastMessageCount = messageCount;
+    c_lastReportTime = now;
+    info( String.format( "Received %d messages (%.1f/s), %s", messageCount, rate, describeStatistics() ) );
+  }
+
+  private static synchronized void printSummary()
+  {
+    c_receiver.close();
+    final long messageCount = c_receiver.getMessageCount();
+    final long duration = Math.max( 1, System.currentTimeMillis() - c_startTime );
+    info( String.format( "Total: received %d messages in %.1fs (%.1f/s), %s",
+                         messageCount,
+                         duration / 1000D,
+                         messageCount * 1000D / duration,
+                         describeStatistics() ) );
+    if ( c_lossAnalysis )
+    {
+      info( c_receiver.getLossTracker().describe() );
+    }
+  }
+
+  private static String describeStatistics()
+  {
+    final GelfHistogram latency = c_receiver.getLatency();
+    return String.format( "%d packets, %d bytes, %d invalid, %d incomplete, latency p50=%dms p99=%dms max=%dms",
+                          c_receiver.getPacketCount(),
+                          c_receiver.getByteCount(),
+                          c_receiver.getInvalidCount(),
+                          c_receiver.getIncompleteCount(),
+                          latency.getPercentile( 50 ),
+                          latency.getPercentile( 99 ),
+                          latency.getMax() );
+  }
+
+  private static boolean processOptions( final String[] args )
+  {
+    // Parse the arguments
+    final CLArgsParser parser = new CLArgsParser( args, OPTIONS );
+
+    //Make sure that there was no errors parsing arguments
+    if ( null != parser.getErrorString() )
+    {
+      error( parser.getErrorString() );
+      return false;
+    }
+
+    // Get a list of parsed options
+    @SuppressWarnings( "unchecked" ) final List<CLOption> options = parser.getArguments();
+    for ( final CLOption option : options )
+    {
+      switch ( option.getId() )
+      {
+        case CLOption.TEXT_ARGUMENT:
+          error( "Unexpected argument: " + option.getArgument() );
+          return false;
+        case HOST_CONFIG_OPT:
+          c_receiver.setHost( option.getArgument() );
+          break;
+        case PORT_CONFIG_OPT:
+        {
+          final String port = option.getArgument();
+          try
+          {
+            c_receiver.setPort( Integer.parseInt( port ) );
+          }
+          catch ( final NumberFormatException nfe )
+          {
+            error( "parsing port: " + port );
+            return false;
+          }
+          break;
+        }
+        case TRANSPORT_OPT:
+        {
+          final String transport = option.getArgument();
+          if ( !"udp".equals( transport ) && !"tcp".equals( transport ) && !"both".equals( transport ) )
+          {
+            error( "unknown transport: " + transport );
+            return false;
+          }
+          c_receiver.setUdpEnabled( !"tcp".equals( transport ) );
+          c_receiver.setTcpEnabled( !"udp".equals( transport ) );
+          break;
+        }
+        case UNCOMPRESSED_CHUNKING_OPT:
+        {
+          c_receiver.setCompressedChunking( false );
+          break;
+        }
+        case CHUNK_TIMEOUT_OPT:
+        {
+          final String chunkTimeout = option.getArgument();
+          try
+          {
+            c_receiver.setChunkTimeout( Long.parseLong( chunkTimeout ) );
+          }
+          catch ( final NumberFormatException nfe )
+          {
+            error( "parsing chunk timeout: " + chunkTimeout );
+            return false;
+          }
+          break;
+        }
+        case INTERVAL_OPT:
+        {
+          final String interval = option.getArgument();
+          try
+          {
+            c_interval = Long.parseLong( interval );
+          }
+          catch ( final NumberFormatException nfe )
+          {
+            error( "parsing interval: " + interval );
+            return false;
+          }
+          break;
+        }
+        case COUNT_OPT:
+        {
+          final String count = option.getArgument();
+          try
+          {
+            c_count = Long.parseLong( count );
+          }
+          catch ( final NumberFormatException nfe )
+          {
+            error( "parsing count: " + count );
+            return false;
+          }
+          break;
+        }
+        case LOSS_ANALYSIS_OPT:
+        {
+          c_lossAnalysis = true;
+          break;
+        }
+        case ECHO_OPT:
+        {
+          c_echo = true;
+          break;
+        }
+        case VERBOSE_OPT:
+        {
+          c_verbose = true;
+          break;
+        }
+        case HELP_OPT:
+        {
+          printUsage();
+          return false;
+        }
+      }
+    }
+    if ( c_verbose )
+    {
+      info( "Listen Host: " + c_receiver.getHost() );
+      info( "Listen Port: " + c_receiver.getPort() );
+      info( "UDP?: " + c_receiver.isUdpEnabled() );
+      info( "TCP?: " + c_receiver.isTcpEnabled() );
+      info( "Compressed Chunking Format?: " + c_receiver.isCompressedChunking() );
+      info( "Chunk Timeout: " + c_receiver.getChunkTimeout() );
+    }
+
+    return true;
+  }
+
+  /**
+   * Print out a usage statement
+   */
+  private static void printUsage()
+  {
+    final String lineSeparator = System.getProperty( "line.separator" );
+
+    final StringBuilder msg = new StringBuilder();
+
+    msg.append( "java " );
+    msg.append( Main.class.getName() );
+    msg.append( " [options]" );
+    msg.append( lineSeparator );
+    msg.append( "Options: " );
+    msg.append( lineSeparator );
+
+    msg.append( CLUtil.describeOptions( OPTIONS ).toString() );
+
+    info( msg.toString() );
+  }
+
+  private static void info( final String message )
+  {
+    System.out.println( message );
+  }
+
+  private static void error( final String message )
+  {
+    System.out.println( "Error: " + message );
+  }
+}
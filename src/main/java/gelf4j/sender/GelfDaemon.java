@@ -0,0 +1,270 @@
+package gelf4j.sender;
+
+import gelf4j.GelfConnection;
+import gelf4j.JsonCodec;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A long running sender that accepts lines from local processes and sends each as a message over a single
+ * connection, so that scripts avoid starting a JVM, resolving the server and loading classes for every message.
+ * Lines are accepted from TCP connections to the loopback interface and optionally from a named pipe. Each line is
+ * sent by a {@link GelfStreamSender} so it may be the text of a message or a json object of message fields.
+ */
+public final class GelfDaemon
+  implements Closeable
+{
+  public static final int DEFAULT_LISTEN_PORT = 12202;
+
+  private final GelfStreamSender _sender;
+  private final LongAdder _connectionCount = new LongAdder();
+  private final AtomicInteger _connectionId = new AtomicInteger();
+  private final List<Closeable> _closeables = new ArrayList<Closeable>();
+  private final List<Thread> _threads = new ArrayList<Thread>();
+  private String _listenHost = "localhost";
+  private int _listenPort = DEFAULT_LISTEN_PORT;
+  private Path _fifo;
+  private volatile boolean _running;
+
+  /**
+   * @param connection the connection used to send messages.
+   * @param codec      the codec used to parse each line as a json object of message fields, or null to send each
+   *                   line as the text of a message.
+   */
+  public GelfDaemon( final GelfConnection connection, final JsonCodec codec )
+  {
+    _sender = new GelfStreamSender( connection, codec );
+  }
+
+  public String getListenHost()
+  {
+    return _listenHost;
+  }
+
+  /**
+   * The address to accept connections on. Defaults to localhost as the daemon does not authenticate clients.
+   */
+  public void setListenHost( final String listenHost )
+  {
+    _listenHost = listenHost;
+  }
+
+  public int getListenPort()
+  {
+    return _listenPort;
+  }
+
+  /**
+   * The port to accept connections on, or 0 to only read from the named pipe.
+   */
+  public void setListenPort( final int listenPort )
+  {
+    _listenPort = listenPort;
+  }
+
+  public Path getFifo()
+  {
+    return _fifo;
+  }
+
+  /**
+   * An existing named pipe, i.e. created by mkfifo, from which lines are read. Null to only accept connections.
+   */
+  public void setFifo( final Path fifo )
+  {
+    _fifo = fifo;
+  }
+
+  /**
+   * Start accepting lines on background threads.
+   */
+  public synchronized void start()
+    throws IOException
+  {
+    _running = true;
+    try
+    {
+      if ( 0 != _listenPort )
+      {
+        final ServerSocket serverSocket = new ServerSocket();
+        _closeables.add( serverSocket );
+        serverSocket.bind( new InetSocketAddress( _listenHost, _listenPort ) );
+        _threads.add( startThread( "gelf4j-daemon-accept", () -> acceptConnections( serverSocket ) ) );
+      }
+      if ( null != _fifo )
+      {
+        if ( Files.isRegularFile( _fifo ) )
+        {
+          throw new IOException( "Not a named pipe: " + _fifo );
+        }
+        // Opening the pipe for writing as well as reading means that the open does not block until a writer
+        // arrives and that reads block rather than reaching the end of stream when each writer closes the pipe
+        final FileChannel channel = FileChannel.open( _fifo, StandardOpenOption.READ, StandardOpenOption.WRITE );
+        _closeables.add( channel );
+        // A reader created directly on the channel blocks until its buffer is full so decode from a stream instead
+        final BufferedReader reader =
+          new BufferedReader( new InputStreamReader( Channels.newInputStream( channel ), StandardCharsets.UTF_8 ) );
+        _threads.add( startThread( "gelf4j-daemon-fifo", () -> readLines( reader ) ) );
+      }
+    }
+    catch ( final IOException ioe )
+    {
+      close();
+      throw ioe;
+    }
+  }
+
+  /**
+   * Stop accepting lines and wait for the lines already accepted to be sent.
+   */
+  @Override
+  public void close()
+  {
+    final List<Closeable> closeables;
+    final List<Thread> threads;
+    synchronized ( this )
+    {
+      _running = false;
+      closeables = new ArrayList<Closeable>( _closeables );
+      _closeables.clear();
+      threads = new ArrayList<Thread>( _threads );
+      _threads.clear();
+    }
+    for ( final Closeable closeable : closeables )
+    {
+      try
+      {
+        closeable.close();
+      }
+      catch ( final IOException ioe )
+      {
+        //Ignored
+      }
+    }
+    try
+    {
+      for ( final Thread thread : threads )
+      {
+        thread.join( 1000 );
+      }
+      _sender.awaitSent();
+    }
+    catch ( final InterruptedException ie )
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return the number of client connections accepted.
+   */
+  public long getConnectionCount()
+  {
+    return _connectionCount.sum();
+  }
+
+  /**
+   * @return the sender whose statistics cover every line accepted by the daemon.
+   */
+  public GelfStreamSender getSender()
+  {
+    return _sender;
+  }
+
+  private Thread startThread( final String name, final Runnable runnable )
+  {
+    final Thread thread = new Thread( runnable, name );
+    thread.setDaemon( true );
+    thread.start();
+    return thread;
+  }
+
+  private void acceptConnections( final ServerSocket serverSocket )
+  {
+    while ( _running )
+    {
+      try
+      {
+        final Socket socket = serverSocket.accept();
+        synchronized ( this )
+        {
+          if ( !_running )
+          {
+            socket.close();
+            break;
+          }
+          _closeables.add( socket );
+        }
+        _connectionCount.increment();
+        startThread( "gelf4j-daemon-" + _connectionId.incrementAndGet(), () -> receiveLines( socket ) );
+      }
+      catch ( final IOException ioe )
+      {
+        // The socket is closed when the daemon is closed
+        break;
+      }
+    }
+  }
+
+  private void receiveLines( final Socket socket )
+  {
+    try
+    {
+      readLines( new BufferedReader( new InputStreamReader( socket.getInputStream(), StandardCharsets.UTF_8 ) ) );
+    }
+    catch ( final IOException ioe )
+    {
+      //Ignored. The connection was closed
+    }
+    finally
+    {
+      synchronized ( this )
+      {
+        _closeables.remove( socket );
+      }
+      try
+      {
+        socket.close();
+      }
+      catch ( final IOException ioe )
+      {
+        //Ignored
+      }
+    }
+  }
+
+  private void readLines( final BufferedReader reader )
+  {
+    try
+    {
+      String line;
+      while ( _running && null != ( line = reader.readLine() ) )
+      {
+        _sender.send( line );
+      }
+    }
+    catch ( final IOException ioe )
+    {
+      //Ignored. The connection or pipe was closed
+    }
+    catch ( final InterruptedException ie )
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,608 @@
+package gelf4j.sender;
+
+import gelf4j.GelfConnection;
+import gelf4j.GelfMessage;
+import gelf4j.GelfMessageUtil;
+import gelf4j.GelfTargetConfig;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Follows files as they are written and sends each line, or each group of lines matching a multiline pattern, as a
+ * message. Files are checked whenever the file system reports a change in their directory and at least once per
+ * poll interval. The offset of the last line sent from each file is saved to an optional checkpoint file so that a
+ * restarted tailer resumes where it stopped, resending at most the lines sent since the checkpoint was last saved.
+ * A message that fails to be sent is not committed. Reading the file stops at that message and it is sent again
+ * after the poll interval, so the lines of a file are delivered in order while the server is unavailable.
+ *
+ * <p>A file that is renamed and replaced by a new file is read to its end before the new file is read from its
+ * start. A file that is truncated in place is read again from its start. Rotation is detected using the file key,
+ * such as the inode, where the file system provides one and otherwise only truncation is detected.</p>
+ */
+public final class GelfFileTailer
+  implements Closeable
+{
+  public static final long DEFAULT_POLL_INTERVAL = 1000;
+
+  // Lines longer than this are split so that a file without line breaks can not exhaust the heap. Package access
+  // for tests
+  static final int MAX_LINE_LENGTH = 1024 * 1024;
+  private static final long CHECKPOINT_INTERVAL = 1000;
+  private static final String KEY_SUFFIX = ".key";
+
+  private final GelfConnection _connection;
+  private final List<TailedFile> _files = new ArrayList<TailedFile>();
+  private final ByteBuffer _buffer = ByteBuffer.allocate( 65536 );
+  private final LongAdder _lineCount = new LongAdder();
+  private final LongAdder _sentCount = new LongAdder();
+  private final LongAdder _failedCount = new LongAdder();
+  private final LongAdder _rotationCount = new LongAdder();
+  private Path _checkpointFile;
+  private Pattern _multilineStart;
+  private boolean _startAtEnd;
+  private long _pollInterval = DEFAULT_POLL_INTERVAL;
+  private Properties _checkpoint;
+  private boolean _checkpointDirty;
+  private long _lastCheckpointTime;
+  private WatchService _watchService;
+  private volatile boolean _running;
+
+  public GelfFileTailer( final GelfConnection connection, final List<Path> files )
+  {
+    _connection = connection;
+    for ( final Path file : files )
+    {
+      _files.add( new TailedFile( file.toAbsolutePath().normalize() ) );
+    }
+  }
+
+  public Path getCheckpointFile()
+  {
+    return _checkpointFile;
+  }
+
+  /**
+   * The file in which the offsets of the tailed files are saved, or null to always start from the start or end of
+   * each file.
+   */
+  public void setCheckpointFile( final Path checkpointFile )
+  {
+    _checkpointFile = checkpointFile;
+  }
+
+  public Pattern getMultilineStart()
+  {
+    return _multilineStart;
+  }
+
+  /**
+   * A pattern matching the first line of each message. Lines that do not match are appended to the previous
+   * message, such as the lines of a stack trace. Null to send each line as a message.
+   */
+  public void setMultilineStart( final Pattern multilineStart )
+  {
+    _multilineStart = multilineStart;
+  }
+
+  public boolean isStartAtEnd()
+  {
+    return _startAtEnd;
+  }
+
+  /**
+   * Set to true to skip the existing content of files that have no checkpoint when the tailer starts.
+   */
+  public void setStartAtEnd( final boolean startAtEnd )
+  {
+    _startAtEnd = startAtEnd;
+  }
+
+  public long getPollInterval()
+  {
+    return _pollInterval;
+  }
+
+  /**
+   * The maximum milliseconds between checking the files, and the time after which a multiline message is sent if
+   * no further lines arrive.
+   */
+  public void setPollInterval( final long pollInterval )
+  {
+    _pollInterval = pollInterval;
+  }
+
+  /**
+   * Follow the files until the tailer is closed.
+   */
+  public void run()
+    throws IOException, InterruptedException
+  {
+    // Closing the tailer clears the field so the loop holds its own reference
+    final WatchService watchService;
+    synchronized ( this )
+    {
+      _running = true;
+      watchService = FileSystems.getDefault().newWatchService();
+      _watchService = watchService;
+      final Set<Path> directories = new HashSet<Path>();
+      for ( final TailedFile file : _files )
+      {
+        final Path directory = file._path.getParent();
+        if ( directories.add( directory ) )
+        {
+          directory.register( watchService,
+                              StandardWatchEventKinds.ENTRY_CREATE,
+                              StandardWatchEventKinds.ENTRY_MODIFY );
+        }
+      }
+    }
+    try
+    {
+      while ( _running )
+      {
+        poll();
+        // Any change in a watched directory triggers a check of all the files as there are usually few of them
+        final WatchKey key = watchService.poll( _pollInterval, TimeUnit.MILLISECONDS );
+        if ( null != key )
+        {
+          key.pollEvents();
+          key.reset();
+        }
+      }
+    }
+    catch ( final ClosedWatchServiceException cwse )
+    {
+      //Ignored. The tailer was closed
+    }
+  }
+
+  /**
+   * Read and send the lines appended to each file since the last poll.
+   */
+  public synchronized void poll()
+    throws IOException
+  {
+    loadCheckpoint();
+    final long now = System.currentTimeMillis();
+    for ( final TailedFile file : _files )
+    {
+      file.poll( now );
+    }
+    if ( _checkpointDirty && now - _lastCheckpointTime >= CHECKPOINT_INTERVAL )
+    {
+      saveCheckpoint( now );
+    }
+  }
+
+  /**
+   * Stop following the files, sending any incomplete multiline message and saving the checkpoint.
+   */
+  @Override
+  public synchronized void close()
+    throws IOException
+  {
+    _running = false;
+    if ( null != _watchService )
+    {
+      _watchService.close();
+      _watchService = null;
+    }
+    for ( final TailedFile file : _files )
+    {
+      file.close();
+    }
+    if ( _checkpointDirty )
+    {
+      saveCheckpoint( System.currentTimeMillis() );
+    }
+  }
+
+  /**
+   * @return the number of lines read, including the lines appended to multiline messages and the lines read again
+   * after a message failed to be sent.
+   */
+  public long getLineCount()
+  {
+    return _lineCount.sum();
+  }
+
+  public long getSentCount()
+  {
+    return _sentCount.sum();
+  }
+
+  /**
+   * @return the number of failed attempts to send a message, including the attempts to send it again.
+   */
+  public long getFailedCount()
+  {
+    return _failedCount.sum();
+  }
+
+  /**
+   * @return the number of times a file was replaced or truncated.
+   */
+  public long getRotationCount()
+  {
+    return _rotationCount.sum();
+  }
+
+  private void loadCheckpoint()
+    throws IOException
+  {
+    if ( null == _checkpoint )
+    {
+      _checkpoint = new Properties();
+      if ( null != _checkpointFile && Files.exists( _checkpointFile ) )
+      {
+        try ( final InputStream inputStream = Files.newInputStream( _checkpointFile ) )
+        {
+          _checkpoint.load( inputStream );
+        }
+      }
+    }
+  }
+
+  private void saveCheckpoint( final long now )
+    throws IOException
+  {
+    _checkpointDirty = false;
+    _lastCheckpointTime = now;
+    if ( null == _checkpointFile )
+    {
+      return;
+    }
+    for ( final TailedFile file : _files )
+    {
+      final String name = file._path.toString();
+      _checkpoint.setProperty( name, String.valueOf( file._committedOffset ) );
+      if ( null != file._fileKey )
+      {
+        _checkpoint.setProperty( name + KEY_SUFFIX, file._fileKey.toString() );
+      }
+      else
+      {
+        _checkpoint.remove( name + KEY_SUFFIX );
+      }
+    }
+    // Write then rename so that a crash never leaves a partially written checkpoint
+    final Path temporary = _checkpointFile.resolveSibling( _checkpointFile.getFileName() + ".tmp" );
+    try ( final OutputStream outputStream = Files.newOutputStream( temporary ) )
+    {
+      _checkpoint.store( outputStream, "gelf4j file tailer offsets" );
+    }
+    Files.move( temporary, _checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+  }
+
+  private boolean send( final String text )
+  {
+    final GelfMessage message = _connection.newMessage();
+    GelfMessageUtil.setValue( message, GelfTargetConfig.FIELD_MESSAGE, text );
+    if ( _connection.send( message ) )
+    {
+      _sentCount.increment();
+      return true;
+    }
+    else
+    {
+      _failedCount.increment();
+      return false;
+    }
+  }
+
+  private final class TailedFile
+  {
+    private final Path _path;
+    private FileChannel _channel;
+    private Object _fileKey;
+    private boolean _opened;
+    // The offset of the next byte to read
+    private long _position;
+    // The offset following the last line that has been sent
+    private long _committedOffset;
+    // The bytes of a line whose end has not yet been read
+    private byte[] _partial = new byte[ 1024 ];
+    private int _partialLength;
+    private StringBuilder _pending;
+    private long _pendingEnd;
+    private long _lastAppendTime;
+    // Set when a message fails to be sent and cleared once the file is read again from the committed offset
+    private boolean _failed;
+    private long _retryTime;
+
+    TailedFile( final Path path )
+    {
+      _path = path;
+    }
+
+    void poll( final long now )
+      throws IOException
+    {
+      if ( _failed )
+      {
+        if ( now < _retryTime )
+        {
+          return;
+        }
+        _failed = false;
+      }
+      BasicFileAttributes attributes;
+      try
+      {
+        attributes = Files.readAttributes( _path, BasicFileAttributes.class );
+      }
+      catch ( final NoSuchFileException nsfe )
+      {
+        // The file has been renamed and not yet replaced. Keep reading the renamed file.
+        attributes = null;
+      }
+      if ( null == _channel )
+      {
+        if ( null != attributes )
+        {
+          open( attributes );
+        }
+        else
+        {
+          // A file created after the tailer started is read from its start
+          _opened = true;
+        }
+      }
+      else if ( null != attributes && null != _fileKey && !_fileKey.equals( attributes.fileKey() ) )
+      {
+        // The file has been replaced so finish reading the previous file
+        read();
+        endOfFile();
+        if ( _failed )
+        {
+          // The previous file is finished before its replacement is read
+          return;
+        }
+        closeChannel();
+        _rotationCount.increment();
+        open( attributes );
+      }
+      else if ( null != attributes && attributes.size() < _position )
+      {
+        // The file has been truncated in place
+        _partialLength = 0;
+        _position = 0;
+        _committedOffset = 0;
+        _checkpointDirty = true;
+        _rotationCount.increment();
+      }
+      if ( null != _channel )
+      {
+        read();
+      }
+      if ( null != _pending && now - _lastAppendTime >= _pollInterval )
+      {
+        flushPending();
+      }
+    }
+
+    void close()
+      throws IOException
+    {
+      if ( null != _pending )
+      {
+        flushPending();
+      }
+      closeChannel();
+    }
+
+    private void open( final BasicFileAttributes attributes )
+      throws IOException
+    {
+      _channel = FileChannel.open( _path, StandardOpenOption.READ );
+      _fileKey = attributes.fileKey();
+      final String name = _path.toString();
+      final String offset = _checkpoint.getProperty( name );
+      final String key = _checkpoint.getProperty( name + KEY_SUFFIX );
+      long position = 0;
+      if ( _opened )
+      {
+        // A replacement file is always read from the start
+        position = 0;
+      }
+      else if ( null != offset )
+      {
+        // A file that has replaced the checkpointed file is read from the start
+        if ( null == key || null == _fileKey || key.equals( _fileKey.toString() ) )
+        {
+          position = Long.parseLong( offset );
+          if ( position > attributes.size() )
+          {
+            position = 0;
+          }
+        }
+      }
+      else if ( _startAtEnd )
+      {
+        position = attributes.size();
+      }
+      _opened = true;
+      _position = position;
+      _committedOffset = position;
+      _partialLength = 0;
+      _checkpointDirty = true;
+    }
+
+    private void closeChannel()
+      throws IOException
+    {
+      if ( null != _channel )
+      {
+        _channel.close();
+        _channel = null;
+      }
+    }
+
+    private void read()
+      throws IOException
+    {
+      int count;
+      while ( !_failed && ( count = _channel.read( _buffer, _position ) ) > 0 )
+      {
+        final byte[] data = _buffer.array();
+        int lineStart = 0;
+        for ( int i = 0; i < count && !_failed; i++ )
+        {
+          if ( '\n' == data[ i ] )
+          {
+            appendPartial( data, lineStart, i - lineStart );
+            onLine( _position + i + 1 );
+            lineStart = i + 1;
+          }
+          else if ( _partialLength + i - lineStart >= MAX_LINE_LENGTH && 0x80 != ( data[ i ] & 0xC0 ) )
+          {
+            // Split before a byte that starts a character so that a multi-byte character is not divided
+            appendPartial( data, lineStart, i - lineStart );
+            onLine( _position + i );
+            lineStart = i;
+          }
+        }
+        if ( !_failed )
+        {
+          appendPartial( data, lineStart, count - lineStart );
+          _position += count;
+        }
+        _buffer.clear();
+      }
+    }
+
+    /**
+     * Treat an unterminated last line as complete as no more will be written to the file.
+     */
+    private void endOfFile()
+    {
+      if ( _partialLength > 0 )
+      {
+        onLine( _position );
+      }
+      if ( null != _pending )
+      {
+        flushPending();
+      }
+    }
+
+    private void appendPartial( final byte[] data, final int offset, final int length )
+    {
+      if ( _partialLength + length > _partial.length )
+      {
+        _partial = Arrays.copyOf( _partial, Math.max( _partialLength + length, _partial.length * 2 ) );
+      }
+      System.arraycopy( data, offset, _partial, _partialLength, length );
+      _partialLength += length;
+    }
+
+    private void onLine( final long end )
+    {
+      int length = _partialLength;
+      if ( length > 0 && '\r' == _partial[ length - 1 ] )
+      {
+        length--;
+      }
+      final String line = new String( _partial, 0, length, StandardCharsets.UTF_8 );
+      _partialLength = 0;
+      _lineCount.increment();
+      if ( null == _multilineStart )
+      {
+        if ( line.isEmpty() || send( line ) )
+        {
+          commit( end );
+        }
+        else
+        {
+          retry();
+        }
+      }
+      else if ( null == _pending || _multilineStart.matcher( line ).lookingAt() )
+      {
+        if ( null != _pending && !flushPending() )
+        {
+          return;
+        }
+        if ( line.isEmpty() )
+        {
+          commit( end );
+        }
+        else
+        {
+          _pending = new StringBuilder( line );
+          _pendingEnd = end;
+          _lastAppendTime = System.currentTimeMillis();
+        }
+      }
+      else
+      {
+        _pending.append( '\n' ).append( line );
+        _pendingEnd = end;
+        _lastAppendTime = System.currentTimeMillis();
+      }
+    }
+
+    private boolean flushPending()
+    {
+      final String text = _pending.toString();
+      _pending = null;
+      if ( send( text ) )
+      {
+        commit( _pendingEnd );
+        return true;
+      }
+      else
+      {
+        retry();
+        return false;
+      }
+    }
+
+    /**
+     * Return to the committed offset so that the message that failed to be sent is read and sent again after the
+     * poll interval.
+     */
+    private void retry()
+    {
+      _failed = true;
+      _retryTime = System.currentTimeMillis() + _pollInterval;
+      _position = _committedOffset;
+      _partialLength = 0;
+      _pending = null;
+    }
+
+    private void commit( final long offset )
+    {
+      if ( _committedOffset != offset )
+      {
+        _committedOffset = offset;
+        _checkpointDirty = true;
+      }
+    }
+  }
+}
@@ -0,0 +1,272 @@
+package gelf4j.sender;
+
+import gelf4j.GelfConnection;
+import gelf4j.GelfHistogram;
+import gelf4j.GelfMessage;
+import gelf4j.GelfMessageUtil;
+import gelf4j.SyslogLevel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends generated messages from several threads to measure the throughput and latency of a connection.
+ * Each thread sends synchronously so the latency is the time taken to encode and write a message. When a rate is
+ * specified the latency is measured from the time each message was scheduled to be sent, so time spent behind
+ * schedule is included rather than hidden by the slower rate of sending.
+ */
+public final class GelfLoadGenerator
+{
+  private final GelfConnection _connection;
+  private final GelfHistogram _latency = new GelfHistogram();
+  private final LongAdder _sentCount = new LongAdder();
+  private final LongAdder _failedCount = new LongAdder();
+  private long _messageCount;
+  private long _duration;
+  private double _rate;
+  private int _messageSize = 100;
+  private int _fieldCount;
+  private boolean _compressible;
+  private int _threadCount = 1;
+  private long _elapsedTime;
+
+  public GelfLoadGenerator( final GelfConnection connection )
+  {
+    _connection = connection;
+  }
+
+  public long getMessageCount()
+  {
+    return _messageCount;
+  }
+
+  /**
+   * The number of messages to send, or 0 to send until the duration has elapsed.
+   */
+  public void setMessageCount( final long messageCount )
+  {
+    _messageCount = messageCount;
+  }
+
+  public long getDuration()
+  {
+    return _duration;
+  }
+
+  /**
+   * The milliseconds to send for, or 0 to send until the message count is reached.
+   */
+  public void setDuration( final long duration )
+  {
+    _duration = duration;
+  }
+
+  public double getRate()
+  {
+    return _rate;
+  }
+
+  /**
+   * The target messages per second across all threads, or 0 to send as fast as possible.
+   */
+  public void setRate( final double rate )
+  {
+    _rate = rate;
+  }
+
+  public int getMessageSize()
+  {
+    return _messageSize;
+  }
+
+  /**
+   * The number of characters in the text of each message.
+   */
+  public void setMessageSize( final int messageSize )
+  {
+    _messageSize = messageSize;
+  }
+
+  public int getFieldCount()
+  {
+    return _fieldCount;
+  }
+
+  public void setFieldCount( final int fieldCount )
+  {
+    _fieldCount = fieldCount;
+  }
+
+  public boolean isCompressible()
+  {
+    return _compressible;
+  }
+
+  /**
+   * Set to true to generate repetitive text that compresses well rather than random text that barely compresses.
+   */
+  public void setCompressible( final boolean compressible )
+  {
+    _compressible = compressible;
+  }
+
+  public int getThreadCount()
+  {
+    return _threadCount;
+  }
+
+  public void setThreadCount( final int threadCount )
+  {
+    _threadCount = threadCount;
+  }
+
+  /**
+   * Send messages until the message count is reached or the duration has elapsed.
+   */
+  public void run()
+    throws InterruptedException
+  {
+    if ( _messageCount <= 0 && _duration <= 0 )
+    {
+      throw new IllegalStateException( "Neither a message count nor a duration specified" );
+    }
+    final String text = createText( new Random( 42 ), _messageSize );
+    final AtomicLong remaining = new AtomicLong( _messageCount > 0 ? _messageCount : Long.MAX_VALUE );
+    final int threadCount = Math.max( 1, _threadCount );
+    // Each thread sends an equal share of the rate
+    final long interval = _rate > 0 ? (long) ( TimeUnit.SECONDS.toNanos( 1 ) * threadCount / _rate ) : 0;
+    final long start = System.nanoTime();
+    final long deadline = _duration > 0 ? start + TimeUnit.MILLISECONDS.toNanos( _duration ) : Long.MAX_VALUE;
+    final List<Thread> threads = new ArrayList<Thread>();
+    for ( int i = 0; i < threadCount; i++ )
+    {
+      // Stagger the threads so that a rate limited load is spread evenly
+      final long firstSendTime = start + interval * i / threadCount;
+      final Thread thread =
+        new Thread( () -> send( text, remaining, firstSendTime, interval, deadline ), "gelf4j-load-" + i );
+      thread.start();
+      threads.add( thread );
+    }
+    for ( final Thread thread : threads )
+    {
+      thread.join();
+    }
+    _elapsedTime = System.nanoTime() - start;
+  }
+
+  public long getSentCount()
+  {
+    return _sentCount.sum();
+  }
+
+  public long getFailedCount()
+  {
+    return _failedCount.sum();
+  }
+
+  /**
+   * @return the time in microseconds taken to send each message.
+   */
+  public GelfHistogram getLatency()
+  {
+    return _latency;
+  }
+
+  /**
+   * @return the nanoseconds taken by the last run.
+   */
+  public long getElapsedTime()
+  {
+    return _elapsedTime;
+  }
+
+  /**
+   * @return a human readable summary of the last run.
+   */
+  public String describe()
+  {
+    final double seconds = Math.max( 1, _elapsedTime ) / (double) TimeUnit.SECONDS.toNanos( 1 );
+    final long sent = getSentCount();
+    final long bytes = _connection.getMetrics().getCompressedBytes();
+    return String.format( "Sent %d messages in %.1fs (%.1f/s, %.1f bytes/s, %.1f uncompressed bytes/s), %d failed, " +
+                          "%d chunks, latency p50=%dus p90=%dus p99=%dus p99.9=%dus max=%dus",
+                          sent,
+                          seconds,
+                          sent / seconds,
+                          bytes / seconds,
+                          _connection.getMetrics().getUncompressedBytes() / seconds,
+                          getFailedCount(),
+                          _connection.getMetrics().getChunkCount(),
+                          _latency.getPercentile( 50 ),
+                          _latency.getPercentile( 90 ),
+                          _latency.getPercentile( 99 ),
+                          _latency.getPercentile( 99.9 ),
+                          _latency.getMax() );
+  }
+
+  private void send( final String text,
+                     final AtomicLong remaining,
+                     final long firstSendTime,
+                     final long interval,
+                     final long deadline )
+  {
+    final Random random = new Random();
+    long sendTime = firstSendTime;
+    while ( remaining.getAndDecrement() > 0 )
+    {
+      if ( interval > 0 )
+      {
+        long delay;
+        while ( ( delay = sendTime - System.nanoTime() ) > 0 )
+        {
+          LockSupport.parkNanos( delay );
+        }
+      }
+      final long start = interval > 0 ? sendTime : System.nanoTime();
+      if ( start >= deadline || System.nanoTime() >= deadline )
+      {
+        break;
+      }
+      final GelfMessage message = newMessage( text, random );
+      if ( _connection.send( message ) )
+      {
+        _sentCount.increment();
+      }
+      else
+      {
+        _failedCount.increment();
+      }
+      _latency.record( TimeUnit.NANOSECONDS.toMicros( System.nanoTime() - start ) );
+      sendTime += interval;
+    }
+  }
+
+  private GelfMessage newMessage( final String text, final Random random )
+  {
+    final GelfMessage message = _connection.newMessage();
+    message.setLevel( SyslogLevel.INFO );
+    message.setJavaTimestamp( System.currentTimeMillis() );
+    message.setFullMessage( text );
+    message.setShortMessage( GelfMessageUtil.truncateShortMessage( text ) );
+    for ( int i = 0; i < _fieldCount; i++ )
+    {
+      // Random values are unique to each message and compress poorly
+      message.getAdditionalFields().put( "field" + i, _compressible ? "value" + i : random.nextInt() );
+    }
+    return message;
+  }
+
+  private String createText( final Random random, final int length )
+  {
+    final StringBuilder sb = new StringBuilder( length );
+    for ( int i = 0; i < length; i++ )
+    {
+      sb.append( _compressible ? (char) ( 'a' + i % 26 ) : (char) ( ' ' + random.nextInt( 95 ) ) );
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,322 @@
+package gelf4j.sender;
+
+import gelf4j.GelfConnection;
+import gelf4j.GelfMessage;
+import gelf4j.JsonCodec;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sends each line read from a stream as a separate message using several worker threads, each with its own
+ * connection, so that parsing, encoding and transmission scale with the number of cores. Lines are passed to the
+ * workers in batches to keep the cost of handing over each line low. Messages are distributed across the workers
+ * unless an order key is specified, in which case all the lines with the same value of the key are sent by the
+ * same worker in the order they were read. A line that can not be sent is counted as failed and, should a worker
+ * stop unexpectedly, the lines passed to it are counted as failed rather than blocking the reading thread.
+ */
+public final class GelfParallelSender
+{
+  private static final int BATCH_SIZE = 256;
+  private static final int QUEUED_BATCHES = 4;
+  private static final List<String> END_OF_STREAM = Collections.emptyList();
+
+  private final List<Worker> _workers = new ArrayList<Worker>();
+  private final JsonCodec _codec;
+  private final Pattern _orderKeyPattern;
+  private final LongAdder _lineCount = new LongAdder();
+  private long _elapsedTime;
+
+  /**
+   * @param connections a connection for each worker.
+   * @param codec       the codec used to parse each line as a json object of message fields, or null to send each
+   *                    line as the text of a message.
+   * @param orderKey    the field whose value determines the worker that sends a line, or null to distribute lines
+   *                    evenly. Requires a codec.
+   */
+  public GelfParallelSender( final List<GelfConnection> connections, final JsonCodec codec, final String orderKey )
+  {
+    if ( connections.isEmpty() )
+    {
+      throw new IllegalArgumentException( "No connections specified" );
+    }
+    if ( null != orderKey && null == codec )
+    {
+      throw new IllegalArgumentException( "An order key requires json lines" );
+    }
+    for ( int i = 0; i < connections.size(); i++ )
+    {
+      _workers.add( new Worker( i, connections.get( i ) ) );
+    }
+    _codec = codec;
+    // The key is extracted without parsing the line so that the reading thread does not become the bottleneck
+    _orderKeyPattern =
+      null == orderKey ?
+      null :
+      Pattern.compile( "\"" + Pattern.quote( orderKey ) + "\"\\s*:\\s*(\"(?:[^\"\\\\]|\\\\.)*\"|[^,}\\s]*)" );
+  }
+
+  /**
+   * Send each non-empty line until the end of the stream and wait for the workers to finish.
+   */
+  public void send( final BufferedReader reader )
+    throws IOException, InterruptedException
+  {
+    final long start = System.nanoTime();
+    for ( final Worker worker : _workers )
+    {
+      worker._thread = new Thread( worker, "gelf4j-worker-" + worker._id );
+      worker._thread.start();
+    }
+    try
+    {
+      int next = 0;
+      String line;
+      while ( null != ( line = reader.readLine() ) )
+      {
+        _lineCount.increment();
+        if ( line.isEmpty() )
+        {
+          continue;
+        }
+        if ( null == _orderKeyPattern )
+        {
+          if ( _workers.get( next ).add( line ) )
+          {
+            next = ( next + 1 ) % _workers.size();
+          }
+        }
+        else
+        {
+          _workers.get( Math.floorMod( orderKey( line ).hashCode(), _workers.size() ) ).add( line );
+        }
+      }
+    }
+    finally
+    {
+      for ( final Worker worker : _workers )
+      {
+        worker.flush();
+        worker.put( END_OF_STREAM );
+      }
+      for ( final Worker worker : _workers )
+      {
+        worker._thread.join();
+      }
+      _elapsedTime = System.nanoTime() - start;
+    }
+  }
+
+  /**
+   * @return the number of lines read, including empty lines.
+   */
+  public long getLineCount()
+  {
+    return _lineCount.sum();
+  }
+
+  /**
+   * @return the number of lines that were not json objects or had no message.
+   */
+  public long getInvalidCount()
+  {
+    long count = 0;
+    for ( final Worker worker : _workers )
+    {
+      count += worker._invalidCount.sum();
+    }
+    return count;
+  }
+
+  public long getSentCount()
+  {
+    long count = 0;
+    for ( final Worker worker : _workers )
+    {
+      count += worker._sentCount.sum();
+    }
+    return count;
+  }
+
+  public long getFailedCount()
+  {
+    long count = 0;
+    for ( final Worker worker : _workers )
+    {
+      count += worker._failedCount.sum();
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of messages sent by the specified worker.
+   */
+  public long getSentCount( final int worker )
+  {
+    return _workers.get( worker )._sentCount.sum();
+  }
+
+  /**
+   * @return the nanoseconds taken by the last call to send.
+   */
+  public long getElapsedTime()
+  {
+    return _elapsedTime;
+  }
+
+  /**
+   * @return a human readable summary of the last call to send, with a line for each worker.
+   */
+  public String describe()
+  {
+    final double seconds = Math.max( 1, _elapsedTime ) / (double) TimeUnit.SECONDS.toNanos( 1 );
+    final long bytes = _workers.stream().mapToLong( w -> w._connection.getMetrics().getCompressedBytes() ).sum();
+    final StringBuilder sb = new StringBuilder();
+    sb.append( String.format( "Sent %d messages (%d bytes) in %.1fs (%.1f/s, %.1f bytes/s), %d lines, " +
+                              "%d invalid, %d failed",
+                              getSentCount(),
+                              bytes,
+                              seconds,
+                              getSentCount() / seconds,
+                              bytes / seconds,
+                              getLineCount(),
+                              getInvalidCount(),
+                              getFailedCount() ) );
+    for ( final Worker worker : _workers )
+    {
+      final double workerSeconds = Math.max( 1, worker._busyTime ) / (double) TimeUnit.SECONDS.toNanos( 1 );
+      final long sent = worker._sentCount.sum();
+      sb.append( String.format( "%n  Worker %d: %d messages (%.1f/s while busy for %.1fs), %d invalid, %d failed",
+                                worker._id,
+                                sent,
+                                sent / workerSeconds,
+                                workerSeconds,
+                                worker._invalidCount.sum(),
+                                worker._failedCount.sum() ) );
+    }
+    return sb.toString();
+  }
+
+  String orderKey( final String line )
+  {
+    final Matcher matcher = _orderKeyPattern.matcher( line );
+    return matcher.find() ? matcher.group( 1 ) : "";
+  }
+
+  private final class Worker
+    implements Runnable
+  {
+    private final int _id;
+    private final GelfConnection _connection;
+    private final BlockingQueue<List<String>> _queue = new ArrayBlockingQueue<List<String>>( QUEUED_BATCHES );
+    private final LongAdder _sentCount = new LongAdder();
+    private final LongAdder _failedCount = new LongAdder();
+    private final LongAdder _invalidCount = new LongAdder();
+    // Only accessed by the reading thread
+    private Thread _thread;
+    private List<String> _batch = new ArrayList<String>( BATCH_SIZE );
+    private volatile long _busyTime;
+
+    Worker( final int id, final GelfConnection connection )
+    {
+      _id = id;
+      _connection = connection;
+    }
+
+    /**
+     * @return true if the line completed a batch that has been handed to the worker.
+     */
+    boolean add( final String line )
+      throws InterruptedException
+    {
+      _batch.add( line );
+      if ( _batch.size() >= BATCH_SIZE )
+      {
+        flush();
+        return true;
+      }
+      return false;
+    }
+
+    void flush()
+      throws InterruptedException
+    {
+      if ( !_batch.isEmpty() )
+      {
+        put( _batch );
+        _batch = new ArrayList<String>( BATCH_SIZE );
+      }
+    }
+
+    /**
+     * Pass the batch to the worker, giving up if the worker has stopped as it would never take the batch.
+     */
+    private void put( final List<String> batch )
+      throws InterruptedException
+    {
+      while ( !_queue.offer( batch, 100, TimeUnit.MILLISECONDS ) )
+      {
+        if ( !_thread.isAlive() )
+        {
+          _failedCount.add( batch.size() );
+          return;
+        }
+      }
+    }
+
+    @Override
+    public void run()
+    {
+      long busyTime = 0;
+      try
+      {
+        List<String> batch;
+        while ( END_OF_STREAM != ( batch = _queue.take() ) )
+        {
+          final long start = System.nanoTime();
+          for ( final String line : batch )
+          {
+            try
+            {
+              final GelfMessage message = GelfStreamSender.toMessage( _connection, _codec, line );
+              if ( null == message )
+              {
+                _invalidCount.increment();
+              }
+              else if ( _connection.send( message ) )
+              {
+                _sentCount.increment();
+              }
+              else
+              {
+                _failedCount.increment();
+              }
+            }
+            catch ( final RuntimeException re )
+            {
+              // A single line must not stop the worker as the lines queued for it would never be sent
+              _failedCount.increment();
+            }
+          }
+          busyTime += System.nanoTime() - start;
+        }
+      }
+      catch ( final InterruptedException ie )
+      {
+        Thread.currentThread().interrupt();
+      }
+      finally
+      {
+        _busyTime = busyTime;
+      }
+    }
+  }
+}
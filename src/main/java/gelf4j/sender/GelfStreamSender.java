@@ -0,0 +1,200 @@
+package gelf4j.sender;
+
+import gelf4j.GelfConnection;
+import gelf4j.GelfMessage;
+import gelf4j.GelfMessageUtil;
+import gelf4j.GelfSendResult;
+import gelf4j.GelfTargetConfig;
+import gelf4j.JsonCodec;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends each line read from a stream as a separate message.
+ * Lines are parsed on the calling thread while messages are encoded and transmitted by the asynchronous sender of
+ * the connection. The number of messages in flight is bounded so that reading is slowed to the rate at which the
+ * connection can transmit rather than having messages dropped.
+ */
+public final class GelfStreamSender
+{
+  private final GelfConnection _connection;
+  private final JsonCodec _codec;
+  private final int _maxInFlight;
+  private final Semaphore _inFlight;
+  private final LongAdder _lineCount = new LongAdder();
+  private final LongAdder _invalidCount = new LongAdder();
+  private final LongAdder _sentCount = new LongAdder();
+  private final LongAdder _sentBytes = new LongAdder();
+  private final LongAdder _droppedCount = new LongAdder();
+  private final LongAdder _failedCount = new LongAdder();
+
+  /**
+   * Create a sender that keeps up to the size of the asynchronous send queue in flight.
+   *
+   * @param connection the connection used to send messages.
+   * @param codec      the codec used to parse each line as a json object of message fields, or null to send each
+   *                   line as the text of a message.
+   */
+  public GelfStreamSender( final GelfConnection connection, final JsonCodec codec )
+  {
+    this( connection, codec, connection.getAsyncQueueSize() );
+  }
+
+  /**
+   * @param maxInFlight the maximum number of messages queued but not yet transmitted. This should not exceed the
+   *                    size of the asynchronous send queue or messages may be dropped.
+   */
+  public GelfStreamSender( final GelfConnection connection, final JsonCodec codec, final int maxInFlight )
+  {
+    _connection = connection;
+    _codec = codec;
+    _maxInFlight = Math.max( 1, maxInFlight );
+    _inFlight = new Semaphore( _maxInFlight );
+  }
+
+  /**
+   * Send each non-empty line until the end of the stream and wait for the messages to be transmitted.
+   */
+  public void send( final BufferedReader reader )
+    throws IOException, InterruptedException
+  {
+    String line;
+    while ( null != ( line = reader.readLine() ) )
+    {
+      send( line );
+    }
+    awaitSent();
+  }
+
+  /**
+   * Queue a line to be sent, waiting while the maximum number of messages are in flight. This may be called from
+   * several threads.
+   */
+  public void send( final String line )
+    throws InterruptedException
+  {
+    _lineCount.increment();
+    if ( line.isEmpty() )
+    {
+      return;
+    }
+    final GelfMessage message = toMessage( line );
+    if ( null == message )
+    {
+      _invalidCount.increment();
+      return;
+    }
+    _inFlight.acquire();
+    _connection.sendAsync( message ).thenAccept( this::onResult );
+  }
+
+  /**
+   * Wait until every queued message has been transmitted.
+   */
+  public void awaitSent()
+    throws InterruptedException
+  {
+    _inFlight.acquire( _maxInFlight );
+    _inFlight.release( _maxInFlight );
+  }
+
+  /**
+   * @return the number of lines read, including empty and invalid lines.
+   */
+  public long getLineCount()
+  {
+    return _lineCount.sum();
+  }
+
+  /**
+   * @return the number of lines that were not json objects or had no message.
+   */
+  public long getInvalidCount()
+  {
+    return _invalidCount.sum();
+  }
+
+  public long getSentCount()
+  {
+    return _sentCount.sum();
+  }
+
+  /**
+   * @return the number of bytes in the encoded messages sent, including chunk headers.
+   */
+  public long getSentBytes()
+  {
+    return _sentBytes.sum();
+  }
+
+  public long getDroppedCount()
+  {
+    return _droppedCount.sum();
+  }
+
+  public long getFailedCount()
+  {
+    return _failedCount.sum();
+  }
+
+  GelfMessage toMessage( final String line )
+  {
+    return toMessage( _connection, _codec, line );
+  }
+
+  /**
+   * @return the message for the line, or null if the line is not a json object or has no message.
+   */
+  static GelfMessage toMessage( final GelfConnection connection, final JsonCodec codec, final String line )
+  {
+    final GelfMessage message = connection.newMessage();
+    if ( null == codec )
+    {
+      GelfMessageUtil.setValue( message, GelfTargetConfig.FIELD_MESSAGE, line );
+    }
+    else
+    {
+      final Object value;
+      try
+      {
+        value = codec.fromJson( line, Map.class );
+      }
+      catch ( final RuntimeException re )
+      {
+        return null;
+      }
+      if ( !( value instanceof Map ) )
+      {
+        return null;
+      }
+      for ( final Map.Entry<?, ?> entry : ( (Map<?, ?>) value ).entrySet() )
+      {
+        if ( null != entry.getValue() )
+        {
+          GelfMessageUtil.setValue( message, String.valueOf( entry.getKey() ), entry.getValue() );
+        }
+      }
+    }
+    return null != message.getShortMessage() ? message : null;
+  }
+
+  private void onResult( final GelfSendResult result )
+  {
+    switch ( result.getOutcome() )
+    {
+      case SENT:
+        _sentCount.increment();
+        _sentBytes.add( result.getByteCount() );
+        break;
+      case DROPPED:
+        _droppedCount.increment();
+        break;
+      default:
+        _failedCount.increment();
+    }
+    _inFlight.release();
+  }
+}
@@ -3,12 +3,26 @@ package gelf4j.sender;
 import gelf4j.GelfConnection;
 import gelf4j.GelfMessage;
 import gelf4j.GelfMessageUtil;
+import gelf4j.GelfRelay;
 import gelf4j.GelfTargetConfig;
+import gelf4j.SimpleJsonCodec;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import org.realityforge.getopt4j.CLArgsParser;
 import org.realityforge.getopt4j.CLOption;
 import org.realityforge.getopt4j.CLOptionDescriptor;
@@ -26,6 +40,31 @@ public class Main
   private static final int UNCOMPRESSED_CHUNKING_OPT = 'u';
   private static final int FIELD_OPT = 'D';
   private static final int FILE_OPT = 'f';
+  private static final int RELAY_OPT = 'r';
+  private static final int LISTEN_HOST_OPT = 2;
+  private static final int LISTEN_PORT_OPT = 3;
+  private static final int BATCH_SIZE_OPT = 4;
+  private static final int SPOOL_SIZE_OPT = 5;
+  private static final int COMPRESS_SPOOL_OPT = 6;
+  private static final int STREAM_OPT = 's';
+  private static final int NDJSON_OPT = 'j';
+  private static final int BENCH_OPT = 'b';
+  private static final int COUNT_OPT = 7;
+  private static final int DURATION_OPT = 8;
+  private static final int RATE_OPT = 9;
+  private static final int SIZE_OPT = 10;
+  private static final int FIELD_COUNT_OPT = 11;
+  private static final int THREADS_OPT = 12;
+  private static final int COMPRESSIBLE_OPT = 13;
+  private static final int TAIL_OPT = 't';
+  private static final int CHECKPOINT_OPT = 14;
+  private static final int MULTILINE_OPT = 15;
+  private static final int FROM_END_OPT = 16;
+  private static final int DAEMON_OPT = 'd';
+  private static final int CLIENT_OPT = 'c';
+  private static final int FIFO_OPT = 17;
+  private static final int WORKERS_OPT = 18;
+  private static final int ORDER_KEY_OPT = 19;
 
   private static final CLOptionDescriptor[] OPTIONS = new CLOptionDescriptor[]{
     new CLOptionDescriptor( "help",
@@ -56,16 +95,146 @@ public class Main
                             CLOptionDescriptor.ARGUMENT_DISALLOWED,
                             UNCOMPRESSED_CHUNKING_OPT,
                             "use the uncompressed chunking format used by graylog prior to 0.9.6." ),
+    new CLOptionDescriptor( "relay",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            RELAY_OPT,
+                            "receive messages over UDP and forward them to the server over TCP." ),
+    new CLOptionDescriptor( "listen-host",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            LISTEN_HOST_OPT,
+                            "the address the relay receives messages on. Defaults to localhost." ),
+    new CLOptionDescriptor( "listen-port",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            LISTEN_PORT_OPT,
+                            "the port the relay receives messages on. Defaults to " + GelfTargetConfig.DEFAULT_PORT ),
+    new CLOptionDescriptor( "batch-size",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            BATCH_SIZE_OPT,
+                            "the maximum messages the relay writes before flushing. Defaults to " +
+                            GelfRelay.DEFAULT_BATCH_SIZE ),
+    new CLOptionDescriptor( "spool-size",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            SPOOL_SIZE_OPT,
+                            "the maximum bytes of messages the relay holds for the server. Defaults to " +
+                            GelfRelay.DEFAULT_SPOOL_MAX_BYTES ),
+    new CLOptionDescriptor( "compress-spool",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            COMPRESS_SPOOL_OPT,
+                            "compress the messages held by the relay." ),
+    new CLOptionDescriptor( "stream",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            STREAM_OPT,
+                            "send each line of the file, or of standard input if no file is specified, as a message." ),
+    new CLOptionDescriptor( "ndjson",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            NDJSON_OPT,
+                            "parse each streamed line as a json object of message fields." ),
+    new CLOptionDescriptor( "bench",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            BENCH_OPT,
+                            "send generated messages and report the throughput and latency." ),
+    new CLOptionDescriptor( "count",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            COUNT_OPT,
+                            "the number of messages sent by the benchmark." ),
+    new CLOptionDescriptor( "duration",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            DURATION_OPT,
+                            "the seconds the benchmark sends for. Defaults to 10 if no count is specified." ),
+    new CLOptionDescriptor( "rate",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            RATE_OPT,
+                            "the messages per second sent by the benchmark. Defaults to as fast as possible." ),
+    new CLOptionDescriptor( "size",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            SIZE_OPT,
+                            "the characters in each benchmark message. Defaults to 100." ),
+    new CLOptionDescriptor( "field-count",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            FIELD_COUNT_OPT,
+                            "the additional fields in each benchmark message. Defaults to 0." ),
+    new CLOptionDescriptor( "threads",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            THREADS_OPT,
+                            "the threads sending benchmark messages. Defaults to 1." ),
+    new CLOptionDescriptor( "compressible",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            COMPRESSIBLE_OPT,
+                            "generate benchmark messages that compress well rather than random text." ),
+    new CLOptionDescriptor( "tail",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED | CLOptionDescriptor.DUPLICATES_ALLOWED,
+                            TAIL_OPT,
+                            "follow the file as it is written, sending each line as a message. May be repeated." ),
+    new CLOptionDescriptor( "checkpoint",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            CHECKPOINT_OPT,
+                            "the file in which the offsets of followed files are saved so that a restart resumes " +
+                            "from them." ),
+    new CLOptionDescriptor( "multiline",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            MULTILINE_OPT,
+                            "a pattern matching the first line of each message. Other lines are appended to the " +
+                            "previous message." ),
+    new CLOptionDescriptor( "from-end",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            FROM_END_OPT,
+                            "skip the existing content of followed files that have no checkpoint." ),
+    new CLOptionDescriptor( "daemon",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            DAEMON_OPT,
+                            "keep the connection open and send each line received from local clients as a message." ),
+    new CLOptionDescriptor( "client",
+                            CLOptionDescriptor.ARGUMENT_DISALLOWED,
+                            CLIENT_OPT,
+                            "pass the message, or each line of the file or standard input, to a running daemon." ),
+    new CLOptionDescriptor( "fifo",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            FIFO_OPT,
+                            "a named pipe from which the daemon also reads lines." ),
+    new CLOptionDescriptor( "workers",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            WORKERS_OPT,
+                            "the threads, each with its own connection, that send streamed lines. Defaults to 1." ),
+    new CLOptionDescriptor( "order-key",
+                            CLOptionDescriptor.ARGUMENT_REQUIRED,
+                            ORDER_KEY_OPT,
+                            "the json field whose value determines the worker sending a line, so that lines with " +
+                            "the same value are sent in order." ),
   };
 
   private static final int SUCCESS_EXIT_CODE = 0;
   private static final int ERROR_PARSING_ARGS_EXIT_CODE = 1;
   private static final int ERROR_SENDING_EXIT_CODE = 2;
 
+  private static final long REPORT_INTERVAL = 10000;
+
   private static final GelfTargetConfig c_config = new GelfTargetConfig();
   private static boolean c_verbose;
   private static String c_message;
   private static File c_messageFromFile;
+  private static final GelfRelay c_relay = new GelfRelay();
+  private static boolean c_relayMode;
+  private static boolean c_streamMode;
+  private static boolean c_ndjson;
+  private static boolean c_benchMode;
+  private static long c_benchCount;
+  private static long c_benchDuration;
+  private static double c_benchRate;
+  private static int c_benchSize = 100;
+  private static int c_benchFieldCount;
+  private static int c_benchThreads = 1;
+  private static boolean c_benchCompressible;
+  private static final List<Path> c_tailFiles = new ArrayList<Path>();
+  private static Path c_checkpointFile;
+  private static Pattern c_multilineStart;
+  private static boolean c_tailFromEnd;
+  private static boolean c_daemonMode;
+  private static boolean c_clientMode;
+  private static String c_listenHost;
+  private static int c_listenPort;
+  private static Path c_fifo;
+  private static int c_workers = 1;
+  private static String c_orderKey;
 
   public static void main( final String[] args )
   {
@@ -75,6 +244,37 @@ public class Main
       return;
     }
 
+    if( c_relayMode )
+    {
+      relay();
+      return;
+    }
+    if( c_streamMode )
+    {
+      stream();
+      return;
+    }
+    if( c_benchMode )
+    {
+      bench();
+      return;
+    }
+    if( !c_tailFiles.isEmpty() )
+    {
+      tail();
+      return;
+    }
+    if( c_daemonMode )
+    {
+      daemon();
+      return;
+    }
+    if( c_clientMode )
+    {
+      client();
+      return;
+    }
+
     GelfConnection connection = null;
 
     try
@@ -143,6 +343,417 @@ public class Main
     }
   }
 
+  private static void stream()
+  {
+    if( c_workers > 1 )
+    {
+      parallelStream();
+      return;
+    }
+    GelfConnection connection = null;
+    InputStream inputStream = null;
+    try
+    {
+      connection = c_config.createConnection();
+      inputStream = null != c_messageFromFile ? new FileInputStream( c_messageFromFile ) : System.in;
+      final BufferedReader reader =
+        new BufferedReader( new InputStreamReader( inputStream, StandardCharsets.UTF_8 ), 65536 );
+      final GelfStreamSender sender = new GelfStreamSender( connection, c_ndjson ? new SimpleJsonCodec() : null );
+      final long start = System.nanoTime();
+      sender.send( reader );
+      final double seconds = Math.max( 1, System.nanoTime() - start ) / 1000000000D;
+      info( String.format( "Sent %d messages (%d bytes) in %.1fs (%.1f/s, %.1f bytes/s), %d lines, " +
+                           "%d invalid, %d dropped, %d failed",
+                           sender.getSentCount(),
+                           sender.getSentBytes(),
+                           seconds,
+                           sender.getSentCount() / seconds,
+                           sender.getSentBytes() / seconds,
+                           sender.getLineCount(),
+                           sender.getInvalidCount(),
+                           sender.getDroppedCount(),
+                           sender.getFailedCount() ) );
+      connection.close();
+      System.exit( 0 == sender.getFailedCount() ? SUCCESS_EXIT_CODE : ERROR_SENDING_EXIT_CODE );
+    }
+    catch( final Exception e )
+    {
+      error( "Streaming messages: " + e );
+      if( c_verbose )
+      {
+        e.printStackTrace( System.out );
+      }
+      System.exit( ERROR_SENDING_EXIT_CODE );
+    }
+    finally
+    {
+      if( null != inputStream && System.in != inputStream )
+      {
+        try
+        {
+          inputStream.close();
+        }
+        catch ( final IOException ioe )
+        {
+          //Ignored
+        }
+      }
+      if( null != connection )
+      {
+        try
+        {
+          connection.close();
+        }
+        catch ( final IOException ioe )
+        {
+          //Ignored
+        }
+      }
+    }
+  }
+
+  private static void parallelStream()
+  {
+    final List<GelfConnection> connections = new ArrayList<GelfConnection>();
+    InputStream inputStream = null;
+    try
+    {
+      for( int i = 0; i < c_workers; i++ )
+      {
+        connections.add( c_config.createConnection() );
+      }
+      inputStream = null != c_messageFromFile ? new FileInputStream( c_messageFromFile ) : System.in;
+      // A large buffer keeps the reading thread ahead of the workers
+      final BufferedReader reader =
+        new BufferedReader( new InputStreamReader( inputStream, StandardCharsets.UTF_8 ), 1024 * 1024 );
+      final GelfParallelSender sender =
+        new GelfParallelSender( connections, c_ndjson ? new SimpleJsonCodec() : null, c_orderKey );
+      sender.send( reader );
+      info( sender.describe() );
+      System.exit( 0 == sender.getFailedCount() ? SUCCESS_EXIT_CODE : ERROR_SENDING_EXIT_CODE );
+    }
+    catch( final Exception e )
+    {
+      error( "Streaming messages: " + e );
+      if( c_verbose )
+      {
+        e.printStackTrace( System.out );
+      }
+      System.exit( ERROR_SENDING_EXIT_CODE );
+    }
+    finally
+    {
+      if( null != inputStream && System.in != inputStream )
+      {
+        try
+        {
+          inputStream.close();
+        }
+        catch ( final IOException ioe )
+        {
+          //Ignored
+        }
+      }
+      for( final GelfConnection connection : connections )
+      {
+        try
+        {
+          connection.close();
+        }
+        catch ( final IOException ioe )
+        {
+          //Ignored
+        }
+      }
+    }
+  }
+
+  private static void bench()
+  {
+    GelfConnection connection = null;
+    try
+    {
+      connection = c_config.createConnection();
+      final GelfLoadGenerator generator = new GelfLoadGenerator( connection );
+      generator.setMessageCount( c_benchCount );
+      generator.setDuration( 0 == c_benchCount && 0 == c_benchDuration ? 10000 : c_benchDuration * 1000 );
+      generator.setRate( c_benchRate );
+      generator.setMessageSize( c_benchSize );
+      generator.setFieldCount( c_benchFieldCount );
+      generator.setThreadCount( c_benchThreads );
+      generator.setCompressible( c_benchCompressible );
+      if( c_verbose )
+      {
+        info( "Benchmark Count: " + generator.getMessageCount() );
+        info( "Benchmark Duration: " + generator.getDuration() + "ms" );
+        info( "Benchmark Rate: " + generator.getRate() );
+        info( "Benchmark Message Size: " + generator.getMessageSize() );
+        info( "Benchmark Field Count: " + generator.getFieldCount() );
+        info( "Benchmark Threads: " + generator.getThreadCount() );
+        info( "Benchmark Compressible?: " + generator.isCompressible() );
+      }
+      generator.run();
+      info( generator.describe() );
+      connection.close();
+      System.exit( 0 == generator.getFailedCount() ? SUCCESS_EXIT_CODE : ERROR_SENDING_EXIT_CODE );
+    }
+    catch( final Exception e )
+    {
+      error( "Running benchmark: " + e );
+      if( c_verbose )
+      {
+        e.printStackTrace( System.out );
+      }
+      System.exit( ERROR_SENDING_EXIT_CODE );
+    }
+    finally
+    {
+      if( null != connection )
+      {
+        try
+        {
+          connection.close();
+        }
+        catch ( final IOException ioe )
+        {
+          //Ignored
+        }
+      }
+    }
+  }
+
+  private static void tail()
+  {
+    GelfConnection connection = null;
+    try
+    {
+      connection = c_config.createConnection();
+      final GelfFileTailer tailer = new GelfFileTailer( connection, c_tailFiles );
+      tailer.setCheckpointFile( c_checkpointFile );
+      tailer.setMultilineStart( c_multilineStart );
+      tailer.setStartAtEnd( c_tailFromEnd );
+      final GelfConnection tailerConnection = connection;
+      Runtime.getRuntime().addShutdownHook( new Thread( () -> {
+        try
+        {
+          tailer.close();
+          tailerConnection.close();
+        }
+        catch( final IOException ioe )
+        {
+          error( "Closing tailer: " + ioe );
+        }
+        info( String.format( "Sent %d messages, %d lines, %d failed, %d rotations",
+                             tailer.getSentCount(),
+                             tailer.getLineCount(),
+                             tailer.getFailedCount(),
+                             tailer.getRotationCount() ) );
+      } ) );
+      if( c_verbose )
+      {
+        info( "Following " + c_tailFiles );
+      }
+      tailer.run();
+    }
+    catch( final Exception e )
+    {
+      error( "Following files: " + e );
+      if( c_verbose )
+      {
+        e.printStackTrace( System.out );
+      }
+      System.exit( ERROR_SENDING_EXIT_CODE );
+    }
+  }
+
+  private static void daemon()
+  {
+    GelfDaemon daemon = null;
+    try
+    {
+      final GelfConnection connection = c_config.createConnection();
+      daemon = new GelfDaemon( connection, c_ndjson ? new SimpleJsonCodec() : null );
+      if( null != c_listenHost )
+      {
+        daemon.setListenHost( c_listenHost );
+      }
+      if( 0 != c_listenPort )
+      {
+        daemon.setListenPort( c_listenPort );
+      }
+      daemon.setFifo( c_fifo );
+      daemon.start();
+      final GelfDaemon runningDaemon = daemon;
+      Runtime.getRuntime().addShutdownHook( new Thread( () -> {
+        runningDaemon.close();
+        try
+        {
+          connection.close();
+        }
+        catch( final IOException ioe )
+        {
+          //Ignored
+        }
+        printDaemonStatistics( runningDaemon );
+      } ) );
+    }
+    catch( final Exception e )
+    {
+      error( "Starting daemon: " + e );
+      if( c_verbose )
+      {
+        e.printStackTrace( System.out );
+      }
+      System.exit( ERROR_SENDING_EXIT_CODE );
+      return;
+    }
+    if( c_verbose )
+    {
+      info( "Accepting lines on " + daemon.getListenHost() + ":" + daemon.getListenPort() +
+            ( null != c_fifo ? " and " + c_fifo : "" ) );
+    }
+    try
+    {
+      while( true )
+      {
+        Thread.sleep( REPORT_INTERVAL );
+        if( c_verbose )
+        {
+          printDaemonStatistics( daemon );
+        }
+      }
+    }
+    catch( final InterruptedException ie )
+    {
+      //Ignored. Exit
+    }
+  }
+
+  private static void printDaemonStatistics( final GelfDaemon daemon )
+  {
+    final GelfStreamSender sender = daemon.getSender();
+    info( String.format( "Sent %d messages (%d bytes), %d lines, %d invalid, %d dropped, %d failed, %d connections",
+                         sender.getSentCount(),
+                         sender.getSentBytes(),
+                         sender.getLineCount(),
+                         sender.getInvalidCount(),
+                         sender.getDroppedCount(),
+                         sender.getFailedCount(),
+                         daemon.getConnectionCount() ) );
+  }
+
+  private static void client()
+  {
+    final String host = null != c_listenHost ? c_listenHost : "localhost";
+    final int port = 0 != c_listenPort ? c_listenPort : GelfDaemon.DEFAULT_LISTEN_PORT;
+    InputStream inputStream = null;
+    try( final Socket socket = new Socket( host, port ) )
+    {
+      final Writer writer = new OutputStreamWriter( socket.getOutputStream(), StandardCharsets.UTF_8 );
+      if( null != c_message )
+      {
+        writer.write( c_message );
+        writer.write( '\n' );
+      }
+      else
+      {
+        inputStream = null != c_messageFromFile ? new FileInputStream( c_messageFromFile ) : System.in;
+        final BufferedReader reader =
+          new BufferedReader( new InputStreamReader( inputStream, StandardCharsets.UTF_8 ), 65536 );
+        String line;
+        while( null != ( line = reader.readLine() ) )
+        {
+          writer.write( line );
+          writer.write( '\n' );
+        }
+      }
+      writer.flush();
+      System.exit( SUCCESS_EXIT_CODE );
+    }
+    catch( final Exception e )
+    {
+      error( "Passing message to daemon at " + host + ":" + port + ": " + e );
+      if( c_verbose )
+      {
+        e.printStackTrace( System.out );
+      }
+      System.exit( ERROR_SENDING_EXIT_CODE );
+    }
+    finally
+    {
+      if( null != inputStream && System.in != inputStream )
+      {
+        try
+        {
+          inputStream.close();
+        }
+        catch ( final IOException ioe )
+        {
+          //Ignored
+        }
+      }
+    }
+  }
+
+  private static void relay()
+  {
+    c_relay.setUpstreamHost( c_config.getHost() );
+    c_relay.setUpstreamPort( c_config.getPort() );
+    c_relay.setCompressedChunking( c_config.isCompressedChunking() );
+    try
+    {
+      c_relay.start();
+    }
+    catch( final Exception e )
+    {
+      error( "Starting relay: " + e );
+      if( c_verbose )
+      {
+        e.printStackTrace( System.out );
+      }
+      System.exit( ERROR_SENDING_EXIT_CODE );
+      return;
+    }
+    if( c_verbose )
+    {
+      info( "Relaying from " + c_relay.getListenHost() + ":" + c_relay.getListenPort() );
+    }
+    Runtime.getRuntime().addShutdownHook( new Thread( () -> {
+      c_relay.close();
+      printRelayStatistics();
+    } ) );
+    try
+    {
+      while( true )
+      {
+        Thread.sleep( REPORT_INTERVAL );
+        if( c_verbose )
+        {
+          printRelayStatistics();
+        }
+      }
+    }
+    catch( final InterruptedException ie )
+    {
+      //Ignored. Exit
+    }
+  }
+
+  private static void printRelayStatistics()
+  {
+    info( String.format( "Relayed %d messages (%d bytes), %d received, %d invalid, %d dropped, %d corrupt, " +
+                         "%d spooled (%d bytes), %d connections",
+                         c_relay.getForwardedCount(),
+                         c_relay.getForwardedBytes(),
+                         c_relay.getReceivedCount(),
+                         c_relay.getInvalidCount(),
+                         c_relay.getDroppedCount(),
+                         c_relay.getCorruptCount(),
+                         c_relay.getSpoolSize(),
+                         c_relay.getSpooledBytes(),
+                         c_relay.getConnectCount() ) );
+  }
+
   private static boolean processOptions( final String[] args )
   {
     // Parse the arguments
@@ -212,6 +823,232 @@ public class Main
           c_verbose = true;
           break;
         }
+        case RELAY_OPT:
+        {
+          c_relayMode = true;
+          break;
+        }
+        case LISTEN_HOST_OPT:
+        {
+          c_listenHost = option.getArgument();
+          c_relay.setListenHost( c_listenHost );
+          break;
+        }
+        case LISTEN_PORT_OPT:
+        {
+          final String port = option.getArgument();
+          try
+          {
+            c_listenPort = Integer.parseInt( port );
+            c_relay.setListenPort( c_listenPort );
+          }
+          catch( final NumberFormatException nfe )
+          {
+            error( "parsing listen port: " + port );
+            return false;
+          }
+          break;
+        }
+        case BATCH_SIZE_OPT:
+        {
+          final String batchSize = option.getArgument();
+          try
+          {
+            c_relay.setBatchSize( Integer.parseInt( batchSize ) );
+          }
+          catch( final NumberFormatException nfe )
+          {
+            error( "parsing batch size: " + batchSize );
+            return false;
+          }
+          break;
+        }
+        case SPOOL_SIZE_OPT:
+        {
+          final String spoolSize = option.getArgument();
+          try
+          {
+            c_relay.setSpoolMaxBytes( Long.parseLong( spoolSize ) );
+          }
+          catch( final NumberFormatException nfe )
+          {
+            error( "parsing spool size: " + spoolSize );
+            return false;
+          }
+          break;
+        }
+        case COMPRESS_SPOOL_OPT:
+        {
+          c_relay.setCompressSpool( true );
+          break;
+        }
+        case STREAM_OPT:
+        {
+          c_streamMode = true;
+          break;
+        }
+        case NDJSON_OPT:
+        {
+          c_ndjson = true;
+          break;
+        }
+        case BENCH_OPT:
+        {
+          c_benchMode = true;
+          break;
+        }
+        case COUNT_OPT:
+        {
+          final String count = option.getArgument();
+          try
+          {
+            c_benchCount = Long.parseLong( count );
+          }
+          catch( final NumberFormatException nfe )
+          {
+            error( "parsing count: " + count );
+            return false;
+          }
+          break;
+        }
+        case DURATION_OPT:
+        {
+          final String duration = option.getArgument();
+          try
+          {
+            c_benchDuration = Long.parseLong( duration );
+          }
+          catch( final NumberFormatException nfe )
+          {
+            error( "parsing duration: " + duration );
+            return false;
+          }
+          break;
+        }
+        case RATE_OPT:
+        {
+          final String rate = option.getArgument();
+          try
+          {
+            c_benchRate = Double.parseDouble( rate );
+          }
+          catch( final NumberFormatException nfe )
+          {
+            error( "parsing rate: " + rate );
+            return false;
+          }
+          break;
+        }
+        case SIZE_OPT:
+        {
+          final String size = option.getArgument();
+          try
+          {
+            c_benchSize = Integer.parseInt( size );
+          }
+          catch( final NumberFormatException nfe )
+          {
+            error( "parsing size: " + size );
+            return false;
+          }
+          break;
+        }
+        case FIELD_COUNT_OPT:
+        {
+          final String fieldCount = option.getArgument();
+          try
+          {
+            c_benchFieldCount = Integer.parseInt( fieldCount );
+          }
+          catch( final NumberFormatException nfe )
+          {
+            error( "parsing field count: " + fieldCount );
+            return false;
+          }
+          break;
+        }
+        case THREADS_OPT:
+        {
+          final String threads = option.getArgument();
+          try
+          {
+            c_benchThreads = Integer.parseInt( threads );
+          }
+          catch( final NumberFormatException nfe )
+          {
+            error( "parsing threads: " + threads );
+            return false;
+          }
+          break;
+        }
+        case COMPRESSIBLE_OPT:
+        {
+          c_benchCompressible = true;
+          break;
+        }
+        case TAIL_OPT:
+        {
+          c_tailFiles.add( Paths.get( option.getArgument() ) );
+          break;
+        }
+        case CHECKPOINT_OPT:
+        {
+          c_checkpointFile = Paths.get( option.getArgument() );
+          break;
+        }
+        case MULTILINE_OPT:
+        {
+          final String multiline = option.getArgument();
+          try
+          {
+            c_multilineStart = Pattern.compile( multiline );
+          }
+          catch( final PatternSyntaxException pse )
+          {
+            error( "parsing multiline pattern: " + multiline );
+            return false;
+          }
+          break;
+        }
+        case FROM_END_OPT:
+        {
+          c_tailFromEnd = true;
+          break;
+        }
+        case DAEMON_OPT:
+        {
+          c_daemonMode = true;
+          break;
+        }
+        case CLIENT_OPT:
+        {
+          c_clientMode = true;
+          break;
+        }
+        case FIFO_OPT:
+        {
+          c_fifo = Paths.get( option.getArgument() );
+          break;
+        }
+        case WORKERS_OPT:
+        {
+          final String workers = option.getArgument();
+          try
+          {
+            c_workers = Integer.parseInt( workers );
+          }
+          catch( final NumberFormatException nfe )
+          {
+            error( "parsing workers: " + workers );
+            return false;
+          }
+          break;
+        }
+        case ORDER_KEY_OPT:
+        {
+          c_orderKey = option.getArgument();
+          break;
+        }
         case HELP_OPT:
         {
           printUsage();
@@ -224,12 +1061,78 @@ public class Main
       error( "Message file specified as well as message on the command line" );
       return false;
     }
+    if( c_relayMode && ( null != c_messageFromFile || null != c_message ) )
+    {
+      error( "Message specified in relay mode" );
+      return false;
+    }
+    if( c_streamMode && null != c_message )
+    {
+      error( "Message specified on the command line in stream mode" );
+      return false;
+    }
+    final boolean tailMode = !c_tailFiles.isEmpty();
+    if( ( c_relayMode ? 1 : 0 ) + ( c_streamMode ? 1 : 0 ) + ( c_benchMode ? 1 : 0 ) + ( tailMode ? 1 : 0 ) +
+        ( c_daemonMode ? 1 : 0 ) + ( c_clientMode ? 1 : 0 ) > 1 )
+    {
+      error( "Only one of relay, stream, bench, tail, daemon and client mode may be specified" );
+      return false;
+    }
+    if( c_benchMode && ( null != c_messageFromFile || null != c_message ) )
+    {
+      error( "Message specified in bench mode" );
+      return false;
+    }
+    if( tailMode && ( null != c_messageFromFile || null != c_message ) )
+    {
+      error( "Message specified in tail mode" );
+      return false;
+    }
+    if( c_daemonMode && ( null != c_messageFromFile || null != c_message ) )
+    {
+      error( "Message specified in daemon mode" );
+      return false;
+    }
+    if( c_clientMode && !c_config.getDefaultFields().isEmpty() )
+    {
+      error( "Fields specified in client mode. Specify them when starting the daemon" );
+      return false;
+    }
+    if( null != c_fifo && !c_daemonMode )
+    {
+      error( "Named pipe specified when not in daemon mode" );
+      return false;
+    }
+    if( ( 1 != c_workers || null != c_orderKey ) && !c_streamMode )
+    {
+      error( "Workers specified when not in stream mode" );
+      return false;
+    }
+    if( null != c_orderKey && ( !c_ndjson || c_workers < 2 ) )
+    {
+      error( "Order key specified without ndjson lines and several workers" );
+      return false;
+    }
     if( c_verbose )
     {
       info( "Server Host: " + c_config.getHost() );
       info( "Server Port: " + c_config.getPort() );
       info( "Compressed Chunking Format?: " + c_config.isCompressedChunking() );
       info( "Default Fields: " + c_config.getDefaultFields() );
+      if( c_relayMode )
+      {
+        info( "Relay Listen Host: " + c_relay.getListenHost() );
+        info( "Relay Listen Port: " + c_relay.getListenPort() );
+        info( "Relay Batch Size: " + c_relay.getBatchSize() );
+        info( "Relay Spool Size: " + c_relay.getSpoolMaxBytes() );
+        info( "Relay Compress Spool?: " + c_relay.isCompressSpool() );
+      }
+      if( tailMode )
+      {
+        info( "Tail Checkpoint File: " + c_checkpointFile );
+        info( "Tail Multiline Pattern: " + c_multilineStart );
+        info( "Tail From End?: " + c_tailFromEnd );
+      }
     }
 
     return true;
@@ -0,0 +1,251 @@
+package gelf4j;
+
+import ch.qos.logback.classic.LoggerContext;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramSocket;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ * Asserts that the bytes allocated by the calling thread to send representative messages stay within the budgets
+ * checked in as allocation-budgets.properties. A budget should only be raised when an increase is expected.
+ * Allocations made by other threads, such as the asynchronous sender, are not measured.
+ */
+public class AllocationBudgetTest
+{
+  private static final int PORT = 1987;
+  private static final int WARMUP_ITERATIONS = 5000;
+  private static final int MEASURED_ITERATIONS = 1000;
+  private static final int MAX_FIELD_COUNT = 16;
+  private static final String[] FIELD_NAMES = new String[ MAX_FIELD_COUNT ];
+  private static final String[] FIELD_VALUES = new String[ MAX_FIELD_COUNT ];
+
+  static
+  {
+    for ( int i = 0; i < MAX_FIELD_COUNT; i++ )
+    {
+      FIELD_NAMES[ i ] = "field" + i;
+      FIELD_VALUES[ i ] = "value" + i;
+    }
+  }
+
+  private static com.sun.management.ThreadMXBean c_threadMXBean;
+  private static Properties c_budgets;
+  private static DatagramSocket c_socket;
+
+  @BeforeClass
+  public static void setUp()
+    throws Exception
+  {
+    final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    assumeTrue( threadMXBean instanceof com.sun.management.ThreadMXBean );
+    c_threadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+    assumeTrue( c_threadMXBean.isThreadAllocatedMemorySupported() );
+    c_threadMXBean.setThreadAllocatedMemoryEnabled( true );
+
+    c_budgets = new Properties();
+    final InputStream inputStream = AllocationBudgetTest.class.getResourceAsStream( "allocation-budgets.properties" );
+    assertNotNull( "allocation-budgets.properties missing", inputStream );
+    try
+    {
+      c_budgets.load( inputStream );
+    }
+    finally
+    {
+      inputStream.close();
+    }
+
+    // The server never reads, datagrams are dropped once the receive buffer is full
+    c_socket = ConnectionUtil.createServer( ConnectionUtil.getHost(), PORT );
+  }
+
+  @AfterClass
+  public static void tearDown()
+  {
+    if ( null != c_socket )
+    {
+      c_socket.close();
+    }
+  }
+
+  @Test
+  public void sendSmallMessage()
+    throws Exception
+  {
+    final GelfConnection connection = newConfig().createConnection();
+    try
+    {
+      final String text = createText( 40 );
+      assertWithinBudget( "send.small", () -> connection.send( newMessage( connection, text, 0 ) ) );
+    }
+    finally
+    {
+      connection.close();
+    }
+  }
+
+  @Test
+  public void sendMessageWithFields()
+    throws Exception
+  {
+    final GelfConnection connection = newConfig().createConnection();
+    try
+    {
+      final String text = createText( 40 );
+      assertWithinBudget( "send.fields", () -> connection.send( newMessage( connection, text, MAX_FIELD_COUNT ) ) );
+    }
+    finally
+    {
+      connection.close();
+    }
+  }
+
+  @Test
+  public void sendChunkedMessage()
+    throws Exception
+  {
+    final GelfConnection connection = newConfig().createConnection();
+    try
+    {
+      final String text = createText( 8000 );
+      assertWithinBudget( "send.chunked", () -> connection.send( newMessage( connection, text, 0 ) ) );
+    }
+    finally
+    {
+      connection.close();
+    }
+  }
+
+  @Test
+  public void log4jEvent()
+    throws Exception
+  {
+    final gelf4j.log4j.GelfAppender appender = new gelf4j.log4j.GelfAppender();
+    appender.setHost( ConnectionUtil.getHost() );
+    appender.setPort( PORT );
+    appender.activateOptions();
+    final org.apache.log4j.Logger logger = org.apache.log4j.Logger.getLogger( AllocationBudgetTest.class );
+    try
+    {
+      assertWithinBudget( "appender.log4j",
+                          () -> appender.doAppend( new org.apache.log4j.spi.LoggingEvent( getClass().getName(),
+                                                                                          logger,
+                                                                                          org.apache.log4j.Level.INFO,
+                                                                                          "Budget message",
+                                                                                          null ) ) );
+    }
+    finally
+    {
+      appender.close();
+    }
+  }
+
+  @Test
+  public void logbackEvent()
+    throws Exception
+  {
+    final LoggerContext context = new LoggerContext();
+    final ch.qos.logback.classic.Logger logger = context.getLogger( AllocationBudgetTest.class );
+    final gelf4j.logback.GelfAppender<ch.qos.logback.classic.spi.ILoggingEvent> appender =
+      new gelf4j.logback.GelfAppender<ch.qos.logback.classic.spi.ILoggingEvent>();
+    appender.setContext( context );
+    appender.setHost( ConnectionUtil.getHost() );
+    appender.setPort( PORT );
+    appender.start();
+    try
+    {
+      final ch.qos.logback.classic.Level level = ch.qos.logback.classic.Level.INFO;
+      assertWithinBudget( "appender.logback",
+                          () -> appender.doAppend( new ch.qos.logback.classic.spi.LoggingEvent( getClass().getName(),
+                                                                                                logger,
+                                                                                                level,
+                                                                                                "Budget message",
+                                                                                                null,
+                                                                                                null ) ) );
+    }
+    finally
+    {
+      appender.stop();
+    }
+  }
+
+  @Test
+  public void julEvent()
+    throws Exception
+  {
+    final String prefix = gelf4j.logging.GelfHandler.class.getName();
+    final String configData = prefix + ".host=" + ConnectionUtil.getHost() + "\n" + prefix + ".port=" + PORT + "\n";
+    LogManager.getLogManager().readConfiguration( new ByteArrayInputStream( configData.getBytes() ) );
+    final gelf4j.logging.GelfHandler handler = new gelf4j.logging.GelfHandler();
+    try
+    {
+      assertWithinBudget( "appender.jul", () -> {
+        final LogRecord record = new LogRecord( java.util.logging.Level.INFO, "Budget message" );
+        record.setLoggerName( AllocationBudgetTest.class.getName() );
+        handler.publish( record );
+      } );
+    }
+    finally
+    {
+      handler.close();
+      LogManager.getLogManager().reset();
+    }
+  }
+
+  private void assertWithinBudget( final String key, final Runnable action )
+  {
+    final String budget = c_budgets.getProperty( key );
+    assertNotNull( "No allocation budget for " + key, budget );
+
+    for ( int i = 0; i < WARMUP_ITERATIONS; i++ )
+    {
+      action.run();
+    }
+    final long threadId = Thread.currentThread().getId();
+    final long start = c_threadMXBean.getThreadAllocatedBytes( threadId );
+    for ( int i = 0; i < MEASURED_ITERATIONS; i++ )
+    {
+      action.run();
+    }
+    final long allocated = ( c_threadMXBean.getThreadAllocatedBytes( threadId ) - start ) / MEASURED_ITERATIONS;
+    assertTrue( key + " allocated " + allocated + " bytes per operation, exceeding budget of " + budget,
+                allocated <= Long.parseLong( budget.trim() ) );
+  }
+
+  private GelfMessage newMessage( final GelfConnection connection, final String text, final int fieldCount )
+  {
+    final GelfMessage message = connection.newMessage( SyslogLevel.INFO, text, System.currentTimeMillis() );
+    for ( int i = 0; i < fieldCount; i++ )
+    {
+      message.getAdditionalFields().put( FIELD_NAMES[ i ], FIELD_VALUES[ i ] );
+    }
+    return message;
+  }
+
+  private static String createText( final int length )
+  {
+    // Random text compresses poorly enough that longer messages are chunked
+    final Random random = new Random( 723 );
+    final StringBuilder sb = new StringBuilder( length );
+    for ( int i = 0; i < length; i++ )
+    {
+      sb.append( (char) ( ' ' + random.nextInt( 95 ) ) );
+    }
+    return sb.toString();
+  }
+
+  private static GelfTargetConfig newConfig()
+    throws Exception
+  {
+    return ConnectionUtil.createConfig( PORT );
+  }
+}
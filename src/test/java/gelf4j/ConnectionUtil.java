@@ -1,11 +1,14 @@
 package gelf4j;
 
+import gelf4j.receiver.GelfReceiver;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.net.UnknownHostException;
 import java.util.zip.GZIPInputStream;
 
 public class ConnectionUtil
@@ -14,6 +17,49 @@ public class ConnectionUtil
   {
   }
 
+  public static String getHost()
+    throws UnknownHostException
+  {
+    return InetAddress.getLocalHost().getCanonicalHostName();
+  }
+
+  /**
+   * @return a config that sends to the specified port of the local host.
+   */
+  public static GelfTargetConfig createConfig( final int port )
+    throws UnknownHostException
+  {
+    final GelfTargetConfig config = new GelfTargetConfig();
+    config.setHost( getHost() );
+    config.setPort( port );
+    return config;
+  }
+
+  /**
+   * @return a receiver that is not yet started, listening on the specified port of the local host.
+   */
+  public static GelfReceiver createReceiver( final int port, final GelfReceiver.Listener listener )
+    throws UnknownHostException
+  {
+    final GelfReceiver receiver = new GelfReceiver();
+    receiver.setHost( getHost() );
+    receiver.setPort( port );
+    receiver.setListener( listener );
+    return receiver;
+  }
+
+  /**
+   * @return a started receiver that only accepts datagrams on the specified port of the local host.
+   */
+  public static GelfReceiver startUdpReceiver( final int port, final GelfReceiver.Listener listener )
+    throws IOException
+  {
+    final GelfReceiver receiver = createReceiver( port, listener );
+    receiver.setTcpEnabled( false );
+    receiver.start();
+    return receiver;
+  }
+
   public static DatagramSocket createServer( final String host, final int port )
     throws SocketException
   {
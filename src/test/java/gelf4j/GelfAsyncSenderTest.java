@@ -0,0 +1,247 @@
+package gelf4j;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfAsyncSenderTest
+{
+  @Test
+  public void laneOf()
+    throws Exception
+  {
+    assertEquals( GelfAsyncSender.HIGH_LANE, GelfAsyncSender.laneOf( SyslogLevel.EMERG ) );
+    assertEquals( GelfAsyncSender.HIGH_LANE, GelfAsyncSender.laneOf( SyslogLevel.ERR ) );
+    assertEquals( GelfAsyncSender.NORMAL_LANE, GelfAsyncSender.laneOf( SyslogLevel.WARNING ) );
+    assertEquals( GelfAsyncSender.NORMAL_LANE, GelfAsyncSender.laneOf( SyslogLevel.NOTICE ) );
+    assertEquals( GelfAsyncSender.LOW_LANE, GelfAsyncSender.laneOf( SyslogLevel.INFO ) );
+    assertEquals( GelfAsyncSender.LOW_LANE, GelfAsyncSender.laneOf( SyslogLevel.DEBUG ) );
+    assertEquals( GelfAsyncSender.LOW_LANE, GelfAsyncSender.laneOf( null ) );
+  }
+
+  @Test
+  public void highPriorityLaneIsDrainedFirst()
+    throws Exception
+  {
+    final GelfTargetConfig config = newConfig( 1983 );
+    final DatagramSocket socket =
+      ConnectionUtil.createServer( config.getHostAddress().getHostName(), config.getPort() );
+    try
+    {
+      final GelfConnection connection = config.createConnection();
+      final GelfAsyncSender sender =
+        new GelfAsyncSender( connection, 2, GelfTargetConfig.DropPolicy.DROP_NEWEST, Long.MAX_VALUE, "test-sender" );
+
+      final CompletableFuture<GelfSendResult> first;
+      final CompletableFuture<GelfSendResult> error;
+      final CompletableFuture<GelfSendResult> dropped;
+      // Holding the connection monitor blocks the sender thread once it has taken a batch
+      synchronized ( connection )
+      {
+        first = enqueue( sender, connection, SyslogLevel.DEBUG, "Debug0" );
+        awaitEmpty( sender );
+        enqueue( sender, connection, SyslogLevel.DEBUG, "Debug1" );
+        enqueue( sender, connection, SyslogLevel.DEBUG, "Debug2" );
+        dropped = enqueue( sender, connection, SyslogLevel.DEBUG, "Debug3" );
+        error = enqueue( sender, connection, SyslogLevel.ERR, "Error1" );
+
+        assertEquals( GelfSendResult.Outcome.DROPPED, dropped.get().getOutcome() );
+        assertEquals( 2, sender.getLaneDepth( GelfAsyncSender.LOW_LANE ) );
+        assertEquals( 1, sender.getLaneDepth( GelfAsyncSender.HIGH_LANE ) );
+        assertEquals( 3, sender.getQueueDepth() );
+      }
+
+      assertTrue( first.get( 5, TimeUnit.SECONDS ).isSent() );
+      assertTrue( error.get( 5, TimeUnit.SECONDS ).isSent() );
+      assertTrue( ConnectionUtil.receivePacketAsString( socket ).contains( "Debug0" ) );
+      assertTrue( ConnectionUtil.receivePacketAsString( socket ).contains( "Error1" ) );
+      assertTrue( ConnectionUtil.receivePacketAsString( socket ).contains( "Debug1" ) );
+      assertTrue( ConnectionUtil.receivePacketAsString( socket ).contains( "Debug2" ) );
+
+      sender.shutdown();
+      assertEquals( GelfSendResult.Outcome.DROPPED,
+                    enqueue( sender, connection, SyslogLevel.ERR, "Late" ).get().getOutcome() );
+      connection.close();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void dropOldestEvictsHeadOfLane()
+    throws Exception
+  {
+    final GelfTargetConfig config = newConfig( 1984 );
+    final DatagramSocket socket =
+      ConnectionUtil.createServer( config.getHostAddress().getHostName(), config.getPort() );
+    try
+    {
+      final GelfConnection connection = config.createConnection();
+      final GelfAsyncSender sender =
+        new GelfAsyncSender( connection, 2, GelfTargetConfig.DropPolicy.DROP_OLDEST, Long.MAX_VALUE, "test-sender" );
+
+      final CompletableFuture<GelfSendResult> evicted;
+      final CompletableFuture<GelfSendResult> last;
+      synchronized ( connection )
+      {
+        enqueue( sender, connection, SyslogLevel.INFO, "Info0" );
+        awaitEmpty( sender );
+        evicted = enqueue( sender, connection, SyslogLevel.INFO, "Info1" );
+        enqueue( sender, connection, SyslogLevel.INFO, "Info2" );
+        last = enqueue( sender, connection, SyslogLevel.INFO, "Info3" );
+        assertEquals( GelfSendResult.Outcome.DROPPED, evicted.get().getOutcome() );
+      }
+      assertTrue( last.get( 5, TimeUnit.SECONDS ).isSent() );
+      sender.shutdown();
+      connection.close();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void queuedBytesAreBounded()
+    throws Exception
+  {
+    final GelfTargetConfig config = newConfig( 1985 );
+    final DatagramSocket socket =
+      ConnectionUtil.createServer( config.getHostAddress().getHostName(), config.getPort() );
+    try
+    {
+      final GelfConnection connection = config.createConnection();
+      final GelfMessage small = connection.newMessage( SyslogLevel.INFO, "Small", System.currentTimeMillis() );
+      final long smallSize = GelfMessageUtil.estimateSize( small );
+      final GelfAsyncSender sender =
+        new GelfAsyncSender( connection, 100, GelfTargetConfig.DropPolicy.DROP_NEWEST, smallSize * 2, "test-sender" );
+
+      final CompletableFuture<GelfSendResult> first;
+      final CompletableFuture<GelfSendResult> second;
+      final CompletableFuture<GelfSendResult> third;
+      synchronized ( connection )
+      {
+        first = new CompletableFuture<GelfSendResult>();
+        assertTrue( sender.enqueue( small, first ) );
+        assertEquals( smallSize, sender.getQueuedBytes() );
+        second = enqueue( sender, connection, SyslogLevel.INFO, "Small" );
+        // The limit applies irrespective of the drop policy
+        third = enqueue( sender, connection, SyslogLevel.INFO, "Small" );
+        assertEquals( GelfSendResult.Outcome.DROPPED, third.get().getOutcome() );
+        assertEquals( smallSize * 2, sender.getQueuedBytes() );
+      }
+      assertTrue( first.get( 5, TimeUnit.SECONDS ).isSent() );
+      assertTrue( second.get( 5, TimeUnit.SECONDS ).isSent() );
+      assertEquals( 0, sender.getQueuedBytes() );
+      assertEquals( smallSize * 2, sender.getPeakQueuedBytes() );
+      sender.shutdown();
+      connection.close();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void higherPriorityMessagesEvictLowerPriorityBytes()
+    throws Exception
+  {
+    final GelfTargetConfig config = newConfig( 2003 );
+    final DatagramSocket socket =
+      ConnectionUtil.createServer( config.getHostAddress().getHostName(), config.getPort() );
+    try
+    {
+      final GelfConnection connection = config.createConnection();
+      final long size =
+        GelfMessageUtil.estimateSize( connection.newMessage( SyslogLevel.INFO, "Trace0", System.currentTimeMillis() ) );
+      final GelfAsyncSender sender =
+        new GelfAsyncSender( connection, 100, GelfTargetConfig.DropPolicy.DROP_NEWEST, size * 4, "test-sender" );
+
+      final CompletableFuture<GelfSendResult> inFlight;
+      final CompletableFuture<GelfSendResult> oldest;
+      final CompletableFuture<GelfSendResult> warning;
+      final CompletableFuture<GelfSendResult> error;
+      synchronized ( connection )
+      {
+        inFlight = enqueue( sender, connection, SyslogLevel.INFO, "Trace0" );
+        awaitEmpty( sender );
+        oldest = enqueue( sender, connection, SyslogLevel.INFO, "Trace1" );
+        enqueue( sender, connection, SyslogLevel.INFO, "Trace2" );
+        warning = enqueue( sender, connection, SyslogLevel.WARNING, "Warn00" );
+        // The low lane has filled the byte ceiling
+        assertEquals( GelfSendResult.Outcome.DROPPED,
+                      enqueue( sender, connection, SyslogLevel.INFO, "Trace3" ).get().getOutcome() );
+
+        // An error evicts the oldest message of the lowest priority lane rather than being dropped
+        error = enqueue( sender, connection, SyslogLevel.ERR, "Error0" );
+        assertFalse( error.isDone() );
+        assertEquals( GelfSendResult.Outcome.DROPPED, oldest.get().getOutcome() );
+        assertEquals( 1, sender.getLaneDepth( GelfAsyncSender.LOW_LANE ) );
+        assertEquals( 1, sender.getLaneDepth( GelfAsyncSender.NORMAL_LANE ) );
+        assertEquals( 1, sender.getLaneDepth( GelfAsyncSender.HIGH_LANE ) );
+        assertEquals( size * 4, sender.getQueuedBytes() );
+
+        // A message larger than all the lower priority bytes evicts nothing
+        final GelfMessage large = connection.newMessage( SyslogLevel.ERR, createString( 1000 ), 0 );
+        final CompletableFuture<GelfSendResult> dropped = new CompletableFuture<GelfSendResult>();
+        assertFalse( sender.enqueue( large, dropped ) );
+        assertEquals( GelfSendResult.Outcome.DROPPED, dropped.get().getOutcome() );
+        assertEquals( 3, sender.getQueueDepth() );
+      }
+      assertTrue( inFlight.get( 5, TimeUnit.SECONDS ).isSent() );
+      assertTrue( error.get( 5, TimeUnit.SECONDS ).isSent() );
+      assertTrue( warning.get( 5, TimeUnit.SECONDS ).isSent() );
+      sender.shutdown();
+      connection.close();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  private static String createString( final int length )
+  {
+    final StringBuilder sb = new StringBuilder();
+    for ( int i = 0; i < length; i++ )
+    {
+      sb.append( (char) ( 'a' + i % 26 ) );
+    }
+    return sb.toString();
+  }
+
+  private GelfTargetConfig newConfig( final int port )
+    throws Exception
+  {
+    final GelfTargetConfig config = new GelfTargetConfig();
+    config.setHost( InetAddress.getLocalHost().getCanonicalHostName() );
+    config.setPort( port );
+    return config;
+  }
+
+  private CompletableFuture<GelfSendResult> enqueue( final GelfAsyncSender sender,
+                                                     final GelfConnection connection,
+                                                     final SyslogLevel level,
+                                                     final String text )
+  {
+    final CompletableFuture<GelfSendResult> future = new CompletableFuture<GelfSendResult>();
+    sender.enqueue( connection.newMessage( level, text, System.currentTimeMillis() ), future );
+    return future;
+  }
+
+  private void awaitEmpty( final GelfAsyncSender sender )
+    throws InterruptedException
+  {
+    for ( int i = 0; i < 500 && 0 != sender.getQueueDepth(); i++ )
+    {
+      Thread.sleep( 10 );
+    }
+    assertEquals( 0, sender.getQueueDepth() );
+  }
+}
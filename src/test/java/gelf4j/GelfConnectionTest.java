@@ -1,10 +1,28 @@
 package gelf4j;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Assume;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -79,6 +97,399 @@ public class GelfConnectionTest
     }
   }
 
+  @Test
+  public void ensureSendAsyncCompletesWithResult()
+    throws Exception
+  {
+    final GelfTargetConfig config = new GelfTargetConfig();
+    config.setHost( InetAddress.getLocalHost().getCanonicalHostName() );
+    config.setPort( 1978 );
+
+    final DatagramSocket socket =
+      ConnectionUtil.createServer( config.getHostAddress().getHostName(), config.getPort() );
+    try
+    {
+      final GelfConnection connection = config.createConnection();
+
+      final long timestamp = System.currentTimeMillis();
+      final GelfSendResult result1 =
+        connection.sendAsync( connection.newMessage( SyslogLevel.INFO, "Hello", timestamp ) ).get( 5, TimeUnit.SECONDS );
+      assertEquals( GelfSendResult.Outcome.SENT, result1.getOutcome() );
+      assertTrue( result1.isSent() );
+      assertEquals( 1, result1.getChunkCount() );
+      assertTrue( result1.getByteCount() > 0 );
+      assertTrue( ConnectionUtil.receivePacketAsString( socket ).contains( "Hello" ) );
+
+      final GelfSendResult result2 =
+        connection.sendAsync( connection.newMessage( SyslogLevel.INFO, createString( 188323 ), timestamp ) )
+          .get( 5, TimeUnit.SECONDS );
+      assertEquals( GelfSendResult.Outcome.SENT, result2.getOutcome() );
+      assertTrue( result2.getChunkCount() > 1 );
+      assertTrue( result2.getByteCount() > GelfEncoder.MAX_PACKET_SIZE );
+
+      // A message that can not be encoded fails
+      final GelfSendResult result3 = connection.sendAsync( new GelfMessage() ).get( 5, TimeUnit.SECONDS );
+      assertEquals( GelfSendResult.Outcome.FAILED, result3.getOutcome() );
+
+      connection.close();
+
+      // The connection can still be used after it has been closed
+      final GelfSendResult result4 =
+        connection.sendAsync( connection.newMessage( SyslogLevel.INFO, "Again", timestamp ) ).get( 5, TimeUnit.SECONDS );
+      assertTrue( result4.isSent() );
+      connection.close();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void ensureRepeatCountIsSentWhenLoggerGoesQuiet()
+    throws Exception
+  {
+    final GelfTargetConfig config = new GelfTargetConfig();
+    config.setHost( InetAddress.getLocalHost().getCanonicalHostName() );
+    config.setPort( 2002 );
+    config.setCoalesceWindow( 100 );
+
+    final DatagramSocket socket =
+      ConnectionUtil.createServer( config.getHostAddress().getHostName(), config.getPort() );
+    socket.setSoTimeout( 5000 );
+    try
+    {
+      final GelfConnection connection = config.createConnection();
+      final long timestamp = System.currentTimeMillis();
+      for ( int i = 0; i < 3; i++ )
+      {
+        final GelfMessage message = connection.newMessage( SyslogLevel.INFO, "Retrying", timestamp );
+        message.setLoggerName( "A" );
+        assertTrue( connection.send( message ) );
+      }
+      assertFalse( ConnectionUtil.receivePacketAsString( socket ).contains( "repeat_count" ) );
+      // The follow-up is sent by the reporting thread without any further message from the logger
+      assertTrue( ConnectionUtil.receivePacketAsString( socket ).contains( "\"_repeat_count\":2" ) );
+      connection.close();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void ensureSendAllReportsPerMessageResults()
+    throws Exception
+  {
+    final GelfTargetConfig config = new GelfTargetConfig();
+    config.setHost( InetAddress.getLocalHost().getCanonicalHostName() );
+    config.setPort( 1979 );
+
+    final DatagramSocket socket =
+      ConnectionUtil.createServer( config.getHostAddress().getHostName(), config.getPort() );
+    try
+    {
+      final GelfConnection connection = config.createConnection();
+
+      final long timestamp = System.currentTimeMillis();
+      final List<GelfSendResult> results =
+        connection.sendAll( Arrays.asList( connection.newMessage( SyslogLevel.INFO, "First", timestamp ),
+                                           new GelfMessage(),
+                                           connection.newMessage( SyslogLevel.INFO, "Third", timestamp ) ) );
+      assertEquals( 3, results.size() );
+      assertEquals( GelfSendResult.Outcome.SENT, results.get( 0 ).getOutcome() );
+      assertEquals( GelfSendResult.Outcome.FAILED, results.get( 1 ).getOutcome() );
+      assertEquals( GelfSendResult.Outcome.SENT, results.get( 2 ).getOutcome() );
+
+      assertTrue( ConnectionUtil.receivePacketAsString( socket ).contains( "First" ) );
+      assertTrue( ConnectionUtil.receivePacketAsString( socket ).contains( "Third" ) );
+      connection.close();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void ensureMetricsAreRecorded()
+    throws Exception
+  {
+    final GelfTargetConfig config = new GelfTargetConfig();
+    config.setHost( InetAddress.getLocalHost().getCanonicalHostName() );
+    config.setPort( 1986 );
+    config.setJmxEnabled( true );
+
+    final DatagramSocket socket =
+      ConnectionUtil.createServer( config.getHostAddress().getHostName(), config.getPort() );
+    try
+    {
+      final GelfConnection connection = config.createConnection();
+      final GelfConnectionMetrics metrics = connection.getMetrics();
+
+      final long timestamp = System.currentTimeMillis();
+      assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, "Hello", timestamp ) ) );
+      assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, createString( 188323 ), timestamp ) ) );
+      assertFalse( connection.send( connection.newMessage( SyslogLevel.INFO, createString( 400000 ), timestamp ) ) );
+      assertFalse( connection.send( new GelfMessage() ) );
+
+      assertEquals( 2, metrics.getSentCount() );
+      assertEquals( 2, metrics.getFailedCount() );
+      assertEquals( 1, metrics.getOversizeCount() );
+      assertEquals( 0, metrics.getDroppedCount() );
+      assertTrue( metrics.getMaxChunksPerMessage() > 1 );
+      assertEquals( metrics.getChunksPerMessage().getSum(), metrics.getChunkCount() );
+      assertTrue( metrics.getUncompressedBytes() > 0 );
+      assertTrue( metrics.getCompressedBytes() > 0 );
+      assertEquals( 2, metrics.getEncodeTime().getCount() );
+      assertEquals( 2, metrics.getSendTime().getCount() );
+
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      final Set<ObjectName> names = server.queryNames( new ObjectName( "gelf4j:type=GelfConnection,*" ), null );
+      assertEquals( 1, names.size() );
+      assertEquals( 2L, server.getAttribute( names.iterator().next(), "SentCount" ) );
+
+      connection.close();
+      assertTrue( server.queryNames( new ObjectName( "gelf4j:type=GelfConnection,*" ), null ).isEmpty() );
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void ensureLoggerStatsAreSentPeriodically()
+    throws Exception
+  {
+    final GelfTargetConfig config = new GelfTargetConfig();
+    config.setHost( InetAddress.getLocalHost().getCanonicalHostName() );
+    config.setPort( 1989 );
+    config.setLoggerStatsSize( 100 );
+    config.setLoggerStatsInterval( 100 );
+
+    final DatagramSocket socket =
+      ConnectionUtil.createServer( config.getHostAddress().getHostName(), config.getPort() );
+    socket.setSoTimeout( 5000 );
+    try
+    {
+      final GelfConnection connection = config.createConnection();
+      final GelfMessage message = connection.newMessage( SyslogLevel.INFO, "Counted", System.currentTimeMillis() );
+      message.setLoggerName( "com.example.Noisy" );
+      final GelfSendResult result = connection.sendAll( Arrays.asList( message ) ).get( 0 );
+      assertTrue( result.isSent() );
+
+      final GelfLoggerStats.LoggerCount count = connection.getLoggerStats().getTopLoggers( 1 ).get( 0 );
+      assertEquals( "com.example.Noisy", count.getLoggerName() );
+      assertEquals( 1, count.getMessageCount() );
+      assertEquals( result.getByteCount(), count.getByteCount() );
+
+      assertTrue( ConnectionUtil.receivePacketAsString( socket ).contains( "Counted" ) );
+      final String report = ConnectionUtil.receivePacketAsString( socket );
+      assertTrue( report.contains( "\"_report\":\"logger_stats\"" ) );
+      assertTrue( report.contains( "com.example.Noisy: 1 messages" ) );
+      connection.close();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void ensureHealthIsReportedPeriodically()
+    throws Exception
+  {
+    final GelfTargetConfig config = new GelfTargetConfig();
+    config.setHost( InetAddress.getLocalHost().getCanonicalHostName() );
+    config.setPort( 1990 );
+    config.setHealthReportInterval( 100 );
+
+    final DatagramSocket socket =
+      ConnectionUtil.createServer( config.getHostAddress().getHostName(), config.getPort() );
+    socket.setSoTimeout( 5000 );
+    try
+    {
+      final GelfConnection connection = config.createConnection();
+      assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, "Counted", System.currentTimeMillis() ) ) );
+      assertTrue( ConnectionUtil.receivePacketAsString( socket ).contains( "Counted" ) );
+
+      final String report = ConnectionUtil.receivePacketAsString( socket );
+      assertTrue( report.contains( "\"facility\":\"gelf4j\"" ) );
+      assertTrue( report.contains( "\"_report\":\"health\"" ) );
+      assertTrue( report.matches( ".*\"_sent\":1[,}].*" ) );
+      assertTrue( report.matches( ".*\"_failed\":0[,}].*" ) );
+      assertTrue( report.matches( ".*\"_dropped_queue_full\":0[,}].*" ) );
+      assertTrue( report.contains( "\"_channel\":\"open\"" ) );
+
+      // The previous report is counted in the following interval
+      final String next = ConnectionUtil.receivePacketAsString( socket );
+      assertTrue( next.contains( "\"_report\":\"health\"" ) );
+      assertTrue( next.matches( ".*\"_sent\":1[,}].*" ) );
+      connection.close();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void ensureUnixSocketTransportWritesUnchunkedFrames()
+    throws Exception
+  {
+    Assume.assumeTrue( "Unix domain sockets are unsupported", GelfUnixSocketTransport.isSupported() );
+    final Path directory = Files.createTempDirectory( "gelf4j" );
+    final Path path = directory.resolve( "gelf.sock" );
+    final SocketAddress address =
+      (SocketAddress) Class.forName( "java.net.UnixDomainSocketAddress" )
+        .getMethod( "of", String.class )
+        .invoke( null, path.toString() );
+    final ServerSocketChannel server =
+      (ServerSocketChannel) ServerSocketChannel.class
+        .getMethod( "open", ProtocolFamily.class )
+        .invoke( null, StandardProtocolFamily.valueOf( "UNIX" ) );
+    try
+    {
+      server.bind( address );
+      // Read on another thread as a large frame does not fit in the socket buffer
+      final ByteArrayOutputStream received = new ByteArrayOutputStream();
+      final Thread reader = new Thread( () -> {
+        try ( final SocketChannel channel = server.accept() )
+        {
+          final ByteBuffer buffer = ByteBuffer.allocate( 65536 );
+          while ( -1 != channel.read( buffer ) )
+          {
+            received.write( buffer.array(), 0, buffer.position() );
+            buffer.clear();
+          }
+        }
+        catch ( final IOException ioe )
+        {
+          //Ignored. Detected by the assertions on the received messages
+        }
+      } );
+      reader.start();
+      final GelfTargetConfig config = new GelfTargetConfig();
+      config.setTransport( GelfTargetConfig.Transport.UNIX );
+      config.setSocketPath( path.toString() );
+      final GelfConnection connection = config.createConnection();
+      assertEquals( GelfTargetConfig.Transport.UNIX, connection.getTransport() );
+
+      final StringBuilder sb = new StringBuilder();
+      for ( int i = 0; i < 188323; i++ )
+      {
+        sb.append( (char) ( 'a' + i % 26 ) );
+      }
+      final String largeMessage = sb.toString();
+      assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, "Local", System.currentTimeMillis() ) ) );
+      assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, largeMessage, 0 ) ) );
+      connection.close();
+      assertEquals( 2, connection.getMetrics().getSentCount() );
+      // Frames are not chunked however large they are
+      assertEquals( 2, connection.getMetrics().getChunkCount() );
+
+      reader.join( 5000 );
+      final byte[] data = received.toByteArray();
+      final GelfDecoder decoder = new GelfDecoder( true, new SimpleJsonCodec() );
+      int start = 0;
+      final List<GelfMessage> messages = new ArrayList<GelfMessage>();
+      for ( int i = 0; i < data.length; i++ )
+      {
+        if ( 0 == data[ i ] )
+        {
+          messages.add( decoder.decodePayload( data, start, i - start ) );
+          start = i + 1;
+        }
+      }
+      assertEquals( 2, messages.size() );
+      assertEquals( "Local", messages.get( 0 ).getShortMessage() );
+      assertEquals( largeMessage, messages.get( 1 ).getFullMessage() );
+    }
+    finally
+    {
+      server.close();
+      Files.deleteIfExists( path );
+      Files.delete( directory );
+    }
+  }
+
+  @Test
+  public void ensureUnixSocketWriteFailsWhenAgentStopsReading()
+    throws Exception
+  {
+    Assume.assumeTrue( "Unix domain sockets are unsupported", GelfUnixSocketTransport.isSupported() );
+    final Path directory = Files.createTempDirectory( "gelf4j" );
+    final Path path = directory.resolve( "gelf.sock" );
+    final SocketAddress address =
+      (SocketAddress) Class.forName( "java.net.UnixDomainSocketAddress" )
+        .getMethod( "of", String.class )
+        .invoke( null, path.toString() );
+    final ServerSocketChannel server =
+      (ServerSocketChannel) ServerSocketChannel.class
+        .getMethod( "open", ProtocolFamily.class )
+        .invoke( null, StandardProtocolFamily.valueOf( "UNIX" ) );
+    try
+    {
+      // The connection is queued by the server but never read so the socket buffer fills
+      server.bind( address );
+      final GelfTargetConfig config = new GelfTargetConfig();
+      config.setTransport( GelfTargetConfig.Transport.UNIX );
+      config.setSocketPath( path.toString() );
+      final GelfConnection connection = config.createConnection();
+
+      final StringBuilder sb = new StringBuilder();
+      for ( int i = 0; i < 100000; i++ )
+      {
+        sb.append( (char) ( 'a' + i % 26 ) );
+      }
+      final long start = System.currentTimeMillis();
+      boolean sent = true;
+      for ( int i = 0; i < 100 && sent; i++ )
+      {
+        sent = connection.send( connection.newMessage( SyslogLevel.INFO, sb.toString(), 0 ) );
+      }
+      assertFalse( sent );
+      assertTrue( System.currentTimeMillis() - start < 5000 );
+      assertEquals( 1, connection.getMetrics().getFailedCount() );
+      connection.close();
+    }
+    finally
+    {
+      server.close();
+      Files.deleteIfExists( path );
+      Files.delete( directory );
+    }
+  }
+
+  @Test
+  public void ensureUnixSocketTransportFallsBackToUdp()
+    throws Exception
+  {
+    final GelfTargetConfig config = new GelfTargetConfig();
+    config.setHost( InetAddress.getLocalHost().getCanonicalHostName() );
+    config.setPort( 2001 );
+    config.setTransport( GelfTargetConfig.Transport.UNIX );
+    config.setSocketPath( "/nonexistent/gelf.sock" );
+
+    final DatagramSocket socket =
+      ConnectionUtil.createServer( config.getHostAddress().getHostName(), config.getPort() );
+    socket.setSoTimeout( 5000 );
+    try
+    {
+      final GelfConnection connection = config.createConnection();
+      assertEquals( GelfTargetConfig.Transport.UDP, connection.getTransport() );
+      assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, "Remote", System.currentTimeMillis() ) ) );
+      assertTrue( ConnectionUtil.receivePacketAsString( socket ).contains( "Remote" ) );
+      connection.close();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
   private String createString( final int byteCount )
   {
     final Random random = new Random( 723 );
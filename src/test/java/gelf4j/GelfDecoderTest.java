@@ -0,0 +1,282 @@
+package gelf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfDecoderTest
+{
+  @Test
+  public void decodeCompressedChunkFormat()
+    throws Exception
+  {
+    assertRoundTrip( true );
+  }
+
+  @Test
+  public void decodeUncompressedChunkFormat()
+    throws Exception
+  {
+    assertRoundTrip( false );
+  }
+
+  @Test
+  public void chunksMayArriveOutOfOrderAndBeDuplicated()
+    throws Exception
+  {
+    final GelfMessage message = newMessage( createText( 10000 ) );
+    final List<byte[]> packets = new ArrayList<byte[]>( newEncoder( true ).encode( message ) );
+    assertTrue( packets.size() > 2 );
+    Collections.reverse( packets );
+    final List<Integer> chunks = new ArrayList<Integer>();
+    final GelfDecoder decoder = new GelfDecoder( true, new SimpleJsonCodec() );
+    decoder.setChunkListener( ( chunkCount, receivedCount ) -> chunks.add( receivedCount ) );
+
+    final byte[] first = packets.get( 0 );
+    assertNull( decoder.decode( first, 0, first.length, 0 ) );
+    assertNull( decoder.decode( first, 0, first.length, 0 ) );
+    GelfMessage result = null;
+    for ( int i = 1; i < packets.size(); i++ )
+    {
+      final byte[] packet = packets.get( i );
+      assertNull( result );
+      result = decoder.decode( packet, 0, packet.length, 0 );
+    }
+    assertNotNull( result );
+    assertEquals( message.getFullMessage(), result.getFullMessage() );
+    assertEquals( 0, decoder.getPendingCount() );
+    assertEquals( Collections.singletonList( packets.size() ), chunks );
+    decoder.close();
+  }
+
+  @Test
+  public void decodeZlibAndUncompressedPayloads()
+    throws Exception
+  {
+    final String json = "{\"version\":\"1.1\",\"host\":\"h\",\"short_message\":\"Hello\"}";
+    final ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+    final DeflaterOutputStream outputStream = new DeflaterOutputStream( zlib );
+    outputStream.write( json.getBytes( "UTF-8" ) );
+    outputStream.close();
+
+    final GelfDecoder decoder = new GelfDecoder( true, new SimpleJsonCodec() );
+    final byte[] plain = json.getBytes( "UTF-8" );
+    assertEquals( "Hello", decoder.decode( plain, 0, plain.length, 0 ).getShortMessage() );
+    final byte[] compressed = zlib.toByteArray();
+    assertEquals( "Hello", decoder.decode( compressed, 0, compressed.length, 0 ).getShortMessage() );
+    decoder.close();
+  }
+
+  @Test
+  public void incompleteMessagesExpire()
+    throws Exception
+  {
+    final List<byte[]> packets = newEncoder( true ).encode( newMessage( createText( 10000 ) ) );
+    final List<Integer> chunks = new ArrayList<Integer>();
+    final GelfDecoder decoder = new GelfDecoder( true, 100, 10, new SimpleJsonCodec() );
+    decoder.setChunkListener( ( chunkCount, receivedCount ) -> chunks.add( chunkCount - receivedCount ) );
+
+    final byte[] packet = packets.get( 0 );
+    assertNull( decoder.decode( packet, 0, packet.length, 1000 ) );
+    assertEquals( 1, decoder.getPendingCount() );
+    assertEquals( 0, decoder.expire( 1099 ) );
+    assertEquals( 1, decoder.expire( 1100 ) );
+    assertEquals( 0, decoder.getPendingCount() );
+    assertEquals( Collections.singletonList( packets.size() - 1 ), chunks );
+    decoder.close();
+  }
+
+  @Test
+  public void oldestMessageIsDiscardedWhenFull()
+    throws Exception
+  {
+    final GelfEncoder encoder = newEncoder( true );
+    final List<byte[]> first = encoder.encode( newMessage( createText( 10000 ) ) );
+    final List<byte[]> second = encoder.encode( newMessage( createText( 10000 ) ) );
+    final List<Integer> chunks = new ArrayList<Integer>();
+    final GelfDecoder decoder = new GelfDecoder( true, 1000, 1, new SimpleJsonCodec() );
+    decoder.setChunkListener( ( chunkCount, receivedCount ) -> chunks.add( receivedCount ) );
+
+    assertNull( decoder.decode( first.get( 0 ), 0, first.get( 0 ).length, 0 ) );
+    GelfMessage result = null;
+    for ( final byte[] packet : second )
+    {
+      result = decoder.decode( packet, 0, packet.length, 0 );
+    }
+    assertNotNull( result );
+    assertEquals( 0, decoder.getPendingCount() );
+    assertEquals( 2, chunks.size() );
+    assertEquals( 1, (int) chunks.get( 0 ) );
+    assertEquals( second.size(), (int) chunks.get( 1 ) );
+    decoder.close();
+  }
+
+  @Test
+  public void oldestMessageIsDiscardedWhenPendingBytesExceeded()
+    throws Exception
+  {
+    final GelfEncoder encoder = newEncoder( true );
+    final List<byte[]> first = encoder.encode( newMessage( createText( 10000 ) ) );
+    final List<byte[]> second = encoder.encode( newMessage( createText( 10000 ) ) );
+    final List<Integer> chunks = new ArrayList<Integer>();
+    final GelfDecoder decoder =
+      new GelfDecoder( true, 1000, 10, second.size() * GelfEncoder.MAX_PACKET_SIZE, new SimpleJsonCodec() );
+    decoder.setChunkListener( ( chunkCount, receivedCount ) -> chunks.add( receivedCount ) );
+
+    assertNull( decoder.decode( first.get( 0 ), 0, first.get( 0 ).length, 0 ) );
+    assertNull( decoder.decode( first.get( 1 ), 0, first.get( 1 ).length, 0 ) );
+    assertEquals( 2 * GelfEncoder.MAX_PACKET_SIZE, decoder.getPendingBytes() );
+    GelfMessage result = null;
+    for ( final byte[] packet : second )
+    {
+      result = decoder.decode( packet, 0, packet.length, 0 );
+    }
+    assertNotNull( result );
+    assertEquals( 0, decoder.getPendingCount() );
+    assertEquals( 0, decoder.getPendingBytes() );
+    assertEquals( 2, chunks.size() );
+    assertEquals( 2, (int) chunks.get( 0 ) );
+    assertEquals( second.size(), (int) chunks.get( 1 ) );
+    decoder.close();
+  }
+
+  @Test
+  public void oversizedChunkedMessagesAreRejected()
+    throws Exception
+  {
+    final GelfDecoder decoder = new GelfDecoder( true, new SimpleJsonCodec() );
+
+    // The chunk count and size of the first chunk show the message is too large
+    assertInvalid( decoder, newChunk( 1, 0, 255, 33000 ) );
+    assertEquals( 0, decoder.getPendingCount() );
+
+    // The last chunk is not used to estimate the size so the received bytes are checked
+    assertNull( decoder.decode( newChunk( 2, 0, 2, 100 ), 0, 12 + 100, 0 ) );
+    assertEquals( 1, decoder.getPendingCount() );
+    assertInvalid( decoder, newChunk( 2, 1, 2, GelfDecoder.MAX_MESSAGE_SIZE ) );
+    assertEquals( 0, decoder.getPendingCount() );
+    assertEquals( 0, decoder.getPendingBytes() );
+    decoder.close();
+  }
+
+  @Test
+  public void malformedChunksAreRejected()
+    throws Exception
+  {
+    final GelfDecoder decoder = new GelfDecoder( true, new SimpleJsonCodec() );
+    assertInvalid( decoder, new byte[]{ 0x1e, 0x0f, 1, 2, 3 } );
+    assertInvalid( decoder, new byte[]{ 0x1e, 0x0f, 1, 2, 3, 4, 5, 6, 7, 8, 2, 2, '{' } );
+    assertEquals( 0, decoder.getPendingCount() );
+    decoder.close();
+  }
+
+  @Test
+  public void fromJson()
+    throws Exception
+  {
+    final GelfDecoder decoder = new GelfDecoder( true, new SimpleJsonCodec() );
+    final GelfMessage message =
+      decoder.fromJson( "{\"version\":\"1.1\",\"host\":\"h\",\"short_message\":\"Short\",\"full_message\":\"Full\"," +
+                        "\"timestamp\":1234.567,\"level\":3,\"facility\":\"F\",\"file\":\"A.java\",\"line\":\"42\"," +
+                        "\"_id\":\"ignored\",\"_user\":\"bob\",\"_count\":7}" );
+    assertEquals( "h", message.getHost() );
+    assertEquals( "Short", message.getShortMessage() );
+    assertEquals( "Full", message.getFullMessage() );
+    assertEquals( Long.valueOf( 1234567L ), message.getJavaTimestamp() );
+    assertEquals( SyslogLevel.ERR, message.getLevel() );
+    assertEquals( "F", message.getFacility() );
+    assertEquals( "A.java", message.getFile() );
+    assertEquals( Long.valueOf( 42 ), message.getLine() );
+    assertEquals( 2, message.getAdditionalFields().size() );
+    assertEquals( "bob", message.getAdditionalFields().get( "user" ) );
+    assertEquals( 7, ( (Number) message.getAdditionalFields().get( "count" ) ).intValue() );
+
+    assertInvalid( decoder, "[1,2]".getBytes( "UTF-8" ) );
+    assertInvalid( decoder, "{\"host\":\"h\"}".getBytes( "UTF-8" ) );
+    assertInvalid( decoder, "{\"short_message\":\"Short\"}".getBytes( "UTF-8" ) );
+    decoder.close();
+  }
+
+  private void assertRoundTrip( final boolean compressedChunking )
+    throws Exception
+  {
+    final GelfMessage message = newMessage( createText( 10000 ) );
+    message.setLevel( SyslogLevel.WARNING );
+    message.getAdditionalFields().put( "user", "bob" );
+    final List<byte[]> packets = newEncoder( compressedChunking ).encode( message );
+    assertTrue( packets.size() > 1 );
+
+    final GelfDecoder decoder = new GelfDecoder( compressedChunking, new SimpleJsonCodec() );
+    GelfMessage result = null;
+    for ( final byte[] packet : packets )
+    {
+      assertNull( result );
+      result = decoder.decode( packet, 0, packet.length, 0 );
+    }
+    assertNotNull( result );
+    assertEquals( "localhost", result.getHost() );
+    assertEquals( message.getShortMessage(), result.getShortMessage() );
+    assertEquals( message.getFullMessage(), result.getFullMessage() );
+    assertEquals( message.getJavaTimestamp(), result.getJavaTimestamp() );
+    assertEquals( SyslogLevel.WARNING, result.getLevel() );
+    assertEquals( "bob", result.getAdditionalFields().get( "user" ) );
+    decoder.close();
+  }
+
+  private static void assertInvalid( final GelfDecoder decoder, final byte[] data )
+  {
+    try
+    {
+      decoder.decode( data, 0, data.length, 0 );
+      fail( "Expected to reject " + new String( data ) );
+    }
+    catch ( final IOException ioe )
+    {
+      //Expected
+    }
+  }
+
+  private static byte[] newChunk( final int messageId, final int sequence, final int chunkCount, final int length )
+  {
+    final byte[] chunk = new byte[ 12 + length ];
+    chunk[ 0 ] = 0x1e;
+    chunk[ 1 ] = 0x0f;
+    chunk[ 9 ] = (byte) messageId;
+    chunk[ 10 ] = (byte) sequence;
+    chunk[ 11 ] = (byte) chunkCount;
+    return chunk;
+  }
+
+  private static GelfEncoder newEncoder( final boolean compressedChunking )
+    throws Exception
+  {
+    return new GelfEncoder( "localhost", compressedChunking, new SimpleJsonCodec() );
+  }
+
+  private static GelfMessage newMessage( final String text )
+  {
+    final GelfMessage message = new GelfMessage();
+    message.setShortMessage( "Short" );
+    message.setFullMessage( text );
+    message.setJavaTimestamp( 1234567L );
+    return message;
+  }
+
+  private static String createText( final int length )
+  {
+    // Random text compresses poorly enough that the message is chunked
+    final Random random = new Random( length );
+    final StringBuilder sb = new StringBuilder( length );
+    for ( int i = 0; i < length; i++ )
+    {
+      sb.append( (char) ( ' ' + random.nextInt( 95 ) ) );
+    }
+    return sb.toString();
+  }
+}
@@ -88,6 +88,27 @@ public class GelfEncoderTest
     assertEquals( 10, object.size() );
   }
 
+  @Test
+  public void messageToJson_WithSequenceNumbers()
+    throws Exception
+  {
+    final GelfEncoder encoder = new GelfEncoder( "localhost", true, new SimpleJsonCodec(), "MySender" );
+    final GelfMessage message = new GelfMessage();
+    message.setShortMessage( "MyShortMessage" );
+    message.getAdditionalFields().put( GelfConnection.SEQUENCE_FIELD, 42 );
+
+    final Map<String, Object> first = parseJsonObject( encoder.toJson( message ) );
+    assertEquals( "MySender", first.get( "_sender_id" ) );
+    assertEquals( 1L, first.get( "_seq" ) );
+
+    final Map<String, Object> second = parseJsonObject( encoder.toJson( message ) );
+    assertEquals( 2L, second.get( "_seq" ) );
+
+    // A message that can not be encoded is not assigned a number
+    assertNull( encoder.toJson( new GelfMessage() ) );
+    assertEquals( 3L, parseJsonObject( encoder.toJson( message ) ).get( "_seq" ) );
+  }
+
   @SuppressWarnings( "unchecked" )
   private Map<String, Object> parseJsonObject( final String json )
   {
@@ -0,0 +1,76 @@
+package gelf4j;
+
+import java.io.File;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfFlightRecorderTest
+{
+  @Test
+  public void eventsAreRecorded()
+    throws Exception
+  {
+    final GelfTargetConfig config = new GelfTargetConfig();
+    config.setHost( InetAddress.getLocalHost().getCanonicalHostName() );
+    config.setPort( 1988 );
+
+    final DatagramSocket socket =
+      ConnectionUtil.createServer( config.getHostAddress().getHostName(), config.getPort() );
+    final File file = File.createTempFile( "gelf4j", ".jfr" );
+    try
+    {
+      final GelfConnection connection = config.createConnection();
+      // No event is created while nothing is recording
+      assertNull( GelfFlightRecorder.beginSend() );
+      final Recording recording = new Recording();
+      recording.enable( "gelf4j.Encode" );
+      recording.enable( "gelf4j.Json" );
+      recording.enable( "gelf4j.Compress" );
+      recording.enable( "gelf4j.Chunk" );
+      recording.enable( "gelf4j.Send" );
+      recording.start();
+      final long timestamp = System.currentTimeMillis();
+      assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, "Recorded", timestamp ) ) );
+      assertFalse( connection.send( new GelfMessage() ) );
+      assertNotNull( GelfFlightRecorder.beginSend() );
+      recording.stop();
+      assertNull( GelfFlightRecorder.beginSend() );
+      recording.dump( file.toPath() );
+      recording.close();
+      connection.close();
+
+      final Map<String, Integer> counts = new HashMap<String, Integer>();
+      RecordedEvent encodeEvent = null;
+      for ( final RecordedEvent event : RecordingFile.readAllEvents( file.toPath() ) )
+      {
+        final String name = event.getEventType().getName();
+        counts.put( name, counts.getOrDefault( name, 0 ) + 1 );
+        if ( "gelf4j.Encode".equals( name ) && "ENCODED".equals( event.getString( "outcome" ) ) )
+        {
+          encodeEvent = event;
+        }
+      }
+      assertEquals( Integer.valueOf( 2 ), counts.get( "gelf4j.Encode" ) );
+      assertEquals( Integer.valueOf( 2 ), counts.get( "gelf4j.Json" ) );
+      assertEquals( Integer.valueOf( 1 ), counts.get( "gelf4j.Compress" ) );
+      assertEquals( Integer.valueOf( 1 ), counts.get( "gelf4j.Chunk" ) );
+      assertEquals( Integer.valueOf( 1 ), counts.get( "gelf4j.Send" ) );
+      assertNotNull( encodeEvent );
+      assertEquals( 1, encodeEvent.getInt( "chunkCount" ) );
+      assertTrue( encodeEvent.getInt( "uncompressedBytes" ) > 0 );
+      assertTrue( encodeEvent.getInt( "compressedBytes" ) > 0 );
+    }
+    finally
+    {
+      socket.close();
+      file.delete();
+    }
+  }
+}
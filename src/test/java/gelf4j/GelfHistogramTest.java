@@ -0,0 +1,35 @@
+package gelf4j;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfHistogramTest
+{
+  @Test
+  public void recordAndQuery()
+    throws Exception
+  {
+    final GelfHistogram histogram = new GelfHistogram();
+    assertEquals( 0, histogram.getCount() );
+    assertEquals( 0, histogram.getPercentile( 99 ) );
+    assertEquals( 0D, histogram.getMean(), 0D );
+
+    for ( int i = 1; i <= 100; i++ )
+    {
+      histogram.record( i );
+    }
+    histogram.record( 0 );
+    histogram.record( 10000 );
+
+    assertEquals( 102, histogram.getCount() );
+    assertEquals( 5050 + 10000, histogram.getSum() );
+    assertEquals( 10000, histogram.getMax() );
+    assertEquals( ( 5050D + 10000 ) / 102, histogram.getMean(), 0.0001 );
+    // Values 32-63 are in the same bucket so the median is reported as the upper bound of that bucket
+    assertEquals( 63, histogram.getPercentile( 50 ) );
+    assertEquals( 127, histogram.getPercentile( 99 ) );
+    // The maximum bounds the highest bucket
+    assertEquals( 10000, histogram.getPercentile( 100 ) );
+    assertEquals( 0, histogram.getPercentile( 0.5 ) );
+  }
+}
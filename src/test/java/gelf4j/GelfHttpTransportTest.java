@@ -0,0 +1,257 @@
+package gelf4j;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfHttpTransportTest
+{
+  private final BlockingQueue<String> _bodies = new LinkedBlockingQueue<String>();
+  private final BlockingQueue<Integer> _statuses = new LinkedBlockingQueue<Integer>();
+  private final AtomicInteger _inFlight = new AtomicInteger();
+  private final AtomicInteger _peakInFlight = new AtomicInteger();
+  private ExecutorService _executor;
+  private HttpServer _server;
+  private volatile long _responseDelay;
+
+  @Before
+  public void setUp()
+    throws Exception
+  {
+    _executor = Executors.newFixedThreadPool( 8 );
+    _server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+    _server.createContext( "/gelf", this::handle );
+    _server.setExecutor( _executor );
+    _server.start();
+  }
+
+  @After
+  public void tearDown()
+  {
+    _server.stop( 0 );
+    _executor.shutdownNow();
+  }
+
+  @Test
+  public void postCompressedMessage()
+    throws Exception
+  {
+    final GelfConnection connection = createConfig().createConnection();
+    assertEquals( GelfTargetConfig.Transport.HTTP, connection.getTransport() );
+    assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, "Over HTTP", 0 ) ) );
+    final String body = receive();
+    assertTrue( body.startsWith( "{" ) );
+    assertTrue( body.contains( "Over HTTP" ) );
+    assertEquals( 1, connection.getMetrics().getSentCount() );
+    connection.close();
+  }
+
+  @Test
+  public void defaultUrlUsesHostAndPort()
+    throws Exception
+  {
+    final GelfTargetConfig config = new GelfTargetConfig();
+    config.setHost( "localhost" );
+    config.setPort( _server.getAddress().getPort() );
+    config.setTransport( GelfTargetConfig.Transport.HTTP );
+    final GelfConnection connection = config.createConnection();
+    assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, "Default url", 0 ) ) );
+    assertTrue( receive().contains( "Default url" ) );
+    connection.close();
+  }
+
+  @Test
+  public void postBatchesOfMessages()
+    throws Exception
+  {
+    final GelfTargetConfig config = createConfig();
+    config.setHttpBatchSize( 4 );
+    final GelfConnection connection = config.createConnection();
+    final List<GelfMessage> messages = new ArrayList<GelfMessage>();
+    for ( int i = 0; i < 10; i++ )
+    {
+      messages.add( connection.newMessage( SyslogLevel.INFO, "Message " + i, 0 ) );
+    }
+    final List<GelfSendResult> results = connection.sendAll( messages );
+    assertEquals( 10, results.size() );
+    for ( final GelfSendResult result : results )
+    {
+      assertTrue( result.isSent() );
+    }
+
+    final String[] first = receive().split( "\n" );
+    assertEquals( 4, first.length );
+    assertTrue( first[ 0 ].contains( "Message 0" ) );
+    assertTrue( first[ 3 ].contains( "Message 3" ) );
+    assertEquals( 4, receive().split( "\n" ).length );
+    final String[] last = receive().split( "\n" );
+    assertEquals( 2, last.length );
+    assertTrue( last[ 1 ].contains( "Message 9" ) );
+    assertNull( _bodies.poll( 100, TimeUnit.MILLISECONDS ) );
+    assertEquals( 10, connection.getMetrics().getSentCount() );
+    connection.close();
+  }
+
+  @Test
+  public void retryTransientFailures()
+    throws Exception
+  {
+    _statuses.add( 503 );
+    _statuses.add( 429 );
+    // Messages sent asynchronously are retried even though the connection is not configured as asynchronous
+    final GelfConnection connection = createConfig().createConnection();
+    final GelfMessage message = connection.newMessage( SyslogLevel.INFO, "Retried", 0 );
+    assertTrue( connection.sendAsync( message ).get( 5, TimeUnit.SECONDS ).isSent() );
+    for ( int i = 0; i < 3; i++ )
+    {
+      assertTrue( receive().contains( "Retried" ) );
+    }
+
+    _statuses.add( 503 );
+    final List<GelfMessage> messages = new ArrayList<GelfMessage>();
+    messages.add( connection.newMessage( SyslogLevel.INFO, "Batch", 0 ) );
+    assertTrue( connection.sendAll( messages ).get( 0 ).isSent() );
+    assertTrue( receive().contains( "Batch" ) );
+    assertTrue( receive().contains( "Batch" ) );
+    connection.close();
+  }
+
+  @Test
+  public void failWithoutRetryingClientErrors()
+    throws Exception
+  {
+    _statuses.add( 400 );
+    final GelfConnection connection = createConfig().createConnection();
+    assertFalse( connection.send( connection.newMessage( SyslogLevel.INFO, "Rejected", 0 ) ) );
+    assertTrue( receive().contains( "Rejected" ) );
+    assertNull( _bodies.poll( 300, TimeUnit.MILLISECONDS ) );
+    assertEquals( 1, connection.getMetrics().getFailedCount() );
+
+    // Retries are exhausted for persistent server errors
+    for ( int i = 0; i < 3; i++ )
+    {
+      _statuses.add( 500 );
+    }
+    final GelfTargetConfig config = createConfig();
+    config.setAsync( true );
+    config.setHttpRetries( 2 );
+    final GelfConnection retrying = config.createConnection();
+    final GelfMessage message = retrying.newMessage( SyslogLevel.INFO, "Unavailable", 0 );
+    assertFalse( retrying.sendAsync( message ).get( 5, TimeUnit.SECONDS ).isSent() );
+    assertEquals( 3, _bodies.size() );
+    connection.close();
+    retrying.close();
+  }
+
+  @Test
+  public void synchronousSendsAreNotRetried()
+    throws Exception
+  {
+    _statuses.add( 503 );
+    final GelfConnection connection = createConfig().createConnection();
+    assertFalse( connection.send( connection.newMessage( SyslogLevel.INFO, "Unavailable", 0 ) ) );
+    assertTrue( receive().contains( "Unavailable" ) );
+    assertNull( _bodies.poll( 300, TimeUnit.MILLISECONDS ) );
+    connection.close();
+  }
+
+  @Test
+  public void boundRequestsInFlight()
+    throws Exception
+  {
+    _responseDelay = 50;
+    final GelfTargetConfig config = createConfig();
+    config.setHttpMaxInFlight( 2 );
+    final GelfConnection connection = config.createConnection();
+    final AtomicInteger sent = new AtomicInteger();
+    final List<Thread> threads = new ArrayList<Thread>();
+    for ( int i = 0; i < 8; i++ )
+    {
+      final GelfMessage message = connection.newMessage( SyslogLevel.INFO, "Thread " + i, 0 );
+      final Thread thread = new Thread( () -> {
+        if ( connection.send( message ) )
+        {
+          sent.incrementAndGet();
+        }
+      } );
+      thread.start();
+      threads.add( thread );
+    }
+    for ( final Thread thread : threads )
+    {
+      thread.join();
+    }
+    assertEquals( 8, sent.get() );
+    assertEquals( 8, _bodies.size() );
+    assertTrue( _peakInFlight.get() <= 2 );
+    connection.close();
+  }
+
+  private GelfTargetConfig createConfig()
+  {
+    final GelfTargetConfig config = new GelfTargetConfig();
+    config.setTransport( GelfTargetConfig.Transport.HTTP );
+    config.setHttpUrl( "http://localhost:" + _server.getAddress().getPort() + "/gelf" );
+    return config;
+  }
+
+  private void handle( final HttpExchange exchange )
+    throws IOException
+  {
+    _peakInFlight.accumulateAndGet( _inFlight.incrementAndGet(), Math::max );
+    try
+    {
+      assertEquals( "POST", exchange.getRequestMethod() );
+      assertEquals( "gzip", exchange.getRequestHeaders().getFirst( "Content-Encoding" ) );
+      final ByteArrayOutputStream body = new ByteArrayOutputStream();
+      try ( final InputStream input = new GZIPInputStream( exchange.getRequestBody() ) )
+      {
+        final byte[] buffer = new byte[ 1024 ];
+        int count;
+        while ( -1 != ( count = input.read( buffer ) ) )
+        {
+          body.write( buffer, 0, count );
+        }
+      }
+      _bodies.add( new String( body.toByteArray(), StandardCharsets.UTF_8 ) );
+      Thread.sleep( _responseDelay );
+      // Leave before responding as the client may send its next request as soon as it has the response
+      _inFlight.decrementAndGet();
+      final Integer status = _statuses.poll();
+      exchange.sendResponseHeaders( null != status ? status : 202, -1 );
+    }
+    catch ( final InterruptedException ie )
+    {
+      Thread.currentThread().interrupt();
+    }
+    finally
+    {
+      exchange.close();
+    }
+  }
+
+  private String receive()
+    throws InterruptedException
+  {
+    final String body = _bodies.poll( 5, TimeUnit.SECONDS );
+    assertNotNull( "No request received", body );
+    return body;
+  }
+}
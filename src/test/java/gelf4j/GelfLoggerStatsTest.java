@@ -0,0 +1,66 @@
+package gelf4j;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfLoggerStatsTest
+{
+  @Test
+  public void topLoggersAreOrderedByBytes()
+    throws Exception
+  {
+    final GelfLoggerStats stats = new GelfLoggerStats( 10 );
+    stats.record( "A", 100 );
+    stats.record( "B", 50 );
+    stats.record( "B", 100 );
+    stats.record( "C", 10 );
+    stats.record( null, 1000 );
+
+    final List<GelfLoggerStats.LoggerCount> top = stats.getTopLoggers( 2 );
+    assertEquals( 2, top.size() );
+    assertEquals( "B", top.get( 0 ).getLoggerName() );
+    assertEquals( 2, top.get( 0 ).getMessageCount() );
+    assertEquals( 150, top.get( 0 ).getByteCount() );
+    assertEquals( "A", top.get( 1 ).getLoggerName() );
+    assertEquals( 3, stats.getTrackedLoggerCount() );
+    assertEquals( "B: 2 messages, 150 bytes", stats.getTopLoggers()[ 0 ] );
+
+    stats.reset();
+    assertEquals( 0, stats.getTrackedLoggerCount() );
+    assertTrue( stats.getTopLoggers( 10 ).isEmpty() );
+  }
+
+  @Test
+  public void loggersWithFewestBytesAreReplaced()
+    throws Exception
+  {
+    final GelfLoggerStats stats = new GelfLoggerStats( 2 );
+    stats.record( "A", 100 );
+    stats.record( "B", 1 );
+    // C replaces B and inherits its counts as its error
+    stats.record( "C", 5 );
+    assertEquals( 2, stats.getTrackedLoggerCount() );
+    List<GelfLoggerStats.LoggerCount> top = stats.getTopLoggers( 10 );
+    assertEquals( "A", top.get( 0 ).getLoggerName() );
+    assertEquals( "C", top.get( 1 ).getLoggerName() );
+    assertEquals( 2, top.get( 1 ).getMessageCount() );
+    assertEquals( 6, top.get( 1 ).getByteCount() );
+    assertEquals( 1, top.get( 1 ).getMessageError() );
+    assertEquals( 1, top.get( 1 ).getByteError() );
+    assertEquals( "C: 2 messages, 6 bytes (overstated by at most 1 bytes)", top.get( 1 ).toString() );
+
+    // A logger that becomes noisy after the bound is reached is still identified
+    for ( int i = 0; i < 10; i++ )
+    {
+      stats.record( "D", 50 );
+    }
+    top = stats.getTopLoggers( 10 );
+    assertEquals( 2, top.size() );
+    assertEquals( "D", top.get( 0 ).getLoggerName() );
+    assertEquals( 506, top.get( 0 ).getByteCount() );
+    assertEquals( 6, top.get( 0 ).getByteError() );
+    assertEquals( "A", top.get( 1 ).getLoggerName() );
+    assertEquals( 0, top.get( 1 ).getByteError() );
+  }
+}
@@ -0,0 +1,111 @@
+package gelf4j;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfMessageCoalescerTest
+{
+  @Test
+  public void repeatsAreCollapsedIntoFollowUp()
+    throws Exception
+  {
+    final GelfMessageCoalescer coalescer = new GelfMessageCoalescer( 1000 );
+
+    final GelfMessage first = newMessage( "A", SyslogLevel.INFO, "Retrying" );
+    final List<GelfMessage> result1 = coalescer.coalesce( first, 100 );
+    assertEquals( 1, result1.size() );
+    assertSame( first, result1.get( 0 ) );
+
+    assertTrue( coalescer.coalesce( newMessage( "A", SyslogLevel.INFO, "Retrying" ), 200 ).isEmpty() );
+    final GelfMessage last = newMessage( "A", SyslogLevel.INFO, "Retrying" );
+    assertTrue( coalescer.coalesce( last, 300 ).isEmpty() );
+
+    // Different message from the same logger ends the run
+    final GelfMessage other = newMessage( "A", SyslogLevel.INFO, "Gave up" );
+    final List<GelfMessage> result2 = coalescer.coalesce( other, 400 );
+    assertEquals( 2, result2.size() );
+    assertEquals( "Retrying", result2.get( 0 ).getShortMessage() );
+    assertEquals( "A", result2.get( 0 ).getLoggerName() );
+    assertEquals( 2L, result2.get( 0 ).getAdditionalFields().get( GelfMessageCoalescer.REPEAT_COUNT_FIELD ) );
+    // The follow-up is a copy so the suppressed message is left untouched
+    assertNotSame( last, result2.get( 0 ) );
+    assertNull( last.getAdditionalFields().get( GelfMessageCoalescer.REPEAT_COUNT_FIELD ) );
+    assertSame( other, result2.get( 1 ) );
+    assertNull( first.getAdditionalFields().get( GelfMessageCoalescer.REPEAT_COUNT_FIELD ) );
+  }
+
+  @Test
+  public void levelAndLoggerAreSignificant()
+    throws Exception
+  {
+    final GelfMessageCoalescer coalescer = new GelfMessageCoalescer( 1000 );
+
+    assertEquals( 1, coalescer.coalesce( newMessage( "A", SyslogLevel.INFO, "X" ), 0 ).size() );
+    assertEquals( 1, coalescer.coalesce( newMessage( "B", SyslogLevel.INFO, "X" ), 0 ).size() );
+    assertEquals( 1, coalescer.coalesce( newMessage( "A", SyslogLevel.WARNING, "X" ), 0 ).size() );
+    assertTrue( coalescer.flush().isEmpty() );
+  }
+
+  @Test
+  public void runEndsWhenWindowExpires()
+    throws Exception
+  {
+    final GelfMessageCoalescer coalescer = new GelfMessageCoalescer( 1000 );
+
+    assertEquals( 1, coalescer.coalesce( newMessage( "A", SyslogLevel.INFO, "X" ), 0 ).size() );
+    final GelfMessage repeat = newMessage( "A", SyslogLevel.INFO, "X" );
+    assertTrue( coalescer.coalesce( repeat, 500 ).isEmpty() );
+
+    // Repeat arriving after the window closes the run and starts a new one
+    final GelfMessage late = newMessage( "A", SyslogLevel.INFO, "X" );
+    final List<GelfMessage> result = coalescer.coalesce( late, 1500 );
+    assertEquals( 2, result.size() );
+    assertEquals( 1L, result.get( 0 ).getAdditionalFields().get( GelfMessageCoalescer.REPEAT_COUNT_FIELD ) );
+    assertSame( late, result.get( 1 ) );
+  }
+
+  @Test
+  public void flushEmitsOutstandingRepeats()
+    throws Exception
+  {
+    final GelfMessageCoalescer coalescer = new GelfMessageCoalescer( 1000 );
+
+    coalescer.coalesce( newMessage( "A", SyslogLevel.INFO, "X" ), 0 );
+    final GelfMessage repeat = newMessage( "A", SyslogLevel.INFO, "X" );
+    coalescer.coalesce( repeat, 1 );
+
+    final List<GelfMessage> result = coalescer.flush();
+    assertEquals( 1, result.size() );
+    assertEquals( 1L, result.get( 0 ).getAdditionalFields().get( GelfMessageCoalescer.REPEAT_COUNT_FIELD ) );
+    assertTrue( coalescer.flush().isEmpty() );
+  }
+
+  @Test
+  public void expireEmitsRepeatsOfQuietLoggers()
+    throws Exception
+  {
+    final GelfMessageCoalescer coalescer = new GelfMessageCoalescer( 1000 );
+
+    coalescer.coalesce( newMessage( "A", SyslogLevel.INFO, "X" ), 0 );
+    coalescer.coalesce( newMessage( "A", SyslogLevel.INFO, "X" ), 1 );
+    coalescer.coalesce( newMessage( "B", SyslogLevel.INFO, "Y" ), 600 );
+    coalescer.coalesce( newMessage( "B", SyslogLevel.INFO, "Y" ), 601 );
+
+    assertTrue( coalescer.expire( 999 ).isEmpty() );
+    final List<GelfMessage> result = coalescer.expire( 1000 );
+    assertEquals( 1, result.size() );
+    assertEquals( "A", result.get( 0 ).getLoggerName() );
+    assertEquals( 1, coalescer.expire( 1600 ).size() );
+    assertTrue( coalescer.flush().isEmpty() );
+  }
+
+  private GelfMessage newMessage( final String loggerName, final SyslogLevel level, final String text )
+  {
+    final GelfMessage message = new GelfMessage();
+    message.setLoggerName( loggerName );
+    message.setLevel( level );
+    message.setShortMessage( text );
+    return message;
+  }
+}
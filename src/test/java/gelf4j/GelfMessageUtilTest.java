@@ -58,6 +58,22 @@ public class GelfMessageUtilTest
     assertEquals( "", GelfMessageUtil.truncateShortMessage( null ) );
   }
 
+  @Test
+  public void estimateSize()
+    throws Exception
+  {
+    final GelfMessage message = new GelfMessage();
+    final long emptySize = GelfMessageUtil.estimateSize( message );
+    assertTrue( emptySize > 0 );
+
+    message.setShortMessage( createString( 100 ) );
+    final long shortSize = GelfMessageUtil.estimateSize( message );
+    assertEquals( emptySize + 200, shortSize );
+
+    message.getAdditionalFields().put( "key", "value" );
+    assertTrue( GelfMessageUtil.estimateSize( message ) > shortSize );
+  }
+
   private String createString( final int byteCount )
   {
     final Random random = new Random( 723 );
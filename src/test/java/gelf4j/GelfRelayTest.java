@@ -0,0 +1,241 @@
+package gelf4j;
+
+import gelf4j.receiver.GelfReceiver;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfRelayTest
+{
+  private static final int RELAY_PORT = 1992;
+  private static final int UPSTREAM_PORT = 1993;
+
+  private final BlockingQueue<GelfMessage> _messages = new LinkedBlockingQueue<GelfMessage>();
+  private GelfRelay _relay;
+  private GelfReceiver _receiver;
+
+  @Before
+  public void setUp()
+    throws Exception
+  {
+    _relay = new GelfRelay();
+    _relay.setListenHost( ConnectionUtil.getHost() );
+    _relay.setListenPort( RELAY_PORT );
+    _relay.setUpstreamHost( ConnectionUtil.getHost() );
+    _relay.setUpstreamPort( UPSTREAM_PORT );
+    _relay.setReconnectDelay( 50 );
+
+    _receiver = ConnectionUtil.createReceiver( UPSTREAM_PORT, _messages::add );
+    _receiver.setUdpEnabled( false );
+  }
+
+  @After
+  public void tearDown()
+  {
+    _relay.close();
+    _receiver.close();
+  }
+
+  @Test
+  public void forwardChunkedMessages()
+    throws Exception
+  {
+    _receiver.start();
+    _relay.start();
+    final GelfConnection connection = ConnectionUtil.createConfig( RELAY_PORT ).createConnection();
+    final String text = createText( 8000 );
+    final GelfMessage message = connection.newMessage( SyslogLevel.WARNING, text, System.currentTimeMillis() );
+    message.getAdditionalFields().put( "user", "bob" );
+    assertTrue( connection.send( message ) );
+    assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, "Small", System.currentTimeMillis() ) ) );
+    connection.close();
+
+    final GelfMessage forwarded = receive();
+    assertEquals( text, forwarded.getFullMessage() );
+    assertEquals( SyslogLevel.WARNING, forwarded.getLevel() );
+    assertEquals( "bob", forwarded.getAdditionalFields().get( "user" ) );
+    assertEquals( "Small", receive().getShortMessage() );
+    assertEquals( 2, _relay.getReceivedCount() );
+    assertEquals( 2, _relay.getForwardedCount() );
+    assertEquals( 1, _relay.getConnectCount() );
+    assertEquals( 0, _receiver.getInvalidCount() );
+  }
+
+  @Test
+  public void jsonIsForwardedUnchanged()
+    throws Exception
+  {
+    final String json =
+      "{\"version\":\"1.1\",\"host\":\"h\",\"short_message\":\"Hello\",\"timestamp\":1234.567891," +
+      "\"level\":9,\"_id\":\"abc\"}";
+    final byte[] data = json.getBytes( StandardCharsets.UTF_8 );
+    try ( ServerSocket serverSocket = new ServerSocket() )
+    {
+      serverSocket.bind( new InetSocketAddress( ConnectionUtil.getHost(), UPSTREAM_PORT ) );
+      serverSocket.setSoTimeout( 5000 );
+      _relay.start();
+      try ( DatagramSocket socket = new DatagramSocket() )
+      {
+        socket.send( new DatagramPacket( data,
+                                         data.length,
+                                         InetAddress.getByName( ConnectionUtil.getHost() ),
+                                         RELAY_PORT ) );
+      }
+      try ( Socket socket = serverSocket.accept() )
+      {
+        socket.setSoTimeout( 5000 );
+        final InputStream inputStream = socket.getInputStream();
+        final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        int b;
+        while ( 0 < ( b = inputStream.read() ) )
+        {
+          frame.write( b );
+        }
+        assertEquals( 0, b );
+        assertArrayEquals( data, frame.toByteArray() );
+      }
+    }
+  }
+
+  @Test
+  public void spoolMessagesUntilUpstreamIsAvailable()
+    throws Exception
+  {
+    _relay.setCompressSpool( true );
+    _relay.start();
+    final GelfConnection connection = ConnectionUtil.createConfig( RELAY_PORT ).createConnection();
+    for ( int i = 0; i < 5; i++ )
+    {
+      assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, "M" + i, System.currentTimeMillis() ) ) );
+    }
+    connection.close();
+    waitFor( () -> 5 == _relay.getReceivedCount() );
+    assertEquals( 0, _relay.getForwardedCount() );
+
+    _receiver.start();
+    for ( int i = 0; i < 5; i++ )
+    {
+      assertEquals( "M" + i, receive().getShortMessage() );
+    }
+    assertEquals( 0, _relay.getSpoolSize() );
+    assertEquals( 0, _relay.getSpooledBytes() );
+    assertEquals( 0, _relay.getDroppedCount() );
+  }
+
+  @Test
+  public void oldestMessagesAreDroppedWhenSpoolIsFull()
+    throws Exception
+  {
+    _relay.setSpoolMaxBytes( 300 );
+    _relay.start();
+    final GelfConnection connection = ConnectionUtil.createConfig( RELAY_PORT ).createConnection();
+    for ( int i = 0; i < 10; i++ )
+    {
+      assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, "M" + i, System.currentTimeMillis() ) ) );
+    }
+    connection.close();
+    waitFor( () -> 10 == _relay.getReceivedCount() );
+    assertTrue( _relay.getDroppedCount() > 0 );
+    assertTrue( _relay.getSpooledBytes() <= 300 );
+
+    _receiver.start();
+    // The most recent messages are kept
+    waitFor( () -> 10 == _relay.getDroppedCount() + _relay.getForwardedCount() );
+    for ( long i = _relay.getDroppedCount(); i < 10; i++ )
+    {
+      assertEquals( "M" + i, receive().getShortMessage() );
+    }
+  }
+
+  @Test
+  public void spooledMessagesAreForwardedOnClose()
+    throws Exception
+  {
+    _relay.start();
+    final GelfConnection connection = ConnectionUtil.createConfig( RELAY_PORT ).createConnection();
+    for ( int i = 0; i < 3; i++ )
+    {
+      assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, "M" + i, System.currentTimeMillis() ) ) );
+    }
+    connection.close();
+    waitFor( () -> 3 == _relay.getReceivedCount() );
+
+    _receiver.start();
+    _relay.close();
+    assertEquals( 3, _relay.getForwardedCount() );
+    assertEquals( 0, _relay.getSpoolSize() );
+    for ( int i = 0; i < 3; i++ )
+    {
+      assertEquals( "M" + i, receive().getShortMessage() );
+    }
+  }
+
+  @Test
+  public void corruptSpooledMessagesAreDropped()
+    throws Exception
+  {
+    _relay.setCompressSpool( true );
+    _relay.start();
+    _relay.spool( new byte[]{ 1, 2, 3, 4 } );
+    final GelfConnection connection = ConnectionUtil.createConfig( RELAY_PORT ).createConnection();
+    assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, "Valid", System.currentTimeMillis() ) ) );
+    connection.close();
+    waitFor( () -> 1 == _relay.getReceivedCount() );
+
+    _receiver.start();
+    assertEquals( "Valid", receive().getShortMessage() );
+    waitFor( () -> 1 == _relay.getForwardedCount() );
+    assertEquals( 1, _relay.getCorruptCount() );
+    assertEquals( 0, _relay.getSpoolSize() );
+  }
+
+  private GelfMessage receive()
+    throws InterruptedException
+  {
+    final GelfMessage message = _messages.poll( 5, TimeUnit.SECONDS );
+    assertNotNull( "No message received", message );
+    return message;
+  }
+
+  private static void waitFor( final Condition condition )
+    throws InterruptedException
+  {
+    final long deadline = System.currentTimeMillis() + 5000;
+    while ( !condition.isSatisfied() && System.currentTimeMillis() < deadline )
+    {
+      Thread.sleep( 20 );
+    }
+    assertTrue( condition.isSatisfied() );
+  }
+
+  private interface Condition
+  {
+    boolean isSatisfied();
+  }
+
+  private static String createText( final int length )
+  {
+    // Random text compresses poorly enough that the message is chunked
+    final Random random = new Random( length );
+    final StringBuilder sb = new StringBuilder( length );
+    for ( int i = 0; i < length; i++ )
+    {
+      sb.append( (char) ( ' ' + random.nextInt( 95 ) ) );
+    }
+    return sb.toString();
+  }
+}
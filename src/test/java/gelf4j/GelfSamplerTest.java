@@ -0,0 +1,105 @@
+package gelf4j;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfSamplerTest
+{
+  @Test
+  public void everythingIsSentUnderThreshold()
+    throws Exception
+  {
+    final GelfSampler sampler = new GelfSampler( 100, 1000, 1000, 0 );
+    for ( int i = 0; i < 50; i++ )
+    {
+      final GelfMessage message = newMessage( SyslogLevel.DEBUG );
+      assertTrue( sampler.sample( message, i ) );
+      assertNull( message.getAdditionalFields().get( GelfSampler.SAMPLE_RATE_FIELD ) );
+    }
+    // 51 messages in the first second is under the threshold
+    assertTrue( sampler.sample( newMessage( SyslogLevel.DEBUG ), 1000 ) );
+    assertEquals( GelfSampler.STAGE_NONE, sampler.getStage() );
+  }
+
+  @Test
+  public void samplingProgressesByLevel()
+    throws Exception
+  {
+    final GelfSampler sampler = new GelfSampler( 100, 1000000, 1000000, 0 );
+
+    offer( sampler, 150 );
+    sampler.sample( newMessage( SyslogLevel.EMERG ), 1000 );
+    assertEquals( GelfSampler.STAGE_DEBUG, sampler.getStage() );
+    assertFalse( sampler.sample( newMessage( SyslogLevel.DEBUG ), 1001 ) );
+    assertTrue( sampler.sample( newMessage( SyslogLevel.INFO ), 1002 ) );
+
+    offer( sampler, 250 );
+    sampler.sample( newMessage( SyslogLevel.EMERG ), 2001 );
+    assertEquals( GelfSampler.STAGE_INFO, sampler.getStage() );
+    assertFalse( sampler.sample( newMessage( SyslogLevel.INFO ), 2002 ) );
+    assertTrue( sampler.sample( newMessage( SyslogLevel.NOTICE ), 2003 ) );
+    assertTrue( sampler.sample( newMessage( SyslogLevel.WARNING ), 2004 ) );
+    assertTrue( sampler.sample( newMessage( SyslogLevel.ERR ), 2005 ) );
+    assertTrue( sampler.sample( newMessage( SyslogLevel.CRIT ), 2006 ) );
+
+    // Load drops away
+    sampler.sample( newMessage( SyslogLevel.DEBUG ), 3002 );
+    assertEquals( GelfSampler.STAGE_NONE, sampler.getStage() );
+    assertTrue( sampler.sample( newMessage( SyslogLevel.DEBUG ), 3003 ) );
+  }
+
+  @Test
+  public void keptMessagesCarrySampleRate()
+    throws Exception
+  {
+    final GelfSampler sampler = new GelfSampler( 1, 1, 1, 0 );
+    offer( sampler, 10 );
+    final GelfMessage message = newMessage( SyslogLevel.DEBUG );
+    assertTrue( sampler.sample( message, 1000 ) );
+    // A sample rate of 1 means every message is kept and no re-weighting is required
+    assertNull( message.getAdditionalFields().get( GelfSampler.SAMPLE_RATE_FIELD ) );
+
+    final GelfSampler sampler2 = new GelfSampler( 1, 2, 2, 0 );
+    offer( sampler2, 10 );
+    sampler2.sample( newMessage( SyslogLevel.ERR ), 1000 );
+    int kept = 0;
+    for ( int i = 0; i < 1000; i++ )
+    {
+      final GelfMessage debug = newMessage( SyslogLevel.DEBUG );
+      if ( sampler2.sample( debug, 1001 ) )
+      {
+        kept++;
+        assertEquals( 2, debug.getAdditionalFields().get( GelfSampler.SAMPLE_RATE_FIELD ) );
+      }
+    }
+    assertTrue( kept > 0 && kept < 1000 );
+  }
+
+  @Test
+  public void loadStageForcesSampling()
+    throws Exception
+  {
+    final GelfSampler sampler = new GelfSampler( 1000000, 1000000, 1000000, 0 );
+    assertTrue( sampler.sample( newMessage( SyslogLevel.INFO ), 0, GelfSampler.STAGE_DEBUG ) );
+    assertFalse( sampler.sample( newMessage( SyslogLevel.DEBUG ), 0, GelfSampler.STAGE_DEBUG ) );
+    assertFalse( sampler.sample( newMessage( SyslogLevel.INFO ), 0, GelfSampler.STAGE_INFO ) );
+    assertTrue( sampler.sample( newMessage( SyslogLevel.ERR ), 0, GelfSampler.STAGE_INFO ) );
+    assertTrue( sampler.sample( newMessage( SyslogLevel.DEBUG ), 0, GelfSampler.STAGE_NONE ) );
+  }
+
+  private void offer( final GelfSampler sampler, final int count )
+  {
+    for ( int i = 0; i < count; i++ )
+    {
+      sampler.sample( newMessage( SyslogLevel.ERR ), 0 );
+    }
+  }
+
+  private GelfMessage newMessage( final SyslogLevel level )
+  {
+    final GelfMessage message = new GelfMessage();
+    message.setLevel( level );
+    message.setShortMessage( "X" );
+    return message;
+  }
+}
@@ -0,0 +1,65 @@
+package gelf4j.reactive;
+
+import gelf4j.ConnectionUtil;
+import gelf4j.GelfConnection;
+import gelf4j.GelfMessage;
+import gelf4j.GelfSendResult;
+import gelf4j.GelfTargetConfig;
+import gelf4j.SimpleJsonCodec;
+import gelf4j.SyslogLevel;
+import java.net.DatagramSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfBatchSenderTest
+{
+  @Test
+  public void failuresDoNotStopLaterBatches()
+    throws Exception
+  {
+    final GelfTargetConfig config = ConnectionUtil.createConfig( 2004 );
+    config.setCodecClass( FailingCodec.class.getName() );
+    final DatagramSocket socket = ConnectionUtil.createServer( config.getHost(), config.getPort() );
+    try
+    {
+      final GelfConnection connection = config.createConnection();
+      final List<GelfSendResult> results = new ArrayList<GelfSendResult>();
+      final GelfBatchSender sender = new GelfBatchSender( connection, Runnable::run, result -> {
+        results.add( result );
+        throw new IllegalStateException( "Listener failed" );
+      } );
+
+      final GelfMessage failing = connection.newMessage( SyslogLevel.INFO, "Failing", System.currentTimeMillis() );
+      failing.getAdditionalFields().put( "fail", Boolean.TRUE );
+      sender.add( failing );
+      sender.add( connection.newMessage( SyslogLevel.INFO, "Sent", System.currentTimeMillis() ) );
+
+      assertEquals( 2, results.size() );
+      assertEquals( GelfSendResult.Outcome.FAILED, results.get( 0 ).getOutcome() );
+      assertEquals( GelfSendResult.Outcome.SENT, results.get( 1 ).getOutcome() );
+      assertEquals( 2, sender.getBatchCount() );
+      connection.close();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  public static final class FailingCodec
+    extends SimpleJsonCodec
+  {
+    @Override
+    public String toJson( final Object object )
+    {
+      if ( object instanceof Map && ( (Map<?, ?>) object ).containsKey( "_fail" ) )
+      {
+        throw new IllegalStateException( "Codec failed" );
+      }
+      return super.toJson( object );
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package gelf4j.reactive;
+
+import gelf4j.ConnectionUtil;
+import gelf4j.GelfConnection;
+import gelf4j.GelfSendResult;
+import gelf4j.GelfTargetConfig;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import static org.junit.Assert.*;
+
+public class GelfProcessorTest
+{
+  @Test
+  public void resultsArePublishedAsRequested()
+    throws Exception
+  {
+    final GelfTargetConfig config = new GelfTargetConfig();
+    config.setHost( InetAddress.getLocalHost().getCanonicalHostName() );
+    config.setPort( 1982 );
+
+    final DatagramSocket socket =
+      ConnectionUtil.createServer( config.getHostAddress().getHostName(), config.getPort() );
+    try
+    {
+      final GelfConnection connection = config.createConnection();
+      final TestPublisher publisher = new TestPublisher( connection, 25 );
+      final GelfProcessor processor = new GelfProcessor( connection, 16 );
+
+      final List<GelfSendResult> results = new CopyOnWriteArrayList<GelfSendResult>();
+      final CountDownLatch completed = new CountDownLatch( 1 );
+      processor.subscribe( new Subscriber<GelfSendResult>()
+      {
+        private Subscription _subscription;
+
+        @Override
+        public void onSubscribe( final Subscription subscription )
+        {
+          _subscription = subscription;
+          subscription.request( 5 );
+        }
+
+        @Override
+        public void onNext( final GelfSendResult result )
+        {
+          results.add( result );
+          if ( 0 == results.size() % 5 )
+          {
+            _subscription.request( 5 );
+          }
+        }
+
+        @Override
+        public void onError( final Throwable throwable )
+        {
+        }
+
+        @Override
+        public void onComplete()
+        {
+          completed.countDown();
+        }
+      } );
+      publisher.subscribe( processor );
+
+      assertTrue( completed.await( 10, TimeUnit.SECONDS ) );
+      assertEquals( 25, results.size() );
+      for ( final GelfSendResult result : results )
+      {
+        assertTrue( result.isSent() );
+      }
+      // Demand from the downstream subscriber limits the demand on the upstream publisher
+      assertTrue( publisher.getMaxOutstanding() <= 5 );
+      connection.close();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package gelf4j.reactive;
+
+import gelf4j.ConnectionUtil;
+import gelf4j.GelfConnection;
+import gelf4j.GelfTargetConfig;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfSubscriberTest
+{
+  @Test
+  public void demandIsLimitedByInFlightMessages()
+    throws Exception
+  {
+    final GelfTargetConfig config = new GelfTargetConfig();
+    config.setHost( InetAddress.getLocalHost().getCanonicalHostName() );
+    config.setPort( 1981 );
+
+    final DatagramSocket socket =
+      ConnectionUtil.createServer( config.getHostAddress().getHostName(), config.getPort() );
+    try
+    {
+      final GelfConnection connection = config.createConnection();
+      final TestPublisher publisher = new TestPublisher( connection, 100 );
+      final GelfSubscriber subscriber = new GelfSubscriber( connection, 8 );
+      publisher.subscribe( subscriber );
+
+      subscriber.getCompletion().get( 10, TimeUnit.SECONDS );
+
+      assertEquals( 100, publisher.getEmitted() );
+      assertTrue( publisher.getMaxOutstanding() <= 8 );
+      assertEquals( 100, subscriber.getSentCount() );
+      assertEquals( 0, subscriber.getDroppedCount() );
+      assertEquals( 0, subscriber.getFailedCount() );
+      assertEquals( 0, subscriber.getInFlightCount() );
+      // Messages that arrive while a batch is being sent are sent together
+      assertTrue( subscriber.getBatchCount() < 100 );
+      connection.close();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package gelf4j.reactive;
+
+import gelf4j.GelfConnection;
+import gelf4j.GelfMessage;
+import gelf4j.SyslogLevel;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * A publisher that emits a fixed number of messages as demand is signalled and records the demand.
+ */
+public class TestPublisher
+  implements Publisher<GelfMessage>
+{
+  private final GelfConnection _connection;
+  private final int _count;
+  private int _emitted;
+  private long _requested;
+  private long _maxOutstanding;
+  private boolean _cancelled;
+  private boolean _completed;
+
+  public TestPublisher( final GelfConnection connection, final int count )
+  {
+    _connection = connection;
+    _count = count;
+  }
+
+  @Override
+  public void subscribe( final Subscriber<? super GelfMessage> subscriber )
+  {
+    subscriber.onSubscribe( new Subscription()
+    {
+      @Override
+      public void request( final long n )
+      {
+        final boolean complete;
+        synchronized ( TestPublisher.this )
+        {
+          _requested += n;
+          _maxOutstanding = Math.max( _maxOutstanding, _requested - _emitted );
+          complete = emit( subscriber );
+        }
+        if ( complete )
+        {
+          subscriber.onComplete();
+        }
+      }
+
+      @Override
+      public void cancel()
+      {
+        synchronized ( TestPublisher.this )
+        {
+          _cancelled = true;
+        }
+      }
+    } );
+  }
+
+  private boolean emit( final Subscriber<? super GelfMessage> subscriber )
+  {
+    while ( !_cancelled && _emitted < _requested && _emitted < _count )
+    {
+      final GelfMessage message =
+        _connection.newMessage( SyslogLevel.INFO, "Message " + _emitted, System.currentTimeMillis() );
+      _emitted++;
+      subscriber.onNext( message );
+    }
+    if ( !_completed && _emitted == _count )
+    {
+      _completed = true;
+      return true;
+    }
+    return false;
+  }
+
+  public synchronized int getEmitted()
+  {
+    return _emitted;
+  }
+
+  public synchronized long getMaxOutstanding()
+  {
+    return _maxOutstanding;
+  }
+}
@@ -0,0 +1,102 @@
+package gelf4j.receiver;
+
+import gelf4j.GelfMessage;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfLossTrackerTest
+{
+  @Test
+  public void inOrderMessagesAreNotLost()
+  {
+    final GelfLossTracker tracker = new GelfLossTracker();
+    for ( long i = 100; i < 110; i++ )
+    {
+      tracker.record( "A", i );
+    }
+    assertEquals( 1, tracker.getSenderCount() );
+    assertEquals( 10, tracker.getReceivedCount() );
+    assertEquals( 0, tracker.getLostCount() );
+    assertEquals( 0, tracker.getGapCount() );
+    assertEquals( 0D, tracker.getLossRate(), 0 );
+  }
+
+  @Test
+  public void gapsAreCountedAsLost()
+  {
+    final GelfLossTracker tracker = new GelfLossTracker();
+    tracker.record( "A", 1 );
+    tracker.record( "A", 4 );
+    tracker.record( "A", 5 );
+    tracker.record( "A", 7 );
+    assertEquals( 4, tracker.getReceivedCount() );
+    assertEquals( 3, tracker.getLostCount() );
+    assertEquals( 2, tracker.getGapCount() );
+    assertEquals( 3D / 7, tracker.getLossRate(), 0.0001 );
+  }
+
+  @Test
+  public void lateMessagesAreReordered()
+  {
+    final GelfLossTracker tracker = new GelfLossTracker();
+    tracker.record( "A", 1 );
+    tracker.record( "A", 5 );
+    tracker.record( "A", 3 );
+    tracker.record( "A", 2 );
+    tracker.record( "A", 3 );
+    assertEquals( 4, tracker.getReceivedCount() );
+    assertEquals( 1, tracker.getLostCount() );
+    assertEquals( 2, tracker.getReorderedCount() );
+    assertEquals( 1, tracker.getDuplicateCount() );
+  }
+
+  @Test
+  public void messagesOutsideWindowAreLost()
+  {
+    final GelfLossTracker tracker = new GelfLossTracker( 5 );
+    tracker.record( "A", 1 );
+    tracker.record( "A", 3 );
+    tracker.record( "A", 10 );
+    tracker.record( "A", 2 );
+    tracker.record( "A", 8 );
+    assertEquals( 4, tracker.getReceivedCount() );
+    assertEquals( 6, tracker.getLostCount() );
+    assertEquals( 1, tracker.getReorderedCount() );
+    assertEquals( 1, tracker.getDuplicateCount() );
+  }
+
+  @Test
+  public void sendersAreTrackedSeparately()
+  {
+    final GelfLossTracker tracker = new GelfLossTracker();
+    final GelfMessage message = new GelfMessage();
+    final Map<String, Object> fields = message.getAdditionalFields();
+    fields.put( "sender_id", "A" );
+    fields.put( "seq", 1L );
+    tracker.record( message );
+    fields.put( "seq", 3L );
+    tracker.record( message );
+    fields.put( "sender_id", "B" );
+    fields.put( "seq", 7L );
+    tracker.record( message );
+    tracker.record( new GelfMessage() );
+
+    assertEquals( 2, tracker.getSenderCount() );
+    assertEquals( 3, tracker.getReceivedCount() );
+    assertEquals( 1, tracker.getLostCount() );
+    assertEquals( 1, tracker.getUnsequencedCount() );
+    assertTrue( tracker.describe().contains( "A: 2 received, 1 lost in 1 gaps" ) );
+  }
+
+  @Test
+  public void chunkLossRate()
+  {
+    final GelfLossTracker tracker = new GelfLossTracker();
+    tracker.recordChunks( 4, 4 );
+    tracker.recordChunks( 4, 2 );
+    assertEquals( 2, tracker.getChunkedMessageCount() );
+    assertEquals( 1, tracker.getIncompleteMessageCount() );
+    assertEquals( 0.25D, tracker.getChunkLossRate(), 0 );
+  }
+}
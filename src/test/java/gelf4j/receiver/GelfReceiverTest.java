@@ -0,0 +1,213 @@
+package gelf4j.receiver;
+
+import gelf4j.ConnectionUtil;
+import gelf4j.GelfConnection;
+import gelf4j.GelfDecoder;
+import gelf4j.GelfMessage;
+import gelf4j.GelfTargetConfig;
+import gelf4j.SyslogLevel;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfReceiverTest
+{
+  private static final int PORT = 1991;
+
+  private final BlockingQueue<GelfMessage> _messages = new LinkedBlockingQueue<GelfMessage>();
+  private GelfReceiver _receiver;
+
+  @Before
+  public void setUp()
+    throws Exception
+  {
+    _receiver = ConnectionUtil.createReceiver( PORT, _messages::add );
+    _receiver.setChunkTimeout( 200 );
+  }
+
+  @After
+  public void tearDown()
+  {
+    _receiver.close();
+  }
+
+  @Test
+  public void receiveChunkedMessages()
+    throws Exception
+  {
+    _receiver.start();
+    final GelfTargetConfig config = ConnectionUtil.createConfig( PORT );
+    config.setSequenceNumbers( true );
+    final GelfConnection connection = config.createConnection();
+    final String text = createText( 8000 );
+    assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, "Small", System.currentTimeMillis() ) ) );
+    final GelfMessage large = connection.newMessage( SyslogLevel.INFO, text, System.currentTimeMillis() );
+    assertTrue( connection.send( large ) );
+    connection.close();
+
+    assertEquals( "Small", receive().getShortMessage() );
+    assertEquals( text, receive().getFullMessage() );
+    assertEquals( 2, _receiver.getMessageCount() );
+    assertTrue( _receiver.getPacketCount() > 2 );
+    assertEquals( 0, _receiver.getInvalidCount() );
+    assertEquals( 2, _receiver.getLatency().getCount() );
+    assertEquals( 2, _receiver.getLossTracker().getReceivedCount() );
+    assertEquals( 0, _receiver.getLossTracker().getLostCount() );
+    assertEquals( 1, _receiver.getLossTracker().getChunkedMessageCount() );
+  }
+
+  @Test
+  public void receiveUncompressedChunkFormat()
+    throws Exception
+  {
+    _receiver.setCompressedChunking( false );
+    _receiver.start();
+    final GelfTargetConfig config = ConnectionUtil.createConfig( PORT );
+    config.setCompressedChunking( false );
+    final GelfConnection connection = config.createConnection();
+    final String text = createText( 8000 );
+    assertTrue( connection.send( connection.newMessage( SyslogLevel.INFO, text, System.currentTimeMillis() ) ) );
+    connection.close();
+
+    assertEquals( text, receive().getFullMessage() );
+  }
+
+  @Test
+  public void receiveZlibAndUncompressedDatagrams()
+    throws Exception
+  {
+    _receiver.start();
+    final byte[] json = "{\"version\":\"1.1\",\"host\":\"h\",\"short_message\":\"Plain\"}".getBytes( "UTF-8" );
+    final ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+    final DeflaterOutputStream outputStream = new DeflaterOutputStream( zlib );
+    outputStream.write( "{\"version\":\"1.1\",\"host\":\"h\",\"short_message\":\"Zlib\"}".getBytes( "UTF-8" ) );
+    outputStream.close();
+
+    final DatagramSocket socket = new DatagramSocket();
+    try
+    {
+      send( socket, json );
+      assertEquals( "Plain", receive().getShortMessage() );
+      send( socket, zlib.toByteArray() );
+      assertEquals( "Zlib", receive().getShortMessage() );
+      send( socket, "{\"version\":\"1.1\"}".getBytes( "UTF-8" ) );
+      send( socket, "not json".getBytes( "UTF-8" ) );
+      send( socket, json );
+      assertEquals( "Plain", receive().getShortMessage() );
+    }
+    finally
+    {
+      socket.close();
+    }
+    assertEquals( 2, _receiver.getInvalidCount() );
+  }
+
+  @Test
+  public void receiveOverTcp()
+    throws Exception
+  {
+    _receiver.start();
+    final Socket socket = new Socket();
+    try
+    {
+      socket.connect( new InetSocketAddress( ConnectionUtil.getHost(), PORT ) );
+      final OutputStream outputStream = socket.getOutputStream();
+      outputStream.write( "{\"version\":\"1.1\",\"host\":\"h\",\"short_message\":\"First\"}\0".getBytes( "UTF-8" ) );
+      outputStream.write( "{\"version\":\"1.1\",\"host\":\"h\",\"short_message\":\"Second\"}\0".getBytes( "UTF-8" ) );
+      outputStream.flush();
+      assertEquals( "First", receive().getShortMessage() );
+      assertEquals( "Second", receive().getShortMessage() );
+
+      // A frame larger than the block read from the socket is assembled from several blocks
+      final char[] text = new char[ 20000 ];
+      Arrays.fill( text, 'y' );
+      final String large = new String( text );
+      outputStream.write( ( "{\"version\":\"1.1\",\"host\":\"h\",\"short_message\":\"" + large + "\"}\0" )
+                            .getBytes( "UTF-8" ) );
+      outputStream.flush();
+      assertEquals( large, receive().getShortMessage() );
+
+      // A frame that exceeds the maximum size is discarded without buffering it
+      final byte[] block = new byte[ 1024 * 1024 ];
+      Arrays.fill( block, (byte) 'x' );
+      for ( int i = 0; i <= GelfDecoder.MAX_MESSAGE_SIZE / block.length; i++ )
+      {
+        outputStream.write( block );
+      }
+      outputStream.write( 0 );
+      outputStream.write( "{\"version\":\"1.1\",\"host\":\"h\",\"short_message\":\"Third\"}\0".getBytes( "UTF-8" ) );
+      outputStream.flush();
+      assertEquals( "Third", receive().getShortMessage() );
+      assertEquals( 1, _receiver.getInvalidCount() );
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void incompleteMessagesExpire()
+    throws Exception
+  {
+    _receiver.start();
+    // The first of two chunks in the compressed chunk format
+    final byte[] chunk = new byte[]{ 0x1e, 0x0f, 1, 2, 3, 4, 5, 6, 7, 8, 0, 2, '{' };
+    final DatagramSocket socket = new DatagramSocket();
+    try
+    {
+      send( socket, chunk );
+    }
+    finally
+    {
+      socket.close();
+    }
+    final long deadline = System.currentTimeMillis() + 5000;
+    while ( 0 == _receiver.getIncompleteCount() && System.currentTimeMillis() < deadline )
+    {
+      Thread.sleep( 50 );
+    }
+    assertEquals( 1, _receiver.getIncompleteCount() );
+    assertEquals( 0, _receiver.getMessageCount() );
+    assertEquals( 0.5D, _receiver.getLossTracker().getChunkLossRate(), 0 );
+  }
+
+  private GelfMessage receive()
+    throws InterruptedException
+  {
+    final GelfMessage message = _messages.poll( 5, TimeUnit.SECONDS );
+    assertNotNull( "No message received", message );
+    return message;
+  }
+
+  private void send( final DatagramSocket socket, final byte[] data )
+    throws Exception
+  {
+    socket.send( new DatagramPacket( data, data.length, new InetSocketAddress( ConnectionUtil.getHost(), PORT ) ) );
+  }
+
+  private static String createText( final int length )
+  {
+    // Random text compresses poorly enough that the message is chunked
+    final Random random = new Random( 723 );
+    final StringBuilder sb = new StringBuilder( length );
+    for ( int i = 0; i < length; i++ )
+    {
+      sb.append( (char) ( ' ' + random.nextInt( 95 ) ) );
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,150 @@
+package gelf4j.sender;
+
+import gelf4j.ConnectionUtil;
+import gelf4j.GelfConnection;
+import gelf4j.GelfMessage;
+import gelf4j.SimpleJsonCodec;
+import gelf4j.receiver.GelfReceiver;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfDaemonTest
+{
+  private static final int PORT = 1997;
+  private static final int LISTEN_PORT = 1998;
+
+  private final BlockingQueue<GelfMessage> _messages = new LinkedBlockingQueue<GelfMessage>();
+  private GelfReceiver _receiver;
+  private GelfConnection _connection;
+
+  @Before
+  public void setUp()
+    throws Exception
+  {
+    _receiver = ConnectionUtil.startUdpReceiver( PORT, _messages::add );
+
+    _connection = ConnectionUtil.createConfig( PORT ).createConnection();
+  }
+
+  @After
+  public void tearDown()
+    throws Exception
+  {
+    _connection.close();
+    _receiver.close();
+  }
+
+  @Test
+  public void sendLinesFromConnections()
+    throws Exception
+  {
+    final GelfDaemon daemon = new GelfDaemon( _connection, null );
+    daemon.setListenPort( LISTEN_PORT );
+    daemon.start();
+    try
+    {
+      for ( int i = 0; i < 3; i++ )
+      {
+        try ( final Socket socket = new Socket( "localhost", LISTEN_PORT ) )
+        {
+          final Writer writer = new OutputStreamWriter( socket.getOutputStream(), StandardCharsets.UTF_8 );
+          writer.write( "Client " + i + " first\nClient " + i + " second\n" );
+          writer.flush();
+        }
+      }
+      final Set<String> received = new HashSet<String>();
+      for ( int i = 0; i < 6; i++ )
+      {
+        received.add( receive().getShortMessage() );
+      }
+      assertTrue( received.contains( "Client 0 first" ) );
+      assertTrue( received.contains( "Client 2 second" ) );
+    }
+    finally
+    {
+      daemon.close();
+    }
+    assertEquals( 3, daemon.getConnectionCount() );
+    assertEquals( 6, daemon.getSender().getSentCount() );
+  }
+
+  @Test
+  public void sendLinesFromFifo()
+    throws Exception
+  {
+    final Path directory = Files.createTempDirectory( "gelf4j" );
+    final Path fifo = directory.resolve( "gelf.fifo" );
+    try
+    {
+      Assume.assumeTrue( "mkfifo is unavailable", mkfifo( fifo ) );
+      final GelfDaemon daemon = new GelfDaemon( _connection, new SimpleJsonCodec() );
+      daemon.setListenPort( 0 );
+      daemon.setFifo( fifo );
+      daemon.start();
+      try
+      {
+        // Each writer closing the pipe does not end the stream read by the daemon
+        for ( int i = 0; i < 2; i++ )
+        {
+          try ( final OutputStream outputStream = Files.newOutputStream( fifo ) )
+          {
+            outputStream.write( ( "{\"message\":\"Writer " + i + "\",\"user\":\"bob\"}\n" )
+                                  .getBytes( StandardCharsets.UTF_8 ) );
+          }
+          final GelfMessage message = receive();
+          assertEquals( "Writer " + i, message.getShortMessage() );
+          assertEquals( "bob", message.getAdditionalFields().get( "user" ) );
+        }
+      }
+      finally
+      {
+        daemon.close();
+      }
+      assertEquals( 2, daemon.getSender().getSentCount() );
+    }
+    finally
+    {
+      for ( final File file : directory.toFile().listFiles() )
+      {
+        assertTrue( file.delete() );
+      }
+      Files.delete( directory );
+    }
+  }
+
+  private static boolean mkfifo( final Path fifo )
+  {
+    try
+    {
+      return 0 == new ProcessBuilder( "mkfifo", fifo.toString() ).start().waitFor();
+    }
+    catch ( final Exception e )
+    {
+      return false;
+    }
+  }
+
+  private GelfMessage receive()
+    throws InterruptedException
+  {
+    final GelfMessage message = _messages.poll( 5, TimeUnit.SECONDS );
+    assertNotNull( "No message received", message );
+    return message;
+  }
+}
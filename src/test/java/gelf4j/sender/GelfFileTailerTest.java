@@ -0,0 +1,270 @@
+package gelf4j.sender;
+
+import gelf4j.ConnectionUtil;
+import gelf4j.GelfConnection;
+import gelf4j.GelfMessage;
+import gelf4j.GelfTargetConfig;
+import gelf4j.receiver.GelfReceiver;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfFileTailerTest
+{
+  private static final int PORT = 1996;
+
+  private final BlockingQueue<GelfMessage> _messages = new LinkedBlockingQueue<GelfMessage>();
+  private GelfReceiver _receiver;
+  private GelfConnection _connection;
+  private Path _directory;
+  private Path _file;
+
+  @Before
+  public void setUp()
+    throws Exception
+  {
+    _receiver = ConnectionUtil.startUdpReceiver( PORT, _messages::add );
+
+    _connection = ConnectionUtil.createConfig( PORT ).createConnection();
+
+    _directory = Files.createTempDirectory( "gelf4j" );
+    _file = _directory.resolve( "app.log" );
+  }
+
+  @After
+  public void tearDown()
+    throws Exception
+  {
+    _connection.close();
+    _receiver.close();
+    for ( final File file : _directory.toFile().listFiles() )
+    {
+      assertTrue( file.delete() );
+    }
+    Files.delete( _directory );
+  }
+
+  @Test
+  public void sendAppendedLines()
+    throws Exception
+  {
+    append( "First\nSecond\r\nThi" );
+    final GelfFileTailer tailer = newTailer();
+    tailer.poll();
+    assertEquals( "First", receive().getShortMessage() );
+    assertEquals( "Second", receive().getShortMessage() );
+
+    append( "rd\n\nFourth\n" );
+    tailer.poll();
+    assertEquals( "Third", receive().getShortMessage() );
+    assertEquals( "Fourth", receive().getShortMessage() );
+    tailer.close();
+
+    assertEquals( 5, tailer.getLineCount() );
+    assertEquals( 4, tailer.getSentCount() );
+    assertEquals( 0, tailer.getFailedCount() );
+  }
+
+  @Test
+  public void groupMultilineMessages()
+    throws Exception
+  {
+    append( "ERROR Failed\n  at A.a()\n  at B.b()\nINFO Done\nINFO Pending\n  more\n" );
+    final GelfFileTailer tailer = newTailer();
+    tailer.setMultilineStart( Pattern.compile( "[A-Z]+ " ) );
+    tailer.setPollInterval( TimeUnit.MINUTES.toMillis( 1 ) );
+    tailer.poll();
+    assertEquals( "ERROR Failed\n  at A.a()\n  at B.b()", receive().getFullMessage() );
+    assertEquals( "INFO Done", receive().getShortMessage() );
+    // The last message is held until a line that starts a message arrives, the poll interval passes or it is closed
+    assertNull( _messages.poll( 200, TimeUnit.MILLISECONDS ) );
+
+    tailer.close();
+    assertEquals( "INFO Pending\n  more", receive().getFullMessage() );
+    assertEquals( 3, tailer.getSentCount() );
+  }
+
+  @Test
+  public void resumeFromCheckpoint()
+    throws Exception
+  {
+    final Path checkpoint = _directory.resolve( "tail.checkpoint" );
+    append( "One\nTwo\n" );
+    final GelfFileTailer tailer = newTailer();
+    tailer.setCheckpointFile( checkpoint );
+    tailer.poll();
+    tailer.close();
+    assertEquals( "One", receive().getShortMessage() );
+    assertEquals( "Two", receive().getShortMessage() );
+    assertTrue( Files.exists( checkpoint ) );
+
+    append( "Three\n" );
+    final GelfFileTailer resumed = newTailer();
+    resumed.setCheckpointFile( checkpoint );
+    resumed.poll();
+    resumed.close();
+    assertEquals( "Three", receive().getShortMessage() );
+    assertEquals( 1, resumed.getSentCount() );
+  }
+
+  @Test
+  public void startAtEnd()
+    throws Exception
+  {
+    append( "Old\n" );
+    final GelfFileTailer tailer = newTailer();
+    tailer.setStartAtEnd( true );
+    tailer.poll();
+    append( "New\n" );
+    tailer.poll();
+    tailer.close();
+    assertEquals( "New", receive().getShortMessage() );
+    assertEquals( 1, tailer.getSentCount() );
+  }
+
+  @Test
+  public void replacedFileIsReadFromStartDespiteStartAtEnd()
+    throws Exception
+  {
+    final Path checkpoint = _directory.resolve( "tail.checkpoint" );
+    append( "Old\n" );
+    // The checkpoint was saved for a file that has since been replaced
+    final Properties properties = new Properties();
+    properties.setProperty( _file.toString(), "4" );
+    properties.setProperty( _file.toString() + ".key", "replaced" );
+    try ( final OutputStream outputStream = Files.newOutputStream( checkpoint ) )
+    {
+      properties.store( outputStream, null );
+    }
+    final GelfFileTailer tailer = newTailer();
+    tailer.setCheckpointFile( checkpoint );
+    tailer.setStartAtEnd( true );
+    tailer.poll();
+    tailer.close();
+    assertEquals( "Old", receive().getShortMessage() );
+  }
+
+  @Test
+  public void longLinesAreSplitBetweenCharacters()
+    throws Exception
+  {
+    final StringBuilder sb = new StringBuilder( GelfFileTailer.MAX_LINE_LENGTH + 4 );
+    for ( int i = 0; i < GelfFileTailer.MAX_LINE_LENGTH - 1; i++ )
+    {
+      sb.append( 'a' );
+    }
+    // A two byte character that straddles the maximum line length
+    sb.append( '\u00e9' ).append( "b\n" );
+    append( sb.toString() );
+    final GelfFileTailer tailer = newTailer();
+    tailer.poll();
+    tailer.close();
+    final GelfMessage first = receive();
+    final String text = null != first.getFullMessage() ? first.getFullMessage() : first.getShortMessage();
+    assertEquals( GelfFileTailer.MAX_LINE_LENGTH, text.length() );
+    assertTrue( text.endsWith( "a\u00e9" ) );
+    assertEquals( "b", receive().getShortMessage() );
+  }
+
+  @Test
+  public void followRotation()
+    throws Exception
+  {
+    append( "Before\n" );
+    final GelfFileTailer tailer = newTailer();
+    tailer.poll();
+    assertEquals( "Before", receive().getShortMessage() );
+
+    // Lines written before the rename are read from the renamed file
+    append( "Last" );
+    Files.move( _file, _directory.resolve( "app.log.1" ) );
+    tailer.poll();
+    append( "After\n" );
+    tailer.poll();
+    assertEquals( "Last", receive().getShortMessage() );
+    assertEquals( "After", receive().getShortMessage() );
+
+    // Truncating the file in place restarts from the start
+    Files.write( _file, new byte[ 0 ], StandardOpenOption.TRUNCATE_EXISTING );
+    tailer.poll();
+    append( "Truncated\n" );
+    tailer.poll();
+    assertEquals( "Truncated", receive().getShortMessage() );
+    tailer.close();
+
+    // The file key is unavailable on some file systems so the rename may not be detected
+    assertTrue( tailer.getRotationCount() >= 1 );
+  }
+
+  @Test
+  public void linesThatFailToSendAreNotCommitted()
+    throws Exception
+  {
+    final int port;
+    try ( final ServerSocket socket = new ServerSocket( 0 ) )
+    {
+      port = socket.getLocalPort();
+    }
+    // Nothing listens on the port so every post is refused
+    final GelfTargetConfig config = new GelfTargetConfig();
+    config.setTransport( GelfTargetConfig.Transport.HTTP );
+    config.setHttpUrl( "http://localhost:" + port + "/gelf" );
+    config.setHttpRetries( 0 );
+    final GelfConnection failing = config.createConnection();
+
+    final Path checkpoint = _directory.resolve( "tail.checkpoint" );
+    append( "One\nTwo\n" );
+    final GelfFileTailer tailer = new GelfFileTailer( failing, Collections.singletonList( _file ) );
+    tailer.setCheckpointFile( checkpoint );
+    tailer.poll();
+    // Reading stops at the first message that fails until the poll interval has passed
+    tailer.poll();
+    tailer.close();
+    failing.close();
+    assertEquals( 0, tailer.getSentCount() );
+    assertEquals( 1, tailer.getFailedCount() );
+
+    final GelfFileTailer resumed = newTailer();
+    resumed.setCheckpointFile( checkpoint );
+    resumed.poll();
+    resumed.close();
+    assertEquals( "One", receive().getShortMessage() );
+    assertEquals( "Two", receive().getShortMessage() );
+  }
+
+  private GelfFileTailer newTailer()
+  {
+    return new GelfFileTailer( _connection, Collections.singletonList( _file ) );
+  }
+
+  private void append( final String text )
+    throws Exception
+  {
+    Files.write( _file,
+                 text.getBytes( StandardCharsets.UTF_8 ),
+                 StandardOpenOption.CREATE,
+                 StandardOpenOption.APPEND );
+  }
+
+  private GelfMessage receive()
+    throws InterruptedException
+  {
+    final GelfMessage message = _messages.poll( 5, TimeUnit.SECONDS );
+    assertNotNull( "No message received", message );
+    return message;
+  }
+}
@@ -0,0 +1,77 @@
+package gelf4j.sender;
+
+import gelf4j.ConnectionUtil;
+import gelf4j.GelfConnection;
+import gelf4j.receiver.GelfReceiver;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfLoadGeneratorTest
+{
+  private static final int PORT = 1995;
+
+  private GelfReceiver _receiver;
+  private GelfConnection _connection;
+
+  @Before
+  public void setUp()
+    throws Exception
+  {
+    _receiver = ConnectionUtil.startUdpReceiver( PORT, null );
+
+    _connection = ConnectionUtil.createConfig( PORT ).createConnection();
+  }
+
+  @After
+  public void tearDown()
+    throws Exception
+  {
+    _connection.close();
+    _receiver.close();
+  }
+
+  @Test
+  public void sendMessageCount()
+    throws Exception
+  {
+    final GelfLoadGenerator generator = new GelfLoadGenerator( _connection );
+    generator.setMessageCount( 200 );
+    generator.setThreadCount( 4 );
+    generator.setFieldCount( 3 );
+    generator.setMessageSize( 5000 );
+    generator.run();
+
+    assertEquals( 200, generator.getSentCount() );
+    assertEquals( 0, generator.getFailedCount() );
+    assertEquals( 200, generator.getLatency().getCount() );
+    assertTrue( generator.getElapsedTime() > 0 );
+    // Random text of this size is chunked
+    assertTrue( _connection.getMetrics().getChunkCount() > 200 );
+    assertTrue( generator.describe().startsWith( "Sent 200 messages" ) );
+    final long deadline = System.currentTimeMillis() + 5000;
+    while ( 0 == _receiver.getMessageCount() && System.currentTimeMillis() < deadline )
+    {
+      Thread.sleep( 20 );
+    }
+    assertTrue( _receiver.getMessageCount() > 0 );
+  }
+
+  @Test
+  public void sendAtRateForDuration()
+    throws Exception
+  {
+    final GelfLoadGenerator generator = new GelfLoadGenerator( _connection );
+    generator.setDuration( 500 );
+    generator.setRate( 200 );
+    generator.setThreadCount( 2 );
+    generator.setCompressible( true );
+    generator.run();
+
+    assertTrue( generator.getElapsedTime() >= TimeUnit.MILLISECONDS.toNanos( 500 ) );
+    final long sent = generator.getSentCount();
+    assertTrue( "Sent " + sent, sent >= 50 && sent <= 101 );
+  }
+}
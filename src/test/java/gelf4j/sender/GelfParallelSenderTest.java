@@ -0,0 +1,170 @@
+package gelf4j.sender;
+
+import gelf4j.ConnectionUtil;
+import gelf4j.GelfConnection;
+import gelf4j.GelfMessage;
+import gelf4j.GelfTargetConfig;
+import gelf4j.JsonCodec;
+import gelf4j.SimpleJsonCodec;
+import gelf4j.receiver.GelfReceiver;
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfParallelSenderTest
+{
+  private static final int PORT = 1999;
+  private static final int WORKER_COUNT = 4;
+
+  private final BlockingQueue<GelfMessage> _messages = new LinkedBlockingQueue<GelfMessage>();
+  private final List<GelfConnection> _connections = new ArrayList<GelfConnection>();
+  private GelfReceiver _receiver;
+
+  @Before
+  public void setUp()
+    throws Exception
+  {
+    _receiver = ConnectionUtil.startUdpReceiver( PORT, _messages::add );
+
+    final GelfTargetConfig config = ConnectionUtil.createConfig( PORT );
+    for ( int i = 0; i < WORKER_COUNT; i++ )
+    {
+      _connections.add( config.createConnection() );
+    }
+  }
+
+  @After
+  public void tearDown()
+    throws Exception
+  {
+    for ( final GelfConnection connection : _connections )
+    {
+      connection.close();
+    }
+    _receiver.close();
+  }
+
+  @Test
+  public void distributeLines()
+    throws Exception
+  {
+    final StringBuilder sb = new StringBuilder();
+    for ( int i = 0; i < 2000; i++ )
+    {
+      sb.append( "Line " ).append( i ).append( '\n' );
+    }
+    final GelfParallelSender sender = new GelfParallelSender( _connections, null, null );
+    sender.send( new BufferedReader( new StringReader( sb.toString() ) ) );
+
+    assertEquals( 2000, sender.getLineCount() );
+    assertEquals( 2000, sender.getSentCount() );
+    assertEquals( 0, sender.getFailedCount() );
+    for ( int i = 0; i < WORKER_COUNT; i++ )
+    {
+      assertTrue( sender.getSentCount( i ) > 0 );
+    }
+    assertTrue( sender.describe().contains( "Worker 3: " ) );
+    // Several workers can overflow the receive buffer of the receiver so only check that messages arrive intact
+    final Set<String> received = new HashSet<String>();
+    GelfMessage message;
+    while ( null != ( message = _messages.poll( 1, TimeUnit.SECONDS ) ) )
+    {
+      assertTrue( message.getShortMessage().startsWith( "Line " ) );
+      assertTrue( received.add( message.getShortMessage() ) );
+    }
+    assertFalse( received.isEmpty() );
+  }
+
+  @Test
+  public void preserveOrderOfKey()
+    throws Exception
+  {
+    final StringBuilder sb = new StringBuilder();
+    for ( int i = 0; i < 400; i++ )
+    {
+      sb.append( "{\"message\":\"Event " ).append( i ).append( "\",\"user\":\"user" ).append( i % 7 )
+        .append( "\",\"sequence\":" ).append( i ).append( "}\n" );
+    }
+    sb.append( "not json\n" );
+    final GelfParallelSender sender = new GelfParallelSender( _connections, new SimpleJsonCodec(), "user" );
+    sender.send( new BufferedReader( new StringReader( sb.toString() ) ) );
+
+    assertEquals( 400, sender.getSentCount() );
+    assertEquals( 1, sender.getInvalidCount() );
+    final Map<Object, Integer> lastSequence = new HashMap<Object, Integer>();
+    GelfMessage message;
+    while ( null != ( message = _messages.poll( 1, TimeUnit.SECONDS ) ) )
+    {
+      final Object user = message.getAdditionalFields().get( "user" );
+      final int sequence = ( (Number) message.getAdditionalFields().get( "sequence" ) ).intValue();
+      final Integer last = lastSequence.put( user, sequence );
+      assertTrue( "Out of order for " + user, null == last || last < sequence );
+    }
+    assertEquals( 7, lastSequence.size() );
+  }
+
+  @Test
+  public void lineThatThrowsIsCountedAsFailed()
+    throws Exception
+  {
+    final JsonCodec codec = new JsonCodec()
+    {
+      @Override
+      public String toJson( final Object object )
+      {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public <T> T fromJson( final String json, final Class<T> type )
+      {
+        final Map<String, Object> fields = new HashMap<String, Object>();
+        fields.put( "message", json );
+        if ( json.startsWith( "Bad" ) )
+        {
+          fields.put( "level", new Object()
+          {
+            @Override
+            public String toString()
+            {
+              throw new IllegalStateException();
+            }
+          } );
+        }
+        return type.cast( fields );
+      }
+    };
+    final StringBuilder sb = new StringBuilder();
+    for ( int i = 0; i < 100; i++ )
+    {
+      sb.append( 0 == i % 10 ? "Bad " : "Good " ).append( i ).append( '\n' );
+    }
+    final GelfParallelSender sender = new GelfParallelSender( _connections.subList( 0, 1 ), codec, null );
+    sender.send( new BufferedReader( new StringReader( sb.toString() ) ) );
+
+    assertEquals( 90, sender.getSentCount() );
+    assertEquals( 10, sender.getFailedCount() );
+  }
+
+  @Test
+  public void orderKey()
+  {
+    final GelfParallelSender sender = new GelfParallelSender( _connections, new SimpleJsonCodec(), "user" );
+    assertEquals( "\"bob\"", sender.orderKey( "{\"message\":\"x\",\"user\" : \"bob\"}" ) );
+    assertEquals( "\"a\\\"b\"", sender.orderKey( "{\"user\":\"a\\\"b\",\"message\":\"x\"}" ) );
+    assertEquals( "42", sender.orderKey( "{\"user\":42}" ) );
+    assertEquals( "", sender.orderKey( "{\"message\":\"x\"}" ) );
+  }
+}
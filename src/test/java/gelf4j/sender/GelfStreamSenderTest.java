@@ -0,0 +1,105 @@
+package gelf4j.sender;
+
+import gelf4j.ConnectionUtil;
+import gelf4j.GelfConnection;
+import gelf4j.GelfMessage;
+import gelf4j.GelfTargetConfig;
+import gelf4j.SimpleJsonCodec;
+import gelf4j.SyslogLevel;
+import gelf4j.receiver.GelfReceiver;
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GelfStreamSenderTest
+{
+  private static final int PORT = 1994;
+
+  private final BlockingQueue<GelfMessage> _messages = new LinkedBlockingQueue<GelfMessage>();
+  private GelfReceiver _receiver;
+  private GelfConnection _connection;
+
+  @Before
+  public void setUp()
+    throws Exception
+  {
+    _receiver = ConnectionUtil.startUdpReceiver( PORT, _messages::add );
+
+    final GelfTargetConfig config = ConnectionUtil.createConfig( PORT );
+    config.getDefaultFields().put( "app", "test" );
+    _connection = config.createConnection();
+  }
+
+  @After
+  public void tearDown()
+    throws Exception
+  {
+    _connection.close();
+    _receiver.close();
+  }
+
+  @Test
+  public void sendEachLine()
+    throws Exception
+  {
+    final StringBuilder sb = new StringBuilder();
+    for ( int i = 0; i < 200; i++ )
+    {
+      sb.append( "Line " ).append( i ).append( '\n' );
+    }
+    sb.append( '\n' );
+    final GelfStreamSender sender = new GelfStreamSender( _connection, null, 8 );
+    sender.send( new BufferedReader( new StringReader( sb.toString() ) ) );
+
+    assertEquals( 201, sender.getLineCount() );
+    assertEquals( 200, sender.getSentCount() );
+    assertTrue( sender.getSentBytes() > 0 );
+    assertEquals( 0, sender.getInvalidCount() );
+    assertEquals( 0, sender.getDroppedCount() );
+    assertEquals( 0, sender.getFailedCount() );
+    for ( int i = 0; i < 200; i++ )
+    {
+      final GelfMessage message = receive();
+      assertEquals( "Line " + i, message.getShortMessage() );
+      assertEquals( "test", message.getAdditionalFields().get( "app" ) );
+    }
+  }
+
+  @Test
+  public void sendNdjsonLines()
+    throws Exception
+  {
+    final String input =
+      "{\"message\":\"First\",\"level\":\"WARNING\",\"user\":\"bob\"}\n" +
+      "not json\n" +
+      "{\"user\":\"no message\"}\n" +
+      "{\"message\":\"Second\",\"facility\":\"F\"}\n";
+    final GelfStreamSender sender = new GelfStreamSender( _connection, new SimpleJsonCodec() );
+    sender.send( new BufferedReader( new StringReader( input ) ) );
+
+    assertEquals( 4, sender.getLineCount() );
+    assertEquals( 2, sender.getSentCount() );
+    assertEquals( 2, sender.getInvalidCount() );
+    final GelfMessage first = receive();
+    assertEquals( "First", first.getShortMessage() );
+    assertEquals( SyslogLevel.WARNING, first.getLevel() );
+    assertEquals( "bob", first.getAdditionalFields().get( "user" ) );
+    final GelfMessage second = receive();
+    assertEquals( "Second", second.getShortMessage() );
+    assertEquals( "F", second.getFacility() );
+  }
+
+  private GelfMessage receive()
+    throws InterruptedException
+  {
+    final GelfMessage message = _messages.poll( 5, TimeUnit.SECONDS );
+    assertNotNull( "No message received", message );
+    return message;
+  }
+}